@@ -0,0 +1,139 @@
+package org.whispercat;
+
+import org.whispercat.postprocessing.PostProcessingData;
+import org.whispercat.postprocessing.ProcessingStepData;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Test data shared by the benchmarks. Everything is generated from fixed seeds, so runs are comparable.
+ */
+public final class BenchmarkSupport {
+    public static final AudioFormat FORMAT = new AudioFormat(16000, 16, 1, true, false);
+    private static final String[] WORDS = {"the", "meeting", "starts", "at", "nine", "please", "send", "me", "a",
+            "summary", "of", "budget", "for", "next", "quarter", "and", "review", "notes", "gonna", "um", "like",
+            "kubernetes", "deployment", "teh", "recieve", "whisper", "cat", "okay", "so", "basically"};
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Returns a configuration manager whose configuration directory is a new temporary directory, so the
+     * benchmarks neither read nor change the real configuration, pipelines or caches.
+     */
+    public static ConfigManager newConfigManager() {
+        try {
+            return new ConfigManager(Files.createTempDirectory("whispercat-bench").toString());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns 16 kHz mono 16-bit little-endian PCM resembling speech: a varying tone with noise and pauses.
+     */
+    public static byte[] speech(int millis) {
+        return speech(millis, 42);
+    }
+
+    /**
+     * Returns speech-like PCM whose noise is drawn from the given seed, so recordings of the same length differ.
+     */
+    public static byte[] speech(int millis, long seed) {
+        Random random = new Random(seed);
+        int samples = (int) (FORMAT.getSampleRate() * millis / 1000);
+        byte[] data = new byte[samples * 2];
+        for (int i = 0; i < samples; i++) {
+            double t = i / FORMAT.getSampleRate();
+            boolean pause = (i / 8000) % 4 == 3;
+            double amplitude = pause ? 50 : 6000 * (0.6 + 0.4 * Math.sin(2 * Math.PI * 3 * t));
+            double value = amplitude * Math.sin(2 * Math.PI * (180 + 40 * Math.sin(t)) * t) + random.nextGaussian() * 200;
+            int sample = (int) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value));
+            data[2 * i] = (byte) sample;
+            data[2 * i + 1] = (byte) (sample >> 8);
+        }
+        return data;
+    }
+
+    /**
+     * Returns a dictation-like text of the given number of words.
+     */
+    public static String transcript(int words) {
+        Random random = new Random(7);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            if (i % 12 == 0 && i > 0) {
+                text.append(". ");
+                word = Character.toUpperCase(word.charAt(0)) + word.substring(1);
+            } else if (i > 0) {
+                text.append(' ');
+            }
+            text.append(word);
+        }
+        return text.append('.').toString();
+    }
+
+    /**
+     * Returns a pipeline of text replacements for filler words and typos, followed by a prompt.
+     */
+    public static PostProcessingData pipeline(String title, int replacements) {
+        String[][] pairs = {{"gonna", "going to"}, {"teh", "the"}, {"recieve", "receive"}, {"um", ""},
+                {"kubernetes", "Kubernetes"}, {"whisper cat", "WhisperCat"}, {"okay", "OK"}, {"basically", ""}};
+        PostProcessingData data = new PostProcessingData();
+        data.uuid = UUID.nameUUIDFromBytes(title.getBytes()).toString();
+        data.title = title;
+        data.description = "Benchmark pipeline";
+        data.steps = new ArrayList<>();
+        for (int i = 0; i < replacements; i++) {
+            ProcessingStepData step = new ProcessingStepData();
+            step.type = "Text Replacement";
+            step.textToReplace = pairs[i % pairs.length][0] + (i < pairs.length ? "" : String.valueOf(i));
+            step.replacementText = pairs[i % pairs.length][1];
+            step.ignoreCase = true;
+            step.wholeWord = true;
+            data.steps.add(step);
+        }
+        ProcessingStepData prompt = new ProcessingStepData();
+        prompt.type = "Prompt";
+        prompt.provider = "OpenAI";
+        prompt.model = "gpt-4o-mini";
+        prompt.systemPrompt = "You fix the grammar of dictated text.";
+        prompt.userPrompt = "Fix the following text: {{input}}";
+        data.steps.add(prompt);
+        return data;
+    }
+
+    public static List<PostProcessingData> pipelines(int count, int replacements) {
+        List<PostProcessingData> pipelines = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            pipelines.add(pipeline("Pipeline " + i, replacements));
+        }
+        return pipelines;
+    }
+
+    /**
+     * Discards everything written to it, counting the bytes so the work cannot be optimized away.
+     */
+    public static final class CountingOutputStream extends OutputStream {
+        public long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
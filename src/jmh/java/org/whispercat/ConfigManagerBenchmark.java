@@ -0,0 +1,59 @@
+package org.whispercat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.whispercat.postprocessing.PostProcessingData;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads and saves post-processing pipelines through {@link ConfigManager}. Saving only hands the pipeline to
+ * the background writer, the file is written by {@link ConfigWriter}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConfigManagerBenchmark {
+    @Param({"5", "50", "500"})
+    public int pipelineCount;
+
+    private ConfigManager configManager;
+    private PostProcessingData changed;
+
+    @Setup
+    public void setUp() {
+        configManager = BenchmarkSupport.newConfigManager();
+        List<PostProcessingData> pipelines = BenchmarkSupport.pipelines(pipelineCount, 8);
+        pipelines.forEach(configManager::savePostProcessingData);
+        ConfigWriter.getInstance().flush();
+        changed = pipelines.get(pipelineCount / 2);
+    }
+
+    @Benchmark
+    public List<PostProcessingData> getPostProcessingDataList() {
+        return configManager.getPostProcessingDataList();
+    }
+
+    @Benchmark
+    public PostProcessingData getPostProcessingData() {
+        return configManager.getPostProcessingData(changed.uuid);
+    }
+
+    @Benchmark
+    public void savePostProcessingData() {
+        configManager.savePostProcessingData(changed);
+    }
+}
@@ -0,0 +1,383 @@
+package org.whispercat.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.whispercat.BenchmarkSupport;
+import org.whispercat.ConfigManager;
+import org.whispercat.http.HttpClientProvider;
+import org.whispercat.metrics.LatencyHistogram;
+import org.whispercat.metrics.MetricSnapshot;
+import org.whispercat.metrics.Metrics;
+import org.whispercat.postprocessing.PostProcessingData;
+import org.whispercat.postprocessing.PostProcessingListener;
+import org.whispercat.postprocessing.PostProcessingService;
+import org.whispercat.postprocessing.ProcessingStepData;
+import org.whispercat.recording.RecordedAudio;
+import org.whispercat.recording.TranscriptionCache;
+import org.whispercat.recording.TranscriptionService;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replays synthetic dictations against {@link MockBackendServer} and reports throughput and tail latencies, so
+ * changes to connection pooling, retries or caching can be measured without network access or paid APIs.
+ * <p>
+ * Every dictation goes the way of a recording in the application: transcript cache, transcription with the
+ * configured server, and post-processing with a pipeline of text replacements and a prompt. Backend
+ * settings which the driver has no option for are set with {@code --set key=value}, e.g. {@code httpMaxRetries=0}.
+ * <pre>
+ * mvn -P benchmarks compile exec:java -Dexec.mainClass=org.whispercat.loadtest.LoadDriver \
+ *     -Dexec.args="--dictations 500 --concurrency 16 --backend Faster-Whisper --error-rate 0.05"
+ * </pre>
+ */
+public final class LoadDriver {
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: LoadDriver [options]",
+            "",
+            "  --dictations <n>             Dictations to replay (200).",
+            "  --concurrency <n>            Dictations at the same time (8).",
+            "  --audio-seconds <n>          Length of every recording (10).",
+            "  --distinct-recordings <n>    Different recordings; fewer than dictations give cache hits (dictations).",
+            "  --backend <name>             \"OpenAI\", \"Faster-Whisper\" or \"Open WebUI\" (Faster-Whisper).",
+            "  --post-processing <bool>     Post-processes every transcript (true).",
+            "  --chat-provider <name>       \"OpenAI\" or \"Open WebUI\" (OpenAI).",
+            "  --stream <bool>              Streams the post-processing (true).",
+            "  --cache <bool>               Uses the transcript and post-processing caches (false).",
+            "  --median-ms <n>              Median transcription time of the server (300).",
+            "  --p99-ms <n>                 99th percentile of the transcription time (1200).",
+            "  --chat-median-ms <n>         Median chat completion time (200).",
+            "  --chat-p99-ms <n>            99th percentile of the chat completion time (800).",
+            "  --error-rate <0..1>          Share of requests failing with --error-status (0).",
+            "  --error-status <code>        Status of the failing requests (503).",
+            "  --retry-after <seconds>      Retry-After header of the failing requests (none).",
+            "  --hang-rate <0..1>           Share of requests never answered (0).",
+            "  --set <key=value>            Sets a WhisperCat property, may be repeated.",
+            "  --report <file>              Writes the results as JSON.");
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final MockBackendServer.Options transcriptionOptions = new MockBackendServer.Options();
+    private final MockBackendServer.Options chatOptions = new MockBackendServer.Options();
+    private final Map<String, String> properties = new LinkedHashMap<>();
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final AtomicInteger completed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicLong audioBytes = new AtomicLong();
+    private int dictations = 200;
+    private int concurrency = 8;
+    private int audioSeconds = 10;
+    private int distinctRecordings = 0;
+    private String backend = "Faster-Whisper";
+    private boolean postProcessing = true;
+    private String chatProvider = "OpenAI";
+    private boolean stream = true;
+    private boolean cache = false;
+    private File report;
+
+    private LoadDriver() {
+        chatOptions.medianMillis = 200;
+        chatOptions.p99Millis = 800;
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadDriver driver = new LoadDriver();
+        if (args.length > 0 && (args[0].equals("-h") || args[0].equals("--help"))) {
+            System.out.println(USAGE);
+            return;
+        }
+        try {
+            driver.parseOptions(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            return;
+        }
+        driver.run();
+    }
+
+    private void parseOptions(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--dictations":
+                    dictations = (int) number(args, ++i, arg, 1, 1_000_000);
+                    break;
+                case "--concurrency":
+                    concurrency = (int) number(args, ++i, arg, 1, 1024);
+                    break;
+                case "--audio-seconds":
+                    audioSeconds = (int) number(args, ++i, arg, 1, 3600);
+                    break;
+                case "--distinct-recordings":
+                    distinctRecordings = (int) number(args, ++i, arg, 1, 1_000_000);
+                    break;
+                case "--backend":
+                    backend = value(args, ++i, arg);
+                    if (!backend.equals("OpenAI") && !backend.equals("Faster-Whisper") && !backend.equals("Open WebUI")) {
+                        throw new IllegalArgumentException("Unknown backend: " + backend);
+                    }
+                    break;
+                case "--post-processing":
+                    postProcessing = Boolean.parseBoolean(value(args, ++i, arg));
+                    break;
+                case "--chat-provider":
+                    chatProvider = value(args, ++i, arg);
+                    if (!chatProvider.equals("OpenAI") && !chatProvider.equals("Open WebUI")) {
+                        throw new IllegalArgumentException("Unknown chat provider: " + chatProvider);
+                    }
+                    break;
+                case "--stream":
+                    stream = Boolean.parseBoolean(value(args, ++i, arg));
+                    break;
+                case "--cache":
+                    cache = Boolean.parseBoolean(value(args, ++i, arg));
+                    break;
+                case "--median-ms":
+                    transcriptionOptions.medianMillis = number(args, ++i, arg, 0, 600_000);
+                    break;
+                case "--p99-ms":
+                    transcriptionOptions.p99Millis = number(args, ++i, arg, 0, 600_000);
+                    break;
+                case "--chat-median-ms":
+                    chatOptions.medianMillis = number(args, ++i, arg, 0, 600_000);
+                    break;
+                case "--chat-p99-ms":
+                    chatOptions.p99Millis = number(args, ++i, arg, 0, 600_000);
+                    break;
+                case "--error-rate":
+                    transcriptionOptions.errorRate = number(args, ++i, arg, 0, 1);
+                    chatOptions.errorRate = transcriptionOptions.errorRate;
+                    break;
+                case "--error-status":
+                    transcriptionOptions.errorStatus = (int) number(args, ++i, arg, 400, 599);
+                    chatOptions.errorStatus = transcriptionOptions.errorStatus;
+                    break;
+                case "--retry-after":
+                    transcriptionOptions.retryAfterSeconds = (int) number(args, ++i, arg, 0, 3600);
+                    chatOptions.retryAfterSeconds = transcriptionOptions.retryAfterSeconds;
+                    break;
+                case "--hang-rate":
+                    transcriptionOptions.hangRate = number(args, ++i, arg, 0, 1);
+                    chatOptions.hangRate = transcriptionOptions.hangRate;
+                    break;
+                case "--set":
+                    String property = value(args, ++i, arg);
+                    int separator = property.indexOf('=');
+                    if (separator <= 0) {
+                        throw new IllegalArgumentException("Invalid value for --set: " + property);
+                    }
+                    properties.put(property.substring(0, separator), property.substring(separator + 1));
+                    break;
+                case "--report":
+                    report = new File(value(args, ++i, arg));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        if (distinctRecordings == 0 || distinctRecordings > dictations) {
+            distinctRecordings = dictations;
+        }
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[index];
+    }
+
+    private static double number(String[] args, int index, String option, double min, double max) {
+        String value = value(args, index, option);
+        try {
+            double parsed = Double.parseDouble(value);
+            if (parsed >= min && parsed <= max) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below.
+        }
+        throw new IllegalArgumentException("Invalid value for " + option + ": " + value);
+    }
+
+    private void run() throws Exception {
+        try (MockBackendServer server = new MockBackendServer(transcriptionOptions, chatOptions)) {
+            ConfigManager configManager = configure(server.getBaseUrl());
+            TranscriptionService transcriptionService = new TranscriptionService(configManager);
+            PostProcessingService postProcessingService = new PostProcessingService(configManager);
+            PostProcessingData pipeline = postProcessing ? pipeline() : null;
+            List<byte[]> recordings = new ArrayList<>();
+            for (int i = 0; i < distinctRecordings; i++) {
+                recordings.add(BenchmarkSupport.speech(audioSeconds * 1000, i));
+            }
+
+            System.out.printf("Replaying %d dictations of %d s, %d at a time, against %s at %s%n",
+                    dictations, audioSeconds, concurrency, backend, server.getBaseUrl());
+            ExecutorService executor = Executors.newFixedThreadPool(concurrency, runnable -> {
+                Thread thread = new Thread(runnable, "load-driver");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long start = System.nanoTime();
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < dictations; i++) {
+                byte[] pcm = recordings.get(i % recordings.size());
+                String name = "dictation-" + i + ".wav";
+                futures.add(executor.submit(() -> dictate(configManager, transcriptionService, postProcessingService,
+                        pipeline, name, pcm)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            long elapsed = System.nanoTime() - start;
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+
+            printResults(elapsed, server.getRequestCounts());
+            if (report != null) {
+                writeReport(elapsed, server.getRequestCounts());
+                System.out.println("Report written to " + report.getAbsolutePath());
+            }
+        } finally {
+            HttpClientProvider.shutdown();
+        }
+    }
+
+    /**
+     * Returns the settings pointing every client to the mock server. They are kept in a new temporary
+     * configuration directory, together with the caches and pipelines, so those of the user are never read or
+     * changed.
+     */
+    private ConfigManager configure(String baseUrl) throws IOException {
+        ConfigManager configManager = new ConfigManager(Files.createTempDirectory("whispercat-load").toString());
+        configManager.setProperty("whisperServer", backend);
+        configManager.setProperty("apiKey", "mock");
+        configManager.setProperty("openAIBaseUrl", baseUrl);
+        configManager.setProperty("fasterWhisperServerUrl", baseUrl);
+        configManager.setProperty("fasterWhisperModel", "Systran/faster-whisper-small");
+        configManager.setProperty("openWebUIServerUrl", baseUrl);
+        configManager.setProperty("openWebUIApiKey", "mock");
+        configManager.setProperty("streamPostProcessing", String.valueOf(stream));
+        configManager.setTranscriptionCacheEnabled(cache);
+        configManager.setPostProcessingCacheEnabled(cache);
+        properties.forEach(configManager::setProperty);
+        return configManager;
+    }
+
+    private PostProcessingData pipeline() {
+        PostProcessingData data = BenchmarkSupport.pipeline("Load test", 8);
+        for (ProcessingStepData step : data.steps) {
+            if ("Prompt".equals(step.type)) {
+                step.provider = chatProvider;
+                step.model = chatProvider.equals("OpenAI") ? "gpt-4o-mini" : "llama3.1:8b";
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Transcribes and post-processes one recording like {@code RecorderForm.AudioTranscriptionWorker}.
+     */
+    private void dictate(ConfigManager configManager, TranscriptionService transcriptionService,
+                         PostProcessingService postProcessingService, PostProcessingData pipeline, String name, byte[] pcm) {
+        long start = System.nanoTime();
+        try (RecordedAudio audio = RecordedAudio.ofPcm(name, BenchmarkSupport.FORMAT, pcm, 0, pcm.length)) {
+            String cacheKey = cache ? TranscriptionCache.key(configManager, audio) : null;
+            String transcript = cacheKey != null ? TranscriptionCache.get(configManager, cacheKey) : null;
+            if (transcript == null) {
+                long transcriptionStart = System.nanoTime();
+                transcript = transcriptionService.transcribe(audio);
+                Metrics.getInstance().recordSince(Metrics.TRANSCRIPTION, transcriptionService.getLastWhisperServer(),
+                        null, transcriptionStart);
+                if (cacheKey != null) {
+                    TranscriptionCache.put(configManager, cacheKey, transcript);
+                }
+            }
+            if (pipeline != null) {
+                postProcessingService.submit(transcript, pipeline, new PostProcessingListener() {
+                }).getResult().join();
+            }
+            latencies.recordNanos(System.nanoTime() - start);
+            audioBytes.addAndGet(pcm.length);
+            completed.incrementAndGet();
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            System.err.println(name + " failed: " + e);
+        }
+    }
+
+    private void printResults(long elapsedNanos, Map<String, long[]> requestCounts) {
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf("%nCompleted %d, failed %d in %.1f s: %.1f dictations/s, %.1f s of audio per second%n",
+                completed.get(), failed.get(), seconds, completed.get() / seconds,
+                audioBytes.get() / (double) (BenchmarkSupport.FORMAT.getFrameSize() * BenchmarkSupport.FORMAT.getFrameRate()) / seconds);
+        System.out.printf("End to end (ms): mean %.0f, p50 %.0f, p95 %.0f, p99 %.0f, max %.0f%n",
+                latencies.getMeanMillis(), latencies.getPercentileMillis(50), latencies.getPercentileMillis(95),
+                latencies.getPercentileMillis(99), latencies.getMaxMillis());
+
+        System.out.printf("%n%-36s %10s %10s%n", "Server path", "Requests", "Failed");
+        requestCounts.forEach((path, counts) -> System.out.printf("%-36s %10d %10d%n", path, counts[0], counts[1]));
+
+        System.out.printf("%n%-28s %-16s %8s %8s %8s %8s %8s%n", "Phase", "Backend", "Count", "p50", "p95", "p99", "Max");
+        for (MetricSnapshot snapshot : Metrics.getInstance().getSnapshots()) {
+            System.out.printf("%-28s %-16s %8d %8.1f %8.1f %8.1f %8.1f%n", snapshot.phase, snapshot.backend,
+                    snapshot.count, snapshot.p50Millis, snapshot.p95Millis, snapshot.p99Millis, snapshot.maxMillis);
+        }
+    }
+
+    private void writeReport(long elapsedNanos, Map<String, long[]> requestCounts) throws IOException {
+        ObjectNode root = objectMapper.createObjectNode();
+        ObjectNode settings = root.putObject("settings");
+        settings.put("dictations", dictations);
+        settings.put("concurrency", concurrency);
+        settings.put("audioSeconds", audioSeconds);
+        settings.put("distinctRecordings", distinctRecordings);
+        settings.put("backend", backend);
+        settings.put("postProcessing", postProcessing);
+        settings.put("chatProvider", chatProvider);
+        settings.put("stream", stream);
+        settings.put("cache", cache);
+        settings.set("transcriptionServer", objectMapper.valueToTree(transcriptionOptions));
+        settings.set("chatServer", objectMapper.valueToTree(chatOptions));
+        settings.set("properties", objectMapper.valueToTree(properties));
+
+        root.put("completed", completed.get());
+        root.put("failed", failed.get());
+        root.put("elapsedMillis", elapsedNanos / 1_000_000);
+        root.put("dictationsPerSecond", completed.get() / (elapsedNanos / 1e9));
+        ObjectNode endToEnd = root.putObject("endToEndMillis");
+        endToEnd.put("mean", latencies.getMeanMillis());
+        endToEnd.put("p50", latencies.getPercentileMillis(50));
+        endToEnd.put("p95", latencies.getPercentileMillis(95));
+        endToEnd.put("p99", latencies.getPercentileMillis(99));
+        endToEnd.put("max", latencies.getMaxMillis());
+
+        ObjectNode requests = root.putObject("serverRequests");
+        requestCounts.forEach((path, counts) -> requests.putObject(path).put("requests", counts[0]).put("failed", counts[1]));
+        ArrayNode phases = root.putArray("phases");
+        for (MetricSnapshot snapshot : Metrics.getInstance().getSnapshots()) {
+            phases.addObject()
+                    .put("phase", snapshot.phase)
+                    .put("backend", snapshot.backend)
+                    .put("model", snapshot.model)
+                    .put("count", snapshot.count)
+                    .put("p50", snapshot.p50Millis)
+                    .put("p95", snapshot.p95Millis)
+                    .put("p99", snapshot.p99Millis)
+                    .put("max", snapshot.maxMillis);
+        }
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(report, root);
+    }
+}
@@ -0,0 +1,230 @@
+package org.whispercat.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in for the servers WhisperCat talks to, so transcription and post-processing can be load tested
+ * without network access or paid APIs. It listens on the loopback interface and answers:
+ * <pre>
+ * POST /v1/audio/transcriptions      OpenAI and Faster-Whisper transcription
+ * POST /api/v1/audio/transcriptions  Open WebUI transcription
+ * GET  /v1/models                    Faster-Whisper models
+ * GET  /api/models                   Open WebUI models
+ * POST /v1/chat/completions          OpenAI chat completion, streamed if requested
+ * POST /api/chat/completions         Open WebUI chat completion, streamed if requested
+ * </pre>
+ * Response times are drawn from a log-normal distribution given by its median and 99th percentile. A share
+ * of the requests fails with a configurable status, or is never answered so the client runs into its timeout.
+ * Transcripts are as long as a speaker would say in the uploaded audio; chat completions echo the user prompt.
+ */
+public class MockBackendServer implements AutoCloseable {
+    private static final String[] WORDS = {"the", "meeting", "starts", "at", "nine", "please", "send", "me", "a",
+            "summary", "of", "the", "budget", "for", "next", "quarter", "and", "review", "my", "notes"};
+    // 16 kHz mono 16-bit audio at two and a half words per second.
+    private static final int BYTES_PER_WORD = 32000 * 2 / 5;
+    private static final long HANG_MILLIS = 10 * 60 * 1000;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, AtomicLong> requests = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> failures = new ConcurrentHashMap<>();
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * How the server answers one kind of request.
+     */
+    public static class Options {
+        public double medianMillis = 300;
+        public double p99Millis = 1200; // Latencies are log-normal between median and this.
+        public double errorRate = 0; // Share of requests answered with the error status.
+        public int errorStatus = 503;
+        public int retryAfterSeconds = 0; // Sent with errors if positive.
+        public double hangRate = 0; // Share of requests which are never answered.
+        public int streamChunks = 40; // Events of a streamed answer.
+        public double streamChunkMillis = 15; // Delay between the events of a streamed answer.
+
+        long sampleLatencyMillis() {
+            if (p99Millis <= medianMillis) {
+                return Math.round(medianMillis);
+            }
+            // The 99th percentile of the standard normal distribution.
+            double sigma = Math.log(p99Millis / medianMillis) / 2.326;
+            return Math.round(medianMillis * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian()));
+        }
+    }
+
+    /**
+     * Starts the server on a free port.
+     */
+    public MockBackendServer(Options transcriptionOptions, Options chatOptions) throws IOException {
+        // Headers and body are written separately; with Nagle's algorithm and delayed ACKs every response
+        // would take about 40 ms longer. Read once when the first server is created.
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "mock-backend");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/v1/audio/transcriptions", exchange -> handle(exchange, transcriptionOptions, this::transcribe));
+        server.createContext("/api/v1/audio/transcriptions", exchange -> handle(exchange, transcriptionOptions, this::transcribe));
+        server.createContext("/v1/models", exchange -> handle(exchange, null, this::fasterWhisperModels));
+        server.createContext("/api/models", exchange -> handle(exchange, null, this::openWebUIModels));
+        server.createContext("/v1/chat/completions", exchange -> handle(exchange, chatOptions, this::complete));
+        server.createContext("/api/chat/completions", exchange -> handle(exchange, chatOptions, this::complete));
+        server.start();
+    }
+
+    /**
+     * Returns the base URL, e.g. "http://127.0.0.1:40123".
+     */
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Returns the number of requests and of failed requests per path.
+     */
+    public Map<String, long[]> getRequestCounts() {
+        Map<String, long[]> counts = new TreeMap<>();
+        requests.forEach((path, count) -> counts.put(path,
+                new long[]{count.get(), failures.getOrDefault(path, new AtomicLong()).get()}));
+        return counts;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private interface Handler {
+        void handle(HttpExchange exchange, byte[] body, Options options) throws IOException, InterruptedException;
+    }
+
+    private void handle(HttpExchange exchange, Options options, Handler handler) {
+        String path = exchange.getRequestURI().getPath();
+        requests.computeIfAbsent(path, p -> new AtomicLong()).incrementAndGet();
+        try (exchange) {
+            // Read the upload completely, like a real server, before answering.
+            byte[] body;
+            try (InputStream input = exchange.getRequestBody()) {
+                body = input.readAllBytes();
+            }
+            if (options != null) {
+                double draw = ThreadLocalRandom.current().nextDouble();
+                if (draw < options.hangRate) {
+                    failures.computeIfAbsent(path, p -> new AtomicLong()).incrementAndGet();
+                    Thread.sleep(HANG_MILLIS);
+                    return;
+                }
+                Thread.sleep(options.sampleLatencyMillis());
+                if (draw < options.hangRate + options.errorRate) {
+                    failures.computeIfAbsent(path, p -> new AtomicLong()).incrementAndGet();
+                    if (options.retryAfterSeconds > 0) {
+                        exchange.getResponseHeaders().set("Retry-After", String.valueOf(options.retryAfterSeconds));
+                    }
+                    sendJson(exchange, options.errorStatus, "{\"error\":{\"message\":\"Simulated failure\"}}");
+                    return;
+                }
+            }
+            handler.handle(exchange, body, options);
+        } catch (InterruptedException e) {
+            // The server is stopping.
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // The client gave up, e.g. after its timeout.
+        }
+    }
+
+    private void transcribe(HttpExchange exchange, byte[] body, Options options) throws IOException {
+        Random random = new Random(body.length);
+        int words = Math.max(1, body.length / BYTES_PER_WORD);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            text.append(i == 0 ? "" : " ").append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("text", text.append('.').toString());
+        sendJson(exchange, 200, response.toString());
+    }
+
+    private void fasterWhisperModels(HttpExchange exchange, byte[] body, Options options) throws IOException {
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("object", "list");
+        ObjectNode model = response.putArray("data").addObject();
+        model.put("id", "Systran/faster-whisper-small");
+        model.put("object", "model");
+        model.put("created", 0);
+        model.put("owned_by", "Systran");
+        model.putArray("language").add("en");
+        sendJson(exchange, 200, response.toString());
+    }
+
+    private void openWebUIModels(HttpExchange exchange, byte[] body, Options options) throws IOException {
+        ObjectNode response = objectMapper.createObjectNode();
+        ArrayNode data = response.putArray("data");
+        data.addObject().put("id", "llama3.1:8b").put("name", "llama3.1:8b");
+        sendJson(exchange, 200, response.toString());
+    }
+
+    private void complete(HttpExchange exchange, byte[] body, Options options) throws IOException, InterruptedException {
+        JsonNode request = objectMapper.readTree(body);
+        JsonNode messages = request.path("messages");
+        String content = messages.size() > 0 ? messages.get(messages.size() - 1).path("content").asText() : "";
+        if (!request.path("stream").asBoolean(false)) {
+            ObjectNode response = objectMapper.createObjectNode();
+            response.put("object", "chat.completion");
+            response.put("model", request.path("model").asText());
+            ObjectNode message = response.putArray("choices").addObject().putObject("message");
+            message.put("role", "assistant");
+            message.put("content", content);
+            sendJson(exchange, 200, response.toString());
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream output = exchange.getResponseBody();
+        int chunks = Math.max(1, Math.min(options.streamChunks, content.length()));
+        for (int i = 0; i < chunks; i++) {
+            if (i > 0) {
+                Thread.sleep(Math.round(options.streamChunkMillis));
+            }
+            String delta = content.substring(content.length() * i / chunks, content.length() * (i + 1) / chunks);
+            ObjectNode chunk = objectMapper.createObjectNode();
+            chunk.put("object", "chat.completion.chunk");
+            chunk.putArray("choices").addObject().putObject("delta").put("content", delta);
+            output.write(("data: " + chunk + "\n\n").getBytes(StandardCharsets.UTF_8));
+            output.flush();
+        }
+        output.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+}
@@ -0,0 +1,63 @@
+package org.whispercat.postprocessing;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.whispercat.BenchmarkSupport;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies a chain of text replacements to a two minute dictation, through {@link PostProcessingService} as a
+ * pipeline of replacement steps only, and with the compiled engine directly. Also measures finding the
+ * compiled engines of the pipeline, which every run does.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TextReplacementBenchmark {
+    @Param({"8", "64"})
+    public int replacements;
+
+    private PostProcessingService service;
+    private PostProcessingData pipeline;
+    private TextReplacementEngine engine;
+    private String transcript;
+
+    @Setup
+    public void setUp() {
+        service = new PostProcessingService(BenchmarkSupport.newConfigManager());
+        pipeline = BenchmarkSupport.pipeline("Replacements", replacements);
+        // Without the final prompt, so no request is sent.
+        pipeline.steps = new ArrayList<>(pipeline.steps.subList(0, replacements));
+        engine = TextReplacementEngine.forSteps(pipeline.steps)[0];
+        transcript = BenchmarkSupport.transcript(300);
+    }
+
+    @Benchmark
+    public String applyPostProcessing() {
+        return service.applyPostProcessing(transcript, pipeline);
+    }
+
+    @Benchmark
+    public String applyEngine() {
+        return engine.apply(transcript);
+    }
+
+    @Benchmark
+    public TextReplacementEngine[] lookUpEngines() {
+        return TextReplacementEngine.forSteps(pipeline.steps);
+    }
+}
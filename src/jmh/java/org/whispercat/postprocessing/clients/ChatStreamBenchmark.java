@@ -0,0 +1,62 @@
+package org.whispercat.postprocessing.clients;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.whispercat.BenchmarkSupport;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds the chat completion request of {@link OpenWebUIProcessClient} and reads a streamed answer of about
+ * 400 tokens with {@link ChatCompletionStream}, one server-sent event per token.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChatStreamBenchmark {
+    private final ObjectMapper mapper = new ObjectMapper();
+    private String transcript;
+    private byte[] stream;
+
+    @Setup
+    public void setUp() throws IOException {
+        transcript = BenchmarkSupport.transcript(300);
+        StringBuilder events = new StringBuilder();
+        for (String token : transcript.split("(?<= )")) {
+            events.append("data: {\"id\":\"chatcmpl-1\",\"object\":\"chat.completion.chunk\",\"choices\":[{\"index\":0,\"delta\":{\"content\":")
+                    .append(mapper.writeValueAsString(token))
+                    .append("},\"finish_reason\":null}]}\n\n");
+        }
+        events.append("data: [DONE]\n\n");
+        stream = events.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public String buildPayload() {
+        return OpenWebUIProcessClient.createPayload(mapper, "You fix the grammar of dictated text.",
+                "Fix the following text: " + transcript, "llama3.1:8b", true);
+    }
+
+    @Benchmark
+    public String readStream(Blackhole blackhole) throws IOException {
+        ByteArrayEntity entity = new ByteArrayEntity(stream, ContentType.create("text/event-stream", StandardCharsets.UTF_8));
+        return ChatCompletionStream.read(entity, mapper, blackhole::consume);
+    }
+}
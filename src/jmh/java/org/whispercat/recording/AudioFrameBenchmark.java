@@ -0,0 +1,47 @@
+package org.whispercat.recording;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.whispercat.BenchmarkSupport;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Level and voice activity analysis of one capture block, as done for the level meter and the silence filter.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AudioFrameBenchmark {
+    @Param({"20", "100"})
+    public int frameMillis;
+
+    private byte[] frame;
+
+    @Setup
+    public void setUp() {
+        frame = BenchmarkSupport.speech(frameMillis);
+    }
+
+    @Benchmark
+    public double rms() {
+        return AudioFrameAnalyzer.rms(frame, 0, frame.length, false);
+    }
+
+    @Benchmark
+    public double zeroCrossingRate() {
+        return AudioFrameAnalyzer.zeroCrossingRate(frame, 0, frame.length, false);
+    }
+}
@@ -0,0 +1,60 @@
+package org.whispercat.recording;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.whispercat.BenchmarkSupport;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds the chat completion request of {@link OpenAIClient} for a two minute dictation and parses a
+ * response of the same size. The clients create a new {@link ObjectMapper} per request, which is measured too.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChatPayloadBenchmark {
+    private final ObjectMapper sharedMapper = new ObjectMapper();
+    private String transcript;
+    private String response;
+
+    @Setup
+    public void setUp() throws IOException {
+        transcript = BenchmarkSupport.transcript(300);
+        response = "{\"id\":\"chatcmpl-1\",\"object\":\"chat.completion\",\"model\":\"gpt-4o-mini\",\"choices\":[{\"index\":0,"
+                + "\"message\":{\"role\":\"assistant\",\"content\":" + sharedMapper.writeValueAsString(transcript)
+                + "},\"finish_reason\":\"stop\"}],\"usage\":{\"prompt_tokens\":420,\"completion_tokens\":400}}";
+    }
+
+    @Benchmark
+    public String buildPayload() {
+        return OpenAIClient.createPayload(new ObjectMapper(), "You fix the grammar of dictated text.",
+                "Fix the following text: " + transcript, "gpt-4o-mini", false);
+    }
+
+    @Benchmark
+    public String buildPayloadSharedMapper() {
+        return OpenAIClient.createPayload(sharedMapper, "You fix the grammar of dictated text.",
+                "Fix the following text: " + transcript, "gpt-4o-mini", false);
+    }
+
+    @Benchmark
+    public String parseResponse() throws IOException {
+        JsonNode choices = new ObjectMapper().readTree(response).path("choices");
+        return choices.get(0).path("message").path("content").asText();
+    }
+}
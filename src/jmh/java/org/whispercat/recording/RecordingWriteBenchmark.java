@@ -0,0 +1,80 @@
+package org.whispercat.recording;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.whispercat.BenchmarkSupport;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes a 30 second recording in the 100 ms blocks the capture thread delivers: to a WAV file, with and
+ * without byte swapping, and into a {@link RecordedAudio} held in memory.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RecordingWriteBenchmark {
+    private static final int BLOCK_BYTES = 3200;
+
+    @Param({"false", "true"})
+    public boolean bigEndian;
+
+    private byte[] pcm;
+    private AudioFormat format;
+    private File file;
+
+    @Setup
+    public void setUp() throws IOException {
+        pcm = BenchmarkSupport.speech(30_000);
+        AudioFormat base = BenchmarkSupport.FORMAT;
+        format = new AudioFormat(base.getSampleRate(), 16, 1, true, bigEndian);
+        file = Files.createTempFile("whispercat-bench", ".wav").toFile();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public long wavWriter() throws IOException {
+        try (WavWriter writer = new WavWriter(file, format)) {
+            for (int offset = 0; offset < pcm.length; offset += BLOCK_BYTES) {
+                writer.write(pcm, offset, Math.min(BLOCK_BYTES, pcm.length - offset));
+            }
+            return writer.getDataLength();
+        }
+    }
+
+    @Benchmark
+    public long inMemoryRecording() throws IOException {
+        RecordedAudio audio = RecordedAudio.capture(file, format, 64L * 1024 * 1024, false);
+        try {
+            for (int offset = 0; offset < pcm.length; offset += BLOCK_BYTES) {
+                audio.write(pcm, offset, Math.min(BLOCK_BYTES, pcm.length - offset));
+            }
+            audio.finish();
+            return audio.getDataLength();
+        } finally {
+            audio.close();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package org.whispercat.recording.encoding;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.mime.MultipartEntityBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.whispercat.BenchmarkSupport;
+import org.whispercat.recording.RecordedAudio;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds and writes the multipart body of a transcription request for a 30 second recording held in memory,
+ * like the transcribe clients do, as WAV and as FLAC.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UploadBodyBenchmark {
+    @Param({AudioUploadEncoder.WAV, AudioUploadEncoder.FLAC})
+    public String encoding;
+
+    private RecordedAudio audio;
+
+    @Setup
+    public void setUp() {
+        byte[] pcm = BenchmarkSupport.speech(30_000);
+        audio = RecordedAudio.ofPcm("record.wav", BenchmarkSupport.FORMAT, pcm, 0, pcm.length);
+    }
+
+    @Benchmark
+    public long multipartBody() throws IOException {
+        MultipartEntityBuilder builder = MultipartEntityBuilder.create();
+        builder.addPart("file", AudioUploadEncoder.createBody(audio, encoding));
+        builder.addTextBody("model", "whisper-1");
+        HttpEntity entity = builder.build();
+        BenchmarkSupport.CountingOutputStream output = new BenchmarkSupport.CountingOutputStream();
+        entity.writeTo(output);
+        return output.count;
+    }
+}
@@ -1,28 +1,41 @@
 package org.whispercat;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonParser;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.whispercat.postprocessing.PipelineStore;
 import org.whispercat.postprocessing.PostProcessingData;
 
 import javax.sound.sampled.AudioFormat;
 import java.io.*;
-import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
-import java.util.stream.Collectors;
 
 public class ConfigManager {
     private static final Logger logger = LogManager.getLogger(ConfigManager.class);
     private static final String CONFIG_FILE_NAME = "config.properties";
-    private final Properties properties;
+    private static final String POST_PROCESSING_DATA = "postProcessingData";
+    // Settings of this process only, never saved. Guarded by itself.
+    private final Properties overrides = new Properties();
+    private final Properties properties = new Properties() {
+        @Override
+        public String getProperty(String key) {
+            String override = overrides.getProperty(key);
+            return override != null ? override : super.getProperty(key);
+        }
+    };
+    private final String configDirectory;
+    private PipelineStore pipelineStore;
 
     public ConfigManager() {
-        properties = new Properties();
+        this(defaultConfigDirectory());
+    }
+
+    /**
+     * Uses the given configuration directory instead of the one of the user, e.g. to run benchmarks or tests
+     * without reading or changing the real settings, pipelines and caches.
+     */
+    public ConfigManager(String configDirectory) {
+        this.configDirectory = configDirectory;
         loadConfig();
     }
 
@@ -46,28 +59,27 @@ public class ConfigManager {
         return properties.getProperty("keySequence", "");
     }
 
+    /**
+     * Saves the configuration file in the background, see {@link ConfigWriter}.
+     */
     public void saveConfig() {
         File configFile = getConfigFilePath();
-        try (OutputStream output = new FileOutputStream(configFile)) {
-            properties.store(output, null);
-            logger.info("Configuration saved successfully to {}", configFile.getAbsolutePath());
-        } catch (IOException e) {
-            logger.error("Failed to save configuration", e);
-        }
+        ConfigWriter.getInstance().write(configFile, () -> {
+            // Hashtable.clone() is synchronized, so the copy is consistent while settings change.
+            Properties snapshot = (Properties) properties.clone();
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            try {
+                snapshot.store(output, null);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            logger.info("Saving configuration to {}", configFile.getAbsolutePath());
+            return output.toByteArray();
+        });
     }
 
     private File getConfigFilePath() {
-        String osName = System.getProperty("os.name").toLowerCase();
-        String configDirPath;
-        if (osName.contains("win")) {
-            configDirPath = System.getenv("APPDATA") + File.separator + "WhisperCat";
-        } else if (osName.contains("mac")) {
-            configDirPath = System.getProperty("user.home") + File.separator + "Library" + File.separator + "Application Support" + File.separator + "WhisperCat";
-        } else {
-            configDirPath = System.getProperty("user.home") + File.separator + "WhisperCat" + File.separator + ".config";
-            logger.info("Config Path is:" + configDirPath);
-        }
-        File configDir = new File(configDirPath);
+        File configDir = new File(configDirectory);
         if (!configDir.exists()) {
             configDir.mkdirs();
         }
@@ -82,7 +94,19 @@ public class ConfigManager {
         properties.setProperty(key, value);
     }
 
+    /**
+     * Overrides a setting for this process only, e.g. from the command line. It takes precedence over the saved
+     * value and is never written to the configuration file.
+     */
+    public void setOverride(String key, String value) {
+        overrides.setProperty(key, value);
+    }
+
     public String getConfigDirectory() {
+        return configDirectory;
+    }
+
+    private static String defaultConfigDirectory() {
         String userHome = System.getProperty("user.home");
         String configDir;
         if (System.getProperty("os.name").toLowerCase().contains("win")) {
@@ -91,11 +115,19 @@ public class ConfigManager {
             configDir = System.getProperty("user.home") + File.separator + "Library" + File.separator + "Application Support" + File.separator + "WhisperCat";
         } else {
             configDir = userHome + File.separator + "WhisperCat" + File.separator + ".config";
+            logger.info("Config Path is:" + configDir);
         }
         return configDir;
     }
 
+    /**
+     * Returns the format recordings are stored and transcribed in. With resampling, this is 16 kHz little-endian
+     * mono, which is what Whisper works with, and the microphone is captured in whatever format it supports.
+     */
     public AudioFormat getAudioFormat() {
+        if (isResamplingEnabled()) {
+            return new AudioFormat(16000, 16, 1, true, false);
+        }
         float sampleRate = this.getAudioBitrate();
         int sampleSizeInBits = 16;
         int channels = 1;
@@ -135,96 +167,77 @@ public class ConfigManager {
     }
 
 
+    /**
+     * Adds the pipeline, or replaces the one with the same uuid in place. Only its own file is written.
+     */
     public void savePostProcessingData(PostProcessingData data) {
-        Gson gson = new Gson();
-        String json = gson.toJson(data);
-        JsonArray array;
-        String existing = properties.getProperty("postProcessingData", "");
-        if (!existing.trim().isEmpty()) {
-            try {
-                array = JsonParser.parseString(existing).getAsJsonArray();
-            } catch (Exception e) {
-                logger.error("Existing postProcessingData is not a valid JSON array, creating a new one", e);
-                array = new JsonArray();
-            }
-        } else {
-            array = new JsonArray();
-        }
-
-        // Parse the incoming JSON and extract its uuid
-        JsonElement newElement;
-        try {
-            newElement = JsonParser.parseString(json);
-        } catch (Exception e) {
-            logger.error("Failed to parse provided JSON: " + json, e);
-            return;
-        }
-
-        String newUuid;
-        try {
-            newUuid = newElement.getAsJsonObject().get("uuid").getAsString();
-        } catch (Exception e) {
-            logger.error("Provided JSON does not contain a valid 'uuid' field: " + json, e);
-            return;
-        }
+        getPipelineStore().save(data);
+    }
 
-        boolean replaced = false;
-        // Iterate over the array to check if an element with the same uuid exists.
-        for (int i = 0; i < array.size(); i++) {
-            try {
-                JsonElement element = array.get(i);
-                String existingUuid = element.getAsJsonObject().get("uuid").getAsString();
-                if (newUuid.equals(existingUuid)) {
-                    // Replace the element with the new one.
-                    array.set(i, newElement);
-                    replaced = true;
-                    break;
-                }
-            } catch (Exception e) {
-                logger.error("Error while processing existing JSON element", e);
-            }
-        }
+    /**
+     * Returns the pipelines in the order they were created. The list and the pipelines are shared between callers
+     * and must not be changed; save a new instance instead.
+     */
+    public List<PostProcessingData> getPostProcessingDataList() {
+        return getPipelineStore().getAll();
+    }
 
-        // If not replaced then add the new element.
-        if (!replaced) {
-            array.add(newElement);
-        }
+    /**
+     * Returns the pipeline with the given uuid, null if there is none.
+     */
+    public PostProcessingData getPostProcessingData(String uuid) {
+        return getPipelineStore().get(uuid);
+    }
 
-        // Save the updated JSON array to properties and call saveConfig()
-        properties.setProperty("postProcessingData", gson.toJson(array));
-        saveConfig();
+    public void deletePostProcessingData(String uuid) {
+        getPipelineStore().delete(uuid);
     }
 
     /**
-     * Returns the list of post processing data (as JSON element strings) from the configuration.
-     *
-     * @return List&lt;String&gt; containing each JSON element as a string; empty list if none exists.
+     * Removes the key from the configuration file as it is on disk, without saving other settings changed in
+     * memory. A pending save writes the settings without the key anyway, so it is kept.
      */
-    public List<PostProcessingData> getPostProcessingDataList() {
-        Gson gson = new Gson();
-        String existing = properties.getProperty("postProcessingData", "[]");
-        if (!existing.trim().isEmpty()) {
+    private void removeFromConfigFile(String key) {
+        File configFile = getConfigFilePath();
+        ConfigWriter.getInstance().writeUnlessPending(configFile, () -> {
+            Properties saved = new Properties();
             try {
-                PostProcessingData[] dataArray = gson.fromJson(existing, PostProcessingData[].class);
-                return Arrays.asList(dataArray);
-            } catch (Exception e) {
-                logger.error("Existing postProcessingData is not a valid JSON array", e);
-                Notificationmanager.getInstance().showNotification(ToastNotification.Type.ERROR, "Failed to load post-processing data");
+                if (configFile.exists()) {
+                    try (InputStream input = new FileInputStream(configFile)) {
+                        saved.load(input);
+                    }
+                }
+                saved.remove(key);
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                saved.store(output, null);
+                return output.toByteArray();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
-        }
-        ;
-        return Collections.emptyList();
+        });
     }
 
-    public void deletePostProcessingData(String uuid) {
-        String existing = properties.getProperty("postProcessingData", "[]");
-        if (!existing.trim().isEmpty()) {
-            Gson gson = new Gson();
-            PostProcessingData[] dataArray = gson.fromJson(existing, PostProcessingData[].class);
-            List<PostProcessingData> collect = Arrays.asList(dataArray).stream().filter(data -> !data.uuid.equals(uuid)).collect(Collectors.toList());
-            String json = gson.toJson(collect);
-            properties.setProperty("postProcessingData", json);
+    /**
+     * Returns the pipeline store of the configuration directory. The first call moves the pipelines out of the
+     * configuration file, where they were kept up to version 1.4.
+     */
+    private synchronized PipelineStore getPipelineStore() {
+        if (pipelineStore == null) {
+            pipelineStore = PipelineStore.getInstance(getConfigDirectory());
+            String legacy = properties.getProperty(POST_PROCESSING_DATA);
+            if (legacy != null) {
+                try {
+                    pipelineStore.migrate(legacy);
+                    properties.remove(POST_PROCESSING_DATA);
+                    removeFromConfigFile(POST_PROCESSING_DATA);
+                } catch (IOException e) {
+                    // The property is kept, so the migration is retried with the next start.
+                    logger.error("Could not move the post-processing pipelines out of the configuration", e);
+                    Notificationmanager.getInstance().showNotification(ToastNotification.Type.ERROR, "Failed to load post-processing data");
+                }
+            }
         }
+        return pipelineStore;
     }
 
 
@@ -249,6 +262,15 @@ public class ConfigManager {
         return properties.getProperty("fasterWhisperLanguage", "");
     }
 
+    /**
+     * Returns the base URL of the OpenAI API without trailing slash. Only set in the configuration file, e.g. to
+     * go through a proxy or to test against a local server.
+     */
+    public String getOpenAIBaseUrl() {
+        String url = properties.getProperty("openAIBaseUrl", "https://api.openai.com").trim();
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
     public String getFasterWhisperServerUrl() {
         return properties.getProperty("fasterWhisperServerUrl", "");
     }
@@ -287,4 +309,334 @@ public class ConfigManager {
     public void setOpenWebUIServerUrl(String url) {
         properties.setProperty("openWebUIServerUrl", url);
     }
+
+    public boolean isChunkedTranscriptionEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("chunkedTranscription", "false"));
+    }
+
+    public void setChunkedTranscriptionEnabled(boolean enabled) {
+        properties.setProperty("chunkedTranscription", String.valueOf(enabled));
+    }
+
+    public boolean isStreamingPostProcessingEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("streamPostProcessing", "true"));
+    }
+
+    public void setStreamingPostProcessingEnabled(boolean enabled) {
+        properties.setProperty("streamPostProcessing", String.valueOf(enabled));
+    }
+
+    public boolean isStreamingAutoPasteEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("streamingAutoPaste", "false"));
+    }
+
+    public void setStreamingAutoPasteEnabled(boolean enabled) {
+        properties.setProperty("streamingAutoPaste", String.valueOf(enabled));
+    }
+
+    public int getChunkLengthSeconds() {
+        return getIntProperty("chunkLengthSeconds", 30, 5, 600);
+    }
+
+    public int getChunkOverlapSeconds() {
+        return getIntProperty("chunkOverlapSeconds", 2, 0, 10);
+    }
+
+    public boolean isVoiceActivityDetectionEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("voiceActivityDetection", "false"));
+    }
+
+    public void setVoiceActivityDetectionEnabled(boolean enabled) {
+        properties.setProperty("voiceActivityDetection", String.valueOf(enabled));
+    }
+
+    /**
+     * Returns the normalized RMS level above which an audio frame counts as speech.
+     * Configured in percent of full scale via "voiceActivityThresholdPercent".
+     */
+    public double getVoiceActivityThreshold() {
+        return getIntProperty("voiceActivityThresholdPercent", 1, 1, 50) / 100.0;
+    }
+
+    public int getMaxSilenceMillis() {
+        return getIntProperty("maxSilenceMillis", 1000, 100, 10000);
+    }
+
+    /**
+     * Returns the audio encoding used when uploading recordings to the given Whisper server.
+     *
+     * @param whisperServer "OpenAI", "Faster-Whisper" or "Open WebUI".
+     * @return "wav" or "flac".
+     */
+    public String getUploadEncoding(String whisperServer) {
+        String defaultEncoding = whisperServer.equals("Open WebUI") ? "wav" : "flac";
+        return properties.getProperty(uploadEncodingKey(whisperServer), defaultEncoding);
+    }
+
+    public void setUploadEncoding(String whisperServer, String encoding) {
+        properties.setProperty(uploadEncodingKey(whisperServer), encoding);
+    }
+
+    private String uploadEncodingKey(String whisperServer) {
+        switch (whisperServer) {
+            case "Faster-Whisper":
+                return "fasterWhisperUploadEncoding";
+            case "Open WebUI":
+                return "openWebUIUploadEncoding";
+            default:
+                return "openAIUploadEncoding";
+        }
+    }
+
+    public boolean isPostProcessingCacheEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("postProcessingCache", "true"));
+    }
+
+    public void setPostProcessingCacheEnabled(boolean enabled) {
+        properties.setProperty("postProcessingCache", String.valueOf(enabled));
+    }
+
+    public boolean isHistoryEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("history", "true"));
+    }
+
+    public void setHistoryEnabled(boolean enabled) {
+        properties.setProperty("history", String.valueOf(enabled));
+    }
+
+    public int getPostProcessingCacheMaxMegabytes() {
+        return getIntProperty("postProcessingCacheMaxMegabytes", 20, 1, 1024);
+    }
+
+    public int getPostProcessingCacheTtlHours() {
+        return getIntProperty("postProcessingCacheTtlHours", 168, 1, 8760);
+    }
+
+    public boolean isResamplingEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("resampleTo16kHz", "true"));
+    }
+
+    public void setResamplingEnabled(boolean enabled) {
+        properties.setProperty("resampleTo16kHz", String.valueOf(enabled));
+    }
+
+    public boolean isArmedCaptureEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("armedCapture", "false"));
+    }
+
+    public void setArmedCaptureEnabled(boolean enabled) {
+        properties.setProperty("armedCapture", String.valueOf(enabled));
+    }
+
+    /**
+     * Returns how much audio from before the start of a recording is kept while the microphone is armed.
+     */
+    public int getPreRollMillis() {
+        return getIntProperty("preRollMillis", 500, 0, 2000);
+    }
+
+    /**
+     * Returns how long the record button is locked after a recording was started.
+     */
+    public int getToggleLockMillis() {
+        return getIntProperty("toggleLockMillis", 1000, 0, 5000);
+    }
+
+    public boolean isKeepRecordingsEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("keepRecordings", "false"));
+    }
+
+    public void setKeepRecordingsEnabled(boolean enabled) {
+        properties.setProperty("keepRecordings", String.valueOf(enabled));
+    }
+
+    /**
+     * Returns the directory for recordings which are kept after transcription.
+     */
+    public File getRecordingsDirectory() {
+        return new File(getConfigDirectory(), "recordings");
+    }
+
+    /**
+     * Returns the size up to which a recording is kept in memory instead of a temporary file.
+     * 0 always writes recordings to disk.
+     */
+    public int getInMemoryRecordingMaxMegabytes() {
+        return getIntProperty("inMemoryRecordingMaxMegabytes", 32, 0, 1024);
+    }
+
+    public boolean isTranscriptionCacheEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("transcriptionCache", "true"));
+    }
+
+    public void setTranscriptionCacheEnabled(boolean enabled) {
+        properties.setProperty("transcriptionCache", String.valueOf(enabled));
+    }
+
+    public int getTranscriptionCacheMaxMegabytes() {
+        return getIntProperty("transcriptionCacheMaxMegabytes", 10, 1, 1024);
+    }
+
+    public int getHttpConnectTimeoutSeconds() {
+        return getIntProperty("httpConnectTimeoutSeconds", 10, 1, 300);
+    }
+
+    public int getHttpReadTimeoutSeconds() {
+        return getIntProperty("httpReadTimeoutSeconds", 300, 5, 3600);
+    }
+
+    /**
+     * Returns the connect timeout for the given endpoint ("OpenAI", "Faster-Whisper" or "Open WebUI"),
+     * e.g. "fasterWhisperConnectTimeoutSeconds", falling back to the general timeout.
+     */
+    public int getHttpConnectTimeoutSeconds(String endpoint) {
+        return getIntProperty(endpointKey(endpoint) + "ConnectTimeoutSeconds", getHttpConnectTimeoutSeconds(), 1, 300);
+    }
+
+    /**
+     * Returns the read timeout for the given endpoint, e.g. "fasterWhisperReadTimeoutSeconds", falling back to
+     * the general timeout. A short timeout lets a hung server fail over quickly.
+     */
+    public int getHttpReadTimeoutSeconds(String endpoint) {
+        return getIntProperty(endpointKey(endpoint) + "ReadTimeoutSeconds", getHttpReadTimeoutSeconds(), 5, 3600);
+    }
+
+    private static String endpointKey(String endpoint) {
+        switch (endpoint) {
+            case "Faster-Whisper":
+                return "fasterWhisper";
+            case "Open WebUI":
+                return "openWebUI";
+            default:
+                return "openAI";
+        }
+    }
+
+    /**
+     * Returns how often a request failing with a transient error (429, 5xx, timeout) is sent again.
+     */
+    public int getHttpMaxRetries() {
+        return getIntProperty("httpMaxRetries", 2, 0, 10);
+    }
+
+    /**
+     * Returns after how many consecutive failures requests to an endpoint are paused.
+     */
+    public int getCircuitBreakerFailureThreshold() {
+        return getIntProperty("circuitBreakerFailureThreshold", 5, 1, 100);
+    }
+
+    public int getCircuitBreakerOpenSeconds() {
+        return getIntProperty("circuitBreakerOpenSeconds", 30, 1, 3600);
+    }
+
+    /**
+     * Returns the Whisper server used when the selected one fails, or an empty string for none.
+     */
+    public String getFallbackWhisperServer() {
+        return properties.getProperty("fallbackWhisperServer", "");
+    }
+
+    public void setFallbackWhisperServer(String whisperServer) {
+        properties.setProperty("fallbackWhisperServer", whisperServer);
+    }
+
+    /**
+     * Returns whether the fallback server is also sent the audio: "off", "parallel" (at once) or "delayed"
+     * (when the selected server is slower than usual).
+     */
+    public String getTranscriptionHedging() {
+        return properties.getProperty("transcriptionHedging", "off");
+    }
+
+    public void setTranscriptionHedging(String hedging) {
+        properties.setProperty("transcriptionHedging", hedging);
+    }
+
+    /**
+     * Returns after how long a delayed hedged request is sent while too few response times of the selected
+     * server are known to derive the delay from them.
+     */
+    public int getHedgeDelayMillis() {
+        return getIntProperty("hedgeDelayMillis", 3000, 0, 60000);
+    }
+
+    public int getHttpMaxConnectionsPerEndpoint() {
+        return getIntProperty("httpMaxConnectionsPerEndpoint", 4, 1, 64);
+    }
+
+    /**
+     * Returns how many post-processing requests may run at the same time against the given provider.
+     *
+     * @param provider "OpenAI" or "Open WebUI".
+     */
+    public int getMaxConcurrentRequests(String provider) {
+        if ("Open WebUI".equalsIgnoreCase(provider)) {
+            return getIntProperty("openWebUIMaxConcurrentRequests", 2, 1, 32);
+        }
+        return getIntProperty("openAIMaxConcurrentRequests", 4, 1, 32);
+    }
+
+    /**
+     * Returns how many files a batch transcribes at the same time.
+     */
+    public int getBatchParallelism() {
+        return getIntProperty("batchParallelism", 2, 1, 16);
+    }
+
+    public void setBatchParallelism(int parallelism) {
+        properties.setProperty("batchParallelism", String.valueOf(parallelism));
+    }
+
+    /**
+     * Returns how often a batch retries a file whose transcription failed with a transient error, on top of the
+     * retries of every request ({@link #getHttpMaxRetries()}).
+     */
+    public int getBatchMaxRetries() {
+        return getIntProperty("batchMaxRetries", 1, 0, 10);
+    }
+
+    /**
+     * Returns how many transcription requests a batch may start per minute on the given server, 0 for no limit.
+     */
+    public int getTranscriptionRequestsPerMinute(String whisperServer) {
+        if ("OpenAI".equals(whisperServer)) {
+            return getIntProperty("openAITranscriptionRequestsPerMinute", 50, 0, 10000);
+        } else if ("Open WebUI".equals(whisperServer)) {
+            return getIntProperty("openWebUITranscriptionRequestsPerMinute", 0, 0, 10000);
+        }
+        return getIntProperty("fasterWhisperTranscriptionRequestsPerMinute", 0, 0, 10000);
+    }
+
+    public boolean isControlApiEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("controlApi", "false"));
+    }
+
+    public void setControlApiEnabled(boolean enabled) {
+        properties.setProperty("controlApi", String.valueOf(enabled));
+    }
+
+    /**
+     * Returns the loopback port of the local control API.
+     */
+    public int getControlApiPort() {
+        return getIntProperty("controlApiPort", 27123, 1024, 65535);
+    }
+
+    private int getIntProperty(String key, int defaultValue, int min, int max) {
+        String value = properties.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            int parsedValue = Integer.parseInt(value.trim());
+            if (parsedValue >= min && parsedValue <= max) {
+                return parsedValue;
+            }
+            logger.warn("Value of {} out of range [{}, {}], using default {}", key, min, max, defaultValue);
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value for {}, using default {}", key, defaultValue);
+        }
+        return defaultValue;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,143 @@
+package org.whispercat;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Writes configuration files in the background, so saving never blocks the calling thread, usually the EDT.
+ * <p>
+ * Writes are delayed briefly and coalesced per file: if a file is written again before the pending write ran,
+ * only the latest content is written, and it is produced when it is written. Every file is written to a
+ * temporary file, synced to disk and moved over the old one, so a crash leaves either the old or the new
+ * content, never a partial file. Pending writes are flushed when the JVM exits.
+ */
+public final class ConfigWriter {
+    private static final Logger logger = LogManager.getLogger(ConfigWriter.class);
+    private static final long COALESCE_MILLIS = 100;
+    private static final long FLUSH_TIMEOUT_SECONDS = 10;
+    private static final ConfigWriter INSTANCE = new ConfigWriter();
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "config-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // File -> content of its pending write, null content deletes the file. Guarded by this.
+    private final Map<File, Supplier<byte[]>> pending = new LinkedHashMap<>();
+
+    private ConfigWriter() {
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "config-writer-flush"));
+    }
+
+    public static ConfigWriter getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Writes the file in the background.
+     *
+     * @param content produces the content on the writer thread; it must be safe to call from there.
+     */
+    public synchronized void write(File file, Supplier<byte[]> content) {
+        if (pending.put(file, content) == null) {
+            executor.schedule(() -> writePending(file), COALESCE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Writes the file in the background unless a write of it is pending already, which is then kept.
+     */
+    public synchronized void writeUnlessPending(File file, Supplier<byte[]> content) {
+        if (!pending.containsKey(file)) {
+            write(file, content);
+        }
+    }
+
+    /**
+     * Deletes the file in the background, after the writes submitted before.
+     */
+    public synchronized void delete(File file) {
+        if (pending.put(file, () -> null) == null) {
+            executor.schedule(() -> writePending(file), COALESCE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Writes all pending files now and waits until they are written.
+     */
+    public void flush() {
+        File[] files;
+        synchronized (this) {
+            files = pending.keySet().toArray(new File[0]);
+        }
+        try {
+            executor.submit(() -> {
+                for (File file : files) {
+                    writePending(file);
+                }
+            }).get(FLUSH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            logger.error("Could not flush the configuration files", e);
+        }
+    }
+
+    /**
+     * Writes the content to a temporary file next to the target, syncs it and moves it over the target.
+     */
+    public static void writeAtomically(File file, byte[] content) throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        File temp = new File(directory, file.getName() + ".tmp");
+        try (FileOutputStream output = new FileOutputStream(temp)) {
+            output.write(content);
+            output.getFD().sync();
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void writePending(File file) {
+        Supplier<byte[]> content;
+        synchronized (this) {
+            content = pending.remove(file);
+        }
+        if (content == null) {
+            // Already written by a flush.
+            return;
+        }
+        try {
+            byte[] bytes = content.get();
+            if (bytes == null) {
+                Files.deleteIfExists(file.toPath());
+                logger.debug("Deleted {}", file);
+            } else {
+                writeAtomically(file, bytes);
+                logger.debug("Wrote {} bytes to {}", bytes.length, file);
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.error("Could not write {}", file, e);
+        }
+    }
+}
@@ -3,6 +3,11 @@ package org.whispercat;
 import com.formdev.flatlaf.FlatClientProperties;
 import com.formdev.flatlaf.extras.FlatSVGIcon;
 import com.formdev.flatlaf.util.UIScale;
+import org.whispercat.batch.BatchTranscriptionForm;
+import org.whispercat.history.HistoryForm;
+import org.whispercat.metrics.MetricsForm;
+import org.whispercat.control.ControlServer;
+import org.whispercat.control.RecorderControl;
 import org.whispercat.recording.RecorderForm;
 import org.whispercat.settings.SettingsForm;
 import org.whispercat.sidemenu.Menu;
@@ -20,15 +25,19 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 
-public class MainForm extends JLayeredPane {
+public class MainForm extends JLayeredPane implements RecorderControl {
 
 
     private GlobalHotkeyListener globalHotkeyListener;
     private ConfigManager configManager;
     public RecorderForm recorderForm;
     public SettingsForm settingsForm;
+    // Kept for the lifetime of the application, so a running batch survives switching the menu.
+    private BatchTranscriptionForm batchTranscriptionForm;
     private static final org.apache.logging.log4j.Logger logger = org.apache.logging.log4j.LogManager.getLogger(MainForm.class);
 
     public MainForm() {
@@ -67,6 +76,61 @@ public class MainForm extends JLayeredPane {
         extractNativeLibraries();
         String hotkey = configManager.getKeyCombination();
         globalHotkeyListener = new GlobalHotkeyListener(this, hotkey, configManager.getKeySequence());
+        ControlServer.getInstance().setRecorderControl(this);
+        ControlServer.getInstance().update(configManager);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> startRecording() {
+        return onRecorder(form -> {
+            if (!form.isRecording()) {
+                form.toggleRecording();
+            }
+            return form.isRecording();
+        });
+    }
+
+    @Override
+    public CompletableFuture<Boolean> stopRecording() {
+        return onRecorder(form -> {
+            if (!form.isRecording()) {
+                return false;
+            }
+            form.toggleRecording();
+            return !form.isRecording();
+        });
+    }
+
+    @Override
+    public CompletableFuture<Boolean> toggleRecording() {
+        return onRecorder(form -> {
+            form.toggleRecording();
+            return form.isRecording();
+        });
+    }
+
+    @Override
+    public CompletableFuture<Boolean> selectPostProcessing(String uuid) {
+        return onRecorder(form -> form.selectPostProcessing(uuid));
+    }
+
+    /**
+     * Runs the action with the recorder form on the event dispatch thread, showing the form first if
+     * another menu entry is open.
+     */
+    private <T> CompletableFuture<T> onRecorder(Function<RecorderForm, T> action) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        SwingUtilities.invokeLater(() -> {
+            try {
+                if (recorderForm == null) {
+                    menu.setSelectedMenu(0, 0);
+                }
+                result.complete(action.apply(recorderForm));
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
     }
 
     @Override
@@ -121,6 +185,15 @@ public class MainForm extends JLayeredPane {
                 if (subIndex == 2) {
                     showForm(new PostProcessingForm(configManager, null));
                 }
+            } else if (index == 3) {
+                if (batchTranscriptionForm == null) {
+                    batchTranscriptionForm = new BatchTranscriptionForm(configManager);
+                }
+                showForm(batchTranscriptionForm);
+            } else if (index == 4) {
+                showForm(new HistoryForm(configManager));
+            } else if (index == 5) {
+                showForm(new MetricsForm(configManager));
             }
             else if (index == 9) {
             } else {
@@ -6,6 +6,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class Notificationmanager {
+    private static final org.apache.logging.log4j.Logger logger = org.apache.logging.log4j.LogManager.getLogger(Notificationmanager.class);
     private static final int MAX_NOTIFICATIONS = 5;
     private static final int NOTIFICATION_SPACING = 10;
     private static Notificationmanager instance;
@@ -14,7 +15,6 @@ public class Notificationmanager {
     private static Window parent;
     private Notificationmanager() {
         animationTimer = new Timer(30, e -> updateAnimations());
-        animationTimer.start();
     }
 
     public static synchronized Notificationmanager getInstance() {
@@ -29,6 +29,20 @@ public class Notificationmanager {
     }
 
     public synchronized void showNotification(ToastNotification.Type type, String message) {
+        if (parent == null) {
+            // No window, e.g. in the command line interface: the message goes to the log instead.
+            if (type == ToastNotification.Type.ERROR) {
+                logger.error(message);
+            } else if (type == ToastNotification.Type.WARNING) {
+                logger.warn(message);
+            } else {
+                logger.info(message);
+            }
+            return;
+        }
+        if (!animationTimer.isRunning()) {
+            animationTimer.start();
+        }
         if (notifications.size() >= MAX_NOTIFICATIONS) {
             ToastNotification oldestNotification = notifications.remove(0);
             oldestNotification.dispose();
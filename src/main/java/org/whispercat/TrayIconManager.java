@@ -5,6 +5,10 @@ package org.whispercat;
 import dorkbox.systemTray.MenuItem;
 import dorkbox.systemTray.Separator;
 import dorkbox.systemTray.SystemTray;
+import org.whispercat.control.ControlServer;
+import org.whispercat.http.HttpClientProvider;
+import org.whispercat.recording.ArmedCapture;
+import org.whispercat.recording.AudioDeviceRegistry;
 
 import javax.swing.*;
 import java.awt.*;
@@ -47,7 +51,7 @@ public class TrayIconManager {
             systemTray.getMenu().add(new dorkbox.systemTray.MenuItem("Exit", e -> {
                 int result = JOptionPane.showConfirmDialog(null, "Do you really want to exit WhisperCat?", "Confirm Exit", JOptionPane.YES_NO_OPTION);
                 if (result == JOptionPane.YES_OPTION) {
-                    systemTray.shutdown();
+                    shutdown();
                     System.exit(0);
                 }
             }));
@@ -89,5 +93,9 @@ public class TrayIconManager {
         if (systemTray != null) {
             systemTray.shutdown();
         }
+        ControlServer.getInstance().stop();
+        ArmedCapture.getInstance().disarm();
+        AudioDeviceRegistry.getInstance().shutdown();
+        HttpClientProvider.shutdown();
     }
 }
\ No newline at end of file
@@ -0,0 +1,83 @@
+package org.whispercat.batch;
+
+import java.io.File;
+
+/**
+ * A file of a batch and its progress. Updated by the worker threads, read by the listener.
+ */
+public class BatchItem {
+    public enum Status {
+        QUEUED, WAITING, TRANSCRIBING, POST_PROCESSING, DONE, SKIPPED, FAILED, CANCELLED
+    }
+
+    private final File file;
+    private volatile Status status = Status.QUEUED;
+    private volatile int attempts = 0;
+    private volatile String message = "";
+    private volatile File outputFile;
+
+    public BatchItem(File file) {
+        this.file = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Returns the number of transcription requests sent for the file.
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * Returns the error of a failed file or the reason of the last retry, otherwise an empty string.
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * Returns the file the final text was written to, or null if the file is not done.
+     */
+    public File getOutputFile() {
+        return outputFile;
+    }
+
+    public boolean isFinished() {
+        return status == Status.DONE || status == Status.SKIPPED || status == Status.FAILED
+                || status == Status.CANCELLED;
+    }
+
+    void setStatus(Status status) {
+        this.status = status;
+    }
+
+    void setStatus(Status status, String message) {
+        this.message = message;
+        this.status = status;
+    }
+
+    void incrementAttempts() {
+        attempts++;
+    }
+
+    void setOutputFile(File outputFile) {
+        this.outputFile = outputFile;
+    }
+
+    /**
+     * Makes a finished item ready to be run again.
+     */
+    void reset() {
+        status = Status.QUEUED;
+        attempts = 0;
+        message = "";
+        outputFile = null;
+    }
+}
@@ -0,0 +1,357 @@
+package org.whispercat.batch;
+
+import org.whispercat.ConfigManager;
+import org.whispercat.Notificationmanager;
+import org.whispercat.ToastNotification;
+import org.whispercat.postprocessing.PostProcessingData;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.awt.datatransfer.DataFlavor;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Lists the files of a batch with their progress. Files and folders are added with the buttons or by
+ * dropping them onto the form. The form is kept by the main form while the application runs, so a batch
+ * continues when another menu entry is opened.
+ */
+public class BatchTranscriptionForm extends JPanel {
+    private static final org.apache.logging.log4j.Logger logger = org.apache.logging.log4j.LogManager.getLogger(BatchTranscriptionForm.class);
+
+    private final ConfigManager configManager;
+    private final BatchTableModel tableModel = new BatchTableModel();
+    private final JComboBox<PostProcessingItem> postProcessingComboBox = new JComboBox<>();
+    private final JSpinner parallelismSpinner;
+    private final JCheckBox skipExistingCheckBox = new JCheckBox("Skip files transcribed before", true);
+    private final JButton addFilesButton = new JButton("Add Files...");
+    private final JButton addFolderButton = new JButton("Add Folder...");
+    private final JButton clearButton = new JButton("Clear");
+    private final JButton startButton = new JButton("Start");
+    private final JButton cancelButton = new JButton("Cancel");
+    private final JProgressBar progressBar = new JProgressBar();
+    private BatchTranscriptionJob job;
+
+    public BatchTranscriptionForm(ConfigManager configManager) {
+        this.configManager = configManager;
+        setLayout(new BorderLayout(0, 10));
+        setBorder(BorderFactory.createEmptyBorder(60, 20, 10, 10));
+
+        JPanel filePanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        filePanel.add(addFilesButton);
+        filePanel.add(addFolderButton);
+        filePanel.add(clearButton);
+
+        JPanel optionPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        optionPanel.add(new JLabel("Post Processing:"));
+        optionPanel.add(postProcessingComboBox);
+        optionPanel.add(Box.createHorizontalStrut(10));
+        optionPanel.add(new JLabel("Parallel files:"));
+        parallelismSpinner = new JSpinner(new SpinnerNumberModel(configManager.getBatchParallelism(), 1, 16, 1));
+        parallelismSpinner.setToolTipText("How many files are transcribed at the same time. Requests per minute are limited per server in the configuration file.");
+        optionPanel.add(parallelismSpinner);
+        optionPanel.add(Box.createHorizontalStrut(10));
+        skipExistingCheckBox.setToolTipText("Skips audio files whose text file exists already, e.g. when a cancelled batch is started again.");
+        optionPanel.add(skipExistingCheckBox);
+
+        JPanel northPanel = new JPanel();
+        northPanel.setLayout(new BoxLayout(northPanel, BoxLayout.Y_AXIS));
+        filePanel.setAlignmentX(Component.LEFT_ALIGNMENT);
+        optionPanel.setAlignmentX(Component.LEFT_ALIGNMENT);
+        northPanel.add(filePanel);
+        northPanel.add(Box.createVerticalStrut(10));
+        northPanel.add(optionPanel);
+        add(northPanel, BorderLayout.NORTH);
+
+        JTable table = new JTable(tableModel);
+        table.setFillsViewportHeight(true);
+        table.getColumnModel().getColumn(0).setPreferredWidth(300);
+        table.getColumnModel().getColumn(1).setPreferredWidth(100);
+        table.getColumnModel().getColumn(2).setPreferredWidth(50);
+        table.getColumnModel().getColumn(3).setPreferredWidth(300);
+        JScrollPane scrollPane = new JScrollPane(table);
+        add(scrollPane, BorderLayout.CENTER);
+
+        JPanel southPanel = new JPanel(new BorderLayout(10, 0));
+        progressBar.setStringPainted(true);
+        progressBar.setString("Drag & drop audio files or folders here.");
+        southPanel.add(progressBar, BorderLayout.CENTER);
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 5, 0));
+        buttonPanel.add(startButton);
+        buttonPanel.add(cancelButton);
+        southPanel.add(buttonPanel, BorderLayout.EAST);
+        add(southPanel, BorderLayout.SOUTH);
+
+        addFilesButton.addActionListener(e -> chooseFiles(JFileChooser.FILES_ONLY));
+        addFolderButton.addActionListener(e -> chooseFiles(JFileChooser.DIRECTORIES_ONLY));
+        clearButton.addActionListener(e -> {
+            tableModel.clear();
+            updateControls();
+        });
+        startButton.addActionListener(e -> startBatch());
+        cancelButton.addActionListener(e -> {
+            if (job != null) {
+                job.cancel();
+                cancelButton.setEnabled(false);
+            }
+        });
+
+        TransferHandler transferHandler = new TransferHandler() {
+            @Override
+            public boolean canImport(TransferSupport support) {
+                return job == null && support.isDataFlavorSupported(DataFlavor.javaFileListFlavor);
+            }
+
+            @Override
+            public boolean importData(TransferSupport support) {
+                try {
+                    @SuppressWarnings("unchecked")
+                    List<File> fileList = (List<File>) support.getTransferable()
+                            .getTransferData(DataFlavor.javaFileListFlavor);
+                    addFiles(fileList);
+                    return true;
+                } catch (Exception ex) {
+                    logger.error("Error importing dropped files", ex);
+                }
+                return false;
+            }
+        };
+        setTransferHandler(transferHandler);
+        table.setTransferHandler(transferHandler);
+        scrollPane.setTransferHandler(transferHandler);
+
+        updateControls();
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        // Post processings may have been edited while the form was hidden.
+        loadPostProcessings();
+    }
+
+    /**
+     * Adds the audio files among the given files and in the given folders.
+     */
+    public void addFiles(List<File> files) {
+        if (job != null) {
+            return;
+        }
+        List<File> audioFiles = BatchTranscriptionService.collectAudioFiles(files);
+        int added = tableModel.addAll(audioFiles);
+        if (added == 0) {
+            Notificationmanager.getInstance().showNotification(ToastNotification.Type.WARNING,
+                    "No new .wav or .mp3 files found.");
+        }
+        updateControls();
+    }
+
+    private void chooseFiles(int selectionMode) {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileSelectionMode(selectionMode);
+        chooser.setMultiSelectionEnabled(true);
+        if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+            addFiles(Arrays.asList(chooser.getSelectedFiles()));
+        }
+    }
+
+    private void startBatch() {
+        if (tableModel.getRowCount() == 0) {
+            return;
+        }
+        configManager.setBatchParallelism((Integer) parallelismSpinner.getValue());
+        configManager.saveConfig();
+        PostProcessingItem selected = (PostProcessingItem) postProcessingComboBox.getSelectedItem();
+        PostProcessingData postProcessingData = selected != null ? selected.data : null;
+        job = new BatchTranscriptionService(configManager).start(tableModel.getItems(), postProcessingData,
+                skipExistingCheckBox.isSelected(), item -> SwingUtilities.invokeLater(() -> {
+                    tableModel.itemChanged(item);
+                    updateProgress();
+                }));
+        updateControls();
+        job.getCompletion().whenComplete((result, error) -> SwingUtilities.invokeLater(this::batchFinished));
+    }
+
+    private void batchFinished() {
+        int failed = 0;
+        int cancelled = 0;
+        for (BatchItem item : job.getItems()) {
+            if (item.getStatus() == BatchItem.Status.FAILED) {
+                failed++;
+            } else if (item.getStatus() == BatchItem.Status.CANCELLED) {
+                cancelled++;
+            }
+        }
+        job = null;
+        tableModel.fireTableDataChanged();
+        updateControls();
+        if (cancelled > 0) {
+            Notificationmanager.getInstance().showNotification(ToastNotification.Type.INFO, "Batch cancelled.");
+        } else if (failed > 0) {
+            Notificationmanager.getInstance().showNotification(ToastNotification.Type.WARNING,
+                    failed + " files could not be transcribed. See logs.");
+        } else {
+            Notificationmanager.getInstance().showNotification(ToastNotification.Type.SUCCESS, "Batch finished.");
+        }
+    }
+
+    private void updateControls() {
+        boolean running = job != null;
+        boolean hasFiles = tableModel.getRowCount() > 0;
+        addFilesButton.setEnabled(!running);
+        addFolderButton.setEnabled(!running);
+        clearButton.setEnabled(!running && hasFiles);
+        postProcessingComboBox.setEnabled(!running);
+        parallelismSpinner.setEnabled(!running);
+        skipExistingCheckBox.setEnabled(!running);
+        startButton.setEnabled(!running && hasFiles);
+        cancelButton.setEnabled(running);
+        updateProgress();
+    }
+
+    private void updateProgress() {
+        int total = tableModel.getRowCount();
+        if (job == null && total == 0) {
+            progressBar.setValue(0);
+            progressBar.setString("Drag & drop audio files or folders here.");
+            return;
+        }
+        int finished = 0;
+        for (BatchItem item : tableModel.getItems()) {
+            if (item.isFinished()) {
+                finished++;
+            }
+        }
+        progressBar.setMaximum(Math.max(1, total));
+        progressBar.setValue(job != null ? finished : 0);
+        progressBar.setString(job != null ? finished + " of " + total + " files" : total + " files");
+    }
+
+    private void loadPostProcessings() {
+        PostProcessingItem selected = (PostProcessingItem) postProcessingComboBox.getSelectedItem();
+        postProcessingComboBox.removeAllItems();
+        postProcessingComboBox.addItem(new PostProcessingItem(null));
+        for (PostProcessingData data : configManager.getPostProcessingDataList()) {
+            PostProcessingItem item = new PostProcessingItem(data);
+            postProcessingComboBox.addItem(item);
+            if (selected != null && selected.data != null && data.uuid.equals(selected.data.uuid)) {
+                postProcessingComboBox.setSelectedItem(item);
+            }
+        }
+    }
+
+    private static class PostProcessingItem {
+        private final PostProcessingData data;
+
+        PostProcessingItem(PostProcessingData data) {
+            this.data = data;
+        }
+
+        @Override
+        public String toString() {
+            return data == null ? "None" : data.title;
+        }
+    }
+
+    private static class BatchTableModel extends AbstractTableModel {
+        private static final String[] COLUMNS = {"File", "Status", "Attempts", "Result"};
+        private final List<BatchItem> items = new ArrayList<>();
+        private final Set<File> files = new HashSet<>();
+        private final Map<BatchItem, Integer> rows = new IdentityHashMap<>();
+
+        List<BatchItem> getItems() {
+            return items;
+        }
+
+        int addAll(List<File> newFiles) {
+            int firstRow = items.size();
+            for (File file : newFiles) {
+                if (files.add(file)) {
+                    BatchItem item = new BatchItem(file);
+                    rows.put(item, items.size());
+                    items.add(item);
+                }
+            }
+            if (items.size() > firstRow) {
+                fireTableRowsInserted(firstRow, items.size() - 1);
+            }
+            return items.size() - firstRow;
+        }
+
+        void clear() {
+            items.clear();
+            files.clear();
+            rows.clear();
+            fireTableDataChanged();
+        }
+
+        void itemChanged(BatchItem item) {
+            Integer row = rows.get(item);
+            if (row != null) {
+                fireTableRowsUpdated(row, row);
+            }
+        }
+
+        @Override
+        public int getRowCount() {
+            return items.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            BatchItem item = items.get(row);
+            switch (column) {
+                case 0:
+                    return item.getFile().getPath();
+                case 1:
+                    return statusText(item.getStatus());
+                case 2:
+                    return item.getAttempts() > 0 ? String.valueOf(item.getAttempts()) : "";
+                default:
+                    if (!item.getMessage().isEmpty()) {
+                        return item.getMessage();
+                    }
+                    File outputFile = item.getOutputFile();
+                    return outputFile != null ? outputFile.getName() : "";
+            }
+        }
+
+        private static String statusText(BatchItem.Status status) {
+            switch (status) {
+                case QUEUED:
+                    return "Queued";
+                case WAITING:
+                    return "Waiting";
+                case TRANSCRIBING:
+                    return "Transcribing";
+                case POST_PROCESSING:
+                    return "Post processing";
+                case DONE:
+                    return "Done";
+                case SKIPPED:
+                    return "Skipped";
+                case FAILED:
+                    return "Failed";
+                default:
+                    return "Cancelled";
+            }
+        }
+    }
+}
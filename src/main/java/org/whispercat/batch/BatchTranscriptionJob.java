@@ -0,0 +1,82 @@
+package org.whispercat.batch;
+
+import org.whispercat.http.CancellationToken;
+import org.whispercat.postprocessing.PostProcessingJob;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A batch started with {@link BatchTranscriptionService#start}.
+ */
+public class BatchTranscriptionJob {
+    private final List<BatchItem> items;
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    private final CancellationToken cancellationToken = new CancellationToken();
+    private final CountDownLatch cancelled = new CountDownLatch(1);
+    private final Set<PostProcessingJob> postProcessingJobs = ConcurrentHashMap.newKeySet();
+
+    BatchTranscriptionJob(List<BatchItem> items) {
+        this.items = items;
+    }
+
+    public List<BatchItem> getItems() {
+        return items;
+    }
+
+    /**
+     * Returns the future which completes when every item is finished, including after cancellation.
+     */
+    public CompletableFuture<Void> getCompletion() {
+        return completion;
+    }
+
+    /**
+     * Cancels the batch. Requests in flight are aborted and queued files are marked as cancelled.
+     */
+    public void cancel() {
+        cancellationToken.cancel();
+        cancelled.countDown();
+        for (PostProcessingJob job : postProcessingJobs) {
+            job.cancel();
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancellationToken.isCancelled();
+    }
+
+    CancellationToken getCancellationToken() {
+        return cancellationToken;
+    }
+
+    /**
+     * Waits for the given time. Returns false if the batch was cancelled in the meantime.
+     */
+    boolean sleep(long millis) {
+        if (millis <= 0) {
+            return !isCancelled();
+        }
+        try {
+            return !cancelled.await(millis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    void register(PostProcessingJob job) {
+        postProcessingJobs.add(job);
+        if (isCancelled()) {
+            job.cancel();
+        }
+    }
+
+    void unregister(PostProcessingJob job) {
+        postProcessingJobs.remove(job);
+    }
+}
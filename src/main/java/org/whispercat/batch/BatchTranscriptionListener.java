@@ -0,0 +1,11 @@
+package org.whispercat.batch;
+
+/**
+ * Receives the progress of a batch. Called from the worker threads.
+ */
+public interface BatchTranscriptionListener {
+    /**
+     * Called whenever the status, attempts or message of an item changed.
+     */
+    void onItemChanged(BatchItem item);
+}
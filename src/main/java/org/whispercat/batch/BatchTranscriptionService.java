@@ -0,0 +1,280 @@
+package org.whispercat.batch;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.whispercat.ConfigManager;
+import org.whispercat.http.ResilientCall;
+import org.whispercat.postprocessing.PostProcessingData;
+import org.whispercat.postprocessing.PostProcessingJob;
+import org.whispercat.postprocessing.PostProcessingService;
+import org.whispercat.recording.RecordedAudio;
+import org.whispercat.recording.TranscriptionCache;
+import org.whispercat.recording.TranscriptionService;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Transcribes many audio files, e.g. a folder of meeting recordings.
+ * <p>
+ * The files are processed by a fixed number of worker threads ({@link ConfigManager#getBatchParallelism()}).
+ * Requests to the transcription backend are spaced by a rate limiter shared by all batches
+ * ({@link ConfigManager#getTranscriptionRequestsPerMinute(String)}), and files whose transcription failed
+ * with a transient error are retried with exponential backoff. The transcript of "name.wav" is written to "name.txt" next to it. If a post-processing
+ * is given, its result is written to "name.&lt;post-processing title&gt;.txt" as well.
+ */
+public class BatchTranscriptionService {
+    private static final Logger logger = LogManager.getLogger(BatchTranscriptionService.class);
+    private static final List<String> AUDIO_EXTENSIONS = Arrays.asList(".wav", ".mp3");
+    private static final long RETRY_BASE_DELAY_MILLIS = 1000;
+    private static final long RETRY_MAX_DELAY_MILLIS = 30000;
+    private static final Map<String, RequestRateLimiter> RATE_LIMITERS = new ConcurrentHashMap<>();
+
+    private final ConfigManager configManager;
+    private final TranscriptionService transcriptionService;
+
+    public BatchTranscriptionService(ConfigManager configManager) {
+        this.configManager = configManager;
+        this.transcriptionService = new TranscriptionService(configManager);
+    }
+
+    /**
+     * Returns whether the file has an extension the transcription servers accept.
+     */
+    public static boolean isAudioFile(File file) {
+        String name = file.getName().toLowerCase(Locale.ROOT);
+        for (String extension : AUDIO_EXTENSIONS) {
+            if (name.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the audio files among the given files and, recursively, in the given directories, sorted by path
+     * per directory and without duplicates.
+     */
+    public static List<File> collectAudioFiles(List<File> files) {
+        Set<File> result = new LinkedHashSet<>();
+        for (File file : files) {
+            collect(file, result);
+        }
+        return new ArrayList<>(result);
+    }
+
+    private static void collect(File file, Set<File> result) {
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children == null) {
+                logger.warn("Cannot list {}", file);
+                return;
+            }
+            Arrays.sort(children);
+            for (File child : children) {
+                collect(child, result);
+            }
+        } else if (file.isFile() && isAudioFile(file)) {
+            result.add(file.getAbsoluteFile());
+        }
+    }
+
+    /**
+     * Starts transcribing the items.
+     *
+     * @param items              the files, which must not be part of a running batch.
+     * @param postProcessingData the post-processing applied to every transcript, may be null.
+     * @param skipExisting       whether files whose output files exist already are skipped.
+     * @param listener           receives the progress, may be null.
+     * @return the job, whose completion future completes when every item is finished.
+     */
+    public BatchTranscriptionJob start(List<BatchItem> items, PostProcessingData postProcessingData,
+                                       boolean skipExisting, BatchTranscriptionListener listener) {
+        BatchTranscriptionJob job = new BatchTranscriptionJob(items);
+        int parallelism = Math.min(configManager.getBatchParallelism(), Math.max(1, items.size()));
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "batch-transcription-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        logger.info("Transcribing {} files with {} workers", items.size(), parallelism);
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[items.size()];
+        for (int i = 0; i < items.size(); i++) {
+            BatchItem item = items.get(i);
+            item.reset();
+            futures[i] = CompletableFuture.runAsync(() -> process(job, item, postProcessingData, skipExisting,
+                    listener), executor);
+        }
+        CompletableFuture.allOf(futures).whenComplete((result, error) -> {
+            executor.shutdown();
+            logger.info("Batch finished");
+            job.getCompletion().complete(null);
+        });
+        return job;
+    }
+
+    private void process(BatchTranscriptionJob job, BatchItem item, PostProcessingData postProcessingData,
+                         boolean skipExisting, BatchTranscriptionListener listener) {
+        File transcriptFile = outputFile(item.getFile(), null);
+        File processedFile = postProcessingData != null ? outputFile(item.getFile(), postProcessingData.title) : null;
+        if (job.isCancelled()) {
+            update(item, BatchItem.Status.CANCELLED, "", listener);
+            return;
+        }
+        if (skipExisting && transcriptFile.exists() && (processedFile == null || processedFile.exists())) {
+            item.setOutputFile(processedFile != null ? processedFile : transcriptFile);
+            update(item, BatchItem.Status.SKIPPED, "Output exists already", listener);
+            return;
+        }
+        job.getCancellationToken().bind();
+        try {
+            String transcript = transcribe(job, item, listener);
+            write(transcriptFile, transcript);
+            item.setOutputFile(transcriptFile);
+            if (postProcessingData != null) {
+                update(item, BatchItem.Status.POST_PROCESSING, "", listener);
+                write(processedFile, postProcess(job, transcript, postProcessingData));
+                item.setOutputFile(processedFile);
+            }
+            update(item, BatchItem.Status.DONE, "", listener);
+        } catch (CancellationException e) {
+            update(item, BatchItem.Status.CANCELLED, "", listener);
+        } catch (Exception e) {
+            if (job.isCancelled()) {
+                update(item, BatchItem.Status.CANCELLED, "", listener);
+            } else {
+                logger.error("Batch transcription of {} failed", item.getFile(), e);
+                update(item, BatchItem.Status.FAILED, String.valueOf(e.getMessage()), listener);
+            }
+        } finally {
+            job.getCancellationToken().unbind();
+        }
+    }
+
+    private String transcribe(BatchTranscriptionJob job, BatchItem item, BatchTranscriptionListener listener)
+            throws IOException {
+        try (RecordedAudio audio = RecordedAudio.ofFile(item.getFile())) {
+            String cacheKey = cacheKey(audio);
+            if (cacheKey != null) {
+                String cached = TranscriptionCache.get(configManager, cacheKey);
+                if (cached != null) {
+                    return cached;
+                }
+            }
+            int maxRetries = configManager.getBatchMaxRetries();
+            for (int attempt = 1; ; attempt++) {
+                update(item, BatchItem.Status.WAITING, item.getMessage(), listener);
+                if (!job.sleep(rateLimiter().reserve())) {
+                    throw new CancellationException();
+                }
+                update(item, BatchItem.Status.TRANSCRIBING, item.getMessage(), listener);
+                item.incrementAttempts();
+                try {
+                    String transcript = transcriptionService.transcribe(audio);
+                    if (cacheKey != null) {
+                        TranscriptionCache.put(configManager, cacheKey, transcript);
+                    }
+                    return transcript;
+                } catch (IOException e) {
+                    job.getCancellationToken().throwIfCancelled();
+                    // The service has retried and failed over already. Only outages which may be over after
+                    // the longer backoff of the batch are retried, not permanent errors or an open breaker.
+                    if (attempt > maxRetries || !ResilientCall.isTransient(e)) {
+                        throw e;
+                    }
+                    long delay = Math.min(RETRY_MAX_DELAY_MILLIS, RETRY_BASE_DELAY_MILLIS << (attempt - 1));
+                    logger.warn("Transcribing {} failed (attempt {}), retrying in {} ms", item.getFile(),
+                            attempt, delay, e);
+                    update(item, BatchItem.Status.WAITING, "Retrying: " + e.getMessage(), listener);
+                    if (!job.sleep(delay)) {
+                        throw new CancellationException();
+                    }
+                }
+            }
+        }
+    }
+
+    private String cacheKey(RecordedAudio audio) {
+        if (!configManager.isTranscriptionCacheEnabled()) {
+            return null;
+        }
+        try {
+            return TranscriptionCache.key(configManager, audio);
+        } catch (IOException e) {
+            logger.warn("Could not fingerprint {}, transcribing without cache", audio.getName(), e);
+            return null;
+        }
+    }
+
+    private String postProcess(BatchTranscriptionJob job, String transcript, PostProcessingData postProcessingData)
+            throws InterruptedException, ExecutionException {
+        PostProcessingJob postProcessingJob = new PostProcessingService(configManager)
+                .submit(transcript, postProcessingData, null);
+        job.register(postProcessingJob);
+        try {
+            return postProcessingJob.getResult().get();
+        } finally {
+            job.unregister(postProcessingJob);
+        }
+    }
+
+    /**
+     * Returns the limiter of the configured backend, replacing it if its limit was changed.
+     */
+    private RequestRateLimiter rateLimiter() {
+        String server = configManager.getWhisperServer();
+        int requestsPerMinute = configManager.getTranscriptionRequestsPerMinute(server);
+        return RATE_LIMITERS.compute(server, (key, limiter) ->
+                limiter != null && limiter.getRequestsPerMinute() == requestsPerMinute
+                        ? limiter : new RequestRateLimiter(requestsPerMinute));
+    }
+
+    private static void update(BatchItem item, BatchItem.Status status, String message,
+                               BatchTranscriptionListener listener) {
+        item.setStatus(status, message);
+        if (listener != null) {
+            listener.onItemChanged(item);
+        }
+    }
+
+    /**
+     * Returns "name.txt" for the transcript or "name.suffix.txt" for a post-processed text next to the audio file.
+     */
+    static File outputFile(File audioFile, String suffix) {
+        String name = audioFile.getName();
+        int dot = name.lastIndexOf('.');
+        String baseName = dot > 0 ? name.substring(0, dot) : name;
+        if (suffix != null) {
+            String safeSuffix = suffix.trim().replaceAll("[^\\p{L}\\p{N}._-]+", "_");
+            baseName += "." + (safeSuffix.isEmpty() ? "processed" : safeSuffix);
+        }
+        return new File(audioFile.getParentFile(), baseName + ".txt");
+    }
+
+    /**
+     * Writes the text through a temporary file, so an interrupted batch leaves no partial output behind.
+     */
+    private static void write(File file, String text) throws IOException {
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        Files.write(temp.toPath(), (text != null ? text : "").getBytes(StandardCharsets.UTF_8));
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,40 @@
+package org.whispercat.batch;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spaces requests to one backend evenly, so that no more than the configured number start per minute.
+ * Every caller reserves the next free slot and waits for it, so concurrent workers queue up in order instead
+ * of sending a burst and being rejected together.
+ */
+class RequestRateLimiter {
+    private final int requestsPerMinute;
+    private final long intervalNanos;
+    // Guarded by this.
+    private long nextSlot = System.nanoTime();
+
+    /**
+     * @param requestsPerMinute the limit, 0 for no limit.
+     */
+    RequestRateLimiter(int requestsPerMinute) {
+        this.requestsPerMinute = requestsPerMinute;
+        this.intervalNanos = requestsPerMinute > 0 ? TimeUnit.MINUTES.toNanos(1) / requestsPerMinute : 0;
+    }
+
+    int getRequestsPerMinute() {
+        return requestsPerMinute;
+    }
+
+    /**
+     * Reserves the next slot and returns how many milliseconds the caller has to wait for it.
+     */
+    synchronized long reserve() {
+        if (intervalNanos == 0) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        long slot = Math.max(now, nextSlot);
+        nextSlot = slot + intervalNanos;
+        return TimeUnit.NANOSECONDS.toMillis(slot - now);
+    }
+}
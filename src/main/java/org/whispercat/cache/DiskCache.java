@@ -0,0 +1,208 @@
+package org.whispercat.cache;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persistent, content-addressed text cache.
+ * Every entry is stored in its own file named by the key. The first line holds the creation time which is
+ * used for the time to live, the file modification time is the last access which is used for the LRU order.
+ * When the total size exceeds the limit, the least recently used entries are removed.
+ */
+public class DiskCache {
+    private static final Logger logger = LogManager.getLogger(DiskCache.class);
+    private static final String SUFFIX = ".entry";
+
+    private final File directory;
+    private final long maxBytes;
+    private final long timeToLiveMillis;
+    // Key -> entry size in bytes, in access order.
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private long totalBytes = 0;
+
+    /**
+     * @param directory        the directory of the cache, created if necessary.
+     * @param maxBytes         the maximum total size of all entries.
+     * @param timeToLiveMillis how long an entry stays valid after it was stored.
+     */
+    public DiskCache(File directory, long maxBytes, long timeToLiveMillis) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.timeToLiveMillis = timeToLiveMillis;
+        load();
+    }
+
+    /**
+     * Creates a cache key from the given parts. Parts are length-prefixed, so different splits of the same
+     * text produce different keys.
+     */
+    public static String key(String... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String part : parts) {
+                byte[] bytes = (part != null ? part : "").getBytes(StandardCharsets.UTF_8);
+                digest.update((bytes.length + ":").getBytes(StandardCharsets.US_ASCII));
+                digest.update(bytes);
+            }
+            return toHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the cached value, or null if there is no valid entry for the key.
+     */
+    public synchronized String get(String key) {
+        // get() instead of containsKey() so the entry moves to the end of the access order.
+        if (index.get(key) == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        File file = entryFile(key);
+        try {
+            String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            int newline = content.indexOf('\n');
+            long created = Long.parseLong(content.substring(0, newline));
+            if (System.currentTimeMillis() - created > timeToLiveMillis) {
+                remove(key);
+                misses.incrementAndGet();
+                return null;
+            }
+            if (!file.setLastModified(System.currentTimeMillis())) {
+                logger.debug("Could not update the access time of {}", file.getName());
+            }
+            hits.incrementAndGet();
+            return content.substring(newline + 1);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Removing unreadable cache entry {}", file.getName(), e);
+            remove(key);
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Stores the value and evicts the least recently used entries if the cache grows beyond its limit.
+     */
+    public synchronized void put(String key, String value) {
+        byte[] bytes = (System.currentTimeMillis() + "\n" + value).getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > maxBytes) {
+            return;
+        }
+        File file = entryFile(key);
+        try {
+            Files.createDirectories(directory.toPath());
+            File temp = new File(directory, key + ".tmp");
+            Files.write(temp.toPath(), bytes);
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Could not write cache entry {}", file.getName(), e);
+            return;
+        }
+        Long previous = index.put(key, (long) bytes.length);
+        totalBytes += bytes.length - (previous != null ? previous : 0);
+        evict();
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public synchronized void clear() {
+        for (String key : index.keySet().toArray(new String[0])) {
+            remove(key);
+        }
+        hits.set(0);
+        misses.set(0);
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    private void load() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        long expiredBefore = System.currentTimeMillis() - timeToLiveMillis - TimeUnit.DAYS.toMillis(1);
+        for (File file : files) {
+            if (file.lastModified() < expiredBefore) {
+                // Not even accessed within the time to live, so it is certainly expired.
+                deleteFile(file);
+                continue;
+            }
+            String key = file.getName().substring(0, file.getName().length() - SUFFIX.length());
+            index.put(key, file.length());
+            totalBytes += file.length();
+        }
+        evict();
+        logger.info("Loaded {} cache entries ({} bytes) from {}", index.size(), totalBytes, directory);
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> iterator = index.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            totalBytes -= eldest.getValue();
+            iterator.remove();
+            deleteFile(entryFile(eldest.getKey()));
+        }
+    }
+
+    private void remove(String key) {
+        Long size = index.remove(key);
+        if (size != null) {
+            totalBytes -= size;
+        }
+        deleteFile(entryFile(key));
+    }
+
+    private File entryFile(String key) {
+        return new File(directory, key + SUFFIX);
+    }
+
+    private static void deleteFile(File file) {
+        if (file.exists() && !file.delete()) {
+            logger.warn("Could not delete cache entry {}", file.getName());
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
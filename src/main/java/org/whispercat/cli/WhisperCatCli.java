@@ -0,0 +1,394 @@
+package org.whispercat.cli;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.whispercat.ConfigManager;
+import org.whispercat.batch.BatchItem;
+import org.whispercat.batch.BatchTranscriptionJob;
+import org.whispercat.batch.BatchTranscriptionService;
+import org.whispercat.postprocessing.PostProcessingData;
+import org.whispercat.postprocessing.PostProcessingService;
+import org.whispercat.recording.AudioDataListener;
+import org.whispercat.recording.RecordedAudio;
+import org.whispercat.recording.Resampler;
+import org.whispercat.recording.TranscriptionCache;
+import org.whispercat.recording.TranscriptionService;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Command line interface for scripts and servers without a display.
+ * <p>
+ * It uses the settings, transcription clients and post-processings of the application, but never touches
+ * Swing, the tray or the global hotkey, so it starts quickly and works with a headless JVM. Results are
+ * printed to standard output, progress and errors to standard error. Most of the start-up time is spent
+ * loading classes, so short runs start faster with {@code -XX:TieredStopAtLevel=1}.
+ * <pre>
+ * java -jar whispercat.jar transcribe meeting.wav
+ * arecord -f S16_LE -r 48000 -c 2 -t raw | java -jar whispercat.jar transcribe --rate 48000 --channels 2 -
+ * java -cp whispercat.jar org.whispercat.cli.WhisperCatCli transcribe --post-processing Summary recordings/
+ * </pre>
+ */
+public final class WhisperCatCli {
+    private static final int EXIT_OK = 0;
+    private static final int EXIT_FAILED = 1;
+    private static final int EXIT_USAGE = 2;
+    private static final int STDIN_BUFFER_SIZE = 64 * 1024;
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: whispercat transcribe [options] <file|folder|->...",
+            "",
+            "Transcribes audio files with the server configured in the settings. A single file, or raw",
+            "16-bit little-endian PCM read from standard input (\"-\"), is printed to standard output.",
+            "Several files or folders are transcribed as a batch: the text of name.wav is written to",
+            "name.txt next to it, and the path of every written file is printed.",
+            "",
+            "Options:",
+            "  -p, --post-processing <title|uuid>  Post-processes every transcript.",
+            "  -s, --server <name>                 Uses \"OpenAI\", \"Faster-Whisper\" or \"Open WebUI\"",
+            "                                      instead of the configured server.",
+            "  -r, --rate <hz>                     Sample rate of the PCM on standard input (16000).",
+            "  -c, --channels <n>                  Channels of the PCM on standard input (1).",
+            "  -j, --parallel <n>                  Files of a batch transcribed at the same time.",
+            "      --overwrite                     Transcribes batch files whose text file exists.",
+            "      --no-cache                      Ignores the transcript cache.",
+            "  -v, --verbose                       Logs progress to standard error.",
+            "  -h, --help                          Prints this help.");
+
+    private Logger logger;
+    private final PrintWriter out = new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), true);
+    private final PrintStream err = System.err;
+    private final List<String> inputs = new ArrayList<>();
+    private String postProcessing;
+    private String server;
+    private int rate = 16000;
+    private int channels = 1;
+    private int parallelism = 0;
+    private boolean overwrite = false;
+    private boolean useCache = true;
+    private boolean verbose = false;
+
+    private WhisperCatCli() {
+    }
+
+    public static void main(String[] args) {
+        System.exit(new WhisperCatCli().run(args));
+    }
+
+    private int run(String[] args) {
+        if (args.length == 0 || args[0].equals("-h") || args[0].equals("--help")) {
+            err.println(USAGE);
+            return args.length == 0 ? EXIT_USAGE : EXIT_OK;
+        }
+        if (!args[0].equals("transcribe")) {
+            err.println("Unknown command: " + args[0]);
+            err.println(USAGE);
+            return EXIT_USAGE;
+        }
+        try {
+            parseOptions(Arrays.copyOfRange(args, 1, args.length));
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.println(USAGE);
+            return EXIT_USAGE;
+        }
+        configureLogging();
+
+        ConfigManager configManager = new ConfigManager();
+        // Overrides only apply to this process, the settings are never saved here.
+        if (server != null) {
+            configManager.setOverride("whisperServer", server);
+        }
+        if (parallelism > 0) {
+            configManager.setOverride("batchParallelism", String.valueOf(parallelism));
+        }
+        if (!useCache) {
+            configManager.setOverride("transcriptionCache", "false");
+        }
+        PostProcessingData postProcessingData = null;
+        if (postProcessing != null) {
+            postProcessingData = findPostProcessing(configManager, postProcessing);
+            if (postProcessingData == null) {
+                err.println("Post-processing not found: " + postProcessing);
+                return EXIT_USAGE;
+            }
+        }
+
+        try {
+            if (inputs.size() == 1 && inputs.get(0).equals("-")) {
+                return transcribeStdin(configManager, postProcessingData);
+            }
+            List<File> files = new ArrayList<>();
+            for (String input : inputs) {
+                File file = new File(input);
+                if (!file.exists()) {
+                    err.println("File not found: " + input);
+                    return EXIT_USAGE;
+                }
+                files.add(file);
+            }
+            if (files.size() == 1 && files.get(0).isFile()) {
+                return transcribeFile(configManager, files.get(0), postProcessingData);
+            }
+            return transcribeBatch(configManager, files, postProcessingData);
+        } catch (Exception e) {
+            logger.error("Transcription failed", e);
+            err.println("Transcription failed: " + e.getMessage());
+            return EXIT_FAILED;
+        }
+    }
+
+    private void parseOptions(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "-p":
+                case "--post-processing":
+                    postProcessing = value(args, ++i, arg);
+                    break;
+                case "-s":
+                case "--server":
+                    server = value(args, ++i, arg);
+                    if (!Arrays.asList("OpenAI", "Faster-Whisper", "Open WebUI").contains(server)) {
+                        throw new IllegalArgumentException("Unknown server: " + server);
+                    }
+                    break;
+                case "-r":
+                case "--rate":
+                    rate = intValue(args, ++i, arg, 1000, 384000);
+                    break;
+                case "-c":
+                case "--channels":
+                    channels = intValue(args, ++i, arg, 1, 8);
+                    break;
+                case "-j":
+                case "--parallel":
+                    parallelism = intValue(args, ++i, arg, 1, 16);
+                    break;
+                case "--overwrite":
+                    overwrite = true;
+                    break;
+                case "--no-cache":
+                    useCache = false;
+                    break;
+                case "-v":
+                case "--verbose":
+                    verbose = true;
+                    break;
+                default:
+                    if (arg.startsWith("-") && !arg.equals("-")) {
+                        throw new IllegalArgumentException("Unknown option: " + arg);
+                    }
+                    inputs.add(arg);
+            }
+        }
+        if (inputs.isEmpty()) {
+            throw new IllegalArgumentException("No input given.");
+        }
+        if (inputs.contains("-") && inputs.size() > 1) {
+            throw new IllegalArgumentException("Standard input cannot be combined with files.");
+        }
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[index];
+    }
+
+    private static int intValue(String[] args, int index, String option, int min, int max) {
+        String value = value(args, index, option);
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed >= min && parsed <= max) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below.
+        }
+        throw new IllegalArgumentException("Invalid value for " + option + ": " + value);
+    }
+
+    /**
+     * Switches to the command line logging configuration, which keeps standard output free for the results.
+     * The logging may already be initialized with the default configuration if started through the
+     * application's main class.
+     */
+    private void configureLogging() {
+        System.setProperty("whispercat.cli.logLevel", verbose ? "INFO" : "WARN");
+        System.setProperty("log4j2.configurationFile", "log4j2-cli.xml");
+        // Registering the MBeans again on reconfiguration fails and is of no use for a short-lived process.
+        System.setProperty("log4j2.disableJmx", "true");
+        URL configuration = WhisperCatCli.class.getResource("/log4j2-cli.xml");
+        boolean initialized = LogManager.getFactory().hasContext(WhisperCatCli.class.getName(),
+                WhisperCatCli.class.getClassLoader(), false);
+        if (initialized && configuration != null) {
+            try {
+                Configurator.reconfigure(configuration.toURI());
+            } catch (URISyntaxException e) {
+                err.println("Invalid logging configuration: " + e.getMessage());
+            }
+        }
+        logger = LogManager.getLogger(WhisperCatCli.class);
+    }
+
+    private static PostProcessingData findPostProcessing(ConfigManager configManager, String titleOrUuid) {
+        PostProcessingData byUuid = configManager.getPostProcessingData(titleOrUuid);
+        if (byUuid != null) {
+            return byUuid;
+        }
+        for (PostProcessingData data : configManager.getPostProcessingDataList()) {
+            if (titleOrUuid.equalsIgnoreCase(data.title)) {
+                return data;
+            }
+        }
+        return null;
+    }
+
+    private int transcribeFile(ConfigManager configManager, File file, PostProcessingData postProcessingData)
+            throws IOException {
+        if (!BatchTranscriptionService.isAudioFile(file)) {
+            err.println("Only .wav and .mp3 files are supported: " + file);
+            return EXIT_USAGE;
+        }
+        try (RecordedAudio audio = RecordedAudio.ofFile(file)) {
+            return print(configManager, audio, postProcessingData);
+        }
+    }
+
+    /**
+     * Reads raw PCM from standard input until it is closed. It is converted to the recording format like
+     * captured audio and stays in memory up to the configured limit.
+     */
+    private int transcribeStdin(ConfigManager configManager, PostProcessingData postProcessingData)
+            throws IOException {
+        AudioFormat sourceFormat = new AudioFormat(rate, 16, channels, true, false);
+        AudioFormat format = Resampler.targetFormat(16000);
+        File spillFile = File.createTempFile("whispercat-stdin-", ".wav");
+        try (RecordedAudio audio = RecordedAudio.capture(spillFile, format,
+                configManager.getInMemoryRecordingMaxMegabytes() * 1024L * 1024L, false)) {
+            AudioDataListener sink = (data, offset, length) -> {
+                try {
+                    audio.write(data, offset, length);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            };
+            if (!sourceFormat.matches(format)) {
+                sink = new Resampler(sourceFormat, 16000, sink);
+            }
+            InputStream input = System.in;
+            byte[] buffer = new byte[STDIN_BUFFER_SIZE];
+            int read;
+            try {
+                while ((read = input.read(buffer)) != -1) {
+                    sink.onAudioData(buffer, 0, read);
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            audio.finish();
+            if (audio.getDataLength() == 0) {
+                err.println("No audio on standard input.");
+                return EXIT_FAILED;
+            }
+            logger.info("Read {} bytes of PCM from standard input", audio.getDataLength());
+            return print(configManager, audio, postProcessingData);
+        } finally {
+            if (spillFile.exists() && !spillFile.delete()) {
+                spillFile.deleteOnExit();
+            }
+        }
+    }
+
+    private int print(ConfigManager configManager, RecordedAudio audio, PostProcessingData postProcessingData)
+            throws IOException {
+        String text = transcribe(configManager, audio);
+        if (postProcessingData != null) {
+            text = new PostProcessingService(configManager).applyPostProcessing(text, postProcessingData);
+        }
+        out.println(text);
+        return EXIT_OK;
+    }
+
+    private String transcribe(ConfigManager configManager, RecordedAudio audio) throws IOException {
+        String cacheKey = null;
+        if (configManager.isTranscriptionCacheEnabled()) {
+            try {
+                cacheKey = TranscriptionCache.key(configManager, audio);
+            } catch (IOException e) {
+                logger.warn("Could not fingerprint {}, transcribing without cache", audio.getName(), e);
+            }
+        }
+        if (cacheKey != null) {
+            String cached = TranscriptionCache.get(configManager, cacheKey);
+            if (cached != null) {
+                logger.info("Transcript of {} found in cache", audio.getName());
+                return cached;
+            }
+        }
+        String transcript = new TranscriptionService(configManager).transcribe(audio);
+        if (cacheKey != null) {
+            TranscriptionCache.put(configManager, cacheKey, transcript);
+        }
+        return transcript;
+    }
+
+    private int transcribeBatch(ConfigManager configManager, List<File> files, PostProcessingData postProcessingData)
+            throws InterruptedException, ExecutionException {
+        List<File> audioFiles = BatchTranscriptionService.collectAudioFiles(files);
+        if (audioFiles.isEmpty()) {
+            err.println("No .wav or .mp3 files found.");
+            return EXIT_FAILED;
+        }
+        List<BatchItem> items = new ArrayList<>();
+        for (File file : audioFiles) {
+            items.add(new BatchItem(file));
+        }
+        BatchTranscriptionJob job = new BatchTranscriptionService(configManager).start(items, postProcessingData,
+                !overwrite, this::report);
+        Runtime.getRuntime().addShutdownHook(new Thread(job::cancel, "batch-cancel"));
+        job.getCompletion().get();
+        int failed = 0;
+        for (BatchItem item : items) {
+            if (item.getStatus() != BatchItem.Status.DONE && item.getStatus() != BatchItem.Status.SKIPPED) {
+                failed++;
+            }
+        }
+        err.println(items.size() + " files, " + failed + " failed");
+        return failed == 0 ? EXIT_OK : EXIT_FAILED;
+    }
+
+    private void report(BatchItem item) {
+        switch (item.getStatus()) {
+            case DONE:
+                out.println(item.getOutputFile().getPath());
+                break;
+            case SKIPPED:
+                err.println("Skipped " + item.getFile() + ": " + item.getMessage());
+                break;
+            case FAILED:
+                err.println("Failed " + item.getFile() + ": " + item.getMessage());
+                break;
+            default:
+                if (verbose) {
+                    err.println(item.getStatus() + " " + item.getFile());
+                }
+        }
+    }
+}
@@ -0,0 +1,433 @@
+package org.whispercat.control;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.whispercat.ConfigManager;
+import org.whispercat.postprocessing.PostProcessingData;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local HTTP API for scripts and editor plugins, listening on the loopback interface only.
+ * <p>
+ * Every request needs the token stored in the file "control-token" in the configuration directory, either
+ * as "Authorization: Bearer &lt;token&gt;" header or, for clients which cannot set headers, as "token" query
+ * parameter. Requests whose Host header is not a loopback name are rejected, so web pages cannot reach the
+ * API through DNS rebinding.
+ * <pre>
+ * GET  /v1/status                state, selected post-processing and last results
+ * POST /v1/recording/start       start recording
+ * POST /v1/recording/stop        stop recording and transcribe
+ * POST /v1/recording/toggle      like the hotkey
+ * GET  /v1/post-processings      available post-processings
+ * POST /v1/post-processing       select one with {"uuid": "..."}, or turn it off with {"uuid": null}
+ * GET  /v1/transcript            last transcript and post-processed text
+ * GET  /v1/events                server-sent events: partial transcripts, results, streamed output and failures
+ * </pre>
+ */
+public final class ControlServer {
+    private static final Logger logger = LogManager.getLogger(ControlServer.class);
+    private static final ControlServer INSTANCE = new ControlServer();
+    private static final String TOKEN_FILE = "control-token";
+    private static final int MAX_EVENT_STREAMS = 16;
+    private static final int EVENT_QUEUE_SIZE = 1024;
+    private static final long KEEP_ALIVE_SECONDS = 15;
+    private static final long CONTROL_TIMEOUT_SECONDS = 10;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Set<EventStream> eventStreams = ConcurrentHashMap.newKeySet();
+    private volatile RecorderControl recorderControl;
+    private volatile ConfigManager configManager;
+    // Guarded by this.
+    private HttpServer server;
+    private ExecutorService executor;
+    private int port;
+    private byte[] token;
+
+    private ControlServer() {
+        DictationEvents.getInstance().addListener(event -> {
+            for (EventStream stream : eventStreams) {
+                stream.offer(event);
+            }
+        });
+    }
+
+    public static ControlServer getInstance() {
+        return INSTANCE;
+    }
+
+    public void setRecorderControl(RecorderControl recorderControl) {
+        this.recorderControl = recorderControl;
+    }
+
+    /**
+     * Starts, restarts or stops the server according to the settings.
+     */
+    public synchronized void update(ConfigManager configManager) {
+        this.configManager = configManager;
+        boolean enabled = configManager.isControlApiEnabled();
+        int selectedPort = configManager.getControlApiPort();
+        if (enabled && server != null && selectedPort == port) {
+            return;
+        }
+        stop();
+        if (enabled) {
+            start(configManager, selectedPort);
+        }
+    }
+
+    public synchronized void stop() {
+        if (server == null) {
+            return;
+        }
+        for (EventStream stream : eventStreams) {
+            stream.close();
+        }
+        server.stop(0);
+        executor.shutdownNow();
+        server = null;
+        executor = null;
+        logger.info("Control API stopped");
+    }
+
+    /**
+     * Returns the file holding the token clients have to send.
+     */
+    public static File getTokenFile(ConfigManager configManager) {
+        return new File(configManager.getConfigDirectory(), TOKEN_FILE);
+    }
+
+    /**
+     * Returns the token clients have to send, creating it if there is none yet.
+     */
+    public static String getToken(ConfigManager configManager) throws IOException {
+        return new String(loadOrCreateToken(getTokenFile(configManager)), StandardCharsets.UTF_8);
+    }
+
+    private void start(ConfigManager configManager, int selectedPort) {
+        try {
+            token = loadOrCreateToken(getTokenFile(configManager));
+            HttpServer newServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), selectedPort), 0);
+            executor = Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "control-api");
+                thread.setDaemon(true);
+                return thread;
+            });
+            newServer.setExecutor(executor);
+            newServer.createContext("/v1/", this::handle);
+            newServer.start();
+            server = newServer;
+            port = selectedPort;
+            logger.info("Control API listening on {}", newServer.getAddress());
+        } catch (IOException e) {
+            logger.error("Could not start the control API on port {}", selectedPort, e);
+            if (executor != null) {
+                executor.shutdownNow();
+                executor = null;
+            }
+        }
+    }
+
+    private static byte[] loadOrCreateToken(File file) throws IOException {
+        if (file.isFile()) {
+            String existing = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim();
+            if (!existing.isEmpty()) {
+                return existing.getBytes(StandardCharsets.UTF_8);
+            }
+        }
+        byte[] random = new byte[32];
+        new SecureRandom().nextBytes(random);
+        StringBuilder hex = new StringBuilder();
+        for (byte b : random) {
+            hex.append(String.format("%02x", b));
+        }
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.write(file.toPath(), hex.toString().getBytes(StandardCharsets.UTF_8));
+        // Best effort, only the owner should be able to read the token.
+        file.setReadable(false, false);
+        file.setReadable(true, true);
+        logger.info("Created control API token in {}", file);
+        return hex.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!isLoopbackHost(exchange.getRequestHeaders().getFirst("Host"))) {
+                sendError(exchange, 403, "Invalid host");
+                return;
+            }
+            if (!isAuthorized(exchange)) {
+                sendError(exchange, 401, "Missing or invalid token");
+                return;
+            }
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getPath();
+            if (path.endsWith("/") && path.length() > 4) {
+                path = path.substring(0, path.length() - 1);
+            }
+            switch (method + " " + path) {
+                case "GET /v1/status":
+                    sendJson(exchange, 200, status());
+                    break;
+                case "POST /v1/recording/start":
+                    sendControlResult(exchange, control().startRecording(), "recording");
+                    break;
+                case "POST /v1/recording/stop":
+                    sendControlResult(exchange, control().stopRecording(), "stopped");
+                    break;
+                case "POST /v1/recording/toggle":
+                    sendControlResult(exchange, control().toggleRecording(), "recording");
+                    break;
+                case "GET /v1/post-processings":
+                    sendJson(exchange, 200, postProcessings());
+                    break;
+                case "POST /v1/post-processing":
+                    selectPostProcessing(exchange);
+                    break;
+                case "GET /v1/transcript":
+                    sendJson(exchange, 200, transcript());
+                    break;
+                case "GET /v1/events":
+                    streamEvents(exchange);
+                    break;
+                default:
+                    sendError(exchange, 404, "Unknown endpoint " + method + " " + path);
+            }
+        } catch (IllegalStateException e) {
+            sendError(exchange, 503, e.getMessage());
+        } catch (IOException e) {
+            logger.debug("Control API client disconnected", e);
+        } catch (Exception e) {
+            logger.error("Control API request failed", e);
+            sendError(exchange, 500, String.valueOf(e.getMessage()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private RecorderControl control() {
+        RecorderControl control = recorderControl;
+        if (control == null) {
+            throw new IllegalStateException("The recorder is not available");
+        }
+        return control;
+    }
+
+    private static boolean isLoopbackHost(String host) {
+        if (host == null) {
+            return false;
+        }
+        String name = host.toLowerCase(Locale.ROOT);
+        if (name.startsWith("[")) {
+            name = name.substring(0, name.indexOf(']') + 1);
+        } else if (name.contains(":")) {
+            name = name.substring(0, name.indexOf(':'));
+        }
+        return name.equals("localhost") || name.equals("127.0.0.1") || name.equals("[::1]");
+    }
+
+    private boolean isAuthorized(HttpExchange exchange) {
+        String provided = null;
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        if (authorization != null && authorization.startsWith("Bearer ")) {
+            provided = authorization.substring("Bearer ".length()).trim();
+        } else {
+            String query = exchange.getRequestURI().getRawQuery();
+            if (query != null) {
+                for (String parameter : query.split("&")) {
+                    if (parameter.startsWith("token=")) {
+                        provided = URLDecoder.decode(parameter.substring("token=".length()), StandardCharsets.UTF_8);
+                    }
+                }
+            }
+        }
+        byte[] expected;
+        synchronized (this) {
+            expected = token;
+        }
+        return provided != null && expected != null
+                && MessageDigest.isEqual(expected, provided.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private ObjectNode status() {
+        DictationEvents events = DictationEvents.getInstance();
+        ObjectNode status = objectMapper.createObjectNode();
+        status.put("recording", events.isRecording());
+        status.put("postProcessing", events.getSelectedPostProcessing());
+        status.set("transcript", eventNode(events.getLastTranscript()));
+        status.set("processedText", eventNode(events.getLastProcessedText()));
+        return status;
+    }
+
+    private ObjectNode transcript() {
+        DictationEvents events = DictationEvents.getInstance();
+        ObjectNode result = objectMapper.createObjectNode();
+        result.set("transcript", eventNode(events.getLastTranscript()));
+        result.set("processedText", eventNode(events.getLastProcessedText()));
+        return result;
+    }
+
+    private ArrayNode postProcessings() {
+        ArrayNode list = objectMapper.createArrayNode();
+        ConfigManager currentConfigManager = configManager;
+        if (currentConfigManager != null) {
+            for (PostProcessingData data : currentConfigManager.getPostProcessingDataList()) {
+                ObjectNode item = list.addObject();
+                item.put("uuid", data.uuid);
+                item.put("title", data.title);
+                item.put("description", data.description);
+            }
+        }
+        return list;
+    }
+
+    private void selectPostProcessing(HttpExchange exchange) throws Exception {
+        JsonNode body;
+        try (InputStream input = exchange.getRequestBody()) {
+            body = objectMapper.readTree(input);
+        }
+        if (body == null || !body.has("uuid")) {
+            sendError(exchange, 400, "Expected {\"uuid\": \"...\"} or {\"uuid\": null}");
+            return;
+        }
+        String uuid = body.get("uuid").isNull() ? null : body.get("uuid").asText();
+        boolean selected = control().selectPostProcessing(uuid).get(CONTROL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        if (!selected) {
+            sendError(exchange, 404, "Unknown post-processing " + uuid);
+            return;
+        }
+        sendJson(exchange, 200, status());
+    }
+
+    private void sendControlResult(HttpExchange exchange, CompletableFuture<Boolean> result, String field)
+            throws Exception {
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put(field, result.get(CONTROL_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        sendJson(exchange, 200, response);
+    }
+
+    private JsonNode eventNode(DictationEvent event) {
+        if (event == null) {
+            return objectMapper.nullNode();
+        }
+        ObjectNode node = objectMapper.createObjectNode();
+        node.put("text", event.getText());
+        node.put("timestamp", event.getTimestamp());
+        return node;
+    }
+
+    /**
+     * Sends the events as server-sent events until the client disconnects or the server stops.
+     */
+    private void streamEvents(HttpExchange exchange) throws IOException, InterruptedException {
+        if (eventStreams.size() >= MAX_EVENT_STREAMS) {
+            sendError(exchange, 503, "Too many event streams");
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+        EventStream stream = new EventStream();
+        eventStreams.add(stream);
+        try (OutputStream output = exchange.getResponseBody()) {
+            write(output, "status", status());
+            while (!stream.isClosed()) {
+                DictationEvent event = stream.poll(KEEP_ALIVE_SECONDS);
+                if (stream.isClosed()) {
+                    break;
+                }
+                if (event == null) {
+                    // Also detects clients which went away.
+                    output.write(":\n\n".getBytes(StandardCharsets.UTF_8));
+                    output.flush();
+                } else {
+                    write(output, event.getType().name().toLowerCase(Locale.ROOT).replace('_', '-'),
+                            eventNode(event));
+                }
+            }
+        } finally {
+            eventStreams.remove(stream);
+        }
+    }
+
+    private void write(OutputStream output, String event, JsonNode data) throws IOException {
+        String message = "event: " + event + "\ndata: " + objectMapper.writeValueAsString(data) + "\n\n";
+        output.write(message.getBytes(StandardCharsets.UTF_8));
+        output.flush();
+    }
+
+    private void sendJson(HttpExchange exchange, int status, JsonNode body) throws IOException {
+        byte[] bytes = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    private void sendError(HttpExchange exchange, int status, String message) {
+        try {
+            ObjectNode body = objectMapper.createObjectNode();
+            body.put("error", message);
+            sendJson(exchange, status, body);
+        } catch (IOException e) {
+            logger.debug("Could not send error response", e);
+        }
+    }
+
+    /**
+     * The queue of one event stream client. A client which does not keep up is disconnected.
+     */
+    private static class EventStream {
+        private static final DictationEvent CLOSE = new DictationEvent(DictationEvent.Type.RECORDING_STOPPED, null);
+        private final BlockingQueue<DictationEvent> queue = new ArrayBlockingQueue<>(EVENT_QUEUE_SIZE);
+        private volatile boolean closed = false;
+
+        void offer(DictationEvent event) {
+            if (!queue.offer(event)) {
+                logger.warn("Event stream client too slow, disconnecting");
+                close();
+            }
+        }
+
+        DictationEvent poll(long timeoutSeconds) throws InterruptedException {
+            DictationEvent event = queue.poll(timeoutSeconds, TimeUnit.SECONDS);
+            return event == CLOSE ? null : event;
+        }
+
+        void close() {
+            closed = true;
+            queue.clear();
+            queue.offer(CLOSE);
+        }
+
+        boolean isClosed() {
+            return closed;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package org.whispercat.control;
+
+/**
+ * Something that happened during a dictation, published by {@link DictationEvents}.
+ */
+public class DictationEvent {
+    public enum Type {
+        /** Recording started. No text. */
+        RECORDING_STARTED,
+        /** Recording stopped, the text is "cancelled" if the recording was discarded. */
+        RECORDING_STOPPED,
+        /** The transcript of the chunks received so far, replaces the previous partial transcript. */
+        PARTIAL_TRANSCRIPT,
+        /** The final transcript. */
+        TRANSCRIPT,
+        /** A piece of streamed post-processing output, to be appended to the previous pieces. */
+        POST_PROCESSING_OUTPUT,
+        /** The final post-processed text. */
+        PROCESSED_TEXT,
+        /** Post-processing failed, the text is the error. Streamed output published before is incomplete. */
+        POST_PROCESSING_FAILED
+    }
+
+    private final Type type;
+    private final String text;
+    private final long timestamp;
+
+    public DictationEvent(Type type, String text) {
+        this.type = type;
+        this.text = text;
+        this.timestamp = System.currentTimeMillis();
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the text of the event, or null if the type has none.
+     */
+    public String getText() {
+        return text;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
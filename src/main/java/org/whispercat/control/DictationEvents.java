@@ -0,0 +1,116 @@
+package org.whispercat.control;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Publishes the progress of dictations to listeners outside the recorder form, e.g. the control API, and
+ * remembers the state and the last results. The recorder form is recreated whenever the menu is switched,
+ * so this is where the state survives.
+ * Events are published on the thread they happen on and listeners must not block.
+ */
+public final class DictationEvents {
+    private static final Logger logger = LogManager.getLogger(DictationEvents.class);
+    private static final DictationEvents INSTANCE = new DictationEvents();
+
+    private final List<Consumer<DictationEvent>> listeners = new CopyOnWriteArrayList<>();
+    private volatile boolean recording = false;
+    private volatile DictationEvent lastTranscript;
+    private volatile DictationEvent lastProcessedText;
+    private volatile String selectedPostProcessing;
+
+    private DictationEvents() {
+    }
+
+    public static DictationEvents getInstance() {
+        return INSTANCE;
+    }
+
+    public void addListener(Consumer<DictationEvent> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Consumer<DictationEvent> listener) {
+        listeners.remove(listener);
+    }
+
+    public boolean isRecording() {
+        return recording;
+    }
+
+    /**
+     * Returns the last final transcript, or null if there was none yet.
+     */
+    public DictationEvent getLastTranscript() {
+        return lastTranscript;
+    }
+
+    /**
+     * Returns the last post-processed text, or null if there was none yet.
+     */
+    public DictationEvent getLastProcessedText() {
+        return lastProcessedText;
+    }
+
+    /**
+     * Returns the uuid of the post-processing applied to the next transcripts, or null if post-processing is off.
+     */
+    public String getSelectedPostProcessing() {
+        return selectedPostProcessing;
+    }
+
+    /**
+     * Remembers the post-processing selected in the recorder, null if post-processing is off.
+     */
+    public void postProcessingSelected(String uuid) {
+        selectedPostProcessing = uuid;
+    }
+
+    public void recordingStarted() {
+        recording = true;
+        publish(new DictationEvent(DictationEvent.Type.RECORDING_STARTED, null));
+    }
+
+    public void recordingStopped(boolean cancelled) {
+        recording = false;
+        publish(new DictationEvent(DictationEvent.Type.RECORDING_STOPPED, cancelled ? "cancelled" : null));
+    }
+
+    public void partialTranscript(String text) {
+        publish(new DictationEvent(DictationEvent.Type.PARTIAL_TRANSCRIPT, text));
+    }
+
+    public void transcript(String text) {
+        DictationEvent event = new DictationEvent(DictationEvent.Type.TRANSCRIPT, text);
+        lastTranscript = event;
+        publish(event);
+    }
+
+    public void postProcessingOutput(String delta) {
+        publish(new DictationEvent(DictationEvent.Type.POST_PROCESSING_OUTPUT, delta));
+    }
+
+    public void processedText(String text) {
+        DictationEvent event = new DictationEvent(DictationEvent.Type.PROCESSED_TEXT, text);
+        lastProcessedText = event;
+        publish(event);
+    }
+
+    public void postProcessingFailed(String message) {
+        publish(new DictationEvent(DictationEvent.Type.POST_PROCESSING_FAILED, message));
+    }
+
+    private void publish(DictationEvent event) {
+        for (Consumer<DictationEvent> listener : listeners) {
+            try {
+                listener.accept(event);
+            } catch (RuntimeException e) {
+                logger.warn("Dictation listener failed", e);
+            }
+        }
+    }
+}
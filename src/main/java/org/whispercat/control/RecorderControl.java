@@ -0,0 +1,31 @@
+package org.whispercat.control;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Drives the recorder of the user interface. Implemented by the main form, which shows the recorder first
+ * if another menu entry is open. The methods may be called from any thread and complete on the event
+ * dispatch thread.
+ */
+public interface RecorderControl {
+    /**
+     * Starts recording unless a recording is running. Completes with whether a recording is running.
+     */
+    CompletableFuture<Boolean> startRecording();
+
+    /**
+     * Stops the running recording and transcribes it. Completes with whether a recording was stopped.
+     */
+    CompletableFuture<Boolean> stopRecording();
+
+    /**
+     * Starts or stops recording, like the hotkey. Completes with whether a recording is running afterwards.
+     */
+    CompletableFuture<Boolean> toggleRecording();
+
+    /**
+     * Selects the post-processing applied to the next transcripts, or turns post-processing off if the uuid
+     * is null. Completes with false if no post-processing has the uuid.
+     */
+    CompletableFuture<Boolean> selectPostProcessing(String uuid);
+}
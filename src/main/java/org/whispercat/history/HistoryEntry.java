@@ -0,0 +1,29 @@
+package org.whispercat.history;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+/**
+ * One dictation in the history: what was said, what post-processing made of it and how long it took.
+ * Stored as one JSON line by {@link HistoryStore}.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class HistoryEntry {
+    public long id; // Position in the store, assigned when the entry is added.
+    public long timestamp; // When the transcript was available, in epoch milliseconds.
+    public String audioFile; // The kept recording or the transcribed file, null if the recording was deleted.
+    public String transcript;
+    public String processedText; // Null if no post-processing ran or it failed.
+    public String postProcessingUuid;
+    public String postProcessingTitle;
+    public String whisperServer; // The server which produced the transcript, "cache" for cached transcripts.
+    public long recordingMillis; // Length of the recording, 0 if unknown.
+    public long transcriptionMillis;
+    public long postProcessingMillis;
+
+    /**
+     * Returns the post-processed text if there is one, otherwise the transcript.
+     */
+    public String getText() {
+        return processedText != null ? processedText : transcript;
+    }
+}
@@ -0,0 +1,353 @@
+package org.whispercat.history;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.whispercat.ConfigManager;
+import org.whispercat.Notificationmanager;
+import org.whispercat.ToastNotification;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.awt.datatransfer.StringSelection;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lists past dictations, newest first, and searches them. Rows are read from the {@link HistoryStore} page by
+ * page when they are scrolled into view, so the form opens at once however long the history is.
+ */
+public class HistoryForm extends JPanel {
+    private static final Logger logger = LogManager.getLogger(HistoryForm.class);
+    private static final int SEARCH_DELAY_MILLIS = 200;
+    private static final int MAX_TEXT_COLUMN_LENGTH = 200;
+
+    private final HistoryStore historyStore;
+    private final HistoryTableModel tableModel = new HistoryTableModel();
+    private final JTable table = new JTable(tableModel);
+    private final JTextField searchField = new JTextField(30);
+    private final JLabel countLabel = new JLabel();
+    private final JTextArea transcriptArea = new JTextArea(4, 20);
+    private final JTextArea processedTextArea = new JTextArea(4, 20);
+    private final JLabel detailLabel = new JLabel(" ");
+    private final Timer searchTimer = new Timer(SEARCH_DELAY_MILLIS, e -> search());
+    private final Runnable historyListener = () -> SwingUtilities.invokeLater(this::search);
+    // Incremented by every search, so the result of an outdated one is dropped.
+    private int searchGeneration = 0;
+
+    public HistoryForm(ConfigManager configManager) {
+        this.historyStore = HistoryStore.getInstance(configManager);
+        setLayout(new BorderLayout(0, 10));
+        setBorder(BorderFactory.createEmptyBorder(60, 20, 10, 10));
+
+        JPanel searchPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        searchPanel.add(new JLabel("Search:"));
+        searchField.setToolTipText("Finds dictations containing all words. The last word may be incomplete.");
+        searchPanel.add(searchField);
+        searchPanel.add(Box.createHorizontalStrut(10));
+        searchPanel.add(countLabel);
+        add(searchPanel, BorderLayout.NORTH);
+
+        table.setFillsViewportHeight(true);
+        table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        table.getColumnModel().getColumn(0).setPreferredWidth(120);
+        table.getColumnModel().getColumn(1).setPreferredWidth(400);
+        table.getColumnModel().getColumn(2).setPreferredWidth(120);
+        table.getColumnModel().getColumn(3).setPreferredWidth(100);
+        table.getSelectionModel().addListSelectionListener(e -> {
+            if (!e.getValueIsAdjusting()) {
+                showSelectedEntry();
+            }
+        });
+        add(new JScrollPane(table), BorderLayout.CENTER);
+
+        transcriptArea.setEditable(false);
+        transcriptArea.setLineWrap(true);
+        transcriptArea.setWrapStyleWord(true);
+        processedTextArea.setEditable(false);
+        processedTextArea.setLineWrap(true);
+        processedTextArea.setWrapStyleWord(true);
+        JButton copyTranscriptButton = new JButton("Copy");
+        copyTranscriptButton.addActionListener(e -> copy(transcriptArea.getText()));
+        JButton copyProcessedTextButton = new JButton("Copy");
+        copyProcessedTextButton.addActionListener(e -> copy(processedTextArea.getText()));
+        JButton clearButton = new JButton("Clear History");
+        clearButton.addActionListener(e -> clearHistory());
+
+        JPanel detailPanel = new JPanel(new GridBagLayout());
+        GridBagConstraints gbc = new GridBagConstraints();
+        gbc.insets = new Insets(2, 2, 2, 2);
+        gbc.fill = GridBagConstraints.BOTH;
+        gbc.gridx = 0;
+        gbc.gridy = 0;
+        gbc.gridwidth = 2;
+        detailPanel.add(detailLabel, gbc);
+        gbc.gridwidth = 1;
+        gbc.gridy = 1;
+        gbc.weightx = 0.5;
+        gbc.weighty = 0;
+        detailPanel.add(new JLabel("Transcript:"), gbc);
+        gbc.gridx = 1;
+        detailPanel.add(new JLabel("Post Processed text:"), gbc);
+        gbc.gridx = 0;
+        gbc.gridy = 2;
+        gbc.weighty = 1.0;
+        detailPanel.add(new JScrollPane(transcriptArea), gbc);
+        gbc.gridx = 1;
+        detailPanel.add(new JScrollPane(processedTextArea), gbc);
+        gbc.gridx = 0;
+        gbc.gridy = 3;
+        gbc.weighty = 0;
+        gbc.fill = GridBagConstraints.NONE;
+        gbc.anchor = GridBagConstraints.WEST;
+        detailPanel.add(copyTranscriptButton, gbc);
+        gbc.gridx = 1;
+        detailPanel.add(copyProcessedTextButton, gbc);
+        gbc.gridy = 4;
+        gbc.anchor = GridBagConstraints.EAST;
+        detailPanel.add(clearButton, gbc);
+        add(detailPanel, BorderLayout.SOUTH);
+
+        searchTimer.setRepeats(false);
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                searchTimer.restart();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                searchTimer.restart();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                searchTimer.restart();
+            }
+        });
+
+        search();
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        historyStore.addListener(historyListener);
+    }
+
+    @Override
+    public void removeNotify() {
+        historyStore.removeListener(historyListener);
+        searchTimer.stop();
+        super.removeNotify();
+    }
+
+    /**
+     * Shows the entries matching the search field, or all entries if it is empty. The index is built by the
+     * first search, so searching runs in the background.
+     */
+    private void search() {
+        String query = searchField.getText().trim();
+        int generation = ++searchGeneration;
+        if (query.isEmpty()) {
+            tableModel.showAll(historyStore.size());
+            updateCount();
+            return;
+        }
+        countLabel.setText("Searching...");
+        new SwingWorker<int[], Void>() {
+            @Override
+            protected int[] doInBackground() throws Exception {
+                return historyStore.search(query);
+            }
+
+            @Override
+            protected void done() {
+                if (generation != searchGeneration) {
+                    return;
+                }
+                try {
+                    tableModel.showIds(get());
+                } catch (Exception e) {
+                    logger.error("Could not search the history", e);
+                    tableModel.showIds(new int[0]);
+                }
+                updateCount();
+            }
+        }.execute();
+    }
+
+    private void updateCount() {
+        int total = historyStore.size();
+        int shown = tableModel.getRowCount();
+        countLabel.setText(shown == total ? total + " dictations" : shown + " of " + total + " dictations");
+        showSelectedEntry();
+    }
+
+    private void showSelectedEntry() {
+        int row = table.getSelectedRow();
+        HistoryEntry entry = row >= 0 ? tableModel.getEntry(row) : null;
+        if (entry == null) {
+            detailLabel.setText(" ");
+            transcriptArea.setText("");
+            processedTextArea.setText("");
+            return;
+        }
+        StringBuilder details = new StringBuilder(formatTime(entry.timestamp));
+        if (entry.recordingMillis > 0) {
+            details.append(", recording ").append(String.format("%.1f", entry.recordingMillis / 1000.0)).append(" s");
+        }
+        if (entry.whisperServer != null) {
+            details.append(", ").append(entry.whisperServer);
+            if (entry.transcriptionMillis > 0) {
+                details.append(" in ").append(entry.transcriptionMillis).append(" ms");
+            }
+        }
+        if (entry.postProcessingTitle != null) {
+            details.append(", ").append(entry.postProcessingTitle);
+            if (entry.postProcessingMillis > 0) {
+                details.append(" in ").append(entry.postProcessingMillis).append(" ms");
+            }
+        }
+        if (entry.audioFile != null) {
+            details.append(", ").append(entry.audioFile);
+        }
+        detailLabel.setText(details.toString());
+        transcriptArea.setText(entry.transcript);
+        transcriptArea.setCaretPosition(0);
+        processedTextArea.setText(entry.processedText != null ? entry.processedText : "");
+        processedTextArea.setCaretPosition(0);
+    }
+
+    private void clearHistory() {
+        int answer = JOptionPane.showConfirmDialog(this, "Delete all " + historyStore.size() + " dictations from the history?",
+                "Clear History", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
+        if (answer != JOptionPane.YES_OPTION) {
+            return;
+        }
+        try {
+            historyStore.clear();
+            Notificationmanager.getInstance().showNotification(ToastNotification.Type.INFO, "History cleared.");
+        } catch (IOException e) {
+            logger.error("Could not clear the history", e);
+            Notificationmanager.getInstance().showNotification(ToastNotification.Type.ERROR, "Could not clear the history. See logs.");
+        }
+    }
+
+    private static void copy(String text) {
+        if (text != null && !text.isEmpty()) {
+            Toolkit.getDefaultToolkit().getSystemClipboard().setContents(new StringSelection(text), null);
+        }
+    }
+
+    private static String formatTime(long timestamp) {
+        return new SimpleDateFormat("yyyy-MM-dd HH:mm").format(new Date(timestamp));
+    }
+
+    /**
+     * Shows either all entries, newest first, or the ids of a search result. Entries are loaded in pages and
+     * the most recently shown pages are kept.
+     */
+    private class HistoryTableModel extends AbstractTableModel {
+        private static final int PAGE_SIZE = 100;
+        private static final int MAX_CACHED_PAGES = 20;
+        private final String[] columns = {"Time", "Text", "Post Processing", "Server"};
+        private final Map<Integer, List<HistoryEntry>> pages = new LinkedHashMap<Integer, List<HistoryEntry>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<HistoryEntry>> eldest) {
+                return size() > MAX_CACHED_PAGES;
+            }
+        };
+        // Null while all entries are shown.
+        private int[] ids;
+        private int rowCount = 0;
+
+        void showAll(int size) {
+            ids = null;
+            rowCount = size;
+            pages.clear();
+            fireTableDataChanged();
+        }
+
+        void showIds(int[] ids) {
+            this.ids = ids;
+            rowCount = ids.length;
+            pages.clear();
+            fireTableDataChanged();
+        }
+
+        HistoryEntry getEntry(int row) {
+            if (row >= rowCount) {
+                return null;
+            }
+            int page = row / PAGE_SIZE;
+            List<HistoryEntry> entries = pages.get(page);
+            if (entries == null) {
+                entries = loadPage(page);
+                pages.put(page, entries);
+            }
+            int index = row % PAGE_SIZE;
+            return index < entries.size() ? entries.get(index) : null;
+        }
+
+        private List<HistoryEntry> loadPage(int page) {
+            int first = page * PAGE_SIZE;
+            int count = Math.min(PAGE_SIZE, rowCount - first);
+            try {
+                if (ids == null) {
+                    // The rows count from the newest entry at the time the model was filled.
+                    return historyStore.getNewest(historyStore.size() - rowCount + first, count);
+                }
+                int[] pageIds = new int[count];
+                System.arraycopy(ids, first, pageIds, 0, count);
+                return historyStore.get(pageIds);
+            } catch (IOException e) {
+                logger.error("Could not read the history", e);
+                return Collections.emptyList();
+            }
+        }
+
+        @Override
+        public int getRowCount() {
+            return rowCount;
+        }
+
+        @Override
+        public int getColumnCount() {
+            return columns.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return columns[column];
+        }
+
+        @Override
+        public Object getValueAt(int rowIndex, int columnIndex) {
+            HistoryEntry entry = getEntry(rowIndex);
+            if (entry == null) {
+                return "";
+            }
+            switch (columnIndex) {
+                case 0:
+                    return formatTime(entry.timestamp);
+                case 1:
+                    String text = entry.getText() != null ? entry.getText().replace('\n', ' ') : "";
+                    return text.length() > MAX_TEXT_COLUMN_LENGTH ? text.substring(0, MAX_TEXT_COLUMN_LENGTH) + "..." : text;
+                case 2:
+                    return entry.postProcessingTitle != null ? entry.postProcessingTitle : "";
+                case 3:
+                    return entry.whisperServer != null ? entry.whisperServer : "";
+                default:
+                    return "";
+            }
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package org.whispercat.history;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.whispercat.ConfigManager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Append-only store of past dictations in the directory "history" of the configuration directory.
+ * <p>
+ * Entries are appended as JSON lines to "history.jsonl" and never rewritten. "history.idx" holds the byte
+ * offset of every line as 8-byte big-endian number, so opening the store only reads the offsets and any entry
+ * is read with a single seek. If the application stopped while writing, the incomplete last line is ignored
+ * and overwritten by the next entry, and missing offsets are recovered by scanning the end of the data file.
+ * <p>
+ * The full-text index ({@link InvertedIndex}) is built from the data file by the first search and then kept up
+ * to date, so opening the history view does not pay for it.
+ */
+public final class HistoryStore {
+    private static final Logger logger = LogManager.getLogger(HistoryStore.class);
+    private static final String DATA_FILE = "history.jsonl";
+    private static final String OFFSETS_FILE = "history.idx";
+    private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+    private static final Map<String, HistoryStore> STORES = new ConcurrentHashMap<>();
+
+    private final File dataFile;
+    private final File offsetsFile;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+    // Guarded by this.
+    private long[] offsets = new long[256];
+    private int size = 0;
+    // End of the last complete line.
+    private long end = 0;
+    private InvertedIndex index;
+
+    HistoryStore(File directory) {
+        this.dataFile = new File(directory, DATA_FILE);
+        this.offsetsFile = new File(directory, OFFSETS_FILE);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            logger.warn("Could not create history directory {}", directory);
+        }
+        try {
+            open();
+        } catch (IOException e) {
+            logger.error("Could not open the history in {}", directory, e);
+        }
+    }
+
+    /**
+     * Returns the history of the configuration directory.
+     */
+    public static HistoryStore getInstance(ConfigManager configManager) {
+        return STORES.computeIfAbsent(configManager.getConfigDirectory(),
+                directory -> new HistoryStore(new File(directory, "history")));
+    }
+
+    /**
+     * Notifies the listener after entries were added or the history was cleared, on the thread which changed it.
+     */
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Runnable listener) {
+        listeners.remove(listener);
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Appends the entry and assigns its id.
+     */
+    public void add(HistoryEntry entry) throws IOException {
+        synchronized (this) {
+            entry.id = size;
+            byte[] line = (objectMapper.writeValueAsString(entry) + "\n").getBytes(StandardCharsets.UTF_8);
+            try (FileChannel channel = FileChannel.open(dataFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                if (channel.size() > end) {
+                    // Left over from an interrupted write.
+                    channel.truncate(end);
+                }
+                channel.position(end);
+                ByteBuffer buffer = ByteBuffer.wrap(line);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            try (DataOutputStream output = new DataOutputStream(new FileOutputStream(offsetsFile, true))) {
+                output.writeLong(end);
+            }
+            appendOffset(end);
+            end += line.length;
+            if (index != null) {
+                index.add((int) entry.id, entry.transcript, entry.processedText, entry.postProcessingTitle);
+            }
+        }
+        notifyListeners();
+    }
+
+    /**
+     * Returns up to count entries, newest first, skipping the given number of newer entries.
+     */
+    public synchronized List<HistoryEntry> getNewest(int skip, int count) throws IOException {
+        int first = size - 1 - skip;
+        int[] ids = new int[Math.max(0, Math.min(count, first + 1))];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = first - i;
+        }
+        return get(ids);
+    }
+
+    /**
+     * Returns the entries with the given ids, in the given order.
+     */
+    public synchronized List<HistoryEntry> get(int[] ids) throws IOException {
+        List<HistoryEntry> entries = new ArrayList<>(ids.length);
+        if (ids.length == 0) {
+            return entries;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(dataFile, "r")) {
+            for (int id : ids) {
+                if (id < 0 || id >= size) {
+                    throw new IOException("No history entry with id " + id);
+                }
+                long start = offsets[id];
+                long lineEnd = id + 1 < size ? offsets[id + 1] : end;
+                byte[] line = new byte[(int) (lineEnd - start)];
+                file.seek(start);
+                file.readFully(line);
+                entries.add(objectMapper.readValue(line, HistoryEntry.class));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Returns the ids of the entries whose transcript, processed text or post-processing title contain all
+     * words of the query, newest first. The last word may be incomplete.
+     */
+    public synchronized int[] search(String query) throws IOException {
+        if (index == null) {
+            index = buildIndex();
+        }
+        int[] ids = index.search(query);
+        for (int i = 0, j = ids.length - 1; i < j; i++, j--) {
+            int id = ids[i];
+            ids[i] = ids[j];
+            ids[j] = id;
+        }
+        return ids;
+    }
+
+    /**
+     * Deletes all entries.
+     */
+    public void clear() throws IOException {
+        synchronized (this) {
+            Files.deleteIfExists(dataFile.toPath());
+            Files.deleteIfExists(offsetsFile.toPath());
+            size = 0;
+            end = 0;
+            index = index != null ? new InvertedIndex() : null;
+            logger.info("History cleared");
+        }
+        notifyListeners();
+    }
+
+    private InvertedIndex buildIndex() throws IOException {
+        long start = System.currentTimeMillis();
+        InvertedIndex newIndex = new InvertedIndex();
+        final int batchSize = 512;
+        for (int first = 0; first < size; first += batchSize) {
+            int[] ids = new int[Math.min(batchSize, size - first)];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = first + i;
+            }
+            for (HistoryEntry entry : get(ids)) {
+                newIndex.add((int) entry.id, entry.transcript, entry.processedText, entry.postProcessingTitle);
+            }
+        }
+        logger.info("Indexed {} history entries in {} ms", size, System.currentTimeMillis() - start);
+        return newIndex;
+    }
+
+    /**
+     * Loads the offsets and recovers the ones of lines which were written after the last offset.
+     */
+    private void open() throws IOException {
+        long length = dataFile.length();
+        if (offsetsFile.isFile()) {
+            byte[] bytes = Files.readAllBytes(offsetsFile.toPath());
+            LongBuffer stored = ByteBuffer.wrap(bytes, 0, bytes.length - bytes.length % Long.BYTES).asLongBuffer();
+            while (stored.hasRemaining()) {
+                long offset = stored.get();
+                // Keep the valid prefix, an offset must point behind its predecessor and into the file.
+                if (offset >= length || (size == 0 ? offset != 0 : offset <= offsets[size - 1])) {
+                    break;
+                }
+                appendOffset(offset);
+            }
+        }
+        int storedCount = size;
+        // The last stored line may be incomplete, so scan from its start.
+        long position = 0;
+        if (size > 0) {
+            position = offsets[--size];
+        }
+        try (RandomAccessFile file = new RandomAccessFile(dataFile, dataFile.exists() ? "r" : "rw")) {
+            byte[] buffer = new byte[SCAN_BUFFER_SIZE];
+            long lineStart = position;
+            file.seek(position);
+            int read;
+            while ((read = file.read(buffer)) > 0) {
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] == '\n') {
+                        appendOffset(lineStart);
+                        lineStart = position + i + 1;
+                    }
+                }
+                position += read;
+            }
+            end = lineStart;
+        }
+        if (size != storedCount || offsetsFile.length() != (long) size * Long.BYTES) {
+            logger.info("Recovered the history index, {} entries", size);
+            writeOffsets();
+        }
+        logger.info("Opened history with {} entries", size);
+    }
+
+    private void writeOffsets() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(size * Long.BYTES);
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            for (int i = 0; i < size; i++) {
+                output.writeLong(offsets[i]);
+            }
+        }
+        Files.write(offsetsFile.toPath(), bytes.toByteArray());
+    }
+
+    private void appendOffset(long offset) {
+        if (size == offsets.length) {
+            offsets = Arrays.copyOf(offsets, size * 2);
+        }
+        offsets[size++] = offset;
+    }
+
+    private void notifyListeners() {
+        for (Runnable listener : listeners) {
+            listener.run();
+        }
+    }
+}
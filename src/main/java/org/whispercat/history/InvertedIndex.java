@@ -0,0 +1,151 @@
+package org.whispercat.history;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * In-memory full-text index of the history: maps every word to the ids of the entries containing it.
+ * <p>
+ * Ids are added in ascending order, so every posting list is sorted and a query with several words is answered
+ * by intersecting the lists of its words. The last word of a query also matches longer words starting with it,
+ * so results appear while the user is still typing. Not thread-safe, {@link HistoryStore} synchronizes access.
+ */
+class InvertedIndex {
+    private static final int[] EMPTY = new int[0];
+
+    private final TreeMap<String, Postings> postings = new TreeMap<>();
+
+    /**
+     * Adds the words of the texts to the index. The id must be larger than all ids added before.
+     */
+    void add(int id, String... texts) {
+        Set<String> words = new LinkedHashSet<>();
+        for (String text : texts) {
+            words.addAll(tokenize(text));
+        }
+        for (String word : words) {
+            postings.computeIfAbsent(word, key -> new Postings()).add(id);
+        }
+    }
+
+    /**
+     * Returns the ids of the entries containing all words of the query, ascending.
+     */
+    int[] search(String query) {
+        List<String> words = tokenize(query);
+        if (words.isEmpty()) {
+            return EMPTY;
+        }
+        int[] result = null;
+        for (int i = 0; i < words.size(); i++) {
+            boolean last = i == words.size() - 1;
+            int[] ids = last ? prefixIds(words.get(i)) : exactIds(words.get(i));
+            result = result == null ? ids : intersect(result, ids);
+            if (result.length == 0) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    private int[] exactIds(String word) {
+        Postings list = postings.get(word);
+        return list != null ? list.toArray() : EMPTY;
+    }
+
+    /**
+     * Returns the union of the posting lists of all words starting with the prefix.
+     */
+    private int[] prefixIds(String prefix) {
+        Map<String, Postings> matches = postings.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+        if (matches.isEmpty()) {
+            return EMPTY;
+        }
+        if (matches.size() == 1) {
+            return matches.values().iterator().next().toArray();
+        }
+        int total = 0;
+        for (Postings list : matches.values()) {
+            total += list.size;
+        }
+        int[] ids = new int[total];
+        int length = 0;
+        for (Postings list : matches.values()) {
+            System.arraycopy(list.ids, 0, ids, length, list.size);
+            length += list.size;
+        }
+        Arrays.sort(ids);
+        // Remove the duplicates of entries which contain several matching words.
+        int unique = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (i == 0 || ids[i] != ids[i - 1]) {
+                ids[unique++] = ids[i];
+            }
+        }
+        return Arrays.copyOf(ids, unique);
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int length = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[length++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, length);
+    }
+
+    /**
+     * Splits the text into lower case words without accents, so "Café" is found by "cafe".
+     */
+    static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return words;
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFD)
+                .replaceAll("\\p{M}+", "")
+                .toLowerCase(Locale.ROOT);
+        for (String word : normalized.split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    /**
+     * A growable, sorted list of ids.
+     */
+    private static class Postings {
+        private int[] ids = new int[4];
+        private int size = 0;
+
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(ids, size);
+        }
+    }
+}
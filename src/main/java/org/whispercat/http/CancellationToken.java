@@ -0,0 +1,75 @@
+package org.whispercat.http;
+
+import org.apache.http.client.methods.AbstractExecutionAwareRequest;
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Allows a running job to be cancelled from another thread, including the HTTP request it is waiting for.
+ * While a token is bound to a thread, every request executed by the shared clients of
+ * {@link HttpClientProvider} on that thread is registered with it and aborted on {@link #cancel()}.
+ * A token may be bound to several threads at once, e.g. for steps which run in parallel.
+ */
+public class CancellationToken {
+    private static final ThreadLocal<CancellationToken> CURRENT = new ThreadLocal<>();
+
+    private final Map<Thread, AbstractExecutionAwareRequest> activeRequests = new ConcurrentHashMap<>();
+    private volatile boolean cancelled = false;
+
+    /**
+     * Binds this token to the current thread until {@link #unbind()} is called.
+     */
+    public void bind() {
+        CURRENT.set(this);
+    }
+
+    public void unbind() {
+        CURRENT.remove();
+        activeRequests.remove(Thread.currentThread());
+    }
+
+    /**
+     * Cancels the job and aborts its active HTTP requests.
+     */
+    public void cancel() {
+        cancelled = true;
+        for (AbstractExecutionAwareRequest request : activeRequests.values()) {
+            request.abort();
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @throws CancellationException if the token was cancelled.
+     */
+    public void throwIfCancelled() {
+        if (cancelled) {
+            throw new CancellationException();
+        }
+    }
+
+    /**
+     * Returns whether the token bound to the current thread has been cancelled.
+     * Lets callers tell an aborted request apart from a failed one.
+     */
+    public static boolean isCurrentCancelled() {
+        CancellationToken token = CURRENT.get();
+        return token != null && token.cancelled;
+    }
+
+    static void registerRequest(AbstractExecutionAwareRequest request) {
+        CancellationToken token = CURRENT.get();
+        if (token == null) {
+            return;
+        }
+        token.activeRequests.put(Thread.currentThread(), request);
+        if (token.cancelled) {
+            request.abort();
+        }
+    }
+}
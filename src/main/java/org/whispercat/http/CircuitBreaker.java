@@ -0,0 +1,111 @@
+package org.whispercat.http;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.whispercat.ConfigManager;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stops sending requests to an endpoint which keeps failing.
+ * <p>
+ * After {@link ConfigManager#getCircuitBreakerFailureThreshold()} consecutive failures the breaker opens and
+ * requests fail immediately with {@link OpenException}, so callers can switch to a fallback server without
+ * waiting for another timeout. After {@link ConfigManager#getCircuitBreakerOpenSeconds()} one trial request
+ * is let through: if it succeeds the breaker closes, otherwise it opens again.
+ */
+public final class CircuitBreaker {
+    private static final Logger logger = LogManager.getLogger(CircuitBreaker.class);
+    private static final Map<String, CircuitBreaker> BREAKERS = new ConcurrentHashMap<>();
+
+    private enum State {CLOSED, OPEN, HALF_OPEN}
+
+    private final String endpoint;
+    private final ConfigManager configManager;
+    // Guarded by this.
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private long openedAt;
+
+    private CircuitBreaker(String endpoint, ConfigManager configManager) {
+        this.endpoint = endpoint;
+        this.configManager = configManager;
+    }
+
+    /**
+     * Returns the breaker of the endpoint, shared by all requests to it.
+     */
+    public static CircuitBreaker forEndpoint(String endpoint, ConfigManager configManager) {
+        return BREAKERS.computeIfAbsent(endpoint, key -> new CircuitBreaker(key, configManager));
+    }
+
+    /**
+     * Returns whether requests to the endpoint currently fail immediately.
+     */
+    public synchronized boolean isOpen() {
+        return state == State.OPEN && System.currentTimeMillis() - openedAt < openMillis();
+    }
+
+    /**
+     * Checks whether a request may be sent.
+     *
+     * @throws OpenException if the breaker is open, or half open and the trial request is running.
+     */
+    public synchronized void acquire() throws OpenException {
+        if (state == State.CLOSED) {
+            return;
+        }
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis()) {
+            logger.info("Sending a trial request to {}", endpoint);
+            state = State.HALF_OPEN;
+            return;
+        }
+        throw new OpenException(endpoint);
+    }
+
+    public synchronized void recordSuccess() {
+        if (state != State.CLOSED) {
+            logger.info("{} is available again", endpoint);
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+    }
+
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= configManager.getCircuitBreakerFailureThreshold()) {
+            if (state != State.OPEN) {
+                logger.warn("{} failed {} times in a row, pausing requests for {} s", endpoint,
+                        consecutiveFailures, configManager.getCircuitBreakerOpenSeconds());
+            }
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Ends a trial request which neither proved the endpoint available nor unavailable, e.g. because it was
+     * cancelled, so the next request becomes the trial.
+     */
+    public synchronized void abandonTrial() {
+        if (state == State.HALF_OPEN) {
+            state = State.OPEN;
+            openedAt = 0;
+        }
+    }
+
+    private long openMillis() {
+        return configManager.getCircuitBreakerOpenSeconds() * 1000L;
+    }
+
+    /**
+     * Thrown instead of sending a request while the breaker is open.
+     */
+    public static class OpenException extends IOException {
+        public OpenException(String endpoint) {
+            super(endpoint + " is unavailable after repeated failures, requests are paused");
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package org.whispercat.http;
+
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.AbstractExecutionAwareRequest;
+import org.apache.http.client.methods.HttpRequestWrapper;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.ssl.SSLContextBuilder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.whispercat.ConfigManager;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the shared, connection-pooled HTTP clients used by all API clients.
+ * Connections are kept alive and reused per endpoint, so consecutive dictations and the steps of a
+ * post-processing chain do not pay a new TCP and TLS handshake for every request.
+ * Callers must not close the returned clients; they are released by {@link #shutdown()}.
+ */
+public final class HttpClientProvider {
+    private static final Logger logger = LogManager.getLogger(HttpClientProvider.class);
+    private static final long IDLE_CONNECTION_SECONDS = 30;
+    private static final long CONNECTION_TIME_TO_LIVE_MINUTES = 5;
+
+    private static CloseableHttpClient defaultClient;
+    private static CloseableHttpClient trustAllClient;
+
+    private HttpClientProvider() {
+    }
+
+    /**
+     * Returns the shared client that validates server certificates.
+     */
+    public static synchronized CloseableHttpClient getDefaultClient(ConfigManager configManager) {
+        if (defaultClient == null) {
+            defaultClient = createClient(configManager, null);
+            logger.info("Created pooled HTTP client");
+        }
+        return defaultClient;
+    }
+
+    /**
+     * Returns the shared client that ignores SSL certificate validation.
+     * Used for self-hosted Open WebUI servers which often run with self-signed certificates.
+     *
+     * @throws IOException if the SSL context cannot be created.
+     */
+    public static synchronized CloseableHttpClient getTrustAllClient(ConfigManager configManager) throws IOException {
+        if (trustAllClient == null) {
+            try {
+                SSLContext sslContext = SSLContextBuilder.create()
+                        .loadTrustMaterial(null, (chain, authType) -> true)
+                        .build();
+                trustAllClient = createClient(configManager, new SSLConnectionSocketFactory(sslContext, NoopHostnameVerifier.INSTANCE));
+                logger.info("Created pooled HTTP client without certificate validation");
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+        }
+        return trustAllClient;
+    }
+
+    /**
+     * Creates the request configuration with the timeouts from the settings.
+     */
+    public static RequestConfig createRequestConfig(ConfigManager configManager) {
+        return RequestConfig.custom()
+                .setConnectTimeout(configManager.getHttpConnectTimeoutSeconds() * 1000)
+                .setConnectionRequestTimeout(configManager.getHttpConnectTimeoutSeconds() * 1000)
+                .setSocketTimeout(configManager.getHttpReadTimeoutSeconds() * 1000)
+                .build();
+    }
+
+    /**
+     * Closes the shared clients and all pooled connections.
+     */
+    public static synchronized void shutdown() {
+        closeQuietly(defaultClient);
+        closeQuietly(trustAllClient);
+        defaultClient = null;
+        trustAllClient = null;
+    }
+
+    /**
+     * Creates the request configuration with the timeouts of the given endpoint, see
+     * {@link ConfigManager#getHttpReadTimeoutSeconds(String)}.
+     */
+    public static RequestConfig createRequestConfig(ConfigManager configManager, String endpoint) {
+        int connectTimeoutMillis = configManager.getHttpConnectTimeoutSeconds(endpoint) * 1000;
+        return RequestConfig.custom()
+                .setConnectTimeout(connectTimeoutMillis)
+                .setConnectionRequestTimeout(connectTimeoutMillis)
+                .setSocketTimeout(configManager.getHttpReadTimeoutSeconds(endpoint) * 1000)
+                .build();
+    }
+
+    private static CloseableHttpClient createClient(ConfigManager configManager, SSLConnectionSocketFactory sslSocketFactory) {
+        PoolingHttpClientConnectionManager connectionManager;
+        if (sslSocketFactory != null) {
+            Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
+                    .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                    .register("https", sslSocketFactory)
+                    .build();
+            connectionManager = new PoolingHttpClientConnectionManager(registry, null, null, null,
+                    CONNECTION_TIME_TO_LIVE_MINUTES, TimeUnit.MINUTES);
+        } else {
+            connectionManager = new PoolingHttpClientConnectionManager(CONNECTION_TIME_TO_LIVE_MINUTES, TimeUnit.MINUTES);
+        }
+        int maxPerRoute = configManager.getHttpMaxConnectionsPerEndpoint();
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+        connectionManager.setMaxTotal(maxPerRoute * 4);
+        connectionManager.setValidateAfterInactivity(2000);
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(createRequestConfig(configManager))
+                .addInterceptorFirst((HttpRequestInterceptor) (request, context) -> {
+                    // Register the original request so a bound CancellationToken can abort it.
+                    if (request instanceof HttpRequestWrapper
+                            && ((HttpRequestWrapper) request).getOriginal() instanceof AbstractExecutionAwareRequest) {
+                        CancellationToken.registerRequest((AbstractExecutionAwareRequest) ((HttpRequestWrapper) request).getOriginal());
+                    }
+                })
+                .evictExpiredConnections()
+                .evictIdleConnections(IDLE_CONNECTION_SECONDS, TimeUnit.SECONDS)
+                .build();
+    }
+
+    private static void closeQuietly(CloseableHttpClient client) {
+        if (client != null) {
+            try {
+                client.close();
+            } catch (IOException e) {
+                logger.warn("Error closing HTTP client", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.whispercat.http;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+
+import java.io.IOException;
+
+/**
+ * Thrown by the API clients when a server answers with an unexpected status code.
+ * Keeps the status and the Retry-After header, so {@link ResilientCall} can tell transient failures
+ * (429 and 5xx) apart from permanent ones like an invalid API key.
+ */
+public class HttpStatusException extends IOException {
+    private final int statusCode;
+    private final long retryAfterMillis;
+
+    public HttpStatusException(String message, int statusCode, long retryAfterMillis) {
+        super(message);
+        this.statusCode = statusCode;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * Creates the exception for the response, reading its Retry-After header.
+     */
+    public static HttpStatusException of(String message, HttpResponse response) {
+        return new HttpStatusException(message, response.getStatusLine().getStatusCode(), retryAfterMillis(response));
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * Returns how long the server asked to wait before the next request, or -1 if it did not say.
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+
+    /**
+     * Returns whether the request may succeed if it is sent again: the server was overloaded, rate limited
+     * the request or failed internally.
+     */
+    public boolean isTransient() {
+        return statusCode == 429 || statusCode == 408 || statusCode >= 500;
+    }
+
+    private static long retryAfterMillis(HttpResponse response) {
+        Header header = response.getFirstHeader("Retry-After");
+        if (header == null) {
+            return -1;
+        }
+        try {
+            // Only the delay in seconds is supported, servers rarely send an HTTP date.
+            return Math.max(0, Long.parseLong(header.getValue().trim())) * 1000;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
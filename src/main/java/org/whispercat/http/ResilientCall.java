@@ -0,0 +1,157 @@
+package org.whispercat.http;
+
+import org.apache.http.ConnectionClosedException;
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.whispercat.ConfigManager;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Sends requests through the {@link CircuitBreaker} of their endpoint and retries transient failures.
+ * <p>
+ * Transient failures are 408, 429 and 5xx responses, refused connections, connections closed without a
+ * response and timeouts. They are retried up to {@link ConfigManager#getHttpMaxRetries()} times after a
+ * jittered exponential delay, or after the delay the server asked for with Retry-After. Other failures, e.g.
+ * an invalid API key, are thrown right away. A request of a cancelled job is never retried.
+ */
+public final class ResilientCall {
+    private static final Logger logger = LogManager.getLogger(ResilientCall.class);
+    private static final long RETRY_BASE_DELAY_MILLIS = 500;
+    private static final long RETRY_MAX_DELAY_MILLIS = 8000;
+    // A longer Retry-After is not worth waiting for while the user waits for the text.
+    private static final long RETRY_AFTER_MAX_MILLIS = 30000;
+    private static final long SLEEP_SLICE_MILLIS = 100;
+
+    /**
+     * A request, sent again for every attempt.
+     */
+    public interface Request<T> {
+        T execute() throws IOException;
+    }
+
+    private ResilientCall() {
+    }
+
+    /**
+     * Sends the request, retrying transient failures.
+     *
+     * @param endpoint the server the request goes to, see {@link ConfigManager#getHttpReadTimeoutSeconds(String)}.
+     * @throws CircuitBreaker.OpenException if the endpoint failed repeatedly and is paused.
+     * @throws IOException                  the failure of the last attempt.
+     */
+    public static <T> T execute(String endpoint, ConfigManager configManager, Request<T> request) throws IOException {
+        return execute(endpoint, configManager, request, () -> true);
+    }
+
+    /**
+     * Sends the request like {@link #execute(String, ConfigManager, Request)}.
+     *
+     * @param retryAllowed checked after a transient failure, e.g. false once a streamed response was partly
+     *                     passed on and sending the request again would repeat it.
+     */
+    public static <T> T execute(String endpoint, ConfigManager configManager, Request<T> request,
+                                BooleanSupplier retryAllowed) throws IOException {
+        CircuitBreaker breaker = CircuitBreaker.forEndpoint(endpoint, configManager);
+        int maxRetries = configManager.getHttpMaxRetries();
+        for (int attempt = 1; ; attempt++) {
+            breaker.acquire();
+            try {
+                T result = request.execute();
+                breaker.recordSuccess();
+                return result;
+            } catch (IOException e) {
+                if (CancellationToken.isCurrentCancelled()) {
+                    breaker.abandonTrial();
+                    throw e;
+                }
+                boolean isTransient = isTransient(e);
+                if (!isTransient) {
+                    if (e instanceof HttpStatusException) {
+                        // The server answered, so it is available.
+                        breaker.recordSuccess();
+                    } else {
+                        breaker.abandonTrial();
+                    }
+                    throw e;
+                }
+                if (isRateLimited(e)) {
+                    breaker.abandonTrial();
+                } else {
+                    breaker.recordFailure();
+                }
+                long delay = retryDelay(attempt, e);
+                if (attempt > maxRetries || delay < 0 || !retryAllowed.getAsBoolean()) {
+                    throw e;
+                }
+                logger.warn("Request to {} failed (attempt {} of {}), retrying in {} ms: {}", endpoint, attempt,
+                        maxRetries + 1, delay, e.getMessage());
+                sleep(delay, e);
+            } catch (RuntimeException e) {
+                breaker.abandonTrial();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Returns whether the request may succeed if it is sent again. False for an open circuit breaker.
+     */
+    public static boolean isTransient(IOException e) {
+        if (e instanceof HttpStatusException) {
+            return ((HttpStatusException) e).isTransient();
+        }
+        return e instanceof ConnectException
+                || e instanceof ConnectTimeoutException
+                || e instanceof SocketTimeoutException
+                || e instanceof NoHttpResponseException
+                // The connection was closed in the middle of the response.
+                || e instanceof ConnectionClosedException;
+    }
+
+    private static boolean isRateLimited(IOException e) {
+        return e instanceof HttpStatusException && ((HttpStatusException) e).getStatusCode() == 429;
+    }
+
+    /**
+     * Returns the delay before the next attempt, or -1 if the server asked to wait too long.
+     * Without Retry-After the delay is drawn from the upper half of an exponentially growing range, so
+     * clients which failed together do not retry together.
+     */
+    private static long retryDelay(int attempt, IOException e) {
+        long range = Math.min(RETRY_MAX_DELAY_MILLIS, RETRY_BASE_DELAY_MILLIS << Math.min(attempt - 1, 16));
+        long delay = range / 2 + ThreadLocalRandom.current().nextLong(range / 2 + 1);
+        if (e instanceof HttpStatusException) {
+            long retryAfter = ((HttpStatusException) e).getRetryAfterMillis();
+            if (retryAfter > RETRY_AFTER_MAX_MILLIS) {
+                return -1;
+            }
+            delay = Math.max(delay, retryAfter);
+        }
+        return delay;
+    }
+
+    /**
+     * Waits before the next attempt, throwing the failure if the job is cancelled meanwhile.
+     */
+    private static void sleep(long millis, IOException failure) throws IOException {
+        long end = System.currentTimeMillis() + millis;
+        try {
+            for (long remaining = millis; remaining > 0; remaining = end - System.currentTimeMillis()) {
+                if (CancellationToken.isCurrentCancelled()) {
+                    throw failure;
+                }
+                Thread.sleep(Math.min(remaining, SLEEP_SLICE_MILLIS));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw failure;
+        }
+    }
+}
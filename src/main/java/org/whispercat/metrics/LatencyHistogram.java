@@ -0,0 +1,119 @@
+package org.whispercat.metrics;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of durations with a fixed relative precision, in the style of HdrHistogram.
+ * <p>
+ * Durations are stored in microseconds. Values below 128 get a bucket each, larger ones fall into one of 64
+ * buckets per power of two, so a percentile is off by less than 1/64 of its value however large it is.
+ * Recording is a few shifts and an array increment, without allocation. Thread-safe.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // About 71 minutes, longer durations are counted as this.
+    private static final long MAX_MICROS = (1L << 32) - 1;
+    private static final int BUCKETS = bucketIndex(MAX_MICROS) + 1;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count = 0;
+    private long sumMicros = 0;
+    private long minMicros = Long.MAX_VALUE;
+    private long maxMicros = 0;
+
+    public synchronized void recordNanos(long nanos) {
+        long micros = Math.max(0, Math.min(MAX_MICROS, nanos / 1000));
+        counts[bucketIndex(micros)]++;
+        count++;
+        sumMicros += micros;
+        minMicros = Math.min(minMicros, micros);
+        maxMicros = Math.max(maxMicros, micros);
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized double getMeanMillis() {
+        return count == 0 ? 0 : sumMicros / 1000.0 / count;
+    }
+
+    public synchronized double getMinMillis() {
+        return count == 0 ? 0 : minMicros / 1000.0;
+    }
+
+    public synchronized double getMaxMillis() {
+        return maxMicros / 1000.0;
+    }
+
+    /**
+     * Returns the duration the given fraction of the recorded durations completed within, 0 if none was
+     * recorded.
+     *
+     * @param percentile between 0 and 100.
+     */
+    public synchronized double getPercentileMillis(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        // Nearest rank.
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (int index = 0; index < BUCKETS; index++) {
+            seen += counts[index];
+            if (seen >= rank) {
+                long lower = lowestValue(index);
+                long upper = lowestValue(index + 1) - 1;
+                // The middle of the bucket, but never outside the recorded range.
+                long value = Math.max(minMicros, Math.min(maxMicros, (lower + upper) / 2));
+                return value / 1000.0;
+            }
+        }
+        return maxMicros / 1000.0;
+    }
+
+    /**
+     * Returns a copy of the counts per bucket and the lowest value of every bucket, for exports.
+     */
+    public synchronized long[][] getBuckets() {
+        int used = 0;
+        for (long bucketCount : counts) {
+            if (bucketCount > 0) {
+                used++;
+            }
+        }
+        long[][] buckets = new long[used][];
+        int next = 0;
+        for (int index = 0; index < BUCKETS; index++) {
+            if (counts[index] > 0) {
+                buckets[next++] = new long[]{lowestValue(index), counts[index]};
+            }
+        }
+        return buckets;
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        sumMicros = 0;
+        minMicros = Long.MAX_VALUE;
+        maxMicros = 0;
+    }
+
+    private static int bucketIndex(long micros) {
+        if (micros < 2 * SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (micros >>> shift);
+    }
+
+    private static long lowestValue(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        return (long) (index - shift * SUB_BUCKETS) << shift;
+    }
+}
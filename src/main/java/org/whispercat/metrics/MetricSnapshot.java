@@ -0,0 +1,31 @@
+package org.whispercat.metrics;
+
+/**
+ * The values of one series of {@link Metrics} at one point in time. Durations are in milliseconds.
+ */
+public class MetricSnapshot {
+    public final String phase;
+    public final String backend; // Empty for local phases.
+    public final String model; // Empty if there is none.
+    public final long count;
+    public final double meanMillis;
+    public final double p50Millis;
+    public final double p95Millis;
+    public final double p99Millis;
+    public final double maxMillis;
+    public final long[][] buckets; // Lowest value in microseconds and count of every non-empty bucket.
+
+    MetricSnapshot(String phase, String backend, String model, LatencyHistogram histogram) {
+        this.phase = phase;
+        this.backend = backend;
+        this.model = model;
+        // The histogram may be recorded to meanwhile, so the values may not match exactly.
+        this.count = histogram.getCount();
+        this.meanMillis = histogram.getMeanMillis();
+        this.p50Millis = histogram.getPercentileMillis(50);
+        this.p95Millis = histogram.getPercentileMillis(95);
+        this.p99Millis = histogram.getPercentileMillis(99);
+        this.maxMillis = histogram.getMaxMillis();
+        this.buckets = histogram.getBuckets();
+    }
+}
@@ -0,0 +1,135 @@
+package org.whispercat.metrics;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.whispercat.ConfigManager;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collects how long the phases of a dictation take, in one {@link LatencyHistogram} per phase, backend and
+ * model, from the start of the application.
+ * <p>
+ * The phases are named by the constants below. The backend is the Whisper server or post-processing provider
+ * and may be empty for phases which run locally, as may the model.
+ */
+public final class Metrics {
+    private static final Logger logger = LogManager.getLogger(Metrics.class);
+    private static final Metrics INSTANCE = new Metrics();
+    private static final String EXPORT_FILE = "metrics.jsonl";
+
+    /** From the start request, e.g. the hotkey, to the first captured audio. */
+    public static final String CAPTURE_START = "capture start";
+    /** The length of the recorded audio. */
+    public static final String CAPTURE = "capture";
+    /** Building the upload body, including FLAC encoding. */
+    public static final String ENCODE = "encode";
+    /** Sending the request body. */
+    public static final String UPLOAD = "upload";
+    /** From the end of the upload to the response headers. */
+    public static final String SERVER = "server";
+    /** Reading and parsing the response body. */
+    public static final String PARSE = "parse";
+    /** A complete transcription, including retries and fallbacks. */
+    public static final String TRANSCRIPTION = "transcription";
+    /** One post-processing step, followed by its type. */
+    public static final String STEP_PREFIX = "step: ";
+    public static final String CLIPBOARD = "clipboard";
+    public static final String PASTE = "paste";
+    /** From stopping the recording until the final text is available. */
+    public static final String STOP_TO_TEXT = "stop to text";
+
+    private final Map<List<String>, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    public static Metrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Records the duration of a phase.
+     *
+     * @param backend the server or provider, null or empty if the phase runs locally.
+     * @param model   the model, null or empty if there is none.
+     */
+    public void record(String phase, String backend, String model, long nanos) {
+        List<String> key = List.of(phase, backend != null ? backend : "", model != null ? model : "");
+        histograms.computeIfAbsent(key, k -> new LatencyHistogram()).recordNanos(nanos);
+    }
+
+    /**
+     * Records the time since the given {@link System#nanoTime()}.
+     */
+    public void recordSince(String phase, String backend, String model, long startNanos) {
+        record(phase, backend, model, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Returns the current values of all series, sorted by phase, backend and model.
+     */
+    public List<MetricSnapshot> getSnapshots() {
+        List<MetricSnapshot> snapshots = new ArrayList<>();
+        histograms.forEach((key, histogram) -> snapshots.add(new MetricSnapshot(key.get(0), key.get(1), key.get(2), histogram)));
+        snapshots.sort(Comparator.comparing((MetricSnapshot s) -> s.phase)
+                .thenComparing(s -> s.backend)
+                .thenComparing(s -> s.model));
+        return snapshots;
+    }
+
+    public void reset() {
+        histograms.clear();
+    }
+
+    /**
+     * Appends the current values of all series to "metrics.jsonl" in the configuration directory, one JSON line
+     * per series with its percentiles and its non-empty histogram buckets, so exports of several sessions can
+     * be compared or merged.
+     *
+     * @return the file.
+     */
+    public File export(ConfigManager configManager) throws IOException {
+        File file = new File(configManager.getConfigDirectory(), EXPORT_FILE);
+        ObjectMapper objectMapper = new ObjectMapper();
+        long timestamp = System.currentTimeMillis();
+        List<MetricSnapshot> snapshots = getSnapshots();
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8)) {
+            for (MetricSnapshot snapshot : snapshots) {
+                ObjectNode line = objectMapper.createObjectNode();
+                line.put("timestamp", timestamp);
+                line.put("phase", snapshot.phase);
+                line.put("backend", snapshot.backend);
+                line.put("model", snapshot.model);
+                line.put("count", snapshot.count);
+                line.put("meanMillis", snapshot.meanMillis);
+                line.put("p50Millis", snapshot.p50Millis);
+                line.put("p95Millis", snapshot.p95Millis);
+                line.put("p99Millis", snapshot.p99Millis);
+                line.put("maxMillis", snapshot.maxMillis);
+                // Lowest value of the bucket in microseconds and its count.
+                ArrayNode buckets = line.putArray("buckets");
+                for (long[] bucket : snapshot.buckets) {
+                    buckets.addArray().add(bucket[0]).add(bucket[1]);
+                }
+                writer.write(objectMapper.writeValueAsString(line));
+                writer.write('\n');
+            }
+        }
+        logger.info("Exported {} metric series to {}", snapshots.size(), file);
+        return file;
+    }
+}
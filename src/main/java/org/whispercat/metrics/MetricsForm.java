@@ -0,0 +1,155 @@
+package org.whispercat.metrics;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.whispercat.ConfigManager;
+import org.whispercat.Notificationmanager;
+import org.whispercat.ToastNotification;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
+import java.awt.*;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shows the percentiles of every phase of the dictations since the application was started, per backend and
+ * model, and exports them for comparison with earlier sessions. Refreshed every second while it is shown.
+ */
+public class MetricsForm extends JPanel {
+    private static final Logger logger = LogManager.getLogger(MetricsForm.class);
+    private static final int REFRESH_MILLIS = 1000;
+
+    private final ConfigManager configManager;
+    private final MetricsTableModel tableModel = new MetricsTableModel();
+    private final Timer refreshTimer = new Timer(REFRESH_MILLIS, e -> refresh());
+
+    public MetricsForm(ConfigManager configManager) {
+        this.configManager = configManager;
+        setLayout(new BorderLayout(0, 10));
+        setBorder(BorderFactory.createEmptyBorder(60, 20, 10, 10));
+
+        JLabel descriptionLabel = new JLabel("Durations in milliseconds since the start of WhisperCat. "
+                + "Capture is the length of the recordings.");
+        add(descriptionLabel, BorderLayout.NORTH);
+
+        JTable table = new JTable(tableModel);
+        table.setFillsViewportHeight(true);
+        table.getColumnModel().getColumn(0).setPreferredWidth(150);
+        table.getColumnModel().getColumn(1).setPreferredWidth(120);
+        table.getColumnModel().getColumn(2).setPreferredWidth(120);
+        DefaultTableCellRenderer numberRenderer = new DefaultTableCellRenderer();
+        numberRenderer.setHorizontalAlignment(SwingConstants.RIGHT);
+        for (int column = 3; column < tableModel.getColumnCount(); column++) {
+            table.getColumnModel().getColumn(column).setPreferredWidth(60);
+            table.getColumnModel().getColumn(column).setCellRenderer(numberRenderer);
+        }
+        add(new JScrollPane(table), BorderLayout.CENTER);
+
+        JButton exportButton = new JButton("Export");
+        exportButton.setToolTipText("Appends the current values to metrics.jsonl in the configuration directory.");
+        exportButton.addActionListener(e -> export());
+        JButton resetButton = new JButton("Reset");
+        resetButton.addActionListener(e -> {
+            Metrics.getInstance().reset();
+            refresh();
+        });
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 5, 0));
+        buttonPanel.add(exportButton);
+        buttonPanel.add(resetButton);
+        add(buttonPanel, BorderLayout.SOUTH);
+
+        refresh();
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        refreshTimer.start();
+    }
+
+    @Override
+    public void removeNotify() {
+        refreshTimer.stop();
+        super.removeNotify();
+    }
+
+    private void refresh() {
+        tableModel.setSnapshots(Metrics.getInstance().getSnapshots());
+    }
+
+    private void export() {
+        try {
+            File file = Metrics.getInstance().export(configManager);
+            Notificationmanager.getInstance().showNotification(ToastNotification.Type.SUCCESS, "Metrics exported to " + file + ".");
+        } catch (IOException e) {
+            logger.error("Could not export the metrics", e);
+            Notificationmanager.getInstance().showNotification(ToastNotification.Type.ERROR, "Could not export the metrics. See logs.");
+        }
+    }
+
+    private static class MetricsTableModel extends AbstractTableModel {
+        private final String[] columns = {"Phase", "Backend", "Model", "Count", "Mean", "p50", "p95", "p99", "Max"};
+        private List<MetricSnapshot> snapshots = new ArrayList<>();
+
+        void setSnapshots(List<MetricSnapshot> snapshots) {
+            boolean sameRows = snapshots.size() == this.snapshots.size();
+            this.snapshots = snapshots;
+            if (sameRows) {
+                // Keeps the selection while the values are refreshed.
+                fireTableRowsUpdated(0, snapshots.size() - 1);
+            } else {
+                fireTableDataChanged();
+            }
+        }
+
+        @Override
+        public int getRowCount() {
+            return snapshots.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return columns.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return columns[column];
+        }
+
+        @Override
+        public Object getValueAt(int rowIndex, int columnIndex) {
+            MetricSnapshot snapshot = snapshots.get(rowIndex);
+            switch (columnIndex) {
+                case 0:
+                    return snapshot.phase;
+                case 1:
+                    return snapshot.backend;
+                case 2:
+                    return snapshot.model;
+                case 3:
+                    return String.valueOf(snapshot.count);
+                case 4:
+                    return format(snapshot.meanMillis);
+                case 5:
+                    return format(snapshot.p50Millis);
+                case 6:
+                    return format(snapshot.p95Millis);
+                case 7:
+                    return format(snapshot.p99Millis);
+                case 8:
+                    return format(snapshot.maxMillis);
+                default:
+                    return "";
+            }
+        }
+
+        private static String format(double millis) {
+            return millis < 10 ? String.format("%.2f", millis) : String.format("%.0f", millis);
+        }
+    }
+}
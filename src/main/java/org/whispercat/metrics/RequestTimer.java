@@ -0,0 +1,65 @@
+package org.whispercat.metrics;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Splits one HTTP request into the phases encode, upload, server and parse and records them in
+ * {@link Metrics}. Created when the request is built; every attempt of a retried request gets its own timer.
+ */
+public class RequestTimer {
+    private final String backend;
+    private final String model;
+    private long phaseStart = System.nanoTime();
+    private volatile long uploadStart;
+    private volatile long uploadEnd;
+
+    public RequestTimer(String backend, String model) {
+        this.backend = backend;
+        this.model = model;
+    }
+
+    /**
+     * Marks the end of building the request body and wraps it, so the upload is timed when it is sent.
+     */
+    public HttpEntity encoded(HttpEntity entity) {
+        record(Metrics.ENCODE);
+        return new HttpEntityWrapper(entity) {
+            @Override
+            public void writeTo(OutputStream outStream) throws IOException {
+                uploadStart = System.nanoTime();
+                super.writeTo(outStream);
+                outStream.flush();
+                uploadEnd = System.nanoTime();
+            }
+        };
+    }
+
+    /**
+     * Marks the arrival of the response headers.
+     */
+    public void responseReceived() {
+        long now = System.nanoTime();
+        if (uploadEnd != 0) {
+            Metrics.getInstance().record(Metrics.UPLOAD, backend, model, uploadEnd - uploadStart);
+            Metrics.getInstance().record(Metrics.SERVER, backend, model, now - uploadEnd);
+        }
+        phaseStart = now;
+    }
+
+    /**
+     * Marks the end of reading and parsing a successful response.
+     */
+    public void parsed() {
+        record(Metrics.PARSE);
+    }
+
+    private void record(String phase) {
+        long now = System.nanoTime();
+        Metrics.getInstance().record(phase, backend, model, now - phaseStart);
+        phaseStart = now;
+    }
+}
@@ -0,0 +1,13 @@
+package org.whispercat.postprocessing;
+
+/**
+ * Thrown when the streamed final step fails after part of its output was passed to
+ * {@link PostProcessingListener#onOutput}. The input cannot be passed on instead, as the listener may have
+ * used the partial output already, e.g. pasted it.
+ */
+public class IncompleteOutputException extends RuntimeException {
+
+    public IncompleteOutputException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
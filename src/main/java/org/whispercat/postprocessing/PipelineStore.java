@@ -0,0 +1,198 @@
+package org.whispercat.postprocessing;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.whispercat.ConfigWriter;
+import org.whispercat.cache.DiskCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * The post-processing pipelines, stored in the directory "pipelines" of the configuration directory.
+ * <p>
+ * Every pipeline is a JSON file named by its uuid, and the file "order" lists the uuids in the order the
+ * pipelines were created. Saving a pipeline only writes its own file, in the background through
+ * {@link ConfigWriter}, so changing one pipeline or any other setting never rewrites all prompts. Files are
+ * replaced atomically; pipelines missing from the order, e.g. after a crash, are appended when loading.
+ * <p>
+ * The pipelines are read once and kept in memory by uuid. Up to version 1.4, they were stored as one JSON
+ * array in the property "postProcessingData" of the configuration file, see {@link #migrate(String)}.
+ */
+public final class PipelineStore {
+    private static final Logger logger = LogManager.getLogger(PipelineStore.class);
+    private static final String ORDER_FILE = "order";
+    private static final String SUFFIX = ".json";
+    private static final Pattern SAFE_FILE_NAME = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+    private static final Map<String, PipelineStore> STORES = new ConcurrentHashMap<>();
+
+    private final File directory;
+    private final Gson gson = new Gson();
+    // Guarded by this. The pipelines by uuid in creation order.
+    private final Map<String, PostProcessingData> pipelines = new LinkedHashMap<>();
+    private List<PostProcessingData> list;
+
+    PipelineStore(File directory) {
+        this.directory = directory;
+        load();
+    }
+
+    /**
+     * Returns the store of the given configuration directory.
+     */
+    public static PipelineStore getInstance(String configDirectory) {
+        return STORES.computeIfAbsent(configDirectory, dir -> new PipelineStore(new File(dir, "pipelines")));
+    }
+
+    /**
+     * Returns the pipelines in creation order. The list and the pipelines are shared between callers and must
+     * not be changed; save a new instance instead.
+     */
+    public synchronized List<PostProcessingData> getAll() {
+        if (list == null) {
+            list = Collections.unmodifiableList(new ArrayList<>(pipelines.values()));
+        }
+        return list;
+    }
+
+    /**
+     * Returns the pipeline with the given uuid, null if there is none.
+     */
+    public synchronized PostProcessingData get(String uuid) {
+        return uuid != null ? pipelines.get(uuid) : null;
+    }
+
+    /**
+     * Adds the pipeline, or replaces the one with the same uuid in place.
+     */
+    public synchronized void save(PostProcessingData data) {
+        if (data.uuid == null) {
+            logger.error("Post processing data without uuid is not saved: {}", data.title);
+            return;
+        }
+        boolean added = pipelines.put(data.uuid, data) == null;
+        list = null;
+        byte[] json = gson.toJson(data).getBytes(StandardCharsets.UTF_8);
+        ConfigWriter.getInstance().write(pipelineFile(data.uuid), () -> json);
+        if (added) {
+            writeOrder();
+        }
+    }
+
+    public synchronized void delete(String uuid) {
+        if (uuid == null || pipelines.remove(uuid) == null) {
+            return;
+        }
+        list = null;
+        ConfigWriter.getInstance().delete(pipelineFile(uuid));
+        writeOrder();
+    }
+
+    /**
+     * Moves the pipelines of the old JSON array into the store, unless that was done before; then the array
+     * is outdated and ignored. Written synchronously, the order file last, so the property can be removed
+     * afterwards. Entries without uuid get a new one.
+     *
+     * @return false if the store had been migrated before.
+     */
+    public synchronized boolean migrate(String postProcessingData) throws IOException {
+        if (new File(directory, ORDER_FILE).exists()) {
+            return false;
+        }
+        if (!postProcessingData.trim().isEmpty()) {
+            JsonArray array;
+            try {
+                array = JsonParser.parseString(postProcessingData).getAsJsonArray();
+            } catch (RuntimeException e) {
+                throw new IOException("postProcessingData is not a valid JSON array", e);
+            }
+            for (JsonElement element : array) {
+                PostProcessingData data = gson.fromJson(element, PostProcessingData.class);
+                if (data.uuid == null) {
+                    data.uuid = UUID.randomUUID().toString();
+                }
+                ConfigWriter.writeAtomically(pipelineFile(data.uuid), gson.toJson(data).getBytes(StandardCharsets.UTF_8));
+                pipelines.put(data.uuid, data);
+            }
+        }
+        list = null;
+        ConfigWriter.writeAtomically(new File(directory, ORDER_FILE), orderContent());
+        logger.info("Moved {} post-processing pipelines to {}", pipelines.size(), directory);
+        return true;
+    }
+
+    private void load() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (files == null) {
+            return;
+        }
+        Map<String, PostProcessingData> loaded = new LinkedHashMap<>();
+        // Without order, e.g. written just before a crash, they are appended in the order they were written.
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            try {
+                PostProcessingData data = gson.fromJson(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8),
+                        PostProcessingData.class);
+                if (data != null && data.uuid != null) {
+                    loaded.put(data.uuid, data);
+                } else {
+                    logger.warn("Ignoring post-processing pipeline without uuid in {}", file);
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.error("Could not read the post-processing pipeline {}", file, e);
+            }
+        }
+        File orderFile = new File(directory, ORDER_FILE);
+        if (orderFile.exists()) {
+            try {
+                for (String uuid : Files.readAllLines(orderFile.toPath(), StandardCharsets.UTF_8)) {
+                    PostProcessingData data = loaded.remove(uuid);
+                    if (data != null) {
+                        pipelines.put(uuid, data);
+                    }
+                }
+            } catch (IOException e) {
+                logger.error("Could not read the order of the post-processing pipelines", e);
+            }
+        }
+        pipelines.putAll(loaded);
+        logger.info("Loaded {} post-processing pipelines from {}", pipelines.size(), directory);
+    }
+
+    private void writeOrder() {
+        byte[] order = orderContent();
+        ConfigWriter.getInstance().write(new File(directory, ORDER_FILE), () -> order);
+    }
+
+    private byte[] orderContent() {
+        StringBuilder order = new StringBuilder();
+        for (String uuid : pipelines.keySet()) {
+            order.append(uuid).append('\n');
+        }
+        return order.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the file of the pipeline. Uuids which are no safe file name, e.g. edited by hand, are hashed.
+     */
+    private File pipelineFile(String uuid) {
+        String name = SAFE_FILE_NAME.matcher(uuid).matches() ? uuid : DiskCache.key(uuid);
+        return new File(directory, name + SUFFIX);
+    }
+}
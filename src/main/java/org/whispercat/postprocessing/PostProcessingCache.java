@@ -0,0 +1,62 @@
+package org.whispercat.postprocessing;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.whispercat.ConfigManager;
+import org.whispercat.cache.DiskCache;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches the responses of prompt steps on disk, keyed by provider, model, system prompt and the expanded
+ * user prompt. Stored under "cache/postprocessing" in the config directory.
+ */
+public final class PostProcessingCache {
+    private static final Logger logger = LogManager.getLogger(PostProcessingCache.class);
+    private static DiskCache cache;
+
+    private PostProcessingCache() {
+    }
+
+    /**
+     * Returns the cached response for the prompt, or null.
+     */
+    public static String get(ConfigManager configManager, ProcessingStepData step, String fullUserPrompt) {
+        DiskCache diskCache = getCache(configManager);
+        String result = diskCache.get(key(step, fullUserPrompt));
+        logger.info("Post-processing cache {} ({} hits, {} misses)", result != null ? "hit" : "miss",
+                diskCache.getHits(), diskCache.getMisses());
+        return result;
+    }
+
+    public static void put(ConfigManager configManager, ProcessingStepData step, String fullUserPrompt, String result) {
+        getCache(configManager).put(key(step, fullUserPrompt), result);
+    }
+
+    public static void clear(ConfigManager configManager) {
+        getCache(configManager).clear();
+        logger.info("Post-processing cache cleared");
+    }
+
+    public static long getHits(ConfigManager configManager) {
+        return getCache(configManager).getHits();
+    }
+
+    public static long getMisses(ConfigManager configManager) {
+        return getCache(configManager).getMisses();
+    }
+
+    private static synchronized DiskCache getCache(ConfigManager configManager) {
+        if (cache == null) {
+            File directory = new File(configManager.getConfigDirectory(), "cache" + File.separator + "postprocessing");
+            cache = new DiskCache(directory, configManager.getPostProcessingCacheMaxMegabytes() * 1024L * 1024L,
+                    TimeUnit.HOURS.toMillis(configManager.getPostProcessingCacheTtlHours()));
+        }
+        return cache;
+    }
+
+    private static String key(ProcessingStepData step, String fullUserPrompt) {
+        return DiskCache.key(step.provider, step.model, step.systemPrompt, fullUserPrompt);
+    }
+}
@@ -10,4 +10,5 @@ public class PostProcessingData {
     public String title;
     public String description; // New description field.
     public  List<ProcessingStepData> steps;
+    public boolean skipCache; // Always send prompts of this pipeline, even if a cached result exists.
 }
@@ -11,12 +11,16 @@ import javax.swing.border.Border;
 import java.awt.*;
 import java.awt.event.*;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.regex.Pattern;
 
 public class PostProcessingForm extends JPanel {
     private final JTextField titleField;
     private final JTextField descriptionArea; // New Description Field
+    private final JCheckBox useCacheCheckBox;
     private final ConfigManager configManager;
     private JButton addStepButton;
     private final JPanel stepsContainer;
@@ -26,6 +30,7 @@ public class PostProcessingForm extends JPanel {
     // A variable to store the default border for later resetting.
     private final Border defaultTextFieldBorder;
     private String currentUUID;
+    private static final Pattern OUTPUT_NAME_PATTERN = Pattern.compile("[A-Za-z0-9_-]+");
     private static final org.apache.logging.log4j.Logger logger = org.apache.logging.log4j.LogManager.getLogger(RecorderForm.class);
 
     // Neue Felder für Open WebUI-Provider:
@@ -80,6 +85,18 @@ public class PostProcessingForm extends JPanel {
         descriptionArea.setMaximumSize(new Dimension(Integer.MAX_VALUE, descriptionArea.getPreferredSize().height));
         descriptionPanel.add(descriptionArea);
         headerPanel.add(descriptionPanel);
+        headerPanel.add(Box.createVerticalStrut(10));
+        JPanel cachePanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+        cachePanel.setAlignmentX(LEFT_ALIGNMENT);
+        JLabel cacheLabel = new JLabel("Cache Results:");
+        cacheLabel.setFont(cacheLabel.getFont().deriveFont(Font.PLAIN));
+        cacheLabel.setPreferredSize(commonLabelSize);
+        cachePanel.add(cacheLabel);
+        useCacheCheckBox = new JCheckBox();
+        useCacheCheckBox.setSelected(true);
+        useCacheCheckBox.setToolTipText("Reuse the stored response when a prompt step is sent with exactly the same input again.");
+        cachePanel.add(useCacheCheckBox);
+        headerPanel.add(cachePanel);
         topPanel.add(headerPanel);
         add(topPanel, BorderLayout.NORTH);
         // Container for the Processing Steps.
@@ -173,6 +190,7 @@ public class PostProcessingForm extends JPanel {
         try {
             titleField.setText(data.title != null ? data.title : "");
             descriptionArea.setText(data.description != null ? data.description : "");
+            useCacheCheckBox.setSelected(!data.skipCache);
             // Save the loaded UUID (if available) into our currentUUID variable.
             currentUUID = data.uuid;
             stepsContainer.removeAll();
@@ -220,12 +238,22 @@ public class PostProcessingForm extends JPanel {
         } else {
             titleField.setBorder(defaultTextFieldBorder);
         }
+        Set<String> outputNames = new HashSet<>();
         for (Component comp : stepsContainer.getComponents()) {
             if (comp instanceof ProcessingStepPanel) {
                 ProcessingStepPanel stepPanel = (ProcessingStepPanel) comp;
                 if (!stepPanel.isValidInput()) {
                     return false;
                 }
+                String outputName = stepPanel.getOutputName();
+                if (outputName != null && !outputNames.add(outputName)) {
+                    stepPanel.getOutputNameField().setBorder(BorderFactory.createLineBorder(Color.RED));
+                    stepPanel.getOutputNameField().requestFocusInWindow();
+                    scrollToComponent(stepPanel.getOutputNameField());
+                    Notificationmanager.getInstance().showNotification(ToastNotification.Type.ERROR,
+                            "The output name '" + outputName + "' is used by more than one step.");
+                    return false;
+                }
             }
         }
         return true;
@@ -241,6 +269,7 @@ public class PostProcessingForm extends JPanel {
         PostProcessingData data = new PostProcessingData();
         data.title = titleField.getText();
         data.description = descriptionArea.getText();
+        data.skipCache = !useCacheCheckBox.isSelected();
         data.steps = new ArrayList<>();
         for (Component comp : stepsContainer.getComponents()) {
             if (comp instanceof ProcessingStepPanel) {
@@ -272,10 +301,14 @@ public class PostProcessingForm extends JPanel {
         private JComboBox<String> modelCombo;
         private JTextField textToReplaceField;
         private JTextField replacementTextField;
+        private JCheckBox ignoreCaseCheckBox;
+        private JCheckBox wholeWordCheckBox;
+        private JTextField outputNameField;
         private Border defaultTextAreaBorder;
+        private Border defaultOutputNameFieldBorder;
         private Border defaultReplacementFieldBorder;
         private final String SYSTEM_PROMPT_PLACEHOLDER = "Enter system instructions, e.g., 'You are a helpful assistant.'";
-        private final String USER_PROMPT_PLACEHOLDER = "Enter a user message template. For example: 'Greetings, {{input}}! Welcome to our service.' You can include the placeholder {{input}} to insert user input (this may be repeated several times).";
+        private final String USER_PROMPT_PLACEHOLDER = "Enter a user message template. For example: 'Greetings, {{input}}! Welcome to our service.' You can include the placeholder {{input}} to insert user input (this may be repeated several times). Use {{transcript}} for the original transcript or {{name}} for the output of an earlier step with that output name; such steps run in parallel.";
 
         public ProcessingStepPanel() {
             setBorder(BorderFactory.createTitledBorder("Processing Step"));
@@ -287,6 +320,13 @@ public class PostProcessingForm extends JPanel {
             typePanel.add(new JLabel("Processing Type:"));
             typeCombo = new JComboBox<>(new String[]{"Prompt", "Text Replacement"});
             typePanel.add(typeCombo);
+            typePanel.add(Box.createHorizontalStrut(15));
+            typePanel.add(new JLabel("Output Name:"));
+            typePanel.add(Box.createHorizontalStrut(5));
+            outputNameField = new JTextField(10);
+            outputNameField.setToolTipText("Optional. Later prompts can insert the result of this step with {{name}}.");
+            defaultOutputNameFieldBorder = outputNameField.getBorder();
+            typePanel.add(outputNameField);
             topPanel.add(Box.createVerticalStrut(10));
             topPanel.add(typePanel, BorderLayout.WEST);
             JButton removeButton = new JButton();
@@ -365,6 +405,11 @@ public class PostProcessingForm extends JPanel {
             replacementPanel.add(new JLabel("Replacement Text:"));
             replacementTextField = new JTextField(10);
             replacementPanel.add(replacementTextField);
+            ignoreCaseCheckBox = new JCheckBox("Ignore case");
+            replacementPanel.add(ignoreCaseCheckBox);
+            wholeWordCheckBox = new JCheckBox("Whole words");
+            wholeWordCheckBox.setToolTipText("Only replace the text if it is not part of a longer word.");
+            replacementPanel.add(wholeWordCheckBox);
             add(replacementPanel);
             updateFieldsVisibility();
             typeCombo.addActionListener(e -> updateFieldsVisibility());
@@ -442,6 +487,18 @@ public class PostProcessingForm extends JPanel {
                 }
             }
         }
+        /**
+         * Returns the trimmed output name, or null if none is set.
+         */
+        public String getOutputName() {
+            String name = outputNameField.getText().trim();
+            return name.isEmpty() ? null : name;
+        }
+
+        public JTextField getOutputNameField() {
+            return outputNameField;
+        }
+
         /**
          * Liefert den aktuell gewählten Provider.
          *
@@ -459,6 +516,7 @@ public class PostProcessingForm extends JPanel {
 
 
             typeCombo.setSelectedItem(stepData.type);
+            outputNameField.setText(stepData.name != null ? stepData.name : "");
             if ("Prompt".equals(stepData.type)) {
                 storedModel = stepData.model; // Hier den gespeicherten Wert übernehmen.
                 providerCombo.setSelectedItem(stepData.provider);
@@ -480,6 +538,8 @@ public class PostProcessingForm extends JPanel {
             } else if ("Text Replacement".equals(stepData.type)) {
                 textToReplaceField.setText(stepData.textToReplace);
                 replacementTextField.setText(stepData.replacementText);
+                ignoreCaseCheckBox.setSelected(stepData.ignoreCase);
+                wholeWordCheckBox.setSelected(stepData.wholeWord);
             }
             updateFieldsVisibility();
         }
@@ -490,6 +550,18 @@ public class PostProcessingForm extends JPanel {
          */
         public boolean isValidInput() {
             String type = (String) typeCombo.getSelectedItem();
+            String outputName = getOutputName();
+            if (outputName != null && (!OUTPUT_NAME_PATTERN.matcher(outputName).matches()
+                    || outputName.equals("input") || outputName.equals("transcript"))) {
+                outputNameField.setBorder(BorderFactory.createLineBorder(Color.RED));
+                outputNameField.requestFocusInWindow();
+                PostProcessingForm.this.scrollToComponent(outputNameField);
+                Notificationmanager.getInstance().showNotification(ToastNotification.Type.ERROR,
+                        "The output name may only contain letters, digits, '_' and '-' and must not be 'input' or 'transcript'.");
+                return false;
+            } else {
+                outputNameField.setBorder(defaultOutputNameFieldBorder);
+            }
             if ("Text Replacement".equals(type)) {
                 if (textToReplaceField.getText().trim().isEmpty()) {
                     textToReplaceField.setBorder(BorderFactory.createLineBorder(Color.RED));
@@ -522,12 +594,12 @@ public class PostProcessingForm extends JPanel {
                 } else {
                     systemPromptArea.setBorder(defaultTextAreaBorder);
                 }
-                if (!userEmpty && !userText.contains("{{input}}")) {
+                if (!userEmpty && !userText.contains("{{")) {
                     userPromptArea.setBorder(BorderFactory.createLineBorder(Color.ORANGE));
                     userPromptArea.requestFocusInWindow();
                     PostProcessingForm.this.scrollToComponent(userPromptArea);
                     Notificationmanager.getInstance().showNotification(ToastNotification.Type.WARNING,
-                            "The User Prompt should include the placeholder '{{input}}' at least once.");
+                            "The User Prompt should include the placeholder '{{input}}', '{{transcript}}' or the output name of an earlier step at least once.");
                 }
             }
             return true;
@@ -540,6 +612,7 @@ public class PostProcessingForm extends JPanel {
         public ProcessingStepData getProcessingStepData() {
             ProcessingStepData stepData = new ProcessingStepData();
             stepData.type = (String) typeCombo.getSelectedItem();
+            stepData.name = getOutputName();
             if ("Prompt".equals(stepData.type)) {
                 stepData.provider = (String) providerCombo.getSelectedItem();
                 stepData.model = (String) modelCombo.getSelectedItem();
@@ -556,6 +629,8 @@ public class PostProcessingForm extends JPanel {
             } else if ("Text Replacement".equals(stepData.type)) {
                 stepData.textToReplace = textToReplaceField.getText();
                 stepData.replacementText = replacementTextField.getText();
+                stepData.ignoreCase = ignoreCaseCheckBox.isSelected();
+                stepData.wholeWord = wholeWordCheckBox.isSelected();
             }
             return stepData;
         }
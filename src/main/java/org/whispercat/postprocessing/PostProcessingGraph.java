@@ -0,0 +1,130 @@
+package org.whispercat.postprocessing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Dependency graph of the steps of a post-processing pipeline.
+ * <p>
+ * A user prompt can reference
+ * <ul>
+ *     <li>{@code {{input}}} - the output of the previous step (the transcript for the first step),</li>
+ *     <li>{@code {{transcript}}} - the original transcript,</li>
+ *     <li>{@code {{name}}} - the output of an earlier step whose output name is {@code name}.</li>
+ * </ul>
+ * A prompt which references only the transcript or named outputs does not depend on the previous step and
+ * can run in parallel with it. Text replacements and prompts without any reference work on the output of
+ * the previous step, as before. References can only point backwards, so the graph has no cycles.
+ */
+class PostProcessingGraph {
+    static final String INPUT = "input";
+    static final String TRANSCRIPT = "transcript";
+    private static final Pattern REFERENCE = Pattern.compile("\\{\\{([A-Za-z0-9_-]+)}}");
+
+    private final List<Set<Integer>> dependencies = new ArrayList<>();
+    private final List<Boolean> usesPreviousOutput = new ArrayList<>();
+
+    PostProcessingGraph(List<ProcessingStepData> steps) {
+        Map<String, Integer> namedSteps = new HashMap<>();
+        for (int i = 0; i < steps.size(); i++) {
+            ProcessingStepData step = steps.get(i);
+            Set<Integer> stepDependencies = new TreeSet<>();
+            boolean previous = true;
+            if ("Prompt".equalsIgnoreCase(step.type)) {
+                List<String> references = findReferences(step.userPrompt);
+                if (!references.isEmpty() && !references.contains(INPUT)) {
+                    previous = false;
+                }
+                for (String reference : references) {
+                    Integer index = namedSteps.get(reference);
+                    if (index != null) {
+                        stepDependencies.add(index);
+                    }
+                }
+            }
+            if (previous && i > 0) {
+                stepDependencies.add(i - 1);
+            }
+            dependencies.add(Collections.unmodifiableSet(stepDependencies));
+            usesPreviousOutput.add(previous);
+            if (step.name != null && !step.name.trim().isEmpty()) {
+                namedSteps.put(step.name.trim(), i);
+            }
+        }
+    }
+
+    /**
+     * Returns the indices of the steps whose output the given step needs.
+     */
+    Set<Integer> getDependencies(int stepIndex) {
+        return dependencies.get(stepIndex);
+    }
+
+    /**
+     * Returns whether the step works on the output of the previous step.
+     */
+    boolean usesPreviousOutput(int stepIndex) {
+        return usesPreviousOutput.get(stepIndex);
+    }
+
+    /**
+     * Returns whether every step depends on its predecessor only, i.e. nothing can run in parallel.
+     */
+    boolean isSequential() {
+        for (int i = 0; i < dependencies.size(); i++) {
+            Set<Integer> stepDependencies = dependencies.get(i);
+            if (i > 0 && !(stepDependencies.size() == 1 && stepDependencies.contains(i - 1))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Replaces the references in the template. References to unknown names are left unchanged.
+     *
+     * @param template   the user prompt.
+     * @param input      the value of {{input}}.
+     * @param transcript the value of {{transcript}}.
+     * @param outputs    the outputs of the named steps.
+     */
+    static String resolve(String template, String input, String transcript, Map<String, String> outputs) {
+        Matcher matcher = REFERENCE.matcher(template);
+        StringBuilder result = new StringBuilder();
+        int last = 0;
+        while (matcher.find()) {
+            String name = matcher.group(1);
+            String value;
+            if (name.equals(INPUT)) {
+                value = input;
+            } else if (name.equals(TRANSCRIPT)) {
+                value = transcript;
+            } else {
+                value = outputs.get(name);
+            }
+            result.append(template, last, matcher.start());
+            result.append(value != null ? value : matcher.group());
+            last = matcher.end();
+        }
+        result.append(template, last, template.length());
+        return result.toString();
+    }
+
+    private static List<String> findReferences(String template) {
+        List<String> references = new ArrayList<>();
+        if (template != null) {
+            Matcher matcher = REFERENCE.matcher(template);
+            while (matcher.find()) {
+                references.add(matcher.group(1));
+            }
+        }
+        return references;
+    }
+}
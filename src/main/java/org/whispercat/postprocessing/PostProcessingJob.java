@@ -0,0 +1,37 @@
+package org.whispercat.postprocessing;
+
+import org.whispercat.http.CancellationToken;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A post-processing run submitted with {@link PostProcessingService#submit}.
+ */
+public class PostProcessingJob {
+    private final CompletableFuture<String> result = new CompletableFuture<>();
+    private final CancellationToken cancellationToken = new CancellationToken();
+
+    /**
+     * Returns the future of the processed text. It completes exceptionally with a
+     * {@link java.util.concurrent.CancellationException} if the job is cancelled.
+     */
+    public CompletableFuture<String> getResult() {
+        return result;
+    }
+
+    /**
+     * Cancels the job. A request that is currently in flight is aborted and the remaining steps are skipped.
+     */
+    public void cancel() {
+        cancellationToken.cancel();
+        result.cancel(false);
+    }
+
+    public boolean isCancelled() {
+        return cancellationToken.isCancelled();
+    }
+
+    CancellationToken getCancellationToken() {
+        return cancellationToken;
+    }
+}
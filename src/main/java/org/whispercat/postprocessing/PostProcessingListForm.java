@@ -96,7 +96,6 @@ public class PostProcessingListForm extends JPanel {
             deleteButton.setToolTipText("Delete this Post Processing");
             deleteButton.addActionListener((ActionEvent e) -> {
                 configManager.deletePostProcessingData(data.uuid);
-                configManager.saveConfig();
                 refreshList();
             });
             // Add buttons to the button panel with vertical spacing.
@@ -0,0 +1,32 @@
+package org.whispercat.postprocessing;
+
+/**
+ * Receives the progress of a post-processing run.
+ * All methods are called on the post-processing thread; UI code has to hand over to the EDT itself.
+ */
+public interface PostProcessingListener {
+
+    /**
+     * Called before a step is executed.
+     *
+     * @param stepIndex the zero-based index of the step.
+     * @param stepCount the number of steps in the pipeline.
+     * @param step      the step.
+     */
+    default void onStepStarted(int stepIndex, int stepCount, ProcessingStepData step) {
+    }
+
+    /**
+     * Called after a step has been executed.
+     *
+     * @param output the text produced by the step.
+     */
+    default void onStepCompleted(int stepIndex, int stepCount, ProcessingStepData step, String output) {
+    }
+
+    /**
+     * Called with the next piece of the final result while the final step is streamed.
+     */
+    default void onOutput(String delta) {
+    }
+}
@@ -1,18 +1,52 @@
 package org.whispercat.postprocessing;
 
 import org.whispercat.ConfigManager;
+import org.whispercat.Notificationmanager;
+import org.whispercat.ToastNotification;
+import org.whispercat.http.CancellationToken;
+import org.whispercat.metrics.Metrics;
 import org.whispercat.postprocessing.clients.OpenWebUIProcessClient;
 import org.whispercat.recording.OpenAIClient;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 public class PostProcessingService {
 
     private static final org.apache.logging.log4j.Logger logger = org.apache.logging.log4j.LogManager.getLogger(PostProcessingService.class);
 
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "post-processing");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final int STEP_THREADS = 8;
+    private static final long PERMIT_POLL_MILLIS = 200;
+    private static final ExecutorService STEP_EXECUTOR = Executors.newFixedThreadPool(STEP_THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "post-processing-step");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final Map<String, ProviderPermits> PROVIDER_PERMITS = new ConcurrentHashMap<>();
+
     // OpenAIClient instance used to make synchronous calls to the API.
     private OpenAIClient openAIClient;
     private OpenWebUIProcessClient openWebUIClient;
+    private final ConfigManager configManager;
 
     /**
      * Constructs the PostProcessingService with the given ConfigManager.
@@ -21,6 +55,7 @@ public class PostProcessingService {
      * @param configManager The ConfigManager that contains configuration settings.
      */
     public PostProcessingService(ConfigManager configManager) {
+        this.configManager = configManager;
         this.openAIClient = new OpenAIClient(configManager);
         this.openWebUIClient = new OpenWebUIProcessClient(configManager);
     }
@@ -33,55 +68,270 @@ public class PostProcessingService {
      * @return The processed text after all steps.
      */
     public String applyPostProcessing(String originalText, PostProcessingData postProcessingData) {
-        String processedText = originalText;
-
-        // Iterate over all defined steps.
-        for (ProcessingStepData step : postProcessingData.steps) {
-            if ("Prompt".equalsIgnoreCase(step.type)) {
-                // Use OpenAIClient for a synchronous call.
-                processedText = performPromptProcessing(processedText, step);
-            } else if ("Text Replacement".equalsIgnoreCase(step.type)) {
-                // Replace text based on configuration.
-                processedText = processedText.replace(step.textToReplace, step.replacementText);
-            } else {
-                // Log unknown step type.
-                System.out.println("Unknown post-processing step type: " + step.type);
+        return applyPostProcessing(originalText, postProcessingData, null, null);
+    }
+
+    /**
+     * Runs the post-processing asynchronously on the post-processing executor.
+     *
+     * @param originalText       The initial transcribed text.
+     * @param postProcessingData The configuration for post-processing.
+     * @param listener           Receives the progress of the run, may be null.
+     * @return The job, whose future completes with the processed text.
+     */
+    public PostProcessingJob submit(String originalText, PostProcessingData postProcessingData, PostProcessingListener listener) {
+        PostProcessingJob job = new PostProcessingJob();
+        EXECUTOR.execute(() -> {
+            if (job.isCancelled()) {
+                return;
+            }
+            job.getCancellationToken().bind();
+            try {
+                String result = applyPostProcessing(originalText, postProcessingData, listener, job.getCancellationToken());
+                job.getResult().complete(result);
+            } catch (Throwable t) {
+                job.getResult().completeExceptionally(t);
+            } finally {
+                job.getCancellationToken().unbind();
+            }
+        });
+        return job;
+    }
+
+    /**
+     * Applies the defined post-processing steps.
+     * Steps which do not depend on each other (see {@link PostProcessingGraph}) run in parallel on the step
+     * executor, limited per provider by {@link ConfigManager#getMaxConcurrentRequests(String)}. Pipelines in
+     * which every step works on the output of its predecessor run on the calling thread.
+     * If the final step is a prompt and streaming is enabled, its completion is streamed and every
+     * generated piece of text is passed to {@link PostProcessingListener#onOutput} as soon as it arrives.
+     * The returned text is always the complete output of the final step.
+     * A failed prompt passes its input on, unless part of its output was streamed already; then the run fails
+     * with an {@link IncompleteOutputException}.
+     *
+     * @param originalText       The initial transcribed text.
+     * @param postProcessingData The configuration for post-processing.
+     * @param listener           Receives the progress of the run, may be null. Called from several threads
+     *                           if steps run in parallel.
+     * @param cancellationToken  Checked between the steps, may be null.
+     * @return The processed text after all steps.
+     * @throws CancellationException if the token is cancelled.
+     */
+    private String applyPostProcessing(String originalText, PostProcessingData postProcessingData,
+                                       PostProcessingListener listener, CancellationToken cancellationToken) {
+        List<ProcessingStepData> steps = postProcessingData.steps;
+        if (steps == null || steps.isEmpty()) {
+            return originalText;
+        }
+        PostProcessingGraph graph = new PostProcessingGraph(steps);
+        TextReplacementEngine[] replacements = TextReplacementEngine.forSteps(steps);
+        boolean useCache = configManager.isPostProcessingCacheEnabled() && !postProcessingData.skipCache;
+        List<CompletableFuture<String>> outputs = new ArrayList<>(steps.size());
+
+        if (graph.isSequential()) {
+            for (int i = 0; i < steps.size(); i++) {
+                outputs.add(CompletableFuture.completedFuture(
+                        runStep(i, originalText, steps, graph, replacements, outputs, useCache, listener,
+                                cancellationToken)));
+            }
+            return outputs.get(steps.size() - 1).join();
+        }
+
+        for (int i = 0; i < steps.size(); i++) {
+            int index = i;
+            CompletableFuture<?>[] dependencies = graph.getDependencies(i).stream()
+                    .map(outputs::get)
+                    .toArray(CompletableFuture[]::new);
+            outputs.add(CompletableFuture.allOf(dependencies).thenApplyAsync(ignored -> {
+                if (cancellationToken != null) {
+                    cancellationToken.bind();
+                }
+                try {
+                    return runStep(index, originalText, steps, graph, replacements, outputs, useCache, listener,
+                            cancellationToken);
+                } finally {
+                    if (cancellationToken != null) {
+                        cancellationToken.unbind();
+                    }
+                }
+            }, STEP_EXECUTOR));
+        }
+        try {
+            // Wait for every branch, not only the final step, so no request outlives the run.
+            CompletableFuture.allOf(outputs.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        return outputs.get(steps.size() - 1).join();
+    }
+
+    /**
+     * Executes a single step. The outputs of the steps it depends on must be complete.
+     */
+    private String runStep(int index, String transcript, List<ProcessingStepData> steps, PostProcessingGraph graph,
+                           TextReplacementEngine[] replacements, List<CompletableFuture<String>> outputs, boolean useCache,
+                           PostProcessingListener listener, CancellationToken cancellationToken) {
+        if (cancellationToken != null) {
+            cancellationToken.throwIfCancelled();
+        }
+        ProcessingStepData step = steps.get(index);
+        int stepCount = steps.size();
+        boolean finalStep = index == stepCount - 1;
+        String input = graph.usesPreviousOutput(index) && index > 0 ? outputs.get(index - 1).join() : transcript;
+        Map<String, String> namedOutputs = new HashMap<>();
+        for (int dependency : graph.getDependencies(index)) {
+            String name = steps.get(dependency).name;
+            if (name != null && !name.trim().isEmpty()) {
+                namedOutputs.put(name.trim(), outputs.get(dependency).join());
             }
         }
+        if (listener != null) {
+            listener.onStepStarted(index, stepCount, step);
+        }
+
+        long start = System.nanoTime();
+        String output;
+        if ("Prompt".equalsIgnoreCase(step.type)) {
+            boolean stream = finalStep && listener != null && configManager.isStreamingPostProcessingEnabled();
+            output = performPromptProcessing(input, transcript, namedOutputs, step, useCache,
+                    stream ? listener::onOutput : null, cancellationToken);
+        } else if ("Text Replacement".equalsIgnoreCase(step.type)) {
+            // The first step of a run of replacements applies the whole run, the others pass its output on.
+            TextReplacementEngine engine = replacements[index];
+            output = engine.getFirstStep() == index ? engine.apply(input) : input;
+        } else {
+            // Log unknown step type.
+            System.out.println("Unknown post-processing step type: " + step.type);
+            output = input;
+        }
 
-        return processedText;
+        if (cancellationToken != null) {
+            cancellationToken.throwIfCancelled();
+        }
+        boolean prompt = "Prompt".equalsIgnoreCase(step.type);
+        Metrics.getInstance().recordSince(Metrics.STEP_PREFIX + step.type, prompt ? step.provider : null,
+                prompt ? step.model : null, start);
+        if (listener != null) {
+            listener.onStepCompleted(index, stepCount, step, output);
+        }
+        return output;
     }
 
     /**
      * Synchronously processes the text using OpenAI API via a prompt.
-     * The processing is executed step-by-step. After receiving the API response,
-     * the result is used as input for the next processing step.
+     * The number of concurrent requests per provider is limited, further steps wait for a free slot.
      *
-     * @param inputText The input text to process.
-     * @param step      The processing configuration.
+     * @param inputText         The value of {{input}}, also returned if the request fails before any output
+     *                          was streamed.
+     * @param transcript        The value of {{transcript}}.
+     * @param namedOutputs      The outputs of the named steps this step depends on.
+     * @param step              The processing configuration.
+     * @param useCache          Whether a cached response may be used and the response is stored.
+     * @param outputListener    Receives the streamed response, or null to wait for the complete response.
+     * @param cancellationToken Checked while waiting for a free slot, may be null.
      * @return The processed text from the OpenAI response.
+     * @throws IncompleteOutputException if the request fails after part of the response was streamed.
      */
-    private String performPromptProcessing(String inputText, ProcessingStepData step) {
+    private String performPromptProcessing(String inputText, String transcript, Map<String, String> namedOutputs,
+                                           ProcessingStepData step, boolean useCache,
+                                           Consumer<String> outputListener, CancellationToken cancellationToken) {
 
         logger.info("Pre-processing input: " + step.userPrompt);
         logger.info("Transcript: " + inputText);
-        // Combine the user prompt with the input text.
-        String fullUserPrompt = step.userPrompt.replaceAll("\\{\\{input}}", inputText);
+        // Combine the user prompt with the input text and the referenced outputs.
+        String fullUserPrompt = PostProcessingGraph.resolve(step.userPrompt, inputText, transcript, namedOutputs);
         logger.info("Post-processing input: " + fullUserPrompt);
+        if (useCache) {
+            String cached = PostProcessingCache.get(configManager, step, fullUserPrompt);
+            if (cached != null) {
+                if (outputListener != null) {
+                    outputListener.accept(cached);
+                }
+                return cached;
+            }
+        }
+        ProviderPermits permits = PROVIDER_PERMITS.computeIfAbsent(step.provider.toLowerCase(), provider -> new ProviderPermits());
+        // Applied on every request, so a changed setting takes effect without a restart.
+        permits.setLimit(configManager.getMaxConcurrentRequests(step.provider));
+        try {
+            while (!permits.tryAcquire(PERMIT_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (cancellationToken != null) {
+                    cancellationToken.throwIfCancelled();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for " + step.provider);
+        }
+        AtomicBoolean streamed = new AtomicBoolean();
+        Consumer<String> streamingListener = outputListener == null ? null : delta -> {
+            streamed.set(true);
+            outputListener.accept(delta);
+        };
         try {
             // Synchronous call using the provided OpenAIClient.
             if(step.provider.equalsIgnoreCase("OpenAI")){
                 logger.info("Processing using OpenAI API.");
-                String result = openAIClient.processText(step.systemPrompt, fullUserPrompt, step.model);
+                String result = outputListener != null
+                        ? openAIClient.processTextStreaming(step.systemPrompt, fullUserPrompt, step.model, streamingListener)
+                        : openAIClient.processText(step.systemPrompt, fullUserPrompt, step.model);
+                cacheResult(useCache, step, fullUserPrompt, result);
                 return result;
             } else if(step.provider.equalsIgnoreCase("Open WebUI")){
                 logger.info("Processing using Open WebUI.");
-                String result = openWebUIClient.processText(step.systemPrompt, fullUserPrompt, step.model);
+                String result = outputListener != null
+                        ? openWebUIClient.processTextStreaming(step.systemPrompt, fullUserPrompt, step.model, streamingListener)
+                        : openWebUIClient.processText(step.systemPrompt, fullUserPrompt, step.model);
+                cacheResult(useCache, step, fullUserPrompt, result);
                 return result;
             }
         } catch (IOException e) {
-            e.printStackTrace();
+            if (CancellationToken.isCurrentCancelled()) {
+                logger.info("Post-processing step was cancelled");
+            } else if (streamed.get()) {
+                // The listener has the beginning of the answer, which the input must not silently replace.
+                throw new IncompleteOutputException("Post-processing with " + step.provider
+                        + " failed after part of the result was received: " + e.getMessage(), e);
+            } else {
+                // Keep the dictation: the step passes its input on instead of losing it.
+                logger.error("Post-processing step with {} failed, passing on its input", step.provider, e);
+                Notificationmanager.getInstance().showNotification(ToastNotification.Type.WARNING,
+                        "Post-processing failed, using the unprocessed text: " + e.getMessage());
+            }
+        } finally {
+            permits.release();
         }
         return inputText;
     }
-}
\ No newline at end of file
+
+    /**
+     * Limits the concurrent requests to a provider. The limit can be changed while permits are held; a lower
+     * limit takes effect as the held permits are released.
+     */
+    private static class ProviderPermits extends Semaphore {
+        private int limit = 0;
+
+        ProviderPermits() {
+            super(0);
+        }
+
+        synchronized void setLimit(int newLimit) {
+            if (newLimit > limit) {
+                release(newLimit - limit);
+            } else if (newLimit < limit) {
+                reducePermits(limit - newLimit);
+            }
+            limit = newLimit;
+        }
+    }
+
+    private void cacheResult(boolean useCache, ProcessingStepData step, String fullUserPrompt, String result) {
+        // A response without choices yields an empty text, which must not be cached.
+        if (useCache && result != null && !result.isEmpty() && !CancellationToken.isCurrentCancelled()) {
+            PostProcessingCache.put(configManager, step, fullUserPrompt, result);
+        }
+    }
+}
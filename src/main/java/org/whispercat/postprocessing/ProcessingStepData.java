@@ -5,6 +5,7 @@ package org.whispercat.postprocessing;
  */
 public class ProcessingStepData {
     public String type;             // "Prompt" or "Text Replacement"
+    public String name;             // Optional output name, later prompts reference it as {{name}}
     // For Prompt:
     public String provider;
     public String model;
@@ -14,6 +15,8 @@ public class ProcessingStepData {
     // For Text Replacement:
     public String textToReplace;
     public String replacementText;
+    public boolean ignoreCase;
+    public boolean wholeWord;       // Only replace matches which are not part of a longer word
 
     // TODO: Text to Speech
 }
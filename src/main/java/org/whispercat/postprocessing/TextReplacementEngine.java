@@ -0,0 +1,335 @@
+package org.whispercat.postprocessing;
+
+import org.whispercat.cache.DiskCache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Applies a run of consecutive "Text Replacement" steps in a single pass over the text.
+ * <p>
+ * The patterns of a run are compiled into one Aho-Corasick automaton. A run only contains steps for which
+ * replacing all patterns at once gives the same result as replacing them one after another: no pattern of a
+ * later step may overlap the pattern or the replacement of an earlier step, and a whole-word step must not
+ * follow a replacement which changes whether its edges belong to a word. Steps which do not fulfil this
+ * start a new run, as do the steps after a step with an output name, whose output must stay visible.
+ * <p>
+ * The compiled runs of a pipeline are cached until any of its steps changes.
+ */
+class TextReplacementEngine {
+    private static final int MAX_CACHED_PIPELINES = 16;
+    private static final Map<String, TextReplacementEngine[]> CACHE = Collections.synchronizedMap(
+            new LinkedHashMap<String, TextReplacementEngine[]>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, TextReplacementEngine[]> eldest) {
+                    return size() > MAX_CACHED_PIPELINES;
+                }
+            });
+
+    private final int firstStep;
+    private final List<Pattern> patterns;
+    // Trie of the case-folded patterns. Every node keeps its sorted edge labels and targets.
+    private char[][] labels;
+    private int[][] targets;
+    private int[] failure;
+    // Pattern ending at the node, or -1; and the next node on the failure path which has a pattern.
+    private int[] output;
+    private int[] outputLink;
+    private int nodeCount;
+
+    private TextReplacementEngine(int firstStep, List<Pattern> patterns) {
+        this.firstStep = firstStep;
+        this.patterns = patterns;
+        build();
+    }
+
+    /**
+     * Returns the engine of every replacement step of the pipeline, null for other steps. Steps of the same
+     * run share an engine; it has to be applied by the first step of the run only, see {@link #getFirstStep()}.
+     */
+    static TextReplacementEngine[] forSteps(List<ProcessingStepData> steps) {
+        String signature = signature(steps);
+        TextReplacementEngine[] engines = CACHE.get(signature);
+        if (engines == null) {
+            engines = compile(steps);
+            CACHE.put(signature, engines);
+        }
+        return engines;
+    }
+
+    /**
+     * Returns the index of the first step of the run, whose input is the input of the whole run.
+     */
+    int getFirstStep() {
+        return firstStep;
+    }
+
+    /**
+     * Replaces all occurrences of the patterns, from left to right and without overlaps.
+     */
+    String apply(String text) {
+        if (patterns.isEmpty()) {
+            return text;
+        }
+        StringBuilder result = null;
+        int copied = 0;
+        int node = 0;
+        for (int i = 0; i < text.length(); i++) {
+            node = next(node, fold(text.charAt(i)));
+            for (int match = output[node] >= 0 ? node : outputLink[node]; match > 0; match = outputLink[match]) {
+                Pattern pattern = patterns.get(output[match]);
+                int start = i + 1 - pattern.text.length();
+                if (start < copied || !pattern.matches(text, start)) {
+                    continue;
+                }
+                if (result == null) {
+                    result = new StringBuilder(text.length() + 16);
+                }
+                result.append(text, copied, start).append(pattern.replacement);
+                copied = i + 1;
+                break;
+            }
+        }
+        if (result == null) {
+            return text;
+        }
+        return result.append(text, copied, text.length()).toString();
+    }
+
+    private static TextReplacementEngine[] compile(List<ProcessingStepData> steps) {
+        TextReplacementEngine[] engines = new TextReplacementEngine[steps.size()];
+        int first = -1;
+        List<Pattern> run = new ArrayList<>();
+        for (int i = 0; i <= steps.size(); i++) {
+            ProcessingStepData step = i < steps.size() ? steps.get(i) : null;
+            boolean replacement = step != null && "Text Replacement".equalsIgnoreCase(step.type);
+            Pattern pattern = replacement ? Pattern.of(step) : null;
+            boolean continuesRun = replacement && first >= 0 && !isNamed(steps.get(i - 1))
+                    && (pattern == null || !conflictsWith(run, pattern));
+            if (first >= 0 && !continuesRun) {
+                TextReplacementEngine engine = new TextReplacementEngine(first, run);
+                Arrays.fill(engines, first, i, engine);
+                first = -1;
+            }
+            if (replacement) {
+                if (first < 0) {
+                    first = i;
+                    run = new ArrayList<>();
+                }
+                if (pattern != null) {
+                    run.add(pattern);
+                }
+            }
+        }
+        return engines;
+    }
+
+    private static boolean isNamed(ProcessingStepData step) {
+        return step.name != null && !step.name.trim().isEmpty();
+    }
+
+    /**
+     * Returns whether replacing the later pattern together with the earlier ones could give a different
+     * result than replacing it after them. Case is ignored, which may only split runs unnecessarily.
+     */
+    private static boolean conflictsWith(List<Pattern> earlier, Pattern later) {
+        String laterText = foldAll(later.text);
+        for (Pattern pattern : earlier) {
+            if (overlaps(foldAll(pattern.text), laterText)) {
+                return true;
+            }
+            if (pattern.replacement.isEmpty()) {
+                // Deleting text joins its neighbours, which a longer pattern could match.
+                if (laterText.length() > 1 || later.wholeWord) {
+                    return true;
+                }
+            } else if (overlaps(foldAll(pattern.replacement), laterText)) {
+                return true;
+            } else if (later.wholeWord && !sameWordEdges(pattern.text, pattern.replacement)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean overlaps(String a, String b) {
+        if (a.contains(b) || b.contains(a)) {
+            return true;
+        }
+        int max = Math.min(a.length(), b.length());
+        for (int length = 1; length < max; length++) {
+            if (a.regionMatches(a.length() - length, b, 0, length)
+                    || b.regionMatches(b.length() - length, a, 0, length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean sameWordEdges(String a, String b) {
+        return isWordChar(a.charAt(0)) == isWordChar(b.charAt(0))
+                && isWordChar(a.charAt(a.length() - 1)) == isWordChar(b.charAt(b.length() - 1));
+    }
+
+    private static String signature(List<ProcessingStepData> steps) {
+        List<String> parts = new ArrayList<>();
+        for (ProcessingStepData step : steps) {
+            parts.add(step.type);
+            parts.add(isNamed(step) ? "named" : "");
+            if ("Text Replacement".equalsIgnoreCase(step.type)) {
+                parts.add(step.textToReplace);
+                parts.add(step.replacementText);
+                parts.add(step.ignoreCase + ":" + step.wholeWord);
+            }
+        }
+        return DiskCache.key(parts.toArray(new String[0]));
+    }
+
+    private void build() {
+        int capacity = 1;
+        for (Pattern pattern : patterns) {
+            capacity += pattern.text.length();
+        }
+        labels = new char[capacity][];
+        targets = new int[capacity][];
+        failure = new int[capacity];
+        output = new int[capacity];
+        outputLink = new int[capacity];
+        Arrays.fill(output, -1);
+        nodeCount = 1;
+        labels[0] = new char[0];
+        targets[0] = new int[0];
+
+        for (int p = 0; p < patterns.size(); p++) {
+            int node = 0;
+            for (char c : patterns.get(p).text.toCharArray()) {
+                int child = child(node, fold(c));
+                if (child < 0) {
+                    child = nodeCount++;
+                    labels[child] = new char[0];
+                    targets[child] = new int[0];
+                    addChild(node, fold(c), child);
+                }
+                node = child;
+            }
+            if (output[node] < 0) {
+                output[node] = p;
+            }
+        }
+
+        // Breadth-first, so the failure target of a node is always complete before the node itself.
+        int[] queue = new int[nodeCount];
+        int head = 0;
+        int tail = 0;
+        for (int child : targets[0]) {
+            queue[tail++] = child;
+        }
+        while (head < tail) {
+            int node = queue[head++];
+            for (int i = 0; i < labels[node].length; i++) {
+                int child = targets[node][i];
+                int fallback = node == 0 ? 0 : next(failure[node], labels[node][i]);
+                failure[child] = fallback;
+                outputLink[child] = output[fallback] >= 0 ? fallback : outputLink[fallback];
+                queue[tail++] = child;
+            }
+        }
+    }
+
+    private int next(int node, char c) {
+        while (true) {
+            int child = child(node, c);
+            if (child >= 0) {
+                return child;
+            }
+            if (node == 0) {
+                return 0;
+            }
+            node = failure[node];
+        }
+    }
+
+    private int child(int node, char c) {
+        int index = Arrays.binarySearch(labels[node], c);
+        return index >= 0 ? targets[node][index] : -1;
+    }
+
+    private void addChild(int node, char c, int child) {
+        int index = -Arrays.binarySearch(labels[node], c) - 1;
+        char[] newLabels = new char[labels[node].length + 1];
+        int[] newTargets = new int[newLabels.length];
+        System.arraycopy(labels[node], 0, newLabels, 0, index);
+        System.arraycopy(targets[node], 0, newTargets, 0, index);
+        newLabels[index] = c;
+        newTargets[index] = child;
+        System.arraycopy(labels[node], index, newLabels, index + 1, labels[node].length - index);
+        System.arraycopy(targets[node], index, newTargets, index + 1, targets[node].length - index);
+        labels[node] = newLabels;
+        targets[node] = newTargets;
+    }
+
+    private static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    private static String foldAll(String text) {
+        char[] chars = text.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = fold(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    private static final class Pattern {
+        final String text;
+        final String replacement;
+        final boolean ignoreCase;
+        final boolean wholeWord;
+
+        private Pattern(String text, String replacement, boolean ignoreCase, boolean wholeWord) {
+            this.text = text;
+            this.replacement = replacement;
+            this.ignoreCase = ignoreCase;
+            this.wholeWord = wholeWord;
+        }
+
+        /**
+         * Returns the pattern of the step, or null if it has nothing to replace.
+         */
+        static Pattern of(ProcessingStepData step) {
+            if (step.textToReplace == null || step.textToReplace.isEmpty()) {
+                return null;
+            }
+            String replacement = step.replacementText != null ? step.replacementText : "";
+            return new Pattern(step.textToReplace, replacement, step.ignoreCase, step.wholeWord);
+        }
+
+        /**
+         * Checks a match of the folded pattern at the given position against the case and word options.
+         */
+        boolean matches(String text, int start) {
+            if (!ignoreCase && !text.startsWith(this.text, start)) {
+                return false;
+            }
+            if (wholeWord) {
+                int end = start + this.text.length();
+                if (start > 0 && isWordChar(text.charAt(start - 1)) && isWordChar(this.text.charAt(0))) {
+                    return false;
+                }
+                if (end < text.length() && isWordChar(text.charAt(end))
+                        && isWordChar(this.text.charAt(this.text.length() - 1))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package org.whispercat.postprocessing.clients;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.ConnectionClosedException;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ContentType;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Reads a streamed chat completion ("stream": true) as sent by OpenAI compatible APIs.
+ * The response is a sequence of server-sent events whose "data" field holds a JSON chunk with
+ * the next piece of the answer in choices[0].delta.content. The stream ends with "data: [DONE]".
+ */
+public final class ChatCompletionStream {
+    private static final String DATA_FIELD = "data:";
+    private static final String DONE = "[DONE]";
+
+    private ChatCompletionStream() {
+    }
+
+    /**
+     * Reads the response entity and passes every content delta to the listener as soon as it arrives.
+     * Servers which ignore the stream flag and answer with a single JSON document are handled as well;
+     * the listener then receives the complete answer at once.
+     *
+     * @param entity        the response entity.
+     * @param mapper        the object mapper used to parse the chunks.
+     * @param deltaListener receives the content deltas in order.
+     * @return the complete generated text.
+     * @throws IOException if the stream cannot be read, contains an error or ends without "[DONE]", e.g. because a
+     *                     proxy closed the connection in the middle of the answer.
+     */
+    public static String read(HttpEntity entity, ObjectMapper mapper, Consumer<String> deltaListener) throws IOException {
+        ContentType contentType = ContentType.get(entity);
+        if (contentType == null || !"text/event-stream".equalsIgnoreCase(contentType.getMimeType())) {
+            String responseString = new String(entity.getContent().readAllBytes(), StandardCharsets.UTF_8);
+            JsonNode choices = mapper.readTree(responseString).path("choices");
+            String content = choices.isArray() && choices.size() > 0 ? choices.get(0).path("message").path("content").asText() : "";
+            if (!content.isEmpty()) {
+                deltaListener.accept(content);
+            }
+            return content;
+        }
+
+        StringBuilder text = new StringBuilder();
+        boolean done = false;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(entity.getContent(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.startsWith(DATA_FIELD)) {
+                    // Blank event separators, comments (keep-alives) and other fields.
+                    continue;
+                }
+                String data = line.substring(DATA_FIELD.length()).trim();
+                if (data.equals(DONE)) {
+                    done = true;
+                    break;
+                }
+                if (data.isEmpty()) {
+                    continue;
+                }
+                JsonNode chunk = mapper.readTree(data);
+                if (chunk.has("error")) {
+                    throw new IOException(chunk.path("error").path("message").asText(chunk.path("error").asText()));
+                }
+                JsonNode choices = chunk.path("choices");
+                if (choices.isArray() && choices.size() > 0) {
+                    JsonNode content = choices.get(0).path("delta").path("content");
+                    if (content.isTextual() && !content.asText().isEmpty()) {
+                        text.append(content.asText());
+                        deltaListener.accept(content.asText());
+                    }
+                }
+            }
+        }
+        if (!done) {
+            throw new ConnectionClosedException("The chat completion stream ended before it was complete");
+        }
+        return text.toString();
+    }
+}
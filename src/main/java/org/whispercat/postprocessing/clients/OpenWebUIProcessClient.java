@@ -11,19 +11,17 @@ import org.apache.http.client.methods.HttpGet;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.entity.ContentType;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.conn.ssl.NoopHostnameVerifier;
-import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
-import org.apache.http.ssl.SSLContextBuilder;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.whispercat.ConfigManager;
-import org.whispercat.Notificationmanager;
-import org.whispercat.ToastNotification;
+import org.whispercat.http.HttpClientProvider;
+import org.whispercat.http.HttpStatusException;
+import org.whispercat.http.ResilientCall;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import javax.net.ssl.SSLContext;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 /**
  * OpenWebUIClient processes text requests, fetches available models and transcribes audio files
@@ -33,6 +31,7 @@ import javax.net.ssl.SSLContext;
  */
 public class OpenWebUIProcessClient {
     private static final Logger logger = LogManager.getLogger(OpenWebUIProcessClient.class);
+    private static final String ENDPOINT = "Open WebUI";
 
     private final ConfigManager configManager;
 
@@ -40,24 +39,6 @@ public class OpenWebUIProcessClient {
         this.configManager = configManager;
     }
 
-    /**
-     * Creates an HttpClient which ignores SSL certificate validation.
-     *
-     * @return a CloseableHttpClient instance with an all-trusting SSLContext.
-     * @throws IOException if an error occurs while creating the SSL context.
-     */
-    private CloseableHttpClient createHttpClient() throws IOException {
-        try {
-            SSLContext sslContext = SSLContextBuilder.create()
-                    .loadTrustMaterial(null, (chain, authType) -> true)
-                    .build();
-            SSLConnectionSocketFactory csf = new SSLConnectionSocketFactory(sslContext, NoopHostnameVerifier.INSTANCE);
-            return HttpClients.custom().setSSLSocketFactory(csf).build();
-        } catch (Exception e) {
-            throw new IOException(e);
-        }
-    }
-
     /**
      * Processes the transcript using the provided system prompt, user prompt, and model.
      * This method sends an HTTP POST request to the API and returns the generated text.
@@ -71,72 +52,125 @@ public class OpenWebUIProcessClient {
      * @param userPrompt   the user prompt.
      * @param model        the model identifier.
      * @return the processed text returned by the API.
-     * @throws IOException if an error occurs during the API call.
+     * @throws IOException if an error occurs during the API call, after transient errors were retried.
      */
     public String processText(String systemPrompt, String userPrompt, String model) throws IOException {
-        try (CloseableHttpClient httpClient = createHttpClient()) {
-            String baseUrl = configManager.getOpenWebUIServerUrl().trim();
-            if (!baseUrl.toLowerCase().startsWith("http://") && !baseUrl.toLowerCase().startsWith("https://")) {
-                baseUrl = "https://" + baseUrl;
+        return ResilientCall.execute(ENDPOINT, configManager, () -> sendRequest(systemPrompt, userPrompt, model));
+    }
+
+    private String sendRequest(String systemPrompt, String userPrompt, String model) throws IOException {
+        CloseableHttpClient httpClient = HttpClientProvider.getTrustAllClient(configManager);
+        ObjectMapper mapper = new ObjectMapper();
+        HttpPost httpPost = createChatRequest(mapper, systemPrompt, userPrompt, model, false);
+
+        try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            HttpEntity responseEntity = response.getEntity();
+            String responseString = new String(responseEntity.getContent().readAllBytes(), StandardCharsets.UTF_8);
+            if (statusCode != 200) {
+                throw HttpStatusException.of("Error from OpenWebUI API: " + errorMessage(mapper, responseString), response);
             }
-            if (baseUrl.endsWith("/")) {
-                baseUrl = baseUrl.substring(0, baseUrl.length() - 1);
+            JsonNode jsonResponse = mapper.readTree(responseString);
+            JsonNode choices = jsonResponse.path("choices");
+            if (choices.isArray() && choices.size() > 0) {
+                JsonNode messageNode = choices.get(0).path("message");
+                return messageNode.path("content").asText();
             }
-            String url = baseUrl + "/api/chat/completions";
-            HttpPost httpPost = new HttpPost(url);
+        }
+        return "";
+    }
 
-            httpPost.setHeader("Authorization", "Bearer " + configManager.getProperty("openWebUIApiKey"));
-            httpPost.setHeader("Content-Type", "application/json");
+    /**
+     * Processes the transcript like {@link #processText(String, String, String)}, but requests a streamed
+     * completion and passes every generated piece of text to the listener as soon as it arrives.
+     *
+     * @param systemPrompt  the system prompt.
+     * @param userPrompt    the user prompt.
+     * @param model         the model identifier.
+     * @param deltaListener receives the generated text in order, called on the calling thread.
+     * @return the complete processed text.
+     * @throws IOException if an error occurs during the API call. The request is only retried as long as no
+     *                     text was passed to the listener.
+     */
+    public String processTextStreaming(String systemPrompt, String userPrompt, String model, Consumer<String> deltaListener) throws IOException {
+        AtomicBoolean received = new AtomicBoolean(false);
+        Consumer<String> trackingListener = delta -> {
+            received.set(true);
+            deltaListener.accept(delta);
+        };
+        return ResilientCall.execute(ENDPOINT, configManager,
+                () -> sendStreamingRequest(systemPrompt, userPrompt, model, trackingListener), () -> !received.get());
+    }
 
-            ObjectMapper mapper = new ObjectMapper();
-            ObjectNode payload = mapper.createObjectNode();
-            payload.put("model", model);
+    private String sendStreamingRequest(String systemPrompt, String userPrompt, String model, Consumer<String> deltaListener) throws IOException {
+        CloseableHttpClient httpClient = HttpClientProvider.getTrustAllClient(configManager);
+        ObjectMapper mapper = new ObjectMapper();
+        HttpPost httpPost = createChatRequest(mapper, systemPrompt, userPrompt, model, true);
+        httpPost.setHeader("Accept", "text/event-stream");
 
-            // Build messages array.
-            ArrayNode messages = mapper.createArrayNode();
+        try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            HttpEntity responseEntity = response.getEntity();
+            if (statusCode != 200) {
+                String responseString = new String(responseEntity.getContent().readAllBytes(), StandardCharsets.UTF_8);
+                throw HttpStatusException.of("Error from OpenWebUI API: " + errorMessage(mapper, responseString), response);
+            }
+            return ChatCompletionStream.read(responseEntity, mapper, deltaListener);
+        }
+    }
 
-            ObjectNode systemMessage = mapper.createObjectNode();
-            systemMessage.put("role", "system");
-            systemMessage.put("content", systemPrompt);
-            messages.add(systemMessage);
+    private HttpPost createChatRequest(ObjectMapper mapper, String systemPrompt, String userPrompt, String model, boolean stream) {
+        String baseUrl = configManager.getOpenWebUIServerUrl().trim();
+        if (!baseUrl.toLowerCase().startsWith("http://") && !baseUrl.toLowerCase().startsWith("https://")) {
+            baseUrl = "https://" + baseUrl;
+        }
+        if (baseUrl.endsWith("/")) {
+            baseUrl = baseUrl.substring(0, baseUrl.length() - 1);
+        }
+        String url = baseUrl + "/api/chat/completions";
+        HttpPost httpPost = new HttpPost(url);
+        httpPost.setConfig(HttpClientProvider.createRequestConfig(configManager, ENDPOINT));
 
-            ObjectNode userMessage = mapper.createObjectNode();
-            userMessage.put("role", "user");
-            userMessage.put("content", userPrompt);
-            messages.add(userMessage);
+        httpPost.setHeader("Authorization", "Bearer " + configManager.getProperty("openWebUIApiKey"));
+        httpPost.setHeader("Content-Type", "application/json");
 
-            payload.set("messages", messages);
+        StringEntity entity = new StringEntity(createPayload(mapper, systemPrompt, userPrompt, model, stream),
+                ContentType.APPLICATION_JSON);
+        httpPost.setEntity(entity);
+        return httpPost;
+    }
 
-            // Add "params" block.
-            ObjectNode paramsNode = mapper.createObjectNode();
-            paramsNode.put("system", systemPrompt);
-            payload.set("params", paramsNode);
+    /**
+     * Builds the JSON body of a chat completion request. Package-private for the benchmarks.
+     */
+    static String createPayload(ObjectMapper mapper, String systemPrompt, String userPrompt, String model, boolean stream) {
+        ObjectNode payload = mapper.createObjectNode();
+        payload.put("model", model);
+        if (stream) {
+            payload.put("stream", true);
+        }
 
-            StringEntity entity = new StringEntity(payload.toString(), ContentType.APPLICATION_JSON);
-            httpPost.setEntity(entity);
+        // Build messages array.
+        ArrayNode messages = mapper.createArrayNode();
 
-            try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
-                int statusCode = response.getStatusLine().getStatusCode();
-                HttpEntity responseEntity = response.getEntity();
-                String responseString = new String(responseEntity.getContent().readAllBytes(), StandardCharsets.UTF_8);
-                if (statusCode != 200) {
-                    JsonNode errorNode = mapper.readTree(responseString);
-                    String errorMessage = errorNode.path("error").path("message").asText();
-                    throw new IOException("Error from OpenWebUI API: " + errorMessage);
-                }
-                JsonNode jsonResponse = mapper.readTree(responseString);
-                JsonNode choices = jsonResponse.path("choices");
-                if (choices.isArray() && choices.size() > 0) {
-                    JsonNode messageNode = choices.get(0).path("message");
-                    return messageNode.path("content").asText();
-                }
-            } catch (IOException e) {
-                Notificationmanager.getInstance().showNotification(ToastNotification.Type.ERROR, "Error processing text: " + e.getMessage());
-                logger.error("Error processing text: ", e);
+        ObjectNode systemMessage = mapper.createObjectNode();
+        systemMessage.put("role", "system");
+        systemMessage.put("content", systemPrompt);
+        messages.add(systemMessage);
 
-            }
-        }
-        return "";
+        ObjectNode userMessage = mapper.createObjectNode();
+        userMessage.put("role", "user");
+        userMessage.put("content", userPrompt);
+        messages.add(userMessage);
+
+        payload.set("messages", messages);
+
+        // Add "params" block.
+        ObjectNode paramsNode = mapper.createObjectNode();
+        paramsNode.put("system", systemPrompt);
+        payload.set("params", paramsNode);
+
+        return payload.toString();
     }
 
     /**
@@ -146,32 +180,43 @@ public class OpenWebUIProcessClient {
      * @throws IOException if an error occurs during the API call.
      */
     public OpenWebUIModelsResponse fetchModels() throws IOException {
-        try (CloseableHttpClient httpClient = createHttpClient()) {
+        CloseableHttpClient httpClient = HttpClientProvider.getTrustAllClient(configManager);
 
-            String baseUrl = configManager.getOpenWebUIServerUrl().trim();
-            if (!baseUrl.toLowerCase().startsWith("http://") && !baseUrl.toLowerCase().startsWith("https://")) {
-                baseUrl = "https://" + baseUrl;
-            }
-            if (baseUrl.endsWith("/")) {
-                baseUrl = baseUrl.substring(0, baseUrl.length() - 1);
-            }
-            String url = baseUrl + "/api/models";
-            HttpGet httpGet = new HttpGet(url);
-            httpGet.setHeader("Authorization", "Bearer " + configManager.getProperty("openWebUIApiKey"));
-            httpGet.setHeader("Content-Type", "application/json");
-
-            try (CloseableHttpResponse response = httpClient.execute(httpGet)) {
-                int statusCode = response.getStatusLine().getStatusCode();
-                HttpEntity responseEntity = response.getEntity();
-                String responseString = new String(responseEntity.getContent().readAllBytes(), StandardCharsets.UTF_8);
-                ObjectMapper mapper = new ObjectMapper();
-                if (statusCode != 200) {
-                    JsonNode errorNode = mapper.readTree(responseString);
-                    String errorMessage = errorNode.path("error").path("message").asText();
-                    throw new IOException("Error from OpenWebUI API: " + errorMessage);
-                }
-                return mapper.readValue(responseString, OpenWebUIModelsResponse.class);
+        String baseUrl = configManager.getOpenWebUIServerUrl().trim();
+        if (!baseUrl.toLowerCase().startsWith("http://") && !baseUrl.toLowerCase().startsWith("https://")) {
+            baseUrl = "https://" + baseUrl;
+        }
+        if (baseUrl.endsWith("/")) {
+            baseUrl = baseUrl.substring(0, baseUrl.length() - 1);
+        }
+        String url = baseUrl + "/api/models";
+        HttpGet httpGet = new HttpGet(url);
+        httpGet.setHeader("Authorization", "Bearer " + configManager.getProperty("openWebUIApiKey"));
+        httpGet.setHeader("Content-Type", "application/json");
+
+        try (CloseableHttpResponse response = httpClient.execute(httpGet)) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            HttpEntity responseEntity = response.getEntity();
+            String responseString = new String(responseEntity.getContent().readAllBytes(), StandardCharsets.UTF_8);
+            ObjectMapper mapper = new ObjectMapper();
+            if (statusCode != 200) {
+                JsonNode errorNode = mapper.readTree(responseString);
+                String errorMessage = errorNode.path("error").path("message").asText();
+                throw new IOException("Error from OpenWebUI API: " + errorMessage);
             }
+            return mapper.readValue(responseString, OpenWebUIModelsResponse.class);
+        }
+    }
+
+    /**
+     * Returns the message of an error response. Proxies in front of the server answer with HTML, which is
+     * returned as it is.
+     */
+    private static String errorMessage(ObjectMapper mapper, String responseString) {
+        try {
+            return mapper.readTree(responseString).path("error").path("message").asText(responseString);
+        } catch (IOException e) {
+            return responseString;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,248 @@
+package org.whispercat.recording;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.whispercat.ConfigManager;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.TargetDataLine;
+
+/**
+ * Keeps the microphone line open between recordings ("always armed"), so starting a recording does not wait
+ * for the device to open and the first words are not lost.
+ * <p>
+ * While no recording is attached, the capture thread writes the audio into a circular pre-roll buffer that
+ * holds the last few hundred milliseconds. When a recording attaches, the capture thread hands it the
+ * pre-roll first and then every block it reads. The buffer is only ever touched by the capture thread, so
+ * the hand-over needs no locking beyond the short monitor around the delivery of a block.
+ */
+public final class ArmedCapture {
+    private static final Logger logger = LogManager.getLogger(ArmedCapture.class);
+    private static final ArmedCapture INSTANCE = new ArmedCapture();
+    private static final long JOIN_TIMEOUT_MS = 2000;
+    private static final long DETACH_TIMEOUT_MS = 500;
+
+    private final Object sinkLock = new Object();
+    private volatile TargetDataLine line;
+    private volatile String mixerName;
+    private volatile AudioFormat format;
+    private int preRollMillis;
+    private Thread captureThread;
+    // Guarded by sinkLock.
+    private AudioDataListener sink;
+    private AudioDataListener pendingSink;
+    private long deliveredBlocks = 0;
+    private volatile ConfigManager configManager;
+
+    private ArmedCapture() {
+        // Disarm when the microphone is unplugged and arm again when it comes back.
+        AudioDeviceRegistry.getInstance().addDeviceListener(() -> {
+            ConfigManager lastConfigManager = configManager;
+            if (lastConfigManager != null) {
+                update(lastConfigManager);
+            }
+        });
+    }
+
+    public static ArmedCapture getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Opens, reopens or closes the line according to the settings. Blocks while the line is being opened,
+     * so it should not be called on the event dispatch thread.
+     */
+    public synchronized void update(ConfigManager configManager) {
+        this.configManager = configManager;
+        String selectedMicrophone = configManager.getProperty("selectedMicrophone");
+        // Armed in the format recordings capture in, see AudioRecorder.
+        AudioFormat selectedFormat = AudioDeviceRegistry.getInstance().getCaptureFormat(selectedMicrophone,
+                configManager.getAudioFormat(), configManager.isResamplingEnabled());
+        int selectedPreRollMillis = configManager.getPreRollMillis();
+        boolean enabled = configManager.isArmedCaptureEnabled()
+                && AudioDeviceRegistry.getInstance().findMixerInfo(selectedMicrophone) != null;
+        if (enabled && isArmedFor(selectedMicrophone, selectedFormat) && selectedPreRollMillis == preRollMillis) {
+            return;
+        }
+        disarm();
+        if (enabled) {
+            arm(selectedMicrophone, selectedFormat, selectedPreRollMillis);
+        }
+    }
+
+    /**
+     * Closes the line. A recording which is still attached receives no further audio.
+     */
+    public synchronized void disarm() {
+        TargetDataLine currentLine = line;
+        if (currentLine == null) {
+            return;
+        }
+        line = null;
+        AudioDeviceRegistry.getInstance().closeLine(currentLine);
+        try {
+            captureThread.join(JOIN_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        captureThread = null;
+        logger.info("Microphone disarmed");
+    }
+
+    /**
+     * Returns whether the line of the given microphone is open in the given format.
+     */
+    public boolean isArmedFor(String microphone, AudioFormat audioFormat) {
+        return line != null && microphone != null && microphone.equals(mixerName) && audioFormat.matches(format);
+    }
+
+    /**
+     * Starts delivering audio to the listener on the capture thread: first the pre-roll, then every block read
+     * from the line until {@link #detach(AudioDataListener)} is called.
+     */
+    public void attach(AudioDataListener listener) {
+        synchronized (sinkLock) {
+            pendingSink = listener;
+        }
+    }
+
+    /**
+     * Stops delivering audio to the listener. The block being read holds what was said up to now, so this
+     * waits until it has been delivered, like a line which is drained when a recording stops.
+     */
+    public void detach(AudioDataListener listener) {
+        synchronized (sinkLock) {
+            if (pendingSink == listener) {
+                pendingSink = null;
+            }
+            long deliveredBefore = deliveredBlocks;
+            long deadline = System.currentTimeMillis() + DETACH_TIMEOUT_MS;
+            try {
+                while (sink == listener && deliveredBlocks == deliveredBefore && line != null) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        logger.warn("The last block of the armed microphone was not delivered in time");
+                        break;
+                    }
+                    sinkLock.wait(remaining);
+                }
+            } catch (InterruptedException e) {
+                // Cancelled, the rest of the audio is not needed.
+                Thread.currentThread().interrupt();
+            }
+            if (sink == listener) {
+                sink = null;
+            }
+        }
+    }
+
+    private void arm(String microphone, AudioFormat audioFormat, int preRoll) {
+        try {
+            long start = System.currentTimeMillis();
+            TargetDataLine newLine = AudioDeviceRegistry.getInstance().acquireLine(microphone, audioFormat);
+            line = newLine;
+            mixerName = microphone;
+            format = audioFormat;
+            preRollMillis = preRoll;
+            captureThread = new Thread(() -> capture(newLine, audioFormat, preRoll), "armed-capture");
+            captureThread.setDaemon(true);
+            captureThread.start();
+            logger.info("Microphone {} armed in {} ms with {} ms pre-roll", microphone,
+                    System.currentTimeMillis() - start, preRoll);
+        } catch (LineUnavailableException e) {
+            logger.warn("Cannot arm microphone {}", microphone, e);
+        }
+    }
+
+    private void capture(TargetDataLine capturedLine, AudioFormat audioFormat, int preRoll) {
+        int frameSize = audioFormat.getFrameSize();
+        byte[] buffer = new byte[Math.max(frameSize, (int) (audioFormat.getSampleRate() / 10) * frameSize)];
+        int preRollFrames = (int) (audioFormat.getSampleRate() * preRoll / 1000);
+        byte[] ring = new byte[preRollFrames * frameSize];
+        long written = 0;
+        while (line == capturedLine) {
+            int bytesRead = capturedLine.read(buffer, 0, buffer.length);
+            if (bytesRead <= 0) {
+                if (!capturedLine.isOpen()) {
+                    break;
+                }
+                continue;
+            }
+            synchronized (sinkLock) {
+                if (pendingSink != null) {
+                    sink = pendingSink;
+                    pendingSink = null;
+                    deliver(copyPreRoll(ring, written));
+                }
+                if (sink != null) {
+                    deliver(buffer, bytesRead);
+                    deliveredBlocks++;
+                    sinkLock.notifyAll();
+                }
+            }
+            written = writeRing(ring, written, buffer, bytesRead);
+        }
+        synchronized (sinkLock) {
+            // A recording waiting in detach() gets no further block.
+            sinkLock.notifyAll();
+        }
+        if (line == capturedLine) {
+            logger.warn("Armed microphone line was closed unexpectedly");
+            line = null;
+            AudioDeviceRegistry.getInstance().closeLine(capturedLine);
+        }
+    }
+
+    private void deliver(byte[] data) {
+        if (data.length > 0) {
+            deliver(data, data.length);
+        }
+    }
+
+    private void deliver(byte[] data, int length) {
+        try {
+            sink.onAudioData(data, 0, length);
+        } catch (RuntimeException e) {
+            // Keep the line armed for the next recording.
+            logger.error("Recording failed to process captured audio", e);
+            sink = null;
+        }
+    }
+
+    /**
+     * Returns the content of the ring in chronological order.
+     */
+    private static byte[] copyPreRoll(byte[] ring, long written) {
+        int length = (int) Math.min(written, ring.length);
+        byte[] preRoll = new byte[length];
+        if (length == 0) {
+            return preRoll;
+        }
+        int start = (int) ((written - length) % ring.length);
+        int firstPart = Math.min(length, ring.length - start);
+        System.arraycopy(ring, start, preRoll, 0, firstPart);
+        System.arraycopy(ring, 0, preRoll, firstPart, length - firstPart);
+        return preRoll;
+    }
+
+    /**
+     * Appends the data to the ring, overwriting the oldest data. Returns the new total number of bytes written.
+     */
+    private static long writeRing(byte[] ring, long written, byte[] data, int length) {
+        if (ring.length == 0) {
+            return written + length;
+        }
+        int offset = Math.max(0, length - ring.length);
+        int position = (int) ((written + offset) % ring.length);
+        int remaining = length - offset;
+        while (remaining > 0) {
+            int count = Math.min(remaining, ring.length - position);
+            System.arraycopy(data, offset, ring, position, count);
+            offset += count;
+            remaining -= count;
+            position = (position + count) % ring.length;
+        }
+        return written + length;
+    }
+}
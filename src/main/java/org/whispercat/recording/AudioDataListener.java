@@ -0,0 +1,18 @@
+package org.whispercat.recording;
+
+/**
+ * Receives raw PCM data while a recording is in progress.
+ * Implementations are called on the capture thread and must not block.
+ */
+public interface AudioDataListener {
+
+    /**
+     * Called for every block of audio data read from the microphone line.
+     * The buffer is reused by the caller, so implementations must copy what they need.
+     *
+     * @param data   the buffer holding the audio data.
+     * @param offset the offset of the first byte.
+     * @param length the number of valid bytes.
+     */
+    void onAudioData(byte[] data, int offset, int length);
+}
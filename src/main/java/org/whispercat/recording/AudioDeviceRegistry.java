@@ -0,0 +1,332 @@
+package org.whispercat.recording;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.Line;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.Mixer;
+import javax.sound.sampled.TargetDataLine;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolves microphones and hands out their lines.
+ * <p>
+ * Microphones are identified by the name stored in the settings ("name Description: description"), which
+ * starts with the mixer name. Resolved mixers and line infos are cached until the devices change. A daemon
+ * thread polls the mixer list and notifies the registered listeners when a device is added or removed.
+ * <p>
+ * A released line is stopped but kept open for a short time. If the same microphone is recorded again in the
+ * meantime, e.g. when recording is toggled quickly, the open line is reused instead of closing and reopening
+ * the device, which some drivers do not allow in quick succession. Opening a line is retried a few times for
+ * the same reason.
+ */
+public final class AudioDeviceRegistry {
+    private static final Logger logger = LogManager.getLogger(AudioDeviceRegistry.class);
+    private static final AudioDeviceRegistry INSTANCE = new AudioDeviceRegistry();
+    private static final long POLL_INTERVAL_SECONDS = 3;
+    private static final long LINGER_MILLIS = 3000;
+    private static final int OPEN_ATTEMPTS = 3;
+    private static final long OPEN_RETRY_DELAY_MILLIS = 250;
+    // Capture rates tried when the microphone does not support the target format, common native rates first.
+    private static final float[] NATIVE_SAMPLE_RATES = {48000, 44100, 32000, 24000, 22050, 16000, 96000, 8000};
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "audio-device-watcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+    private final Map<String, Mixer.Info> mixers = new ConcurrentHashMap<>();
+    private final Map<String, DataLine.Info> lineInfos = new ConcurrentHashMap<>();
+    private final Map<String, AudioFormat> captureFormats = new ConcurrentHashMap<>();
+    private volatile List<String> deviceSnapshot;
+    private volatile String[] microphones;
+    // Guarded by this.
+    private final Map<TargetDataLine, String> linesInUse = new IdentityHashMap<>();
+    private TargetDataLine idleLine;
+    private String idleLineKey;
+    private ScheduledFuture<?> idleLineClose;
+
+    private AudioDeviceRegistry() {
+        deviceSnapshot = snapshot();
+        scheduler.scheduleWithFixedDelay(this::checkDevices, POLL_INTERVAL_SECONDS, POLL_INTERVAL_SECONDS,
+                TimeUnit.SECONDS);
+    }
+
+    public static AudioDeviceRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Registers a listener which is called on the watcher thread when a device is added or removed.
+     */
+    public void addDeviceListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    public void removeDeviceListener(Runnable listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns the mixer of the microphone, or null if it is not connected.
+     */
+    public Mixer.Info findMixerInfo(String microphone) {
+        if (microphone == null) {
+            return null;
+        }
+        Mixer.Info cached = mixers.get(microphone);
+        if (cached != null) {
+            return cached;
+        }
+        for (Mixer.Info mixer : AudioSystem.getMixerInfo()) {
+            if (microphone.startsWith(mixer.getName())) {
+                mixers.put(microphone, mixer);
+                return mixer;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the names of all mixers which provide a mono or stereo capture line.
+     */
+    public String[] getMicrophones() {
+        String[] cached = microphones;
+        if (cached == null) {
+            List<String> names = new ArrayList<>();
+            for (Mixer.Info mixerInfo : AudioSystem.getMixerInfo()) {
+                if (hasCaptureLine(mixerInfo)) {
+                    names.add(mixerInfo.getName() + " Description: " + mixerInfo.getDescription());
+                } else {
+                    logger.info("Mixer does not support format: " + mixerInfo.getName());
+                }
+            }
+            cached = names.toArray(new String[0]);
+            microphones = cached;
+        }
+        return cached.clone();
+    }
+
+    /**
+     * Returns the format to capture the microphone in. This is the target format if the microphone (or the
+     * mixer of the operating system) supports it. Otherwise, if conversion is allowed, it is the first 16-bit
+     * format the microphone supports, preferring mono and common native sample rates, which the
+     * {@link Resampler} converts to the target format.
+     */
+    public AudioFormat getCaptureFormat(String microphone, AudioFormat target, boolean allowConversion) {
+        if (!allowConversion) {
+            return target;
+        }
+        String key = microphone + "|" + target;
+        AudioFormat cached = captureFormats.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        Mixer.Info mixerInfo = findMixerInfo(microphone);
+        if (mixerInfo == null) {
+            return target;
+        }
+        Mixer mixer = AudioSystem.getMixer(mixerInfo);
+        AudioFormat captureFormat = target;
+        if (!mixer.isLineSupported(new DataLine.Info(TargetDataLine.class, target))) {
+            captureFormat = findNativeFormat(mixer, target);
+            if (captureFormat == null) {
+                logger.warn("{} supports no 16-bit format, trying {}", microphone, target);
+                captureFormat = target;
+            } else {
+                logger.info("{} does not support {}, capturing {} and resampling", microphone, target, captureFormat);
+            }
+        }
+        captureFormats.put(key, captureFormat);
+        return captureFormat;
+    }
+
+    /**
+     * Returns a started capture line of the microphone, reusing a recently released one if possible.
+     *
+     * @throws LineUnavailableException if the microphone is not connected, does not support the format or
+     *                                  cannot be opened.
+     */
+    public synchronized TargetDataLine acquireLine(String microphone, AudioFormat format) throws LineUnavailableException {
+        String key = microphone + "|" + format;
+        if (idleLine != null) {
+            TargetDataLine line = idleLine;
+            boolean reusable = key.equals(idleLineKey) && line.isOpen();
+            clearIdleLine();
+            if (reusable) {
+                logger.info("Reusing open line of {}", microphone);
+                line.flush();
+                line.start();
+                linesInUse.put(line, key);
+                return line;
+            }
+            line.close();
+        }
+        Mixer.Info mixerInfo = findMixerInfo(microphone);
+        if (mixerInfo == null) {
+            throw new LineUnavailableException("Microphone not found: " + microphone);
+        }
+        Mixer mixer = AudioSystem.getMixer(mixerInfo);
+        DataLine.Info info = lineInfos.computeIfAbsent(key, k -> new DataLine.Info(TargetDataLine.class, format));
+        if (!mixer.isLineSupported(info)) {
+            throw new LineUnavailableException("Line not supported by " + microphone);
+        }
+        TargetDataLine line = (TargetDataLine) mixer.getLine(info);
+        for (int attempt = 1; ; attempt++) {
+            try {
+                line.open(format);
+                break;
+            } catch (LineUnavailableException e) {
+                if (attempt == OPEN_ATTEMPTS) {
+                    throw e;
+                }
+                logger.warn("Opening the line of {} failed, retrying", microphone);
+                try {
+                    Thread.sleep(OPEN_RETRY_DELAY_MILLIS * attempt);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+        line.start();
+        linesInUse.put(line, key);
+        return line;
+    }
+
+    /**
+     * Stops the line and keeps it open for a short time, so it can be reused.
+     */
+    public synchronized void releaseLine(TargetDataLine line) {
+        String key = linesInUse.remove(line);
+        line.stop();
+        if (key == null || !line.isOpen()) {
+            line.close();
+            return;
+        }
+        if (idleLine != null) {
+            idleLine.close();
+            clearIdleLine();
+        }
+        line.flush();
+        idleLine = line;
+        idleLineKey = key;
+        idleLineClose = scheduler.schedule(() -> closeIdleLine(line), LINGER_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Closes the line right away.
+     */
+    public synchronized void closeLine(TargetDataLine line) {
+        linesInUse.remove(line);
+        line.stop();
+        line.close();
+    }
+
+    /**
+     * Stops watching the devices and closes the idle line.
+     */
+    public synchronized void shutdown() {
+        scheduler.shutdownNow();
+        if (idleLine != null) {
+            idleLine.close();
+            clearIdleLine();
+        }
+    }
+
+    private synchronized void closeIdleLine(TargetDataLine line) {
+        if (idleLine == line) {
+            line.close();
+            clearIdleLine();
+        }
+    }
+
+    private void clearIdleLine() {
+        if (idleLineClose != null) {
+            idleLineClose.cancel(false);
+        }
+        idleLine = null;
+        idleLineKey = null;
+        idleLineClose = null;
+    }
+
+    private void checkDevices() {
+        try {
+            List<String> current = snapshot();
+            if (current.equals(deviceSnapshot)) {
+                return;
+            }
+            logger.info("Audio devices changed: {}", current);
+            deviceSnapshot = current;
+            mixers.clear();
+            lineInfos.clear();
+            captureFormats.clear();
+            microphones = null;
+            synchronized (this) {
+                if (idleLine != null) {
+                    idleLine.close();
+                    clearIdleLine();
+                }
+            }
+            for (Runnable listener : listeners) {
+                listener.run();
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Checking the audio devices failed", e);
+        }
+    }
+
+    private static List<String> snapshot() {
+        List<String> devices = new ArrayList<>();
+        for (Mixer.Info mixerInfo : AudioSystem.getMixerInfo()) {
+            devices.add(mixerInfo.getName() + " Description: " + mixerInfo.getDescription());
+        }
+        return devices;
+    }
+
+    private static AudioFormat findNativeFormat(Mixer mixer, AudioFormat target) {
+        for (float sampleRate : NATIVE_SAMPLE_RATES) {
+            for (int channels = 1; channels <= 2; channels++) {
+                for (boolean bigEndian : new boolean[]{target.isBigEndian(), !target.isBigEndian()}) {
+                    AudioFormat candidate = new AudioFormat(sampleRate, 16, channels, true, bigEndian);
+                    if (mixer.isLineSupported(new DataLine.Info(TargetDataLine.class, candidate))) {
+                        return candidate;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean hasCaptureLine(Mixer.Info mixerInfo) {
+        Mixer mixer = AudioSystem.getMixer(mixerInfo);
+        for (Line.Info lineInfo : mixer.getTargetLineInfo()) {
+            if (lineInfo instanceof DataLine.Info) {
+                for (AudioFormat format : ((DataLine.Info) lineInfo).getFormats()) {
+                    int channels = format.getChannels();
+                    if (channels == 1 || channels == 2) {
+                        logger.info("Mixer supports format: " + mixerInfo.getName()
+                                + " | Channels: " + channels
+                                + " | Sample Rate: " + format.getSampleRate());
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,67 @@
+package org.whispercat.recording;
+
+/**
+ * Allocation-free measurements on blocks of 16-bit signed PCM data.
+ */
+public final class AudioFrameAnalyzer {
+
+    private AudioFrameAnalyzer() {
+    }
+
+    /**
+     * Calculates the root mean square level of the given samples.
+     *
+     * @param data      the PCM data.
+     * @param offset    the offset of the first sample.
+     * @param length    the number of bytes to analyze.
+     * @param bigEndian whether the samples are stored big-endian.
+     * @return the level normalized to the range 0 to 1.
+     */
+    public static double rms(byte[] data, int offset, int length, boolean bigEndian) {
+        int samples = length / 2;
+        if (samples == 0) {
+            return 0;
+        }
+        long sum = 0;
+        for (int i = offset, end = offset + samples * 2; i < end; i += 2) {
+            int sample = sample(data, i, bigEndian);
+            sum += (long) sample * sample;
+        }
+        double rms = Math.sqrt((double) sum / samples);
+        return Math.min(rms / 32768.0, 1.0);
+    }
+
+    /**
+     * Calculates the fraction of adjacent sample pairs whose sign differs.
+     * Unvoiced speech such as fricatives has a low level but a high zero crossing rate.
+     *
+     * @param data      the PCM data.
+     * @param offset    the offset of the first sample.
+     * @param length    the number of bytes to analyze.
+     * @param bigEndian whether the samples are stored big-endian.
+     * @return the zero crossing rate in the range 0 to 1.
+     */
+    public static double zeroCrossingRate(byte[] data, int offset, int length, boolean bigEndian) {
+        int samples = length / 2;
+        if (samples < 2) {
+            return 0;
+        }
+        int crossings = 0;
+        boolean previousNegative = sample(data, offset, bigEndian) < 0;
+        for (int i = offset + 2, end = offset + samples * 2; i < end; i += 2) {
+            boolean negative = sample(data, i, bigEndian) < 0;
+            if (negative != previousNegative) {
+                crossings++;
+            }
+            previousNegative = negative;
+        }
+        return (double) crossings / (samples - 1);
+    }
+
+    private static int sample(byte[] data, int index, boolean bigEndian) {
+        if (bigEndian) {
+            return (data[index] << 8) | (data[index + 1] & 0xFF);
+        }
+        return (data[index + 1] << 8) | (data[index] & 0xFF);
+    }
+}
@@ -5,69 +5,197 @@ import org.apache.logging.log4j.Logger;
 import org.whispercat.ConfigManager;
 import org.whispercat.Notificationmanager;
 import org.whispercat.ToastNotification;
+import org.whispercat.metrics.Metrics;
 
 import javax.sound.sampled.*;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 public class AudioRecorder {
     private static final Logger logger = LogManager.getLogger(AudioRecorder.class);
-    private final File wavFile;
+    private static final long STOP_TIMEOUT_MS = 2000;
+    private final RecordedAudio recording;
     private final ConfigManager configManager;
-    private TargetDataLine line;
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private final CountDownLatch stopSignal = new CountDownLatch(1);
+    private volatile boolean started = false;
+    private volatile TargetDataLine line;
+    private volatile boolean stopRequested = false;
+    private AudioDataListener audioDataListener;
+    private SilenceFilter silenceFilter;
+    // Created when the recording is requested, so the time to the first audio includes opening the line.
+    private final long createdAt = System.nanoTime();
+    private boolean audioReceived = false;
 
-    public AudioRecorder(File wavFile, ConfigManager configManager) {
-        this.wavFile = wavFile;
+    /**
+     * @param wavFile   the file the recording is written to if it is kept or does not fit into memory.
+     * @param keepFile  whether the recording is written to the file and kept after transcription.
+     */
+    public AudioRecorder(File wavFile, boolean keepFile, ConfigManager configManager) {
         this.configManager = configManager;
+        this.recording = RecordedAudio.capture(wavFile, configManager.getAudioFormat(),
+                configManager.getInMemoryRecordingMaxMegabytes() * 1024L * 1024L, keepFile);
+    }
+
+    /**
+     * Registers a listener that receives the captured audio while the recording is running.
+     * Must be called before {@link #start()}.
+     */
+    public void setAudioDataListener(AudioDataListener audioDataListener) {
+        this.audioDataListener = audioDataListener;
     }
 
     public void start() {
+        started = true;
         try {
             AudioFormat format = configManager.getAudioFormat();
-            DataLine.Info info = new DataLine.Info(TargetDataLine.class, format);
-
             String selectedMicrophone = configManager.getProperty("selectedMicrophone");
-            Mixer.Info selectedMixerInfo = getMixerInfoByName(selectedMicrophone);
+            AudioFormat captureFormat = AudioDeviceRegistry.getInstance().getCaptureFormat(selectedMicrophone,
+                    format, configManager.isResamplingEnabled());
+            ArmedCapture armedCapture = ArmedCapture.getInstance();
+            if (armedCapture.isArmedFor(selectedMicrophone, captureFormat)) {
+                captureFromArmedLine(armedCapture, captureFormat, format);
+            } else {
+                captureFromLine(selectedMicrophone, captureFormat, format);
+            }
+        } catch (IOException | UncheckedIOException ex) {
+            logger.error("An error occurred during recording", ex);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            finished.countDown();
+        }
+    }
+
+    /**
+     * Records from the line which is kept open by {@link ArmedCapture}, starting with its pre-roll.
+     */
+    private void captureFromArmedLine(ArmedCapture armedCapture, AudioFormat captureFormat, AudioFormat format)
+            throws IOException, InterruptedException {
+        logger.info("Recording from the armed microphone");
+        AudioDataListener sink = createSink(captureFormat, format, "armed microphone");
+        try {
+            armedCapture.attach(sink);
+            stopSignal.await();
+        } finally {
+            armedCapture.detach(sink);
+            finishRecording();
+        }
+    }
+
+    private void captureFromLine(String selectedMicrophone, AudioFormat captureFormat, AudioFormat format)
+            throws IOException {
+        AudioDeviceRegistry registry = AudioDeviceRegistry.getInstance();
+        TargetDataLine acquiredLine;
+        try {
+            acquiredLine = registry.acquireLine(selectedMicrophone, captureFormat);
+        } catch (LineUnavailableException e) {
+            logger.warn("Microphone line not available", e);
+            Notificationmanager.getInstance().showNotification(ToastNotification.Type.WARNING, "Microphone not available. Please check that it is connected and selected in the settings.");
+            return;
+        }
+        line = acquiredLine;
+        if (stopRequested) {
+            // stop() was called while the line was still opening.
+            line = null;
+            registry.releaseLine(acquiredLine);
+            return;
+        }
 
-            Mixer mixer = AudioSystem.getMixer(selectedMixerInfo);
-            if (!mixer.isLineSupported(info)) {
-                logger.warn("Line not supported for selected mixer");
-                Notificationmanager.getInstance().showNotification(ToastNotification.Type.WARNING, "Microphone not supported. This can happen if there were too many recordings in a short time. Please restart the application.");
-                return;
+        // Read blocks of roughly 100 ms so listeners are fed continuously.
+        int frameSize = captureFormat.getFrameSize();
+        byte[] buffer = new byte[Math.max(frameSize, (int) (captureFormat.getSampleRate() / 10) * frameSize)];
+        try {
+            AudioDataListener sink = createSink(captureFormat, format, "microphone");
+            TargetDataLine currentLine;
+            while ((currentLine = line) != null) {
+                int bytesRead = currentLine.read(buffer, 0, buffer.length);
+                if (bytesRead > 0) {
+                    sink.onAudioData(buffer, 0, bytesRead);
+                } else if (!currentLine.isOpen()) {
+                    break;
+                }
             }
+        } finally {
+            registry.releaseLine(acquiredLine);
+            finishRecording();
+        }
+    }
 
-            line = (TargetDataLine) mixer.getLine(info);
-            line.open(format);
-            line.start();
+    /**
+     * Creates the listener which stores the captured audio, feeds the registered listener and, if enabled,
+     * drops silence first. Audio captured in a different format is resampled to the recording format before.
+     * The arrival of the first audio is recorded as {@link Metrics#CAPTURE_START} of the given source.
+     */
+    private AudioDataListener createSink(AudioFormat captureFormat, AudioFormat format, String source) {
+        AudioDataListener sink = (data, offset, length) -> {
+            try {
+                recording.write(data, offset, length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (audioDataListener != null) {
+                audioDataListener.onAudioData(data, offset, length);
+            }
+        };
+        if (configManager.isVoiceActivityDetectionEnabled()) {
+            silenceFilter = new SilenceFilter(format, configManager.getVoiceActivityThreshold(),
+                    configManager.getMaxSilenceMillis(), sink);
+            sink = silenceFilter;
+        }
+        if (!captureFormat.matches(format)) {
+            logger.info("Resampling {} to {}", captureFormat, format);
+            sink = new Resampler(captureFormat, Math.round(format.getSampleRate()), sink);
+        }
+        AudioDataListener filteredSink = sink;
+        return (data, offset, length) -> {
+            if (!audioReceived) {
+                audioReceived = true;
+                Metrics.getInstance().recordSince(Metrics.CAPTURE_START, source, null, createdAt);
+            }
+            filteredSink.onAudioData(data, offset, length);
+        };
+    }
 
-            AudioInputStream ais = new AudioInputStream(line);
-            AudioSystem.write(ais, AudioFileFormat.Type.WAVE, wavFile);
-        } catch (LineUnavailableException | IOException ex) {
-            logger.error("An error occurred during recording", ex);
+    private void finishRecording() throws IOException {
+        if (silenceFilter != null) {
+            logger.info("Voice activity detection dropped {} ms of silence", silenceFilter.getDroppedMillis());
         }
+        recording.finish();
     }
 
+    /**
+     * Stops the recording and waits until the captured audio has been written completely.
+     */
     public void stop() {
-        if (line != null) {
+        stopRequested = true;
+        stopSignal.countDown();
+        TargetDataLine currentLine = line;
+        if (currentLine != null) {
             logger.info("Stopping Line.");
-            line.stop();
-            line.close();
             line = null;
-            logger.info("Line closed.");
+            // Unblocks the capture thread, which hands the line back to the registry.
+            currentLine.stop();
+            logger.info("Line stopped.");
         }
-    }
-
-    private Mixer.Info getMixerInfoByName(String name) {
-        Mixer.Info[] mixers = AudioSystem.getMixerInfo();
-        for (Mixer.Info mixer : mixers) {
-            if (name.startsWith(mixer.getName())) {
-                return mixer;
+        if (started) {
+            try {
+                if (!finished.await(STOP_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    logger.warn("Recording thread did not finish within {} ms", STOP_TIMEOUT_MS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
         }
-        return null;
     }
 
-    public File getOutputFile() {
-        return wavFile;
+    /**
+     * Returns the captured audio. Complete once {@link #stop()} has returned.
+     */
+    public RecordedAudio getRecording() {
+        return recording;
     }
-}
\ No newline at end of file
+}
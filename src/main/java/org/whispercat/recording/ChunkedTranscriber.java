@@ -0,0 +1,209 @@
+package org.whispercat.recording;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Cuts the audio of a running recording into overlapping segments and transcribes every finished
+ * segment in the background. When the recording stops only the last segment is still pending,
+ * so the waiting time no longer grows with the length of the dictation.
+ * The partial transcripts are stitched together by removing the words repeated in the overlap.
+ */
+public class ChunkedTranscriber implements AudioDataListener {
+    private static final Logger logger = LogManager.getLogger(ChunkedTranscriber.class);
+    private static final Pattern WORD_PATTERN = Pattern.compile("\\S+");
+    private static final int MAX_OVERLAP_WORDS = 12;
+    private static final int TRANSCRIPTION_THREADS = 2;
+
+    private final TranscriptionService transcriptionService;
+    private final AudioFormat format;
+    private final Consumer<String> partialTranscriptListener;
+    private final byte[] segmentBuffer;
+    private final int overlapBytes;
+    private final ExecutorService executor;
+    private final List<CompletableFuture<String>> segments = new ArrayList<>();
+    private final String namePrefix;
+    private int filled = 0;
+    private int stitchedSegments = 0;
+    private String stitchedTranscript = "";
+
+    /**
+     * @param transcriptionService      the service used to transcribe each segment.
+     * @param format                    the format of the captured PCM data.
+     * @param segmentSeconds            the length of a segment in seconds.
+     * @param overlapSeconds            the overlap between two consecutive segments in seconds.
+     * @param partialTranscriptListener receives the stitched transcript whenever it grows, may be null.
+     */
+    public ChunkedTranscriber(TranscriptionService transcriptionService, AudioFormat format, int segmentSeconds,
+                              int overlapSeconds, Consumer<String> partialTranscriptListener) {
+        this.transcriptionService = transcriptionService;
+        this.format = format;
+        this.partialTranscriptListener = partialTranscriptListener;
+        int bytesPerSecond = (int) format.getSampleRate() * format.getFrameSize();
+        this.segmentBuffer = new byte[bytesPerSecond * segmentSeconds];
+        this.overlapBytes = Math.min(bytesPerSecond * overlapSeconds, segmentBuffer.length / 2) / format.getFrameSize() * format.getFrameSize();
+        this.namePrefix = "segment_" + System.currentTimeMillis() + "_";
+        this.executor = Executors.newFixedThreadPool(TRANSCRIPTION_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "chunked-transcription");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public synchronized void onAudioData(byte[] data, int offset, int length) {
+        while (length > 0) {
+            int count = Math.min(length, segmentBuffer.length - filled);
+            System.arraycopy(data, offset, segmentBuffer, filled, count);
+            filled += count;
+            offset += count;
+            length -= count;
+            if (filled == segmentBuffer.length) {
+                submitSegment(filled);
+                System.arraycopy(segmentBuffer, filled - overlapBytes, segmentBuffer, 0, overlapBytes);
+                filled = overlapBytes;
+            }
+        }
+    }
+
+    /**
+     * Submits the remaining audio and waits until all segments are transcribed.
+     *
+     * @return the stitched transcript of the whole recording.
+     * @throws IOException if one of the segments could not be transcribed.
+     */
+    public String finish() throws IOException {
+        List<CompletableFuture<String>> pending;
+        synchronized (this) {
+            // After the first segment, the buffer starts with the overlap, which was transcribed already. Any
+            // audio after it is submitted, however short, as it may hold the last word of the dictation.
+            if (filled > (segments.isEmpty() ? 0 : overlapBytes)) {
+                submitSegment(filled);
+            }
+            filled = 0;
+            pending = new ArrayList<>(segments);
+        }
+        try {
+            for (CompletableFuture<String> segment : pending) {
+                segment.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for segment transcription", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Segment transcription failed", e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+        // The callbacks of the last segments may not have run yet when get() returns.
+        stitchCompletedSegments();
+        synchronized (this) {
+            if (stitchedSegments < pending.size()) {
+                throw new IOException("Only " + stitchedSegments + " of " + pending.size() + " segments could be stitched");
+            }
+            return stitchedTranscript;
+        }
+    }
+
+    /**
+     * Cancels all pending segment transcriptions.
+     */
+    public void cancel() {
+        synchronized (this) {
+            segments.forEach(segment -> segment.cancel(true));
+        }
+        executor.shutdownNow();
+    }
+
+    private void submitSegment(int length) {
+        int index = segments.size();
+        // The segment is copied into pooled buffers, as the segment buffer is reused for the next segment.
+        RecordedAudio segmentAudio = RecordedAudio.ofPcm(namePrefix + index + ".wav", format, segmentBuffer, 0, length);
+        logger.info("Submitting audio segment {} ({} bytes) for transcription", index, length);
+        CompletableFuture<String> segment = CompletableFuture.supplyAsync(() -> {
+            try {
+                return transcriptionService.transcribe(segmentAudio);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            } finally {
+                segmentAudio.close();
+            }
+        }, executor);
+        segments.add(segment);
+        segment.thenRun(this::stitchCompletedSegments);
+    }
+
+    private void stitchCompletedSegments() {
+        String partial;
+        synchronized (this) {
+            int before = stitchedSegments;
+            while (stitchedSegments < segments.size() && segments.get(stitchedSegments).isDone()
+                    && !segments.get(stitchedSegments).isCompletedExceptionally()) {
+                String text = segments.get(stitchedSegments).join();
+                stitchedTranscript = stitch(stitchedTranscript, text);
+                stitchedSegments++;
+            }
+            if (before == stitchedSegments) {
+                return;
+            }
+            partial = stitchedTranscript;
+        }
+        if (partialTranscriptListener != null) {
+            partialTranscriptListener.accept(partial);
+        }
+    }
+
+    /**
+     * Appends the next transcript to the previous one, dropping the longest run of words at the
+     * start of the next transcript that repeats the end of the previous transcript.
+     */
+    static String stitch(String previous, String next) {
+        if (next == null || next.trim().isEmpty()) {
+            return previous;
+        }
+        if (previous == null || previous.trim().isEmpty()) {
+            return next.trim();
+        }
+        List<String> previousWords = new ArrayList<>();
+        Matcher previousMatcher = WORD_PATTERN.matcher(previous);
+        while (previousMatcher.find()) {
+            previousWords.add(normalize(previousMatcher.group()));
+        }
+        List<String> nextWords = new ArrayList<>();
+        List<Integer> nextWordEnds = new ArrayList<>();
+        Matcher nextMatcher = WORD_PATTERN.matcher(next);
+        while (nextMatcher.find()) {
+            nextWords.add(normalize(nextMatcher.group()));
+            nextWordEnds.add(nextMatcher.end());
+        }
+        int maxOverlap = Math.min(MAX_OVERLAP_WORDS, Math.min(previousWords.size(), nextWords.size()));
+        for (int overlap = maxOverlap; overlap > 0; overlap--) {
+            boolean matches = true;
+            for (int i = 0; i < overlap && matches; i++) {
+                String previousWord = previousWords.get(previousWords.size() - overlap + i);
+                matches = !previousWord.isEmpty() && previousWord.equals(nextWords.get(i));
+            }
+            if (matches) {
+                String remainder = next.substring(nextWordEnds.get(overlap - 1)).trim();
+                return remainder.isEmpty() ? previous.trim() : previous.trim() + " " + remainder;
+            }
+        }
+        return previous.trim() + " " + next.trim();
+    }
+
+    private static String normalize(String word) {
+        return word.toLowerCase().replaceAll("[^\\p{L}\\p{N}]", "");
+    }
+}
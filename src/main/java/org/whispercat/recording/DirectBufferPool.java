@@ -0,0 +1,38 @@
+package org.whispercat.recording;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Pool of fixed-size direct buffers for captured audio.
+ * Recordings hold their PCM data in these blocks instead of temporary files. Released blocks are kept for the
+ * next recording up to a limit, so dictating repeatedly does not allocate new direct memory every time.
+ */
+final class DirectBufferPool {
+    static final int BLOCK_SIZE = 64 * 1024;
+    private static final int MAX_POOLED_BLOCKS = 128;
+    private static final BlockingQueue<ByteBuffer> FREE_BLOCKS = new ArrayBlockingQueue<>(MAX_POOLED_BLOCKS);
+
+    private DirectBufferPool() {
+    }
+
+    /**
+     * Returns an empty block, from the pool if possible.
+     */
+    static ByteBuffer acquire() {
+        ByteBuffer block = FREE_BLOCKS.poll();
+        if (block == null) {
+            return ByteBuffer.allocateDirect(BLOCK_SIZE);
+        }
+        block.clear();
+        return block;
+    }
+
+    /**
+     * Returns the block to the pool. If the pool is full, the block is left to the garbage collector.
+     */
+    static void release(ByteBuffer block) {
+        FREE_BLOCKS.offer(block);
+    }
+}
@@ -0,0 +1,47 @@
+package org.whispercat.recording;
+
+import java.util.Arrays;
+
+/**
+ * Remembers the durations of the latest successful requests to one server and returns their percentiles.
+ * Used to decide when a hedged request is sent, see {@link TranscriptionService}. Thread-safe.
+ */
+class LatencyTracker {
+    private final long[] samples;
+    private int count = 0;
+    private int next = 0;
+
+    /**
+     * @param capacity how many of the latest durations are kept.
+     */
+    LatencyTracker(int capacity) {
+        this.samples = new long[capacity];
+    }
+
+    synchronized void record(long millis) {
+        samples[next] = millis;
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+    }
+
+    synchronized int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the duration the given fraction of the kept requests completed within, or -1 if none was
+     * recorded.
+     *
+     * @param percentile between 0 and 100.
+     */
+    synchronized long getPercentile(double percentile) {
+        if (count == 0) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        // Nearest rank.
+        int rank = (int) Math.ceil(percentile / 100.0 * count);
+        return sorted[Math.max(0, Math.min(count - 1, rank - 1))];
+    }
+}
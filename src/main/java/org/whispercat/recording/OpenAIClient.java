@@ -10,15 +10,21 @@ import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.entity.ContentType;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 import org.whispercat.ConfigManager;
+import org.whispercat.http.HttpClientProvider;
+import org.whispercat.http.HttpStatusException;
+import org.whispercat.http.ResilientCall;
+import org.whispercat.postprocessing.clients.ChatCompletionStream;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 public class OpenAIClient {
 
-    private static final String API_URL = "https://api.openai.com/v1/chat/completions";
+    private static final String API_PATH = "/v1/chat/completions";
+    private static final String ENDPOINT = "OpenAI";
     private final ConfigManager configManager;
 
     public OpenAIClient(ConfigManager configManager) {
@@ -33,62 +39,129 @@ public class OpenAIClient {
      * @param userPrompt   the user prompt.
      * @param model        the model identifier (e.g., "gpt-4" or "o3-mini").
      * @return the processed text returned by the API.
-     * @throws IOException if an error occurs during the API call.
+     * @throws IOException if an error occurs during the API call, after transient errors were retried.
      */
     public String processText(String systemPrompt, String userPrompt, String model) throws IOException {
-        try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
-            HttpPost httpPost = new HttpPost(API_URL);
-            httpPost.setHeader("Authorization", "Bearer " + configManager.getApiKey());
-            httpPost.setHeader("Content-Type", "application/json");
-
-            // Build the JSON payload using Jackson.
-            ObjectMapper mapper = new ObjectMapper();
-            ObjectNode payload = mapper.createObjectNode();
-            payload.put("model", model);
-
-            // Build messages array:
-            ArrayNode messages = mapper.createArrayNode();
-
-            // System message.
-            ObjectNode systemMessage = mapper.createObjectNode();
-            systemMessage.put("role", "system");
-            systemMessage.put("content", systemPrompt);
-            messages.add(systemMessage);
-
-            // User message. We append the transcript to the user prompt.
-            ObjectNode userMessage = mapper.createObjectNode();
-            userMessage.put("role", "user");
-            userMessage.put("content", userPrompt);
-            messages.add(userMessage);
-
-            payload.set("messages", messages);
-
-            // Convert payload to JSON string.
-            StringEntity entity = new StringEntity(payload.toString(), ContentType.APPLICATION_JSON);
-            httpPost.setEntity(entity);
-
-            try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
-                int statusCode = response.getStatusLine().getStatusCode();
-                HttpEntity responseEntity = response.getEntity();
-                String responseString = new String(responseEntity.getContent().readAllBytes(), StandardCharsets.UTF_8);
+        return ResilientCall.execute(ENDPOINT, configManager, () -> sendRequest(systemPrompt, userPrompt, model));
+    }
+
+    private String sendRequest(String systemPrompt, String userPrompt, String model) throws IOException {
+        CloseableHttpClient httpClient = HttpClientProvider.getDefaultClient(configManager);
+        ObjectMapper mapper = new ObjectMapper();
+        HttpPost httpPost = createChatRequest(mapper, systemPrompt, userPrompt, model, false);
 
-                if (statusCode != 200) {
-                    // Parse error message from response.
-                    JsonNode errorNode = mapper.readTree(responseString);
-                    String errorMessage = errorNode.path("error").path("message").asText();
-                    throw new IOException("Error from OpenAI API: " + errorMessage);
-                }
-
-                // Parse the successful response to get the completion text.
-                JsonNode jsonResponse = mapper.readTree(responseString);
-                // The response should include a "choices" array with at least one element.
-                JsonNode choices = jsonResponse.path("choices");
-                if (choices.isArray() && choices.size() > 0) {
-                    JsonNode messageNode = choices.get(0).path("message");
-                    return messageNode.path("content").asText();
-                }
+        try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            HttpEntity responseEntity = response.getEntity();
+            String responseString = new String(responseEntity.getContent().readAllBytes(), StandardCharsets.UTF_8);
+
+            if (statusCode != 200) {
+                throw HttpStatusException.of("Error from OpenAI API: " + errorMessage(mapper, responseString), response);
+            }
+
+            // Parse the successful response to get the completion text.
+            JsonNode jsonResponse = mapper.readTree(responseString);
+            // The response should include a "choices" array with at least one element.
+            JsonNode choices = jsonResponse.path("choices");
+            if (choices.isArray() && choices.size() > 0) {
+                JsonNode messageNode = choices.get(0).path("message");
+                return messageNode.path("content").asText();
             }
         }
         return "";
     }
-}
\ No newline at end of file
+
+    /**
+     * Processes the transcript like {@link #processText(String, String, String)}, but requests a streamed
+     * completion and passes every generated piece of text to the listener as soon as it arrives.
+     *
+     * @param systemPrompt  the system prompt.
+     * @param userPrompt    the user prompt.
+     * @param model         the model identifier.
+     * @param deltaListener receives the generated text in order, called on the calling thread.
+     * @return the complete processed text.
+     * @throws IOException if an error occurs during the API call. The request is only retried as long as no
+     *                     text was passed to the listener.
+     */
+    public String processTextStreaming(String systemPrompt, String userPrompt, String model, Consumer<String> deltaListener) throws IOException {
+        AtomicBoolean received = new AtomicBoolean(false);
+        Consumer<String> trackingListener = delta -> {
+            received.set(true);
+            deltaListener.accept(delta);
+        };
+        return ResilientCall.execute(ENDPOINT, configManager,
+                () -> sendStreamingRequest(systemPrompt, userPrompt, model, trackingListener), () -> !received.get());
+    }
+
+    private String sendStreamingRequest(String systemPrompt, String userPrompt, String model, Consumer<String> deltaListener) throws IOException {
+        CloseableHttpClient httpClient = HttpClientProvider.getDefaultClient(configManager);
+        ObjectMapper mapper = new ObjectMapper();
+        HttpPost httpPost = createChatRequest(mapper, systemPrompt, userPrompt, model, true);
+        httpPost.setHeader("Accept", "text/event-stream");
+
+        try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            HttpEntity responseEntity = response.getEntity();
+            if (statusCode != 200) {
+                String responseString = new String(responseEntity.getContent().readAllBytes(), StandardCharsets.UTF_8);
+                throw HttpStatusException.of("Error from OpenAI API: " + errorMessage(mapper, responseString), response);
+            }
+            return ChatCompletionStream.read(responseEntity, mapper, deltaListener);
+        }
+    }
+
+    private HttpPost createChatRequest(ObjectMapper mapper, String systemPrompt, String userPrompt, String model, boolean stream) {
+        HttpPost httpPost = new HttpPost(configManager.getOpenAIBaseUrl() + API_PATH);
+        httpPost.setConfig(HttpClientProvider.createRequestConfig(configManager, ENDPOINT));
+        httpPost.setHeader("Authorization", "Bearer " + configManager.getApiKey());
+        httpPost.setHeader("Content-Type", "application/json");
+
+        StringEntity entity = new StringEntity(createPayload(mapper, systemPrompt, userPrompt, model, stream),
+                ContentType.APPLICATION_JSON);
+        httpPost.setEntity(entity);
+        return httpPost;
+    }
+
+    /**
+     * Builds the JSON body of a chat completion request. Package-private for the benchmarks.
+     */
+    static String createPayload(ObjectMapper mapper, String systemPrompt, String userPrompt, String model, boolean stream) {
+        // Build the JSON payload using Jackson.
+        ObjectNode payload = mapper.createObjectNode();
+        payload.put("model", model);
+        if (stream) {
+            payload.put("stream", true);
+        }
+
+        // Build messages array:
+        ArrayNode messages = mapper.createArrayNode();
+
+        // System message.
+        ObjectNode systemMessage = mapper.createObjectNode();
+        systemMessage.put("role", "system");
+        systemMessage.put("content", systemPrompt);
+        messages.add(systemMessage);
+
+        // User message. We append the transcript to the user prompt.
+        ObjectNode userMessage = mapper.createObjectNode();
+        userMessage.put("role", "user");
+        userMessage.put("content", userPrompt);
+        messages.add(userMessage);
+
+        payload.set("messages", messages);
+
+        return payload.toString();
+    }
+
+    /**
+     * Returns the message of an error response. Gateways in front of the API answer with HTML, which is
+     * returned as it is.
+     */
+    private static String errorMessage(ObjectMapper mapper, String responseString) {
+        try {
+            return mapper.readTree(responseString).path("error").path("message").asText(responseString);
+        } catch (IOException e) {
+            return responseString;
+        }
+    }
+}
@@ -0,0 +1,357 @@
+package org.whispercat.recording;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Audio to be transcribed, either held in memory or stored in a WAV file.
+ * <p>
+ * A captured recording keeps its PCM data in pooled direct buffers (see {@link DirectBufferPool}) and is
+ * uploaded straight from there. It is only written to its file if it grows beyond the memory limit or if the
+ * file is to be kept. Big-endian 16-bit input is stored little-endian, as in a WAV file, so the data can be
+ * sent with a WAV header in front without any conversion.
+ * <p>
+ * The capture thread writes the data, everything else may only read it after {@link #finish()}.
+ * {@link #close()} releases the buffers and deletes the file unless it was kept or supplied by the user.
+ * Buffers still read by an open stream, e.g. an upload whose request was abandoned but not yet aborted, are
+ * only returned to the pool when the last stream is closed, so the next recording cannot overwrite them.
+ */
+public final class RecordedAudio implements Closeable {
+    private static final Logger logger = LogManager.getLogger(RecordedAudio.class);
+    private static final int COPY_BUFFER_SIZE = 16 * 1024;
+
+    private final String name;
+    private final AudioFormat format;
+    private final boolean swapBytes;
+    private final File file;
+    private final long maxMemoryBytes;
+    private final boolean deleteFileOnClose;
+    private final List<ByteBuffer> blocks = new ArrayList<>();
+    private WavWriter writer;
+    private byte[] scratch = new byte[0];
+    private boolean onDisk;
+    private long dataLength = 0;
+    // Guarded by this.
+    private int openStreams = 0;
+    private boolean closed = false;
+
+    private RecordedAudio(String name, AudioFormat sourceFormat, File file, long maxMemoryBytes,
+                          boolean deleteFileOnClose, boolean onDisk) {
+        this.name = name;
+        this.swapBytes = sourceFormat != null && sourceFormat.isBigEndian() && sourceFormat.getSampleSizeInBits() == 16;
+        this.format = swapBytes
+                ? new AudioFormat(sourceFormat.getEncoding(), sourceFormat.getSampleRate(), 16,
+                sourceFormat.getChannels(), sourceFormat.getFrameSize(), sourceFormat.getFrameRate(), false)
+                : sourceFormat;
+        this.file = file;
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.deleteFileOnClose = deleteFileOnClose;
+        this.onDisk = onDisk;
+    }
+
+    /**
+     * Creates an empty recording for the capture thread.
+     *
+     * @param file           the file the recording is written to if it has to go to disk.
+     * @param format         the format of the captured data.
+     * @param maxMemoryBytes the size up to which the data is kept in memory.
+     * @param keepFile       whether the recording is always written to the file and kept after closing.
+     */
+    public static RecordedAudio capture(File file, AudioFormat format, long maxMemoryBytes, boolean keepFile) {
+        return new RecordedAudio(file.getName(), format, file, keepFile ? 0 : maxMemoryBytes, !keepFile, false);
+    }
+
+    /**
+     * Wraps an existing audio file, e.g. one dropped by the user. The file is never deleted.
+     * Its content is not inspected, so it may be in any format the transcription servers accept.
+     */
+    public static RecordedAudio ofFile(File file) {
+        return new RecordedAudio(file.getName(), null, file, 0, false, true);
+    }
+
+    /**
+     * Creates an in-memory recording from a block of PCM data.
+     */
+    public static RecordedAudio ofPcm(String name, AudioFormat format, byte[] data, int offset, int length) {
+        RecordedAudio audio = new RecordedAudio(name, format, null, Long.MAX_VALUE, false, false);
+        audio.appendToMemory(data, offset, length);
+        return audio;
+    }
+
+    /**
+     * Appends captured PCM data. Called by the capture thread only.
+     */
+    public void write(byte[] data, int offset, int length) throws IOException {
+        if (swapBytes) {
+            length &= ~1;
+        }
+        if (!onDisk && dataLength + length > maxMemoryBytes) {
+            spill();
+        }
+        if (onDisk) {
+            if (swapBytes) {
+                // The writer expects the stored little-endian format.
+                if (scratch.length < length) {
+                    scratch = new byte[length];
+                }
+                for (int i = 0; i < length; i += 2) {
+                    scratch[i] = data[offset + i + 1];
+                    scratch[i + 1] = data[offset + i];
+                }
+                writer.write(scratch, 0, length);
+            } else {
+                writer.write(data, offset, length);
+            }
+            dataLength += length;
+        } else {
+            appendToMemory(data, offset, length);
+        }
+    }
+
+    /**
+     * Completes the recording. Must be called by the capture thread after the last {@link #write}.
+     */
+    public void finish() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the format of the data, which is little-endian for 16-bit samples, or null for a supplied file.
+     */
+    public AudioFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Returns whether the data is held in memory. Otherwise it is in {@link #getFile()}.
+     */
+    public boolean isInMemory() {
+        return !onDisk;
+    }
+
+    /**
+     * Returns the file holding the audio, or null if it is held in memory.
+     */
+    public File getFile() {
+        return onDisk ? file : null;
+    }
+
+    /**
+     * Returns whether the audio is lost when it is closed, i.e. it is a capture which is not kept.
+     */
+    public boolean isTemporary() {
+        return deleteFileOnClose;
+    }
+
+    /**
+     * Returns the length of the PCM data. Unknown (0) for a supplied file.
+     */
+    public long getDataLength() {
+        return dataLength;
+    }
+
+    /**
+     * Returns the length of the data as WAV file including the header.
+     */
+    public long getWavLength() {
+        return onDisk ? file.length() : WavWriter.HEADER_SIZE + dataLength;
+    }
+
+    /**
+     * Opens the raw PCM data of audio held in memory. The stream must be closed, otherwise the buffers are
+     * never returned to the pool.
+     *
+     * @throws IOException if the audio is closed already.
+     */
+    public synchronized InputStream openPcmStream() throws IOException {
+        if (closed) {
+            throw new IOException("Recording " + name + " is closed");
+        }
+        List<ByteBuffer> views = new ArrayList<>(blocks.size());
+        for (ByteBuffer block : blocks) {
+            views.add(block.duplicate().flip());
+        }
+        openStreams++;
+        return new BlockInputStream(views, this::streamClosed);
+    }
+
+    /**
+     * Opens the audio as WAV file, either the file on disk or a header followed by the data in memory.
+     */
+    public InputStream openWavStream() throws IOException {
+        if (onDisk) {
+            return new BufferedInputStream(new FileInputStream(file));
+        }
+        return new SequenceInputStream(new ByteArrayInputStream(WavWriter.createHeader(format, dataLength)),
+                openPcmStream());
+    }
+
+    /**
+     * Writes the audio as WAV file to the stream.
+     */
+    public void writeWavTo(OutputStream output) throws IOException {
+        try (InputStream input = openWavStream()) {
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+        }
+    }
+
+    /**
+     * Returns the buffers to the pool, once no stream reads them any more, and deletes the temporary file, if any.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (openStreams == 0) {
+            releaseBlocks();
+        } else {
+            logger.debug("Recording {} is closed while {} streams are open, keeping its buffers", name, openStreams);
+        }
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                logger.warn("Could not close {}", file, e);
+            }
+            writer = null;
+        }
+        if (onDisk && deleteFileOnClose && file.exists() && !file.delete()) {
+            logger.warn("Could not delete recording {}", file);
+        }
+    }
+
+    private void appendToMemory(byte[] data, int offset, int length) {
+        int end = offset + length;
+        while (offset < end) {
+            ByteBuffer block = blocks.isEmpty() ? null : blocks.get(blocks.size() - 1);
+            if (block == null || !block.hasRemaining()) {
+                block = DirectBufferPool.acquire();
+                blocks.add(block);
+            }
+            int count = Math.min(end - offset, block.remaining());
+            if (swapBytes) {
+                // The block size is even and the data is a sequence of whole samples, so no sample is split.
+                for (int i = offset; i + 1 < offset + count; i += 2) {
+                    block.put(data[i + 1]).put(data[i]);
+                }
+            } else {
+                block.put(data, offset, count);
+            }
+            offset += count;
+            dataLength += count;
+        }
+    }
+
+    private void spill() throws IOException {
+        if (maxMemoryBytes > 0) {
+            logger.info("Recording {} exceeds {} bytes in memory, writing it to {}", name, maxMemoryBytes, file);
+        }
+        writer = new WavWriter(file, format);
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        try (InputStream pcm = openPcmStream()) {
+            int read;
+            while ((read = pcm.read(buffer)) != -1) {
+                writer.write(buffer, 0, read);
+            }
+        }
+        releaseBlocks();
+        onDisk = true;
+    }
+
+    private synchronized void streamClosed() {
+        openStreams--;
+        if (closed && openStreams == 0) {
+            releaseBlocks();
+        }
+    }
+
+    private void releaseBlocks() {
+        for (ByteBuffer block : blocks) {
+            DirectBufferPool.release(block);
+        }
+        blocks.clear();
+    }
+
+    /**
+     * Reads a sequence of buffers, which must not be changed while the stream is in use.
+     */
+    private static class BlockInputStream extends InputStream {
+        private final List<ByteBuffer> views;
+        private final Runnable onClose;
+        private int current = 0;
+        private boolean closed = false;
+
+        BlockInputStream(List<ByteBuffer> views, Runnable onClose) {
+            this.views = views;
+            this.onClose = onClose;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                onClose.run();
+            }
+        }
+
+        @Override
+        public int read() {
+            ByteBuffer view = nextView();
+            return view == null ? -1 : view.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] target, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            ByteBuffer view = nextView();
+            if (view == null) {
+                return -1;
+            }
+            int count = Math.min(length, view.remaining());
+            view.get(target, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            ByteBuffer view = current < views.size() ? views.get(current) : null;
+            return view == null ? 0 : view.remaining();
+        }
+
+        private ByteBuffer nextView() {
+            while (current < views.size() && !views.get(current).hasRemaining()) {
+                current++;
+            }
+            return current < views.size() ? views.get(current) : null;
+        }
+    }
+}
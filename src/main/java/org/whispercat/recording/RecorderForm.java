@@ -3,12 +3,19 @@ package org.whispercat.recording;
 import com.formdev.flatlaf.extras.FlatSVGIcon;
 import com.formdev.flatlaf.util.UIScale;
 import org.whispercat.*;
+import org.whispercat.control.DictationEvents;
+import org.whispercat.history.HistoryEntry;
+import org.whispercat.history.HistoryStore;
+import org.whispercat.metrics.Metrics;
+import org.whispercat.http.CancellationToken;
+import org.whispercat.postprocessing.IncompleteOutputException;
 import org.whispercat.postprocessing.PostProcessingData;
+import org.whispercat.postprocessing.PostProcessingJob;
+import org.whispercat.postprocessing.PostProcessingListener;
 import org.whispercat.postprocessing.PostProcessingService;
-import org.whispercat.recording.clients.FasterWhisperTranscribeClient;
-import org.whispercat.recording.clients.OpenAITranscribeClient;
-import org.whispercat.recording.clients.OpenWebUITranscribeClient;
+import org.whispercat.postprocessing.ProcessingStepData;
 
+import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.Clip;
@@ -22,26 +29,32 @@ import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
-import java.util.Optional;
+import java.util.concurrent.CancellationException;
 
 
 public class RecorderForm extends javax.swing.JPanel {
 
+    private static final String PROCESSED_TEXT_LABEL = "Post Processed text:";
     private final JTextArea processedText = new JTextArea(3, 20);
+    private final JLabel processedTextLabel = new JLabel(PROCESSED_TEXT_LABEL);
     private final JCheckBox enablePostProcessingCheckBox = new JCheckBox("<html>Enable Post Processing&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;</html>");
     private final JButton recordButton;
     private final int baseIconSize = 200;
-    private final OpenAITranscribeClient whisperClient;
+    private final TranscriptionService transcriptionService;
     private final ConfigManager configManager;
-    private final FasterWhisperTranscribeClient fasterWhisperTranscribeClient;
-    private final OpenWebUITranscribeClient openWebUITranscribeClient;
     private boolean isRecording = false;
     private AudioRecorder recorder;
+    private ChunkedTranscriber chunkedTranscriber;
+    private PostProcessingJob postProcessingJob;
     private final JTextArea transcriptionTextArea;
     private final JLabel recordingLabel;
     private JButton copyButton;
@@ -54,9 +67,8 @@ public class RecorderForm extends javax.swing.JPanel {
 
     public RecorderForm(ConfigManager configManager) {
         this.configManager = configManager;
-        this.whisperClient = new OpenAITranscribeClient(configManager);
-        this.fasterWhisperTranscribeClient = new FasterWhisperTranscribeClient(configManager);
-        this.openWebUITranscribeClient = new OpenWebUITranscribeClient(configManager);
+        this.transcriptionService = new TranscriptionService(configManager);
+        new Thread(() -> ArmedCapture.getInstance().update(configManager), "arm-microphone").start();
 
 
         JPanel centerPanel = new JPanel();
@@ -132,6 +144,10 @@ public class RecorderForm extends javax.swing.JPanel {
                     @SuppressWarnings("unchecked")
                     java.util.List<File> fileList = (java.util.List<File>) support.getTransferable()
                             .getTransferData(DataFlavor.javaFileListFlavor);
+                    if (fileList.size() > 1 || (fileList.size() == 1 && fileList.get(0).isDirectory())) {
+                        Notificationmanager.getInstance().showNotification(ToastNotification.Type.INFO, "To transcribe several files or a folder, use Batch Transcription.");
+                        return false;
+                    }
                     if (!fileList.isEmpty()) {
                         File droppedFile = fileList.get(0);
                         String lowerName = droppedFile.getName().toLowerCase();
@@ -205,6 +221,7 @@ public class RecorderForm extends javax.swing.JPanel {
                 if (selectedItem != null) {
                     configManager.setLastUsedPostProcessingUUID(selectedItem.uuid);
                 }
+                publishSelectedPostProcessing();
             }
         });
         postProcessingSelectionPanel.add(postProcessingSelectComboBox);
@@ -231,11 +248,10 @@ public class RecorderForm extends javax.swing.JPanel {
 
         processedTextScrollPane.setAlignmentX(Component.LEFT_ALIGNMENT);
         processedTextScrollPane.setVisible(false);
-        JLabel additionalTextLabel = new JLabel("Post Processed text:");
-        additionalTextLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
-        additionalTextLabel.setVisible(false);
+        processedTextLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
+        processedTextLabel.setVisible(false);
 
-        postProcessingContainerPanel.add(additionalTextLabel);
+        postProcessingContainerPanel.add(processedTextLabel);
         postProcessingContainerPanel.add(processedTextScrollPane);
 
 
@@ -256,18 +272,20 @@ public class RecorderForm extends javax.swing.JPanel {
             } else {
                 cl.show(cardPanel, "none");
             }
-            additionalTextLabel.setVisible(selected);
+            processedTextLabel.setVisible(selected);
             loadOnStartupCheckBox.setVisible(selected);
             processedTextScrollPane.setVisible(selected);
             copyButtonPanel.setVisible(selected);
             postProcessingContainerPanel.revalidate();
             postProcessingContainerPanel.repaint();
+            publishSelectedPostProcessing();
         });
 
         if (configManager.isPostProcessingOnStartup()) {
             loadOnStartupCheckBox.setSelected(true);
             enablePostProcessingCheckBox.doClick();
         }
+        publishSelectedPostProcessing();
 
         checkSettings();
 
@@ -329,6 +347,44 @@ public class RecorderForm extends javax.swing.JPanel {
 
     }
 
+    /**
+     * Selects the post-processing applied to the next transcripts and enables post-processing, or disables
+     * it if the uuid is null.
+     *
+     * @return false if no post-processing has the uuid.
+     */
+    public boolean selectPostProcessing(String uuid) {
+        if (uuid == null) {
+            if (enablePostProcessingCheckBox.isSelected()) {
+                enablePostProcessingCheckBox.doClick();
+            }
+            return true;
+        }
+        for (int index = 0; index < postProcessingSelectComboBox.getItemCount(); index++) {
+            if (uuid.equals(postProcessingSelectComboBox.getItemAt(index).uuid)) {
+                postProcessingSelectComboBox.setSelectedIndex(index);
+                if (!enablePostProcessingCheckBox.isSelected()) {
+                    enablePostProcessingCheckBox.doClick();
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void publishSelectedPostProcessing() {
+        PostProcessingItem selectedItem = (PostProcessingItem) postProcessingSelectComboBox.getSelectedItem();
+        DictationEvents.getInstance().postProcessingSelected(
+                enablePostProcessingCheckBox.isSelected() && selectedItem != null ? selectedItem.uuid : null);
+    }
+
+    /**
+     * Returns whether audio is being recorded, i.e. a recording was started and not stopped yet.
+     */
+    public boolean isRecording() {
+        return isRecording && !isStoppingInProgress;
+    }
+
     private boolean isToggleInProgress = false;
 
     public void toggleRecording() {
@@ -352,11 +408,35 @@ public class RecorderForm extends javax.swing.JPanel {
     private void startRecording() {
         try {
             isRecording = true;
+            if (postProcessingJob != null) {
+                // A new dictation supersedes the result that is still being processed.
+                logger.info("Cancelling running post-processing");
+                postProcessingJob.cancel();
+                postProcessingJob = null;
+                processedTextLabel.setText(PROCESSED_TEXT_LABEL);
+            }
             String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
-            File audioFile = new File(System.getProperty("java.io.tmpdir"), "record_" + timeStamp + ".wav");
-            recorder = new AudioRecorder(audioFile, configManager);
+            boolean keepRecording = configManager.isKeepRecordingsEnabled();
+            File directory = keepRecording ? configManager.getRecordingsDirectory()
+                    : new File(System.getProperty("java.io.tmpdir"));
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                logger.warn("Could not create recordings directory {}", directory);
+            }
+            File audioFile = new File(directory, "record_" + timeStamp + ".wav");
+            recorder = new AudioRecorder(audioFile, keepRecording, configManager);
+            chunkedTranscriber = null;
+            if (configManager.isChunkedTranscriptionEnabled()) {
+                chunkedTranscriber = new ChunkedTranscriber(transcriptionService, configManager.getAudioFormat(),
+                        configManager.getChunkLengthSeconds(), configManager.getChunkOverlapSeconds(),
+                        partial -> {
+                            DictationEvents.getInstance().partialTranscript(partial);
+                            SwingUtilities.invokeLater(() -> transcriptionTextArea.setText(partial));
+                        });
+                recorder.setAudioDataListener(chunkedTranscriber);
+            }
             new Thread(recorder::start).start();
             logger.info("Recording started: " + audioFile.getPath());
+            DictationEvents.getInstance().recordingStarted();
             recordButton.setText("Stop Recording");
         } catch (Exception e) {
             logger.error("An error occurred while starting the recording", e);
@@ -367,6 +447,7 @@ public class RecorderForm extends javax.swing.JPanel {
     private boolean isStoppingInProgress = false;
 
     public void stopRecording(boolean cancelledRecording) {
+        boolean wasRecording = isRecording();
         updateUIForRecordingStop();
         isStoppingInProgress = true;
         recordButton.setText("Converting. Please wait...");
@@ -374,10 +455,17 @@ public class RecorderForm extends javax.swing.JPanel {
         if (recorder != null) {
             recorder.stop();
             logger.info("Recording stopped");
+            if (wasRecording) {
+                DictationEvents.getInstance().recordingStopped(cancelledRecording);
+            }
             if (!cancelledRecording) {
-                new RecorderForm.AudioTranscriptionWorker(recorder.getOutputFile()).execute();
+                new RecorderForm.AudioTranscriptionWorker(recorder.getRecording(), chunkedTranscriber).execute();
             } else {
                 logger.info("Recording cancelled");
+                recorder.getRecording().close();
+                if (chunkedTranscriber != null) {
+                    chunkedTranscriber.cancel();
+                }
                 updateTrayMenu();
             }
         }
@@ -387,7 +475,7 @@ public class RecorderForm extends javax.swing.JPanel {
         isStoppingInProgress = true;
         recordButton.setText("Converting. Please wait...");
         recordButton.setEnabled(false);
-        new RecorderForm.AudioTranscriptionWorker(audioFile).execute();
+        new RecorderForm.AudioTranscriptionWorker(RecordedAudio.ofFile(audioFile), null).execute();
     }
 
     public void playClickSound() {
@@ -408,8 +496,10 @@ public class RecorderForm extends javax.swing.JPanel {
     }
 
     private void copyTranscriptionToClipboard(String text) {
+        long start = System.nanoTime();
         StringSelection stringSelection = new StringSelection(text);
         Toolkit.getDefaultToolkit().getSystemClipboard().setContents(stringSelection, null);
+        Metrics.getInstance().recordSince(Metrics.CLIPBOARD, null, null, start);
     }
 
     private void pasteFromClipboard() {
@@ -419,10 +509,13 @@ public class RecorderForm extends javax.swing.JPanel {
         try {
             Robot robot = new Robot();
             robot.delay(500);
+            // The delay above is deliberate, only the key strokes are measured.
+            long start = System.nanoTime();
             robot.keyPress(KeyEvent.VK_CONTROL);
             robot.keyPress(KeyEvent.VK_V);
             robot.keyRelease(KeyEvent.VK_V);
             robot.keyRelease(KeyEvent.VK_CONTROL);
+            Metrics.getInstance().recordSince(Metrics.PASTE, null, null, start);
         } catch (AWTException e) {
             logger.error("An error occurred while pasting from clipboard", e);
         }
@@ -444,7 +537,7 @@ public class RecorderForm extends javax.swing.JPanel {
                 isToggleInProgress = true;
                 recordingLabel.setEnabled(false);
                 recordButton.setEnabled(false);
-                Thread.sleep(1000);
+                Thread.sleep(configManager.getToggleLockMillis());
                 return null;
             }
 
@@ -504,38 +597,126 @@ public class RecorderForm extends javax.swing.JPanel {
 
 
     private class AudioTranscriptionWorker extends SwingWorker<String, Void> {
-        private final File audioFile;
-
-        public AudioTranscriptionWorker(File audioFile) {
-            this.audioFile = audioFile;
+        private final RecordedAudio audio;
+        private final ChunkedTranscriber chunkedTranscriber;
+        // Set in the background when a transcript is available, completed and recorded on the EDT.
+        private HistoryEntry historyEntry;
+        private final long stoppedAt = System.nanoTime();
+
+        public AudioTranscriptionWorker(RecordedAudio audio, ChunkedTranscriber chunkedTranscriber) {
+            this.audio = audio;
+            this.chunkedTranscriber = chunkedTranscriber;
         }
 
         @Override
         protected String doInBackground() {
             try {
-                if (configManager.getWhisperServer().equals("OpenAI")) {
-                    logger.info("Transcribing audio using OpenAI");
-                    return whisperClient.transcribe(audioFile);
-                } else if (configManager.getWhisperServer().equals("Faster-Whisper")) {
-                    logger.info("Transcribing audio using Faster-Whisper");
-                    return fasterWhisperTranscribeClient.transcribe(audioFile);
-                } else if (configManager.getWhisperServer().equals("Open WebUI")) {
-                    logger.info("Transcribing audio using Open WebUI");
-                    return openWebUITranscribeClient.transcribeAudio(audioFile);
-                } else {
-                    logger.error("Unknown Whisper server: " + configManager.getWhisperServer());
-                    Notificationmanager.getInstance().showNotification(ToastNotification.Type.ERROR,
-                            "Unknown Whisper server: " + configManager.getWhisperServer());
-                    return null;
+                long recordingMillis = recordingMillis();
+                if (recordingMillis > 0) {
+                    Metrics.getInstance().record(Metrics.CAPTURE, null, null, recordingMillis * 1_000_000);
                 }
+                String cacheKey = cacheKey();
+                if (cacheKey != null) {
+                    String cached = TranscriptionCache.get(configManager, cacheKey);
+                    if (cached != null) {
+                        if (chunkedTranscriber != null) {
+                            chunkedTranscriber.cancel();
+                        }
+                        historyEntry = newHistoryEntry(cached, "cache", 0);
+                        return cached;
+                    }
+                }
+                long start = System.nanoTime();
+                String transcript = transcribe();
+                String whisperServer = transcriptionService.getLastWhisperServer();
+                Metrics.getInstance().recordSince(Metrics.TRANSCRIPTION, whisperServer, null, start);
+                historyEntry = newHistoryEntry(transcript, whisperServer, (System.nanoTime() - start) / 1_000_000);
+                if (cacheKey != null) {
+                    TranscriptionCache.put(configManager, cacheKey, transcript);
+                }
+                return transcript;
             } catch (Exception e) {
                 logger.error("Error during transcription", e);
+                File savedRecording = saveFailedRecording();
                 Notificationmanager.getInstance().showNotification(ToastNotification.Type.ERROR,
-                        "Error during transcription. See logs.");
+                        savedRecording != null
+                                ? "Error during transcription. The recording was saved to " + savedRecording + "."
+                                : "Error during transcription. See logs.");
                 return null;
+            } finally {
+                audio.close();
             }
         }
 
+        /**
+         * Keeps a recording which would be deleted, so it can be transcribed again by dropping it on the form.
+         */
+        private File saveFailedRecording() {
+            if (!audio.isTemporary()) {
+                return null;
+            }
+            File directory = configManager.getRecordingsDirectory();
+            File target = new File(directory, audio.getName());
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                logger.warn("Could not create recordings directory {}", directory);
+                return null;
+            }
+            try (OutputStream output = new BufferedOutputStream(new FileOutputStream(target))) {
+                audio.writeWavTo(output);
+                logger.info("Saved the recording which failed to transcribe to {}", target);
+                return target;
+            } catch (IOException e) {
+                logger.error("Could not save the recording to {}", target, e);
+                return null;
+            }
+        }
+
+        private HistoryEntry newHistoryEntry(String transcript, String whisperServer, long transcriptionMillis) {
+            HistoryEntry entry = new HistoryEntry();
+            entry.timestamp = System.currentTimeMillis();
+            entry.audioFile = !audio.isTemporary() && audio.getFile() != null ? audio.getFile().getPath() : null;
+            entry.transcript = transcript;
+            entry.whisperServer = whisperServer;
+            entry.transcriptionMillis = transcriptionMillis;
+            entry.recordingMillis = recordingMillis();
+            return entry;
+        }
+
+        /**
+         * Returns the length of the recorded audio, 0 for a dropped file.
+         */
+        private long recordingMillis() {
+            AudioFormat format = audio.getFormat();
+            if (format == null || audio.getDataLength() <= 0) {
+                return 0;
+            }
+            return (long) (audio.getDataLength() * 1000 / (format.getFrameSize() * (double) format.getFrameRate()));
+        }
+
+        private String cacheKey() {
+            if (!configManager.isTranscriptionCacheEnabled()) {
+                return null;
+            }
+            try {
+                return TranscriptionCache.key(configManager, audio);
+            } catch (IOException e) {
+                logger.warn("Could not fingerprint the recording, transcribing without cache", e);
+                return null;
+            }
+        }
+
+        private String transcribe() throws IOException {
+            if (chunkedTranscriber != null) {
+                try {
+                    return chunkedTranscriber.finish();
+                } catch (IOException e) {
+                    // The complete recording is still available, so fall back to a single request.
+                    logger.warn("Chunked transcription failed, transcribing the complete recording", e);
+                }
+            }
+            return transcriptionService.transcribe(audio);
+        }
+
         @Override
         protected void done() {
             String transcript = null;
@@ -544,6 +725,7 @@ public class RecorderForm extends javax.swing.JPanel {
                 if (transcript != null) {
                     logger.info("Transcribed text: " + transcript);
                     transcriptionTextArea.setText(transcript);
+                    DictationEvents.getInstance().transcript(transcript);
 
                 } else {
                     logger.warn("Transcription resulted in null");
@@ -556,15 +738,9 @@ public class RecorderForm extends javax.swing.JPanel {
                 if (enablePostProcessingCheckBox.isSelected() && postProcessingSelectComboBox.getSelectedItem() != null) {
                     PostProcessingItem selectedItem = (PostProcessingItem) postProcessingSelectComboBox.getSelectedItem();
                     if (selectedItem != null && selectedItem.uuid != null) {
-                        Optional<PostProcessingData> first = configManager.getPostProcessingDataList().stream().filter(p -> p.uuid.equals(selectedItem.uuid)).findFirst();
-                        if (first.isPresent()) {
-                            PostProcessingData postProcessingData = first.get();
-                            PostProcessingService ppService = new PostProcessingService(configManager);
-                            String processedText = ppService.applyPostProcessing(transcript, postProcessingData);
-                            RecorderForm.this.processedText.setText(processedText);
-                            playClickSound();
-                            copyTranscriptionToClipboard(processedText);
-                            pasteFromClipboard();
+                        PostProcessingData postProcessingData = configManager.getPostProcessingData(selectedItem.uuid);
+                        if (postProcessingData != null) {
+                            startPostProcessing(transcript, postProcessingData, transcript != null ? historyEntry : null, stoppedAt);
                             updateTrayMenu();
 
                         } else {
@@ -575,6 +751,10 @@ public class RecorderForm extends javax.swing.JPanel {
 
                     }
                 } else {
+                    if (transcript != null) {
+                        Metrics.getInstance().recordSince(Metrics.STOP_TO_TEXT, historyEntry.whisperServer, null, stoppedAt);
+                        addToHistory(historyEntry);
+                    }
                     playClickSound();
                     copyTranscriptionToClipboard(transcript);
                     pasteFromClipboard();
@@ -586,4 +766,163 @@ public class RecorderForm extends javax.swing.JPanel {
             }
         }
     }
+    /**
+     * Starts the selected post-processing on the post-processing executor. Step progress is shown above the
+     * processed text area. When the final step is streamed, its output is appended to the area while it
+     * arrives and, if enabled, every completed sentence is pasted right away instead of waiting for the
+     * complete result. The history entry, if any, is completed with the result and recorded. If the stream
+     * fails midway, the partial output is kept and the user is told that it is incomplete.
+     */
+    private void startPostProcessing(String transcript, PostProcessingData postProcessingData, HistoryEntry historyEntry,
+                                     long stoppedAt) {
+        processedText.setText("");
+        PostProcessingProgress progress = new PostProcessingProgress();
+        long start = System.currentTimeMillis();
+        PostProcessingJob job = new PostProcessingService(configManager).submit(transcript, postProcessingData, progress);
+        postProcessingJob = job;
+        job.getResult().whenComplete((result, error) -> {
+            if (historyEntry != null) {
+                historyEntry.postProcessingUuid = postProcessingData.uuid;
+                historyEntry.postProcessingTitle = postProcessingData.title;
+                if (error == null) {
+                    historyEntry.processedText = result;
+                    historyEntry.postProcessingMillis = System.currentTimeMillis() - start;
+                    Metrics.getInstance().recordSince(Metrics.STOP_TO_TEXT, historyEntry.whisperServer, null, stoppedAt);
+                }
+                addToHistory(historyEntry);
+            }
+            if (error == null) {
+                progress.pasteRemainder(result);
+                DictationEvents.getInstance().processedText(result);
+            } else if (!(error instanceof CancellationException)) {
+                DictationEvents.getInstance().postProcessingFailed(error.getMessage());
+            }
+            SwingUtilities.invokeLater(() -> {
+                if (postProcessingJob == job) {
+                    postProcessingJob = null;
+                    processedTextLabel.setText(PROCESSED_TEXT_LABEL);
+                }
+                if (error instanceof CancellationException) {
+                    logger.info("Post-processing was cancelled");
+                    return;
+                } else if (error instanceof IncompleteOutputException) {
+                    logger.error("Streamed post-processing failed", error);
+                    Notificationmanager.getInstance().showNotification(ToastNotification.Type.ERROR,
+                            (progress.hasPasted() ? "The pasted text is incomplete. " : "The text is incomplete. ")
+                                    + error.getMessage());
+                    return;
+                } else if (error != null) {
+                    logger.error("An error occurred during post-processing", error);
+                    return;
+                }
+                processedText.setText(result);
+                playClickSound();
+                if (!progress.hasPasted()) {
+                    copyTranscriptionToClipboard(result);
+                    pasteFromClipboard();
+                }
+            });
+        });
+    }
+
+    private void addToHistory(HistoryEntry entry) {
+        if (entry == null || !configManager.isHistoryEnabled()) {
+            return;
+        }
+        try {
+            HistoryStore.getInstance(configManager).add(entry);
+        } catch (IOException e) {
+            logger.error("Could not add the dictation to the history", e);
+        }
+    }
+
+    /**
+     * Shows the progress of a post-processing run and pastes the streamed output sentence by sentence.
+     * Called on the post-processing thread.
+     */
+    private class PostProcessingProgress implements PostProcessingListener {
+        private final boolean pasteWhileStreaming = configManager.isAutoPasteEnabled() && configManager.isStreamingAutoPasteEnabled();
+        private final StringBuilder streamedText = new StringBuilder();
+        private volatile int pastedLength = 0;
+
+        @Override
+        public void onStepStarted(int stepIndex, int stepCount, ProcessingStepData step) {
+            String status = "Post Processed text: step " + (stepIndex + 1) + " of " + stepCount + " (" + step.type + ")...";
+            SwingUtilities.invokeLater(() -> processedTextLabel.setText(status));
+        }
+
+        @Override
+        public void onOutput(String delta) {
+            if (CancellationToken.isCurrentCancelled()) {
+                return;
+            }
+            SwingUtilities.invokeLater(() -> processedText.append(delta));
+            DictationEvents.getInstance().postProcessingOutput(delta);
+            streamedText.append(delta);
+            if (pasteWhileStreaming) {
+                int end = lastSentenceEnd(streamedText, pastedLength);
+                if (end > pastedLength) {
+                    pasteText(streamedText.substring(pastedLength, end), pastedLength == 0);
+                    pastedLength = end;
+                }
+            }
+        }
+
+        boolean hasPasted() {
+            return pastedLength > 0;
+        }
+
+        /**
+         * Pastes the part of the final result which has not been pasted while streaming.
+         */
+        void pasteRemainder(String result) {
+            if (pastedLength == 0) {
+                return;
+            }
+            if (result.startsWith(streamedText.substring(0, pastedLength))) {
+                if (result.length() > pastedLength) {
+                    pasteText(result.substring(pastedLength), false);
+                }
+            } else {
+                logger.warn("Streamed post-processing result does not match the pasted text");
+            }
+            copyTranscriptionToClipboard(result);
+        }
+    }
+
+    /**
+     * Returns the position after the last completed sentence in the text, or the start position if the text
+     * after it does not contain a sentence end yet.
+     */
+    private static int lastSentenceEnd(CharSequence text, int start) {
+        for (int i = text.length() - 2; i >= start; i--) {
+            char c = text.charAt(i);
+            if ((c == '.' || c == '!' || c == '?' || c == '\n') && Character.isWhitespace(text.charAt(i + 1))) {
+                return i + 2;
+            }
+        }
+        return start;
+    }
+
+    /**
+     * Pastes a piece of text into the focused application. Called from a background thread.
+     */
+    private void pasteText(String text, boolean first) {
+        try {
+            Robot robot = new Robot();
+            // Give the user time to release the hotkey before the first paste.
+            robot.delay(first ? 500 : 20);
+            copyTranscriptionToClipboard(text);
+            long start = System.nanoTime();
+            robot.keyPress(KeyEvent.VK_CONTROL);
+            robot.keyPress(KeyEvent.VK_V);
+            robot.keyRelease(KeyEvent.VK_V);
+            robot.keyRelease(KeyEvent.VK_CONTROL);
+            Metrics.getInstance().recordSince(Metrics.PASTE, null, null, start);
+            // The target application reads the clipboard asynchronously, wait before it is replaced.
+            robot.delay(100);
+        } catch (AWTException e) {
+            logger.error("An error occurred while pasting from clipboard", e);
+        }
+    }
 }
@@ -0,0 +1,214 @@
+package org.whispercat.recording;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Converts captured 16-bit PCM of any sample rate, channel count and byte order to 16-bit little-endian mono
+ * PCM of the target sample rate, and passes it on to the downstream listener.
+ * <p>
+ * Channels are averaged. The sample rate is changed by a polyphase FIR filter: for the reduced ratio L/M of
+ * the target and source rates, the Kaiser-windowed sinc low-pass is split into L phases, and every output
+ * sample is the dot product of one phase with the most recent input samples. Only the output samples are
+ * computed, so the cost per output sample is the number of taps per phase.
+ * <p>
+ * Like all listeners it runs on the capture thread, and it is not thread-safe.
+ */
+public class Resampler implements AudioDataListener {
+    // Taps per phase are this factor times the decimation ratio. Together with the cutoff this puts the
+    // transition band between about 70 % and 100 % of the output Nyquist frequency.
+    private static final int TAPS_PER_RATIO = 32;
+    // About 80 dB stop band attenuation.
+    private static final double KAISER_BETA = 8.0;
+    // The -6 dB point as fraction of the lower Nyquist frequency.
+    private static final double CUTOFF = 0.85;
+
+    private final AudioDataListener downstream;
+    private final int channels;
+    private final boolean bigEndian;
+    private final int frameSize;
+    private final int up;
+    private final int down;
+    private final int tapsPerPhase;
+    // coefficients[phase][tap], tap 0 applies to the newest input sample.
+    private final float[][] coefficients;
+    private final boolean passThrough;
+
+    private final byte[] partialFrame;
+    private int partialLength = 0;
+    // Input samples not yet consumed, preceded by the history needed by the filter.
+    private float[] input;
+    private int inputLength;
+    // Absolute index of input[0] and of the next output sample.
+    private long inputStart;
+    private long outputIndex = 0;
+    private byte[] output = new byte[0];
+
+    /**
+     * @param sourceFormat     the captured format, must be 16-bit signed PCM.
+     * @param targetSampleRate the sample rate of the output.
+     * @param downstream       receives the converted audio.
+     */
+    public Resampler(AudioFormat sourceFormat, int targetSampleRate, AudioDataListener downstream) {
+        if (sourceFormat.getSampleSizeInBits() != 16
+                || !AudioFormat.Encoding.PCM_SIGNED.equals(sourceFormat.getEncoding())) {
+            throw new IllegalArgumentException("Only 16-bit signed PCM can be resampled: " + sourceFormat);
+        }
+        this.downstream = downstream;
+        this.channels = sourceFormat.getChannels();
+        this.bigEndian = sourceFormat.isBigEndian();
+        this.frameSize = sourceFormat.getFrameSize();
+        this.partialFrame = new byte[frameSize];
+        int sourceRate = Math.round(sourceFormat.getSampleRate());
+        int divisor = gcd(sourceRate, targetSampleRate);
+        this.up = targetSampleRate / divisor;
+        this.down = sourceRate / divisor;
+        this.passThrough = up == down;
+        int ratio = Math.max(1, (int) Math.ceil((double) down / up));
+        this.tapsPerPhase = passThrough ? 1 : TAPS_PER_RATIO * ratio;
+        this.coefficients = passThrough ? new float[][]{{1f}} : designFilter(up, down, tapsPerPhase);
+        this.input = new float[tapsPerPhase + 4096];
+        // Start with silence as history, so the first output sample lines up with the first input sample.
+        this.inputLength = tapsPerPhase - 1;
+        this.inputStart = -(tapsPerPhase - 1);
+    }
+
+    /**
+     * Returns the format of the output for the given target sample rate.
+     */
+    public static AudioFormat targetFormat(int targetSampleRate) {
+        return new AudioFormat(targetSampleRate, 16, 1, true, false);
+    }
+
+    /**
+     * Returns whether the source format can be converted, i.e. is 16-bit signed PCM.
+     */
+    public static boolean canConvert(AudioFormat sourceFormat) {
+        return sourceFormat.getSampleSizeInBits() == 16
+                && AudioFormat.Encoding.PCM_SIGNED.equals(sourceFormat.getEncoding())
+                && sourceFormat.getSampleRate() > 0;
+    }
+
+    @Override
+    public void onAudioData(byte[] data, int offset, int length) {
+        int end = offset + length;
+        if (partialLength > 0) {
+            int count = Math.min(frameSize - partialLength, length);
+            System.arraycopy(data, offset, partialFrame, partialLength, count);
+            partialLength += count;
+            offset += count;
+            if (partialLength < frameSize) {
+                return;
+            }
+            appendFrames(partialFrame, 0, 1);
+            partialLength = 0;
+        }
+        int frames = (end - offset) / frameSize;
+        appendFrames(data, offset, frames);
+        offset += frames * frameSize;
+        partialLength = end - offset;
+        System.arraycopy(data, offset, partialFrame, 0, partialLength);
+        process();
+    }
+
+    private void appendFrames(byte[] data, int offset, int frames) {
+        if (inputLength + frames > input.length) {
+            float[] larger = new float[Math.max(input.length * 2, inputLength + frames)];
+            System.arraycopy(input, 0, larger, 0, inputLength);
+            input = larger;
+        }
+        for (int frame = 0; frame < frames; frame++) {
+            int sum = 0;
+            for (int channel = 0; channel < channels; channel++) {
+                int index = offset + frame * frameSize + channel * 2;
+                sum += bigEndian
+                        ? (short) ((data[index] << 8) | (data[index + 1] & 0xFF))
+                        : (short) ((data[index + 1] << 8) | (data[index] & 0xFF));
+            }
+            input[inputLength++] = (float) sum / channels;
+        }
+    }
+
+    private void process() {
+        long available = inputStart + inputLength;
+        int maxOutput = (int) Math.max(0, (available * up - outputIndex * down) / down + 1);
+        if (output.length < maxOutput * 2) {
+            output = new byte[maxOutput * 2];
+        }
+        int produced = 0;
+        while (true) {
+            long position = outputIndex * down;
+            long newest = position / up;
+            if (newest >= available) {
+                break;
+            }
+            float[] phase = coefficients[(int) (position % up)];
+            int newestIndex = (int) (newest - inputStart);
+            float sum = 0;
+            for (int tap = 0; tap < tapsPerPhase; tap++) {
+                sum += phase[tap] * input[newestIndex - tap];
+            }
+            int sample = Math.round(sum);
+            if (sample > Short.MAX_VALUE) {
+                sample = Short.MAX_VALUE;
+            } else if (sample < Short.MIN_VALUE) {
+                sample = Short.MIN_VALUE;
+            }
+            output[produced * 2] = (byte) sample;
+            output[produced * 2 + 1] = (byte) (sample >> 8);
+            produced++;
+            outputIndex++;
+        }
+        // Keep the samples the next output sample needs as history.
+        long nextNewest = outputIndex * down / up;
+        int discard = (int) Math.min(inputLength, Math.max(0, nextNewest - (tapsPerPhase - 1) - inputStart));
+        System.arraycopy(input, discard, input, 0, inputLength - discard);
+        inputLength -= discard;
+        inputStart += discard;
+        if (produced > 0) {
+            downstream.onAudioData(output, 0, produced * 2);
+        }
+    }
+
+    /**
+     * Designs the low-pass filter for the upsampled rate and splits it into phases.
+     */
+    private static float[][] designFilter(int up, int down, int tapsPerPhase) {
+        int length = up * tapsPerPhase;
+        // Cutoff in cycles per sample of the upsampled signal.
+        double cutoff = CUTOFF * 0.5 / Math.max(up, down);
+        double center = (length - 1) / 2.0;
+        double besselBeta = bessel0(KAISER_BETA);
+        float[][] phases = new float[up][tapsPerPhase];
+        for (int i = 0; i < length; i++) {
+            double x = i - center;
+            double sinc = x == 0 ? 2 * cutoff : Math.sin(2 * Math.PI * cutoff * x) / (Math.PI * x);
+            double ratio = 2.0 * i / (length - 1) - 1;
+            double window = length == 1 ? 1 : bessel0(KAISER_BETA * Math.sqrt(Math.max(0, 1 - ratio * ratio))) / besselBeta;
+            // Gain "up" compensates the zeros inserted by upsampling.
+            phases[i % up][i / up] = (float) (up * sinc * window);
+        }
+        return phases;
+    }
+
+    private static double bessel0(double x) {
+        double sum = 1;
+        double term = 1;
+        for (int k = 1; k < 50; k++) {
+            term *= (x / (2 * k)) * (x / (2 * k));
+            sum += term;
+            if (term < sum * 1e-12) {
+                break;
+            }
+        }
+        return sum;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
@@ -0,0 +1,89 @@
+package org.whispercat.recording;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Voice activity detection stage of the recording path.
+ * The incoming audio is split into short frames which are classified as speech or silence by
+ * their energy and zero crossing rate. Pauses up to the configured length are kept so the
+ * transcript keeps its natural phrasing, longer silent stretches are dropped before they reach
+ * the file or the network.
+ */
+public class SilenceFilter implements AudioDataListener {
+    private static final int FRAME_MILLIS = 20;
+    private static final double FRICATIVE_ZERO_CROSSING_RATE = 0.25;
+
+    private final AudioDataListener downstream;
+    private final boolean bigEndian;
+    private final double threshold;
+    private final int maxSilentFrames;
+    private final byte[] frame;
+    private byte[] output = new byte[0];
+    private int frameFill = 0;
+    private int silentFrames = 0;
+    private long droppedFrames = 0;
+
+    /**
+     * @param format           the format of the audio data, must be 16-bit signed PCM.
+     * @param threshold        the normalized RMS level above which a frame counts as speech.
+     * @param maxSilenceMillis the longest pause that is passed through unchanged.
+     * @param downstream       receives the audio that is kept.
+     */
+    public SilenceFilter(AudioFormat format, double threshold, int maxSilenceMillis, AudioDataListener downstream) {
+        this.downstream = downstream;
+        this.bigEndian = format.isBigEndian();
+        this.threshold = threshold;
+        this.maxSilentFrames = maxSilenceMillis / FRAME_MILLIS;
+        int frameBytes = (int) (format.getSampleRate() * FRAME_MILLIS / 1000) * format.getFrameSize();
+        this.frame = new byte[Math.max(format.getFrameSize(), frameBytes)];
+    }
+
+    @Override
+    public void onAudioData(byte[] data, int offset, int length) {
+        int required = length + frame.length;
+        if (output.length < required) {
+            output = new byte[required];
+        }
+        int outputLength = 0;
+        while (length > 0) {
+            int count = Math.min(length, frame.length - frameFill);
+            System.arraycopy(data, offset, frame, frameFill, count);
+            frameFill += count;
+            offset += count;
+            length -= count;
+            if (frameFill == frame.length) {
+                if (isSpeech()) {
+                    silentFrames = 0;
+                } else {
+                    silentFrames++;
+                }
+                if (silentFrames <= maxSilentFrames) {
+                    System.arraycopy(frame, 0, output, outputLength, frame.length);
+                    outputLength += frame.length;
+                } else {
+                    droppedFrames++;
+                }
+                frameFill = 0;
+            }
+        }
+        if (outputLength > 0) {
+            downstream.onAudioData(output, 0, outputLength);
+        }
+    }
+
+    /**
+     * Returns the total duration of the audio that was dropped so far.
+     */
+    public long getDroppedMillis() {
+        return droppedFrames * FRAME_MILLIS;
+    }
+
+    private boolean isSpeech() {
+        double level = AudioFrameAnalyzer.rms(frame, 0, frame.length, bigEndian);
+        if (level >= threshold) {
+            return true;
+        }
+        return level >= threshold / 2
+                && AudioFrameAnalyzer.zeroCrossingRate(frame, 0, frame.length, bigEndian) >= FRICATIVE_ZERO_CROSSING_RATE;
+    }
+}
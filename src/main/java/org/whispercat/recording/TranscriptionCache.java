@@ -0,0 +1,125 @@
+package org.whispercat.recording;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.whispercat.ConfigManager;
+import org.whispercat.cache.DiskCache;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches transcripts on disk, keyed by a fingerprint of the audio and the transcription settings.
+ * The fingerprint is taken over the decoded format and PCM data where possible, so a recording and the WAV
+ * file it was saved to are recognized as the same audio, while the same samples at another sample rate or
+ * channel count are not. Stored under "cache/transcriptions" in the config directory.
+ */
+public final class TranscriptionCache {
+    private static final Logger logger = LogManager.getLogger(TranscriptionCache.class);
+    private static final long TIME_TO_LIVE_DAYS = 365;
+    private static DiskCache cache;
+
+    private TranscriptionCache() {
+    }
+
+    /**
+     * Creates the cache key for the audio and the currently configured backend, model and language.
+     *
+     * @throws IOException if the file cannot be read.
+     */
+    public static String key(ConfigManager configManager, RecordedAudio audio) throws IOException {
+        String whisperServer = configManager.getWhisperServer();
+        String serverUrl = "";
+        String model = "";
+        String language = "";
+        if (whisperServer.equals("OpenAI")) {
+            model = "whisper-1";
+        } else if (whisperServer.equals("Faster-Whisper")) {
+            serverUrl = configManager.getFasterWhisperServerUrl();
+            model = configManager.getFasterWhisperModel();
+            language = configManager.getFasterWhisperLanguage();
+        } else if (whisperServer.equals("Open WebUI")) {
+            serverUrl = configManager.getOpenWebUIServerUrl();
+        }
+        return DiskCache.key(fingerprint(audio), whisperServer, serverUrl, model, language);
+    }
+
+    /**
+     * Returns the cached transcript for the key, or null.
+     */
+    public static String get(ConfigManager configManager, String key) {
+        DiskCache diskCache = getCache(configManager);
+        String transcript = diskCache.get(key);
+        logger.info("Transcription cache {} ({} hits, {} misses)", transcript != null ? "hit" : "miss",
+                diskCache.getHits(), diskCache.getMisses());
+        return transcript;
+    }
+
+    public static void put(ConfigManager configManager, String key, String transcript) {
+        if (transcript != null && !transcript.isEmpty()) {
+            getCache(configManager).put(key, transcript);
+        }
+    }
+
+    private static String fingerprint(RecordedAudio audio) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        long start = System.currentTimeMillis();
+        // Audio held in memory already is the PCM data of the WAV file it would have been written to.
+        try (InputStream pcm = audio.isInMemory() ? audio.openPcmStream() : openPcm(audio.getFile());
+             DigestInputStream input = new DigestInputStream(pcm, digest)) {
+            // Files which cannot be decoded are hashed with their header.
+            AudioFormat format = audio.isInMemory() ? audio.getFormat()
+                    : pcm instanceof AudioInputStream ? ((AudioInputStream) pcm).getFormat() : null;
+            if (format != null) {
+                digest.update(format.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            byte[] buffer = new byte[65536];
+            while (input.read(buffer) != -1) {
+                // The digest is updated while reading.
+            }
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        logger.debug("Fingerprinted {} in {} ms", audio.getName(), System.currentTimeMillis() - start);
+        return hex.toString();
+    }
+
+    private static InputStream openPcm(File audioFile) throws IOException {
+        if (!audioFile.getName().toLowerCase().endsWith(".mp3")) {
+            try {
+                return AudioSystem.getAudioInputStream(audioFile);
+            } catch (UnsupportedAudioFileException e) {
+                logger.debug("Cannot decode {}, fingerprinting the file content", audioFile.getName());
+            }
+        }
+        return new BufferedInputStream(new FileInputStream(audioFile));
+    }
+
+    private static synchronized DiskCache getCache(ConfigManager configManager) {
+        if (cache == null) {
+            File directory = new File(configManager.getConfigDirectory(), "cache" + File.separator + "transcriptions");
+            cache = new DiskCache(directory, configManager.getTranscriptionCacheMaxMegabytes() * 1024L * 1024L,
+                    TimeUnit.DAYS.toMillis(TIME_TO_LIVE_DAYS));
+        }
+        return cache;
+    }
+}
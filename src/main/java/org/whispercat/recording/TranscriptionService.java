@@ -0,0 +1,246 @@
+package org.whispercat.recording;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.whispercat.ConfigManager;
+import org.whispercat.http.CancellationToken;
+import org.whispercat.recording.clients.FasterWhisperTranscribeClient;
+import org.whispercat.recording.clients.OpenAITranscribeClient;
+import org.whispercat.recording.clients.OpenWebUITranscribeClient;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatches audio to the transcription client selected in the settings.
+ * <p>
+ * If a second server is configured ({@link ConfigManager#getFallbackWhisperServer()}), it is either used when
+ * the selected one fails, or, with hedging ({@link ConfigManager#getTranscriptionHedging()}), sent the same
+ * audio: at once, or when the selected server has not answered within the 95th percentile of its recent
+ * response times. The first transcript wins and the other request is aborted.
+ */
+public class TranscriptionService {
+    private static final Logger logger = LogManager.getLogger(TranscriptionService.class);
+    public static final String HEDGING_OFF = "off";
+    public static final String HEDGING_PARALLEL = "parallel";
+    public static final String HEDGING_DELAYED = "delayed";
+    private static final double HEDGE_PERCENTILE = 95;
+    // Below this number of samples the percentile says little, the configured delay is used instead.
+    private static final int MIN_LATENCY_SAMPLES = 10;
+    private static final int LATENCY_SAMPLES = 100;
+    private static final long CANCEL_POLL_MILLIS = 100;
+    // How long the winner waits for the aborted request to let go of the audio file before it is deleted. Audio in
+    // memory is safe without waiting, as its buffers are kept until the last stream reading them is closed.
+    private static final long LOSER_GRACE_MILLIS = 500;
+    private static final Map<String, LatencyTracker> LATENCIES = new ConcurrentHashMap<>();
+    private static final ExecutorService HEDGE_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "hedged-transcription");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ConfigManager configManager;
+    private final OpenAITranscribeClient whisperClient;
+    private final FasterWhisperTranscribeClient fasterWhisperTranscribeClient;
+    private final OpenWebUITranscribeClient openWebUITranscribeClient;
+    private volatile String lastWhisperServer;
+
+    public TranscriptionService(ConfigManager configManager) {
+        this.configManager = configManager;
+        this.whisperClient = new OpenAITranscribeClient(configManager);
+        this.fasterWhisperTranscribeClient = new FasterWhisperTranscribeClient(configManager);
+        this.openWebUITranscribeClient = new OpenWebUITranscribeClient(configManager);
+    }
+
+    /**
+     * Transcribes the given audio with the currently configured Whisper server. If it fails, even after
+     * retrying transient errors, or its circuit breaker is open, the fallback server is used if one is
+     * configured. With hedging, both servers may be asked.
+     *
+     * @param audio the audio to transcribe.
+     * @return the transcript.
+     * @throws IOException if the server is unknown or the request fails.
+     */
+    public String transcribe(RecordedAudio audio) throws IOException {
+        String whisperServer = configManager.getWhisperServer();
+        String fallbackServer = configManager.getFallbackWhisperServer();
+        boolean hasFallback = !fallbackServer.isEmpty() && !fallbackServer.equals(whisperServer);
+        String hedging = configManager.getTranscriptionHedging();
+        if (hasFallback && !HEDGING_OFF.equals(hedging)) {
+            long delay = HEDGING_PARALLEL.equals(hedging) ? 0 : hedgeDelay(whisperServer);
+            return transcribeHedged(audio, whisperServer, fallbackServer, delay);
+        }
+        try {
+            return transcribe(audio, whisperServer);
+        } catch (IOException e) {
+            if (!hasFallback || CancellationToken.isCurrentCancelled()) {
+                throw e;
+            }
+            logger.warn("Transcription with {} failed, falling back to {}: {}", whisperServer, fallbackServer, e.getMessage());
+            return transcribe(audio, fallbackServer);
+        }
+    }
+
+    /**
+     * Returns the server which produced the latest transcript, null if none was produced yet.
+     */
+    public String getLastWhisperServer() {
+        return lastWhisperServer;
+    }
+
+    /**
+     * Returns how long the primary server may take before the hedged request is sent.
+     */
+    private long hedgeDelay(String whisperServer) {
+        LatencyTracker latencies = latencies(whisperServer);
+        if (latencies.getCount() < MIN_LATENCY_SAMPLES) {
+            return configManager.getHedgeDelayMillis();
+        }
+        return latencies.getPercentile(HEDGE_PERCENTILE);
+    }
+
+    /**
+     * Sends the audio to the primary server and, after the delay or as soon as the primary fails, to the
+     * secondary one. Returns the first transcript and aborts the other request.
+     */
+    private String transcribeHedged(RecordedAudio audio, String primaryServer, String secondaryServer, long delay)
+            throws IOException {
+        BlockingQueue<Attempt> finished = new LinkedBlockingQueue<>();
+        Attempt primary = new Attempt(primaryServer);
+        Attempt secondary = new Attempt(secondaryServer);
+        primary.start(audio, finished);
+        long hedgeAt = System.currentTimeMillis() + delay;
+        logger.info("Transcribing with {}, hedging with {} after {} ms", primaryServer, secondaryServer, delay);
+        try {
+            while (true) {
+                if (CancellationToken.isCurrentCancelled()) {
+                    throw new InterruptedIOException("Transcription was cancelled");
+                }
+                if (secondary.result == null && System.currentTimeMillis() >= hedgeAt) {
+                    if (delay > 0) {
+                        logger.info("{} has not answered within {} ms, also asking {}", primaryServer, delay, secondaryServer);
+                    }
+                    secondary.start(audio, finished);
+                }
+                long wait = secondary.result == null
+                        ? Math.min(CANCEL_POLL_MILLIS, Math.max(0, hedgeAt - System.currentTimeMillis()))
+                        : CANCEL_POLL_MILLIS;
+                Attempt attempt = finished.poll(wait, TimeUnit.MILLISECONDS);
+                if (attempt == null) {
+                    continue;
+                }
+                if (!attempt.result.isCompletedExceptionally()) {
+                    Attempt loser = attempt == primary ? secondary : primary;
+                    logger.info("{} answered first", attempt.server);
+                    if (loser == primary) {
+                        // The primary took at least this long. Leaving it out would let the percentile, and with it
+                        // the delay, drift down with every hedge that wins.
+                        latencies(primaryServer).record(System.currentTimeMillis() - primary.startedAt);
+                    }
+                    loser.cancel();
+                    return attempt.result.join();
+                }
+                Attempt other = attempt == primary ? secondary : primary;
+                if (other.result == null) {
+                    logger.warn("Transcription with {} failed, asking {} now", attempt.server, other.server);
+                    other.start(audio, finished);
+                } else if (other.result.isCompletedExceptionally()) {
+                    throw primary.failure();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the transcription");
+        } finally {
+            primary.cancel();
+            secondary.cancel();
+        }
+    }
+
+    private String transcribe(RecordedAudio audio, String whisperServer) throws IOException {
+        long start = System.currentTimeMillis();
+        String transcript;
+        if (whisperServer.equals("OpenAI")) {
+            logger.info("Transcribing audio using OpenAI");
+            transcript = whisperClient.transcribe(audio);
+        } else if (whisperServer.equals("Faster-Whisper")) {
+            logger.info("Transcribing audio using Faster-Whisper");
+            transcript = fasterWhisperTranscribeClient.transcribe(audio);
+        } else if (whisperServer.equals("Open WebUI")) {
+            logger.info("Transcribing audio using Open WebUI");
+            transcript = openWebUITranscribeClient.transcribeAudio(audio);
+        } else {
+            throw new IOException("Unknown Whisper server: " + whisperServer);
+        }
+        latencies(whisperServer).record(System.currentTimeMillis() - start);
+        lastWhisperServer = whisperServer;
+        return transcript;
+    }
+
+    private static LatencyTracker latencies(String whisperServer) {
+        return LATENCIES.computeIfAbsent(whisperServer, server -> new LatencyTracker(LATENCY_SAMPLES));
+    }
+
+    /**
+     * One of the requests of a hedged transcription, running on its own thread with its own cancellation token.
+     */
+    private class Attempt {
+        private final String server;
+        private final CancellationToken cancellationToken = new CancellationToken();
+        // Null until started.
+        private volatile CompletableFuture<String> result;
+        private long startedAt;
+
+        Attempt(String server) {
+            this.server = server;
+        }
+
+        void start(RecordedAudio audio, BlockingQueue<Attempt> finished) {
+            startedAt = System.currentTimeMillis();
+            result = CompletableFuture.supplyAsync(() -> {
+                cancellationToken.bind();
+                try {
+                    return transcribe(audio, server);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                } finally {
+                    cancellationToken.unbind();
+                }
+            }, HEDGE_EXECUTOR);
+            result.whenComplete((transcript, error) -> finished.add(this));
+        }
+
+        /**
+         * Aborts the request if it is running and waits a moment for it to stop reading the audio.
+         */
+        void cancel() {
+            if (result == null || result.isDone()) {
+                return;
+            }
+            cancellationToken.cancel();
+            try {
+                result.get(LOSER_GRACE_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                // Expected, the request was aborted.
+            }
+        }
+
+        IOException failure() {
+            try {
+                result.join();
+                return new IOException("Transcription with " + server + " did not fail");
+            } catch (CompletionException e) {
+                return e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package org.whispercat.recording;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Writes PCM data incrementally to a WAV file.
+ * The RIFF header is written up front and its size fields are patched when the writer is closed,
+ * so the capture thread can append data as it arrives without knowing the final length.
+ * Big-endian 16-bit input is converted to little-endian as required by the WAV format.
+ */
+public class WavWriter implements Closeable {
+    static final int HEADER_SIZE = 44;
+
+    private final RandomAccessFile file;
+    private final boolean swapBytes;
+    private byte[] scratch = new byte[0];
+    private long dataLength = 0;
+
+    public WavWriter(File wavFile, AudioFormat format) throws IOException {
+        this.file = new RandomAccessFile(wavFile, "rw");
+        this.file.setLength(0);
+        this.swapBytes = format.isBigEndian() && format.getSampleSizeInBits() == 16;
+        this.file.write(createHeader(format, 0));
+    }
+
+    /**
+     * Appends PCM data to the file.
+     */
+    public void write(byte[] data, int offset, int length) throws IOException {
+        if (swapBytes) {
+            if (scratch.length < length) {
+                scratch = new byte[length];
+            }
+            for (int i = 0; i + 1 < length; i += 2) {
+                scratch[i] = data[offset + i + 1];
+                scratch[i + 1] = data[offset + i];
+            }
+            file.write(scratch, 0, length & ~1);
+            dataLength += length & ~1;
+        } else {
+            file.write(data, offset, length);
+            dataLength += length;
+        }
+    }
+
+    public long getDataLength() {
+        return dataLength;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            file.seek(4);
+            file.write(intLE((int) (dataLength + HEADER_SIZE - 8)));
+            file.seek(40);
+            file.write(intLE((int) dataLength));
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Writes a complete WAV file from an in-memory PCM block.
+     */
+    public static void write(File wavFile, AudioFormat format, byte[] data, int offset, int length) throws IOException {
+        try (WavWriter writer = new WavWriter(wavFile, format)) {
+            writer.write(data, offset, length);
+        }
+    }
+
+    /**
+     * Creates a canonical 44 byte PCM WAV header.
+     *
+     * @param format     the audio format of the data that follows.
+     * @param dataLength the number of data bytes, may be 0 if not yet known.
+     * @return the header bytes.
+     */
+    public static byte[] createHeader(AudioFormat format, long dataLength) {
+        int channels = format.getChannels();
+        int sampleRate = (int) format.getSampleRate();
+        int bitsPerSample = format.getSampleSizeInBits();
+        int blockAlign = channels * bitsPerSample / 8;
+        byte[] header = new byte[HEADER_SIZE];
+        putAscii(header, 0, "RIFF");
+        putIntLE(header, 4, (int) (dataLength + HEADER_SIZE - 8));
+        putAscii(header, 8, "WAVE");
+        putAscii(header, 12, "fmt ");
+        putIntLE(header, 16, 16);
+        putShortLE(header, 20, 1);
+        putShortLE(header, 22, channels);
+        putIntLE(header, 24, sampleRate);
+        putIntLE(header, 28, sampleRate * blockAlign);
+        putShortLE(header, 32, blockAlign);
+        putShortLE(header, 34, bitsPerSample);
+        putAscii(header, 36, "data");
+        putIntLE(header, 40, (int) dataLength);
+        return header;
+    }
+
+    private static byte[] intLE(int value) {
+        byte[] bytes = new byte[4];
+        putIntLE(bytes, 0, value);
+        return bytes;
+    }
+
+    private static void putAscii(byte[] target, int offset, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            target[offset + i] = (byte) value.charAt(i);
+        }
+    }
+
+    private static void putIntLE(byte[] target, int offset, int value) {
+        target[offset] = (byte) value;
+        target[offset + 1] = (byte) (value >> 8);
+        target[offset + 2] = (byte) (value >> 16);
+        target[offset + 3] = (byte) (value >> 24);
+    }
+
+    private static void putShortLE(byte[] target, int offset, int value) {
+        target[offset] = (byte) value;
+        target[offset + 1] = (byte) (value >> 8);
+    }
+}
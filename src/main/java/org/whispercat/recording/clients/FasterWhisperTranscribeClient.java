@@ -2,18 +2,20 @@ package org.whispercat.recording.clients;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import org.apache.http.HttpEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.ContentType;
 import org.apache.http.entity.mime.MultipartEntityBuilder;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.whispercat.ConfigManager;
+import org.whispercat.http.HttpClientProvider;
+import org.whispercat.http.HttpStatusException;
+import org.whispercat.http.ResilientCall;
+import org.whispercat.metrics.RequestTimer;
+import org.whispercat.recording.RecordedAudio;
+import org.whispercat.recording.encoding.AudioUploadEncoder;
 
-import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 
@@ -23,6 +25,7 @@ import java.nio.charset.StandardCharsets;
  */
 public class FasterWhisperTranscribeClient {
     private static final Logger logger = LogManager.getLogger(FasterWhisperTranscribeClient.class);
+    private static final String ENDPOINT = "Faster-Whisper";
     private final ConfigManager configManager;
 
     public FasterWhisperTranscribeClient(ConfigManager configManager) {
@@ -32,53 +35,59 @@ public class FasterWhisperTranscribeClient {
     /**
      * Transcribes the given audio file using the transcription API.
      *
-     * @param audioFile the audio file to be transcribed.
+     * @param audio the audio to be transcribed.
      * @return the transcription as returned by the API.
-     * @throws IOException if an error occurs during the API request.
+     * @throws IOException if an error occurs during the API request, after transient errors were retried.
      */
-    public String transcribe(File audioFile) throws IOException {
-        try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
-            // Build URL from ConfigManager
-            String baseUrl = configManager.getFasterWhisperServerUrl().trim();
+    public String transcribe(RecordedAudio audio) throws IOException {
+        return ResilientCall.execute(ENDPOINT, configManager, () -> sendRequest(audio));
+    }
 
-            if (!baseUrl.toLowerCase().startsWith("http://") && !baseUrl.toLowerCase().startsWith("https://")) {
-                baseUrl = "http://" + baseUrl;
-            }
+    private String sendRequest(RecordedAudio audio) throws IOException {
+        CloseableHttpClient httpClient = HttpClientProvider.getDefaultClient(configManager);
+        // Build URL from ConfigManager
+        String baseUrl = configManager.getFasterWhisperServerUrl().trim();
 
-            if (baseUrl.endsWith("/")) {
-                baseUrl = baseUrl.substring(0, baseUrl.length() - 1);
-            }
+        if (!baseUrl.toLowerCase().startsWith("http://") && !baseUrl.toLowerCase().startsWith("https://")) {
+            baseUrl = "http://" + baseUrl;
+        }
 
-            String url = baseUrl + "/v1/audio/transcriptions";
-            HttpPost httpPost = new HttpPost(url);
-            httpPost.setHeader("Accept", "application/json");
+        if (baseUrl.endsWith("/")) {
+            baseUrl = baseUrl.substring(0, baseUrl.length() - 1);
+        }
 
-            // Build multipart/form-data entity with the file and parameters.
-            MultipartEntityBuilder builder = MultipartEntityBuilder.create();
-            builder.addBinaryBody("file", audioFile, ContentType.create("audio/wav"), audioFile.getName());
-            builder.addTextBody("model", configManager.getFasterWhisperModel());
-            if (!configManager.getFasterWhisperLanguage().isEmpty()) {
-                builder.addTextBody("language", configManager.getFasterWhisperLanguage());
-            }
-            HttpEntity multipart = builder.build();
-            httpPost.setEntity(multipart);
-            logger.info("Transcribing audio file {} with model {} and language {}", audioFile.getName(), configManager.getFasterWhisperModel(), configManager.getFasterWhisperLanguage());
+        String url = baseUrl + "/v1/audio/transcriptions";
+        HttpPost httpPost = new HttpPost(url);
+        httpPost.setConfig(HttpClientProvider.createRequestConfig(configManager, ENDPOINT));
+        httpPost.setHeader("Accept", "application/json");
+
+        RequestTimer timer = new RequestTimer(ENDPOINT, configManager.getFasterWhisperModel());
+        // Build multipart/form-data entity with the file and parameters.
+        MultipartEntityBuilder builder = MultipartEntityBuilder.create();
+        builder.addPart("file", AudioUploadEncoder.createBody(audio, configManager.getUploadEncoding(ENDPOINT)));
+        builder.addTextBody("model", configManager.getFasterWhisperModel());
+        if (!configManager.getFasterWhisperLanguage().isEmpty()) {
+            builder.addTextBody("language", configManager.getFasterWhisperLanguage());
+        }
+        httpPost.setEntity(timer.encoded(builder.build()));
+        logger.info("Transcribing audio file {} with model {} and language {}", audio.getName(), configManager.getFasterWhisperModel(), configManager.getFasterWhisperLanguage());
 
-            try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
-                int statusCode = response.getStatusLine().getStatusCode();
-                String responseString = new String(response.getEntity().getContent().readAllBytes(), StandardCharsets.UTF_8);
-                if (statusCode != 200) {
-                    logger.error("Error from transcription API. Status: {} Response: {}", statusCode, responseString);
-                    throw new IOException("Error from transcription API: " + responseString);
-                }
-                ObjectMapper objectMapper = new ObjectMapper();
-                JsonNode jsonNode = objectMapper.readTree(responseString);
-                // The API may return a plain string or an object with a "text" field.
-                if (jsonNode.isTextual()) {
-                    return jsonNode.asText();
-                } else {
-                    return jsonNode.path("text").asText();
-                }
+        try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
+            timer.responseReceived();
+            int statusCode = response.getStatusLine().getStatusCode();
+            String responseString = new String(response.getEntity().getContent().readAllBytes(), StandardCharsets.UTF_8);
+            if (statusCode != 200) {
+                logger.error("Error from transcription API. Status: {} Response: {}", statusCode, responseString);
+                throw HttpStatusException.of("Error from transcription API: " + responseString, response);
+            }
+            ObjectMapper objectMapper = new ObjectMapper();
+            JsonNode jsonNode = objectMapper.readTree(responseString);
+            timer.parsed();
+            // The API may return a plain string or an object with a "text" field.
+            if (jsonNode.isTextual()) {
+                return jsonNode.asText();
+            } else {
+                return jsonNode.path("text").asText();
             }
         }
     }
@@ -5,56 +5,77 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.http.HttpEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.ContentType;
 import org.apache.http.entity.mime.MultipartEntityBuilder;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.whispercat.ConfigManager;
+import org.whispercat.http.HttpClientProvider;
+import org.whispercat.http.HttpStatusException;
+import org.whispercat.http.ResilientCall;
+import org.whispercat.metrics.RequestTimer;
+import org.whispercat.recording.RecordedAudio;
+import org.whispercat.recording.encoding.AudioUploadEncoder;
 
-import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 
 public class OpenAITranscribeClient {
     private static final Logger logger = LogManager.getLogger(OpenAITranscribeClient.class);
-    private static final String API_URL = "https://api.openai.com/v1/audio/transcriptions";
+    private static final String API_PATH = "/v1/audio/transcriptions";
+    private static final String ENDPOINT = "OpenAI";
     private final ConfigManager configManager;
 
     public OpenAITranscribeClient(ConfigManager configManager) {
         this.configManager = configManager;
     }
 
-    public String transcribe(File audioFile) throws IOException {
-        try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
-            HttpPost httpPost = new HttpPost(API_URL);
-            httpPost.setHeader("Authorization", "Bearer " + configManager.getApiKey());
-
-            MultipartEntityBuilder builder = MultipartEntityBuilder.create();
-            builder.addBinaryBody("file", audioFile, ContentType.create("audio/wav"), audioFile.getName());
-            builder.addTextBody("model", "whisper-1");
-
-            HttpEntity multipart = builder.build();
-            httpPost.setEntity(multipart);
-
-            try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
-                int statusCode = response.getStatusLine().getStatusCode();
-                HttpEntity responseEntity = response.getEntity();
-                String responseString = new String(responseEntity.getContent().readAllBytes(), StandardCharsets.UTF_8);
-
-                if (statusCode != 200) {
-                    ObjectMapper objectMapper = new ObjectMapper();
-                    JsonNode jsonNode = objectMapper.readTree(responseString);
-                    String errorMessage = jsonNode.path("error").path("message").asText();
-                    logger.error("Error from OpenAI API: {}", errorMessage);
-                    throw new IOException("Error from OpenAI API: " + errorMessage);
-                }
-
-                ObjectMapper objectMapper = new ObjectMapper();
-                JsonNode jsonNode = objectMapper.readTree(responseString);
-                return jsonNode.path("text").asText();
+    public String transcribe(RecordedAudio audio) throws IOException {
+        return ResilientCall.execute(ENDPOINT, configManager, () -> sendRequest(audio));
+    }
+
+    private String sendRequest(RecordedAudio audio) throws IOException {
+        CloseableHttpClient httpClient = HttpClientProvider.getDefaultClient(configManager);
+        HttpPost httpPost = new HttpPost(configManager.getOpenAIBaseUrl() + API_PATH);
+        httpPost.setConfig(HttpClientProvider.createRequestConfig(configManager, ENDPOINT));
+        httpPost.setHeader("Authorization", "Bearer " + configManager.getApiKey());
+
+        RequestTimer timer = new RequestTimer(ENDPOINT, "whisper-1");
+        MultipartEntityBuilder builder = MultipartEntityBuilder.create();
+        builder.addPart("file", AudioUploadEncoder.createBody(audio, configManager.getUploadEncoding(ENDPOINT)));
+        builder.addTextBody("model", "whisper-1");
+
+        httpPost.setEntity(timer.encoded(builder.build()));
+
+        try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
+            timer.responseReceived();
+            int statusCode = response.getStatusLine().getStatusCode();
+            HttpEntity responseEntity = response.getEntity();
+            String responseString = new String(responseEntity.getContent().readAllBytes(), StandardCharsets.UTF_8);
+
+            if (statusCode != 200) {
+                String errorMessage = errorMessage(responseString);
+                logger.error("Error from OpenAI API: {} {}", statusCode, errorMessage);
+                throw HttpStatusException.of("Error from OpenAI API: " + errorMessage, response);
             }
+
+            ObjectMapper objectMapper = new ObjectMapper();
+            JsonNode jsonNode = objectMapper.readTree(responseString);
+            timer.parsed();
+            return jsonNode.path("text").asText();
+        }
+    }
+
+    /**
+     * Returns the message of an error response. Gateways in front of the API answer with HTML, which is
+     * returned as it is.
+     */
+    private static String errorMessage(String responseString) {
+        try {
+            JsonNode jsonNode = new ObjectMapper().readTree(responseString);
+            return jsonNode.path("error").path("message").asText(responseString);
+        } catch (IOException e) {
+            return responseString;
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,145 @@
+package org.whispercat.recording.encoding;
+
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.mime.MIME;
+import org.apache.http.entity.mime.content.AbstractContentBody;
+import org.apache.http.entity.mime.content.ByteArrayBody;
+import org.apache.http.entity.mime.content.ContentBody;
+import org.apache.http.entity.mime.content.FileBody;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.whispercat.recording.RecordedAudio;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Creates the multipart body for an audio upload in the encoding selected for a backend.
+ */
+public final class AudioUploadEncoder {
+    private static final Logger logger = LogManager.getLogger(AudioUploadEncoder.class);
+
+    public static final String WAV = "wav";
+    public static final String FLAC = "flac";
+    public static final String[] ENCODINGS = {WAV, FLAC};
+
+    private AudioUploadEncoder() {
+    }
+
+    /**
+     * Creates the upload body for the given audio.
+     * Audio held in memory is streamed from its buffers into the request, without a temporary file.
+     *
+     * @param audio    the recorded or dropped audio.
+     * @param encoding {@link #WAV} or {@link #FLAC}.
+     * @return the body to add as "file" part.
+     */
+    public static ContentBody createBody(RecordedAudio audio, String encoding) {
+        if (!audio.isInMemory()) {
+            return createBody(audio.getFile(), encoding);
+        }
+        if (FLAC.equalsIgnoreCase(encoding)) {
+            try (InputStream pcm = audio.openPcmStream()) {
+                long start = System.currentTimeMillis();
+                byte[] data = pcm.readAllBytes();
+                ByteArrayOutputStream output = new ByteArrayOutputStream(data.length / 2 + 1024);
+                FlacEncoder.encode(data, 0, data.length, audio.getFormat(), output);
+                logger.info("Encoded {} as FLAC in {} ms ({} -> {} bytes)", audio.getName(),
+                        System.currentTimeMillis() - start, audio.getWavLength(), output.size());
+                return new ByteArrayBody(output.toByteArray(), ContentType.create("audio/flac"),
+                        baseName(audio.getName()) + ".flac");
+            } catch (IOException e) {
+                logger.warn("FLAC encoding of {} failed, uploading WAV", audio.getName(), e);
+            }
+        }
+        return new RecordedAudioBody(audio);
+    }
+
+    /**
+     * Creates the upload body for the given audio file.
+     * Files that cannot be decoded by Java Sound (e.g. dropped MP3 files) are uploaded unchanged.
+     */
+    private static ContentBody createBody(File audioFile, String encoding) {
+        if (FLAC.equalsIgnoreCase(encoding) && !audioFile.getName().toLowerCase().endsWith(".mp3")) {
+            try {
+                long start = System.currentTimeMillis();
+                byte[] flac = encodeFlac(audioFile);
+                logger.info("Encoded {} as FLAC in {} ms ({} -> {} bytes)", audioFile.getName(),
+                        System.currentTimeMillis() - start, audioFile.length(), flac.length);
+                return new ByteArrayBody(flac, ContentType.create("audio/flac"), baseName(audioFile.getName()) + ".flac");
+            } catch (IOException | UnsupportedAudioFileException e) {
+                logger.warn("FLAC encoding of {} failed, uploading the original file", audioFile.getName(), e);
+            }
+        }
+        return new FileBody(audioFile, contentType(audioFile), audioFile.getName());
+    }
+
+    private static byte[] encodeFlac(File audioFile) throws IOException, UnsupportedAudioFileException {
+        try (AudioInputStream source = AudioSystem.getAudioInputStream(audioFile)) {
+            AudioFormat sourceFormat = source.getFormat();
+            AudioFormat pcmFormat = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, sourceFormat.getSampleRate(), 16,
+                    sourceFormat.getChannels(), sourceFormat.getChannels() * 2, sourceFormat.getSampleRate(), false);
+            try (AudioInputStream pcm = AudioSystem.getAudioInputStream(pcmFormat, source)) {
+                byte[] data = pcm.readAllBytes();
+                ByteArrayOutputStream output = new ByteArrayOutputStream(data.length / 2 + 1024);
+                FlacEncoder.encode(data, 0, data.length, pcmFormat, output);
+                return output.toByteArray();
+            }
+        }
+    }
+
+    private static ContentType contentType(File audioFile) {
+        String name = audioFile.getName().toLowerCase();
+        if (name.endsWith(".mp3")) {
+            return ContentType.create("audio/mpeg");
+        } else if (name.endsWith(".flac")) {
+            return ContentType.create("audio/flac");
+        }
+        return ContentType.create("audio/wav");
+    }
+
+    private static String baseName(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    /**
+     * Streams the WAV header and the PCM data of an in-memory recording into the request.
+     * The body can be written repeatedly, e.g. when a request is retried.
+     */
+    private static class RecordedAudioBody extends AbstractContentBody {
+        private final RecordedAudio audio;
+
+        RecordedAudioBody(RecordedAudio audio) {
+            super(ContentType.create("audio/wav"));
+            this.audio = audio;
+        }
+
+        @Override
+        public String getFilename() {
+            return audio.getName();
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            audio.writeWavTo(out);
+        }
+
+        @Override
+        public String getTransferEncoding() {
+            return MIME.ENC_BINARY;
+        }
+
+        @Override
+        public long getContentLength() {
+            return audio.getWavLength();
+        }
+    }
+}
@@ -0,0 +1,372 @@
+package org.whispercat.recording.encoding;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Minimal lossless FLAC encoder for 16-bit signed PCM.
+ * Every channel is coded independently with the best fixed linear predictor (order 0 to 4)
+ * and partitioned Rice coding of the residual, falling back to constant or verbatim subframes
+ * where those are smaller. This typically halves the size of speech recordings compared to WAV.
+ */
+public final class FlacEncoder {
+    private static final int BLOCK_SIZE = 4096;
+    private static final int BITS_PER_SAMPLE = 16;
+    private static final int MAX_FIXED_ORDER = 4;
+    private static final int MAX_PARTITION_ORDER = 8;
+    private static final int MAX_RICE_PARAMETER = 14;
+
+    private FlacEncoder() {
+    }
+
+    /**
+     * Encodes interleaved 16-bit signed PCM data as a FLAC stream.
+     *
+     * @param data   the PCM data.
+     * @param offset the offset of the first byte.
+     * @param length the number of bytes to encode.
+     * @param format the format of the data, must be 16-bit signed PCM.
+     * @param output the stream the FLAC data is written to.
+     * @throws IOException if the format is not supported or writing fails.
+     */
+    public static void encode(byte[] data, int offset, int length, AudioFormat format, OutputStream output) throws IOException {
+        if (format.getSampleSizeInBits() != BITS_PER_SAMPLE || format.getEncoding() != AudioFormat.Encoding.PCM_SIGNED) {
+            throw new IOException("Unsupported audio format for FLAC encoding: " + format);
+        }
+        int channels = format.getChannels();
+        int sampleRate = (int) format.getSampleRate();
+        int frameSize = channels * 2;
+        int totalSamples = length / frameSize;
+        boolean bigEndian = format.isBigEndian();
+
+        BitWriter writer = new BitWriter(BLOCK_SIZE * frameSize + 64);
+        writeStreamHeader(writer, sampleRate, channels, totalSamples);
+        output.write(writer.buffer, 0, writer.byteLength());
+
+        int[][] samples = new int[channels][BLOCK_SIZE];
+        int[] residual = new int[BLOCK_SIZE];
+        int frameNumber = 0;
+        for (int start = 0; start < totalSamples; start += BLOCK_SIZE) {
+            int blockSize = Math.min(BLOCK_SIZE, totalSamples - start);
+            for (int i = 0; i < blockSize; i++) {
+                int base = offset + (start + i) * frameSize;
+                for (int channel = 0; channel < channels; channel++) {
+                    int index = base + channel * 2;
+                    samples[channel][i] = bigEndian
+                            ? (short) ((data[index] << 8) | (data[index + 1] & 0xFF))
+                            : (short) ((data[index + 1] << 8) | (data[index] & 0xFF));
+                }
+            }
+            writer.reset();
+            writeFrameHeader(writer, sampleRate, channels, blockSize, frameNumber++);
+            for (int channel = 0; channel < channels; channel++) {
+                writeSubframe(writer, samples[channel], blockSize, residual);
+            }
+            writer.alignToByte();
+            int crc16 = crc16(writer.buffer, writer.byteLength());
+            writer.writeBits(crc16, 16);
+            output.write(writer.buffer, 0, writer.byteLength());
+        }
+    }
+
+    private static void writeStreamHeader(BitWriter writer, int sampleRate, int channels, long totalSamples) {
+        writer.writeBits('f', 8);
+        writer.writeBits('L', 8);
+        writer.writeBits('a', 8);
+        writer.writeBits('C', 8);
+        // METADATA_BLOCK_HEADER: last block, type STREAMINFO, 34 bytes.
+        writer.writeBits(1, 1);
+        writer.writeBits(0, 7);
+        writer.writeBits(34, 24);
+        writer.writeBits(BLOCK_SIZE, 16);
+        writer.writeBits(BLOCK_SIZE, 16);
+        writer.writeBits(0, 24);
+        writer.writeBits(0, 24);
+        writer.writeBits(sampleRate, 20);
+        writer.writeBits(channels - 1, 3);
+        writer.writeBits(BITS_PER_SAMPLE - 1, 5);
+        writer.writeBits((int) (totalSamples >>> 32), 4);
+        writer.writeBits((int) totalSamples, 32);
+        // An all-zero MD5 signature means "not computed".
+        for (int i = 0; i < 16; i++) {
+            writer.writeBits(0, 8);
+        }
+    }
+
+    private static void writeFrameHeader(BitWriter writer, int sampleRate, int channels, int blockSize, int frameNumber) {
+        writer.writeBits(0xFFF8, 16);
+        writer.writeBits(0b0111, 4);
+        writer.writeBits(sampleRateCode(sampleRate), 4);
+        writer.writeBits(channels - 1, 4);
+        writer.writeBits(0b100, 3);
+        writer.writeBits(0, 1);
+        writeUtf8(writer, frameNumber);
+        writer.writeBits(blockSize - 1, 16);
+        writer.writeBits(crc8(writer.buffer, writer.byteLength()), 8);
+    }
+
+    private static int sampleRateCode(int sampleRate) {
+        switch (sampleRate) {
+            case 8000:
+                return 0b0100;
+            case 16000:
+                return 0b0101;
+            case 22050:
+                return 0b0110;
+            case 24000:
+                return 0b0111;
+            case 32000:
+                return 0b1000;
+            case 44100:
+                return 0b1001;
+            case 48000:
+                return 0b1010;
+            case 96000:
+                return 0b1011;
+            default:
+                // Taken from STREAMINFO.
+                return 0b0000;
+        }
+    }
+
+    private static void writeUtf8(BitWriter writer, int value) {
+        if (value < 0x80) {
+            writer.writeBits(value, 8);
+            return;
+        }
+        int continuationBytes = value < 0x800 ? 1 : value < 0x10000 ? 2 : value < 0x200000 ? 3 : value < 0x4000000 ? 4 : 5;
+        int leadingOnes = (0xFF00 >> (continuationBytes + 1)) & 0xFF;
+        writer.writeBits(leadingOnes | (value >>> (6 * continuationBytes)), 8);
+        for (int i = continuationBytes - 1; i >= 0; i--) {
+            writer.writeBits(0x80 | ((value >>> (6 * i)) & 0x3F), 8);
+        }
+    }
+
+    private static void writeSubframe(BitWriter writer, int[] samples, int blockSize, int[] residual) {
+        boolean constant = true;
+        for (int i = 1; i < blockSize && constant; i++) {
+            constant = samples[i] == samples[0];
+        }
+        if (constant) {
+            writer.writeBits(0, 8);
+            writer.writeSigned(samples[0], BITS_PER_SAMPLE);
+            return;
+        }
+
+        int order = Math.min(bestFixedOrder(samples, blockSize), blockSize - 1);
+        computeResidual(samples, blockSize, order, residual);
+        int partitionOrder = bestPartitionOrder(residual, blockSize, order);
+        long residualBits = riceBits(residual, blockSize, order, partitionOrder);
+        long fixedBits = 8 + (long) order * BITS_PER_SAMPLE + residualBits;
+        long verbatimBits = 8 + (long) blockSize * BITS_PER_SAMPLE;
+        if (fixedBits >= verbatimBits) {
+            writer.writeBits(0b00000010, 8);
+            for (int i = 0; i < blockSize; i++) {
+                writer.writeSigned(samples[i], BITS_PER_SAMPLE);
+            }
+            return;
+        }
+        writer.writeBits(0b00010000 | (order << 1), 8);
+        for (int i = 0; i < order; i++) {
+            writer.writeSigned(samples[i], BITS_PER_SAMPLE);
+        }
+        writeResidual(writer, residual, blockSize, order, partitionOrder);
+    }
+
+    private static int bestFixedOrder(int[] samples, int blockSize) {
+        long[] errors = new long[MAX_FIXED_ORDER + 1];
+        for (int i = MAX_FIXED_ORDER; i < blockSize; i++) {
+            int s0 = samples[i], s1 = samples[i - 1], s2 = samples[i - 2], s3 = samples[i - 3], s4 = samples[i - 4];
+            errors[0] += Math.abs(s0);
+            errors[1] += Math.abs(s0 - s1);
+            errors[2] += Math.abs(s0 - 2 * s1 + s2);
+            errors[3] += Math.abs(s0 - 3 * s1 + 3 * s2 - s3);
+            errors[4] += Math.abs(s0 - 4 * s1 + 6 * s2 - 4 * s3 + s4);
+        }
+        int best = 0;
+        for (int order = 1; order <= MAX_FIXED_ORDER; order++) {
+            if (errors[order] < errors[best]) {
+                best = order;
+            }
+        }
+        return best;
+    }
+
+    private static void computeResidual(int[] samples, int blockSize, int order, int[] residual) {
+        for (int i = order; i < blockSize; i++) {
+            switch (order) {
+                case 0:
+                    residual[i] = samples[i];
+                    break;
+                case 1:
+                    residual[i] = samples[i] - samples[i - 1];
+                    break;
+                case 2:
+                    residual[i] = samples[i] - 2 * samples[i - 1] + samples[i - 2];
+                    break;
+                case 3:
+                    residual[i] = samples[i] - 3 * samples[i - 1] + 3 * samples[i - 2] - samples[i - 3];
+                    break;
+                default:
+                    residual[i] = samples[i] - 4 * samples[i - 1] + 6 * samples[i - 2] - 4 * samples[i - 3] + samples[i - 4];
+                    break;
+            }
+        }
+    }
+
+    private static int bestPartitionOrder(int[] residual, int blockSize, int order) {
+        int best = 0;
+        long bestBits = Long.MAX_VALUE;
+        for (int partitionOrder = 0; partitionOrder <= MAX_PARTITION_ORDER; partitionOrder++) {
+            if ((blockSize & ((1 << partitionOrder) - 1)) != 0 || (blockSize >> partitionOrder) <= order) {
+                break;
+            }
+            long bits = riceBits(residual, blockSize, order, partitionOrder);
+            if (bits < bestBits) {
+                bestBits = bits;
+                best = partitionOrder;
+            }
+        }
+        return best;
+    }
+
+    private static long riceBits(int[] residual, int blockSize, int order, int partitionOrder) {
+        long bits = 6;
+        int partitionSize = blockSize >> partitionOrder;
+        int start = order;
+        for (int partition = 0; partition < (1 << partitionOrder); partition++) {
+            int end = (partition + 1) * partitionSize;
+            long sum = zigZagSum(residual, start, end);
+            int parameter = riceParameter(sum, end - start);
+            bits += 4 + (long) (end - start) * (parameter + 1) + (sum >> parameter);
+            start = end;
+        }
+        return bits;
+    }
+
+    private static void writeResidual(BitWriter writer, int[] residual, int blockSize, int order, int partitionOrder) {
+        writer.writeBits(0b00, 2);
+        writer.writeBits(partitionOrder, 4);
+        int partitionSize = blockSize >> partitionOrder;
+        int start = order;
+        for (int partition = 0; partition < (1 << partitionOrder); partition++) {
+            int end = (partition + 1) * partitionSize;
+            int parameter = riceParameter(zigZagSum(residual, start, end), end - start);
+            writer.writeBits(parameter, 4);
+            for (int i = start; i < end; i++) {
+                writer.writeRice(residual[i], parameter);
+            }
+            start = end;
+        }
+    }
+
+    private static long zigZagSum(int[] residual, int start, int end) {
+        long sum = 0;
+        for (int i = start; i < end; i++) {
+            sum += (residual[i] << 1) ^ (residual[i] >> 31);
+        }
+        return sum;
+    }
+
+    private static int riceParameter(long sum, int count) {
+        if (count == 0 || sum < count) {
+            return 0;
+        }
+        int parameter = 63 - Long.numberOfLeadingZeros(sum / count);
+        return Math.min(parameter, MAX_RICE_PARAMETER);
+    }
+
+    private static int crc8(byte[] data, int length) {
+        int crc = 0;
+        for (int i = 0; i < length; i++) {
+            crc ^= data[i] & 0xFF;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x80) != 0 ? ((crc << 1) ^ 0x07) & 0xFF : (crc << 1) & 0xFF;
+            }
+        }
+        return crc;
+    }
+
+    private static int crc16(byte[] data, int length) {
+        int crc = 0;
+        for (int i = 0; i < length; i++) {
+            crc ^= (data[i] & 0xFF) << 8;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x8000) != 0 ? ((crc << 1) ^ 0x8005) & 0xFFFF : (crc << 1) & 0xFFFF;
+            }
+        }
+        return crc;
+    }
+
+    /**
+     * MSB-first bit writer backed by a growable byte array.
+     */
+    private static final class BitWriter {
+        private byte[] buffer;
+        private int bytePosition = 0;
+        private long bitBuffer = 0;
+        private int bitCount = 0;
+
+        BitWriter(int initialCapacity) {
+            buffer = new byte[initialCapacity];
+        }
+
+        void reset() {
+            bytePosition = 0;
+            bitBuffer = 0;
+            bitCount = 0;
+        }
+
+        void writeBits(int value, int bits) {
+            if (bits > 32) {
+                throw new IllegalArgumentException("Cannot write more than 32 bits at once");
+            }
+            bitBuffer = (bitBuffer << bits) | (value & (bits == 32 ? 0xFFFFFFFFL : (1L << bits) - 1));
+            bitCount += bits;
+            while (bitCount >= 8) {
+                bitCount -= 8;
+                put((byte) (bitBuffer >>> bitCount));
+            }
+        }
+
+        void writeSigned(int value, int bits) {
+            writeBits(value, bits);
+        }
+
+        void writeRice(int value, int parameter) {
+            int unsigned = (value << 1) ^ (value >> 31);
+            int quotient = unsigned >>> parameter;
+            while (quotient >= 32) {
+                writeBits(0, 32);
+                quotient -= 32;
+            }
+            writeBits(1, quotient + 1);
+            if (parameter > 0) {
+                writeBits(unsigned, parameter);
+            }
+        }
+
+        void alignToByte() {
+            if (bitCount > 0) {
+                writeBits(0, 8 - bitCount);
+            }
+        }
+
+        /**
+         * Returns the number of complete bytes written so far.
+         */
+        int byteLength() {
+            return bytePosition;
+        }
+
+        private void put(byte value) {
+            if (bytePosition == buffer.length) {
+                byte[] larger = new byte[buffer.length * 2];
+                System.arraycopy(buffer, 0, larger, 0, bytePosition);
+                buffer = larger;
+            }
+            buffer[bytePosition++] = value;
+        }
+    }
+}
@@ -7,12 +7,20 @@ import org.apache.logging.log4j.Logger;
 import org.whispercat.ConfigManager;
 import org.whispercat.Notificationmanager;
 import org.whispercat.ToastNotification;
+import org.whispercat.control.ControlServer;
+import org.whispercat.postprocessing.PostProcessingCache;
+import org.whispercat.recording.ArmedCapture;
+import org.whispercat.recording.AudioDeviceRegistry;
+import org.whispercat.recording.AudioFrameAnalyzer;
+import org.whispercat.recording.TranscriptionService;
 import org.whispercat.recording.clients.FasterWhisperModel;
+import org.whispercat.recording.encoding.AudioUploadEncoder;
 import org.whispercat.recording.clients.FasterWhisperModelsResponse;
 
 import javax.sound.sampled.*;
 import javax.swing.*;
 import java.awt.*;
+import java.awt.datatransfer.StringSelection;
 import java.awt.event.ActionEvent;
 import java.awt.event.ItemEvent;
 import java.io.IOException;
@@ -33,15 +41,30 @@ public class SettingsForm extends JPanel {
     private final JComboBox<Integer> bitrateComboBox;
     private final ConfigManager configManager;
     private final JCheckBox stopSoundSwitch;
+    private final JCheckBox chunkedTranscriptionSwitch;
+    private final JCheckBox streamingPostProcessingSwitch;
+    private final JCheckBox streamingAutoPasteSwitch;
+    private final JCheckBox armedCaptureSwitch;
+    private final JCheckBox resamplingSwitch;
+    private final JCheckBox keepRecordingsSwitch;
+    private final JCheckBox transcriptionCacheSwitch;
+    private final JCheckBox postProcessingCacheSwitch;
+    private final JButton clearPostProcessingCacheButton;
+    private final JCheckBox historySwitch;
+    private final JCheckBox controlApiSwitch;
+    private final JCheckBox voiceActivityDetectionSwitch;
     private final JProgressBar volumeBar;
     private final JButton stopTestButton;
     private final JButton testMicrophoneButton;
     private AudioFormat format;
     private TargetDataLine line;
+    private final Runnable deviceListener = this::refreshMicrophones;
     private TestWorker testWorker;
 
     private final JLabel whisperServerLabel;
     private final JComboBox<String> whisperServerComboBox;
+    private final JComboBox<String> fallbackWhisperServerComboBox;
+    private final JComboBox<String> hedgingComboBox;
     private final JPanel whisperSettingsPanel;
     private final JPanel fasterWhispererPanel;
     private final JPanel groqPanel;
@@ -62,10 +85,16 @@ public class SettingsForm extends JPanel {
     private JTextField openwebUIApiKeyField;
     private JTextField openwebUIApiURLField;
 
+    private final JComboBox<String> openaiUploadEncodingComboBox;
+    private final JComboBox<String> fasterWhisperUploadEncodingComboBox;
+    private final JComboBox<String> openWebUIUploadEncodingComboBox;
+
     private static final String SERVER_FASTER_WHISPER = "Faster-Whisper";
     private static final String OPEN_WEB_UI = "Open WebUI";
     private static final String SERVER_GROQ = "Groq";
     private static final String SERVER_OPENAI = "OpenAI";
+    private static final String NO_FALLBACK = "None";
+    private static final String[] HEDGING_MODES = {TranscriptionService.HEDGING_OFF, TranscriptionService.HEDGING_PARALLEL, TranscriptionService.HEDGING_DELAYED};
 
     private final Map<String, List<String>> fastModelLanguages;
 
@@ -222,6 +251,24 @@ public class SettingsForm extends JPanel {
         gbc.anchor = GridBagConstraints.WEST;
         contentPanel.add(bitrateComboBox, gbc);
 
+        // Row: Resampling
+        row++;
+        gbc.gridx = 0;
+        gbc.gridy = row;
+        gbc.gridwidth = 1;
+        gbc.weightx = 0;
+        gbc.anchor = GridBagConstraints.EAST;
+        contentPanel.add(new JLabel("Resample to 16 kHz:"), gbc);
+        resamplingSwitch = new JCheckBox();
+        resamplingSwitch.setToolTipText("Records in the microphone's native format and converts it to 16 kHz mono, the rate Whisper works with. The bitrate setting is only used when this is off.");
+        resamplingSwitch.addActionListener(e -> bitrateComboBox.setEnabled(!resamplingSwitch.isSelected()));
+        gbc.gridx = 1;
+        gbc.gridy = row;
+        gbc.gridwidth = 2;
+        gbc.weightx = 1.0;
+        gbc.anchor = GridBagConstraints.WEST;
+        contentPanel.add(resamplingSwitch, gbc);
+
         // Row: Enable Stop Sound
         row++;
         gbc.gridx = 0;
@@ -238,6 +285,203 @@ public class SettingsForm extends JPanel {
         gbc.anchor = GridBagConstraints.WEST;
         contentPanel.add(stopSoundSwitch, gbc);
 
+        // Row: Streaming transcription
+        row++;
+        gbc.gridx = 0;
+        gbc.gridy = row;
+        gbc.gridwidth = 1;
+        gbc.weightx = 0;
+        gbc.anchor = GridBagConstraints.EAST;
+        contentPanel.add(new JLabel("Transcribe while recording:"), gbc);
+        chunkedTranscriptionSwitch = new JCheckBox();
+        chunkedTranscriptionSwitch.setToolTipText("Uploads the recording in overlapping segments while you speak, so long dictations finish faster.");
+        gbc.gridx = 1;
+        gbc.gridy = row;
+        gbc.gridwidth = 2;
+        gbc.weightx = 1.0;
+        gbc.anchor = GridBagConstraints.WEST;
+        contentPanel.add(chunkedTranscriptionSwitch, gbc);
+
+        // Row: Voice activity detection
+        row++;
+        gbc.gridx = 0;
+        gbc.gridy = row;
+        gbc.gridwidth = 1;
+        gbc.weightx = 0;
+        gbc.anchor = GridBagConstraints.EAST;
+        contentPanel.add(new JLabel("Skip long silences:"), gbc);
+        voiceActivityDetectionSwitch = new JCheckBox();
+        voiceActivityDetectionSwitch.setToolTipText("Removes pauses longer than a second before the recording is uploaded.");
+        gbc.gridx = 1;
+        gbc.gridy = row;
+        gbc.gridwidth = 2;
+        gbc.weightx = 1.0;
+        gbc.anchor = GridBagConstraints.WEST;
+        contentPanel.add(voiceActivityDetectionSwitch, gbc);
+
+        // Row: Streamed post-processing
+        row++;
+        gbc.gridx = 0;
+        gbc.gridy = row;
+        gbc.gridwidth = 1;
+        gbc.weightx = 0;
+        gbc.anchor = GridBagConstraints.EAST;
+        contentPanel.add(new JLabel("Stream post-processing:"), gbc);
+        streamingPostProcessingSwitch = new JCheckBox();
+        streamingPostProcessingSwitch.setToolTipText("Shows the result of the last prompt step while it is being generated.");
+        gbc.gridx = 1;
+        gbc.gridy = row;
+        gbc.gridwidth = 2;
+        gbc.weightx = 1.0;
+        gbc.anchor = GridBagConstraints.WEST;
+        contentPanel.add(streamingPostProcessingSwitch, gbc);
+
+        // Row: Paste while streaming
+        row++;
+        gbc.gridx = 0;
+        gbc.gridy = row;
+        gbc.gridwidth = 1;
+        gbc.weightx = 0;
+        gbc.anchor = GridBagConstraints.EAST;
+        contentPanel.add(new JLabel("Paste while streaming:"), gbc);
+        streamingAutoPasteSwitch = new JCheckBox();
+        streamingAutoPasteSwitch.setToolTipText("Pastes each finished sentence of the streamed result instead of waiting for the complete text.");
+        gbc.gridx = 1;
+        gbc.gridy = row;
+        gbc.gridwidth = 2;
+        gbc.weightx = 1.0;
+        gbc.anchor = GridBagConstraints.WEST;
+        contentPanel.add(streamingAutoPasteSwitch, gbc);
+
+        // Row: Armed microphone
+        row++;
+        gbc.gridx = 0;
+        gbc.gridy = row;
+        gbc.gridwidth = 1;
+        gbc.weightx = 0;
+        gbc.anchor = GridBagConstraints.EAST;
+        contentPanel.add(new JLabel("Keep microphone open:"), gbc);
+        armedCaptureSwitch = new JCheckBox();
+        armedCaptureSwitch.setToolTipText("Keeps the microphone open between recordings, so recording starts instantly and includes the last half second before the hotkey. The operating system will show the microphone as in use.");
+        gbc.gridx = 1;
+        gbc.gridy = row;
+        gbc.gridwidth = 2;
+        gbc.weightx = 1.0;
+        gbc.anchor = GridBagConstraints.WEST;
+        contentPanel.add(armedCaptureSwitch, gbc);
+
+        // Row: Keep recordings
+        row++;
+        gbc.gridx = 0;
+        gbc.gridy = row;
+        gbc.gridwidth = 1;
+        gbc.weightx = 0;
+        gbc.anchor = GridBagConstraints.EAST;
+        contentPanel.add(new JLabel("Keep recordings:"), gbc);
+        keepRecordingsSwitch = new JCheckBox();
+        keepRecordingsSwitch.setToolTipText("Saves every recording as WAV file in the \"recordings\" folder of the config directory. Otherwise recordings stay in memory and are discarded after transcription.");
+        gbc.gridx = 1;
+        gbc.gridy = row;
+        gbc.gridwidth = 2;
+        gbc.weightx = 1.0;
+        gbc.anchor = GridBagConstraints.WEST;
+        contentPanel.add(keepRecordingsSwitch, gbc);
+
+        // Row: Transcription cache
+        row++;
+        gbc.gridx = 0;
+        gbc.gridy = row;
+        gbc.gridwidth = 1;
+        gbc.weightx = 0;
+        gbc.anchor = GridBagConstraints.EAST;
+        contentPanel.add(new JLabel("Cache transcriptions:"), gbc);
+        transcriptionCacheSwitch = new JCheckBox();
+        transcriptionCacheSwitch.setToolTipText("Reuses the transcript when the same audio is transcribed again with the same settings.");
+        gbc.gridx = 1;
+        gbc.gridy = row;
+        gbc.gridwidth = 2;
+        gbc.weightx = 1.0;
+        gbc.anchor = GridBagConstraints.WEST;
+        contentPanel.add(transcriptionCacheSwitch, gbc);
+
+        // Row: Post-processing cache
+        row++;
+        gbc.gridx = 0;
+        gbc.gridy = row;
+        gbc.gridwidth = 1;
+        gbc.weightx = 0;
+        gbc.anchor = GridBagConstraints.EAST;
+        contentPanel.add(new JLabel("Cache post-processing:"), gbc);
+        postProcessingCacheSwitch = new JCheckBox();
+        postProcessingCacheSwitch.setToolTipText("Reuses stored responses for prompts that were sent with exactly the same input before.");
+        gbc.gridx = 1;
+        gbc.gridy = row;
+        gbc.gridwidth = 1;
+        gbc.weightx = 1.0;
+        gbc.anchor = GridBagConstraints.WEST;
+        contentPanel.add(postProcessingCacheSwitch, gbc);
+        clearPostProcessingCacheButton = new JButton("Clear");
+        gbc.gridx = 2;
+        gbc.gridy = row;
+        gbc.gridwidth = 1;
+        gbc.weightx = 0;
+        contentPanel.add(clearPostProcessingCacheButton, gbc);
+        clearPostProcessingCacheButton.addActionListener(e -> {
+            PostProcessingCache.clear(configManager);
+            Notificationmanager.getInstance().showNotification(ToastNotification.Type.INFO, "Post-processing cache cleared.");
+        });
+
+        // Row: History
+        row++;
+        gbc.gridx = 0;
+        gbc.gridy = row;
+        gbc.gridwidth = 1;
+        gbc.weightx = 0;
+        gbc.anchor = GridBagConstraints.EAST;
+        contentPanel.add(new JLabel("Keep history:"), gbc);
+        historySwitch = new JCheckBox();
+        historySwitch.setToolTipText("Stores every transcript and post-processed text, searchable in History.");
+        gbc.gridx = 1;
+        gbc.gridy = row;
+        gbc.gridwidth = 2;
+        gbc.weightx = 1.0;
+        gbc.anchor = GridBagConstraints.WEST;
+        contentPanel.add(historySwitch, gbc);
+
+        // Row: Local control API
+        row++;
+        gbc.gridx = 0;
+        gbc.gridy = row;
+        gbc.gridwidth = 1;
+        gbc.weightx = 0;
+        gbc.anchor = GridBagConstraints.EAST;
+        contentPanel.add(new JLabel("Local control API:"), gbc);
+        controlApiSwitch = new JCheckBox();
+        controlApiSwitch.setToolTipText("Lets scripts and editor plugins on this computer start and stop recordings and fetch transcripts via http://127.0.0.1:"
+                + configManager.getControlApiPort() + "/v1/. Requests need the token.");
+        gbc.gridx = 1;
+        gbc.gridy = row;
+        gbc.gridwidth = 1;
+        gbc.weightx = 1.0;
+        gbc.anchor = GridBagConstraints.WEST;
+        contentPanel.add(controlApiSwitch, gbc);
+        JButton copyControlTokenButton = new JButton("Copy token");
+        gbc.gridx = 2;
+        gbc.gridy = row;
+        gbc.gridwidth = 1;
+        gbc.weightx = 0;
+        contentPanel.add(copyControlTokenButton, gbc);
+        copyControlTokenButton.addActionListener(e -> {
+            try {
+                Toolkit.getDefaultToolkit().getSystemClipboard()
+                        .setContents(new StringSelection(ControlServer.getToken(configManager)), null);
+                Notificationmanager.getInstance().showNotification(ToastNotification.Type.INFO, "Control API token copied.");
+            } catch (IOException ex) {
+                logger.error("Could not read the control API token", ex);
+                Notificationmanager.getInstance().showNotification(ToastNotification.Type.ERROR, "Could not read the control API token.");
+            }
+        });
+
         row++;
 
         JPanel apiSettingsPanel = new JPanel(new GridBagLayout());
@@ -366,6 +610,40 @@ public class SettingsForm extends JPanel {
         gbc.anchor = GridBagConstraints.WEST;
         contentPanel.add(whisperServerComboBox, gbc);
 
+        // Row: Fallback Whisper server
+        row++;
+        gbc.gridx = 0;
+        gbc.gridy = row;
+        gbc.gridwidth = 1;
+        gbc.weightx = 0;
+        gbc.anchor = GridBagConstraints.EAST;
+        contentPanel.add(new JLabel("Fallback Whisper Server:"), gbc);
+        fallbackWhisperServerComboBox = new JComboBox<>(new String[]{NO_FALLBACK, SERVER_OPENAI, SERVER_FASTER_WHISPER, OPEN_WEB_UI});
+        fallbackWhisperServerComboBox.setToolTipText("Transcribes with this server when the chosen one fails or does not answer in time.");
+        gbc.gridx = 1;
+        gbc.gridy = row;
+        gbc.gridwidth = 2;
+        gbc.weightx = 1.0;
+        gbc.anchor = GridBagConstraints.WEST;
+        contentPanel.add(fallbackWhisperServerComboBox, gbc);
+
+        // Row: Hedged transcription
+        row++;
+        gbc.gridx = 0;
+        gbc.gridy = row;
+        gbc.gridwidth = 1;
+        gbc.weightx = 0;
+        gbc.anchor = GridBagConstraints.EAST;
+        contentPanel.add(new JLabel("Also send to fallback:"), gbc);
+        hedgingComboBox = new JComboBox<>(new String[]{"Only if the chosen server fails", "Always, at the same time", "When the chosen server is slower than usual"});
+        hedgingComboBox.setToolTipText("Sends the recording to both servers and uses the first transcript. Lowers the waiting time when a server is busy, at the cost of more requests.");
+        gbc.gridx = 1;
+        gbc.gridy = row;
+        gbc.gridwidth = 2;
+        gbc.weightx = 1.0;
+        gbc.anchor = GridBagConstraints.WEST;
+        contentPanel.add(hedgingComboBox, gbc);
+
         // Row: Whisper server settings panel (using CardLayout)
         row++;
         JPanel whisperContainerPanel = new JPanel(new BorderLayout());
@@ -434,6 +712,21 @@ public class SettingsForm extends JPanel {
         fwGbc.weightx = 1.0;
         fwGbc.anchor = GridBagConstraints.WEST;
         fasterWhispererPanel.add(fasterWhisperLanguageComboBox, fwGbc);
+        fwRow++;
+        // Upload encoding for Faster-Whisperer
+        fwGbc.gridx = 0;
+        fwGbc.gridy = fwRow;
+        fwGbc.gridwidth = 1;
+        fwGbc.weightx = 0;
+        fwGbc.anchor = GridBagConstraints.EAST;
+        fasterWhispererPanel.add(new JLabel("Upload format:"), fwGbc);
+        fasterWhisperUploadEncodingComboBox = new JComboBox<>(AudioUploadEncoder.ENCODINGS);
+        fwGbc.gridx = 1;
+        fwGbc.gridy = fwRow;
+        fwGbc.gridwidth = 2;
+        fwGbc.weightx = 1.0;
+        fwGbc.anchor = GridBagConstraints.WEST;
+        fasterWhispererPanel.add(fasterWhisperUploadEncodingComboBox, fwGbc);
 
         // Action listener to update available languages whenever the model selection changes.
         fasterWhisperModelComboBox.addActionListener(e -> updateFasterWhisperLanguages());
@@ -484,8 +777,13 @@ public class SettingsForm extends JPanel {
         openaiGbc.gridwidth = 1;
         openaiGbc.weightx = 0;
         openaiGbc.anchor = GridBagConstraints.EAST;
-        JLabel noSettingsLabel = new JLabel("No configuration required at this time :-)");
-        openaiPanel.add(noSettingsLabel, openaiGbc);
+        openaiPanel.add(new JLabel("Upload format:"), openaiGbc);
+        openaiUploadEncodingComboBox = new JComboBox<>(AudioUploadEncoder.ENCODINGS);
+        openaiGbc.gridx = 1;
+        openaiGbc.gridwidth = 2;
+        openaiGbc.weightx = 1.0;
+        openaiGbc.anchor = GridBagConstraints.WEST;
+        openaiPanel.add(openaiUploadEncodingComboBox, openaiGbc);
 
         // ----- Initialize Open WebUI Panel -----
         openWebUIPanel = new JPanel(new GridBagLayout());
@@ -498,8 +796,13 @@ public class SettingsForm extends JPanel {
         openWebUIGbc.gridwidth = 1;
         openWebUIGbc.weightx = 0;
         openWebUIGbc.anchor = GridBagConstraints.EAST;
-        JLabel openWebUInoSettingsLabel = new JLabel("No configuration required at this time :-)");
-        openWebUIPanel.add(openWebUInoSettingsLabel, openaiGbc);
+        openWebUIPanel.add(new JLabel("Upload format:"), openWebUIGbc);
+        openWebUIUploadEncodingComboBox = new JComboBox<>(AudioUploadEncoder.ENCODINGS);
+        openWebUIGbc.gridx = 1;
+        openWebUIGbc.gridwidth = 2;
+        openWebUIGbc.weightx = 1.0;
+        openWebUIGbc.anchor = GridBagConstraints.WEST;
+        openWebUIPanel.add(openWebUIUploadEncodingComboBox, openWebUIGbc);
 
         // Add sub-panels to the card layout panel
         whisperSettingsPanel.add(openaiPanel, SERVER_OPENAI);
@@ -573,48 +876,16 @@ public class SettingsForm extends JPanel {
 
     private void startAudioTest(String microphoneName) {
         testMicrophoneButton.setEnabled(false);
-        format = configManager.getAudioFormat();
+        if (AudioDeviceRegistry.getInstance().findMixerInfo(microphoneName) == null) {
+            Notificationmanager.getInstance().showNotification(ToastNotification.Type.ERROR,
+                    "Microphone not found.");
+            return;
+        }
         try {
-            Mixer.Info mixerInfo = getMixerInfoByName(microphoneName);
-            if (mixerInfo == null) {
-                Notificationmanager.getInstance().showNotification(ToastNotification.Type.ERROR,
-                        "Microphone not found.");
-                return;
-            }
-            Mixer mixer = AudioSystem.getMixer(mixerInfo);
-            DataLine.Info dataLineInfo = new DataLine.Info(TargetDataLine.class, format);
-            if (!AudioSystem.isLineSupported(dataLineInfo)) {
-                Notificationmanager.getInstance().showNotification(ToastNotification.Type.ERROR,
-                        "Audio Line not supported. Please select another device.");
-                return;
-            }
-            line = (TargetDataLine) mixer.getLine(dataLineInfo);
-            int maxAttempts = 3;
-            int attempts = 0;
-            boolean opened = false;
-            while (attempts < maxAttempts && !opened) {
-                try {
-                    line.open(format);
-                    opened = true;
-                } catch (LineUnavailableException ex) {
-                    attempts++;
-                    if (attempts < maxAttempts) {
-                        try {
-                            Thread.sleep(2000);
-                        } catch (InterruptedException ie) {
-                            Thread.currentThread().interrupt();
-                            logger.error("Interrupted while waiting to retry opening microphone line", ie);
-                            return;
-                        }
-                    } else {
-                        logger.error("Mic Line not available after " + maxAttempts + " attempts.", ex);
-                        Notificationmanager.getInstance().showNotification(ToastNotification.Type.ERROR,
-                                "Please try again selecting this mic.");
-                        return;
-                    }
-                }
-            }
-            line.start();
+            // Test in the format recordings will capture in.
+            format = AudioDeviceRegistry.getInstance().getCaptureFormat(microphoneName,
+                    configManager.getAudioFormat(), configManager.isResamplingEnabled());
+            line = AudioDeviceRegistry.getInstance().acquireLine(microphoneName, format);
             testWorker = new TestWorker();
             testWorker.execute();
         } catch (LineUnavailableException ex) {
@@ -630,24 +901,13 @@ public class SettingsForm extends JPanel {
             testWorker.cancel(true);
         }
         if (line != null) {
-            line.stop();
-            line.close();
+            AudioDeviceRegistry.getInstance().releaseLine(line);
             line = null;
         }
         volumeBar.setVisible(false);
         stopTestButton.setVisible(false);
     }
 
-    private Mixer.Info getMixerInfoByName(String name) {
-        Mixer.Info[] mixers = AudioSystem.getMixerInfo();
-        for (Mixer.Info mixer : mixers) {
-            if (name.startsWith(mixer.getName())) {
-                return mixer;
-            }
-        }
-        return null;
-    }
-
     private class TestWorker extends SwingWorker<Void, Integer> {
         @Override
         protected Void doInBackground() {
@@ -655,7 +915,7 @@ public class SettingsForm extends JPanel {
             while (!isCancelled()) {
                 int bytesRead = line.read(buffer, 0, buffer.length);
                 if (bytesRead > 0) {
-                    double rms = calculateRMS(buffer, bytesRead);
+                    double rms = AudioFrameAnalyzer.rms(buffer, 0, bytesRead, format.isBigEndian());
                     int volume = (int) (rms * 100);
                     publish(volume);
                 }
@@ -672,17 +932,6 @@ public class SettingsForm extends JPanel {
         protected void done() {
             volumeBar.setValue(0);
         }
-        private double calculateRMS(byte[] audioData, int bytesRead) {
-            long sum = 0;
-            for (int i = 0; i < bytesRead; i += 2) {
-                if (i + 1 < bytesRead) {
-                    int sample = (audioData[i + 1] << 8) | (audioData[i] & 0xFF);
-                    sum += (long) sample * sample;
-                }
-            }
-            double rms = Math.sqrt(sum / (bytesRead / 2));
-            return Math.min(rms / 32768.0, 1.0);
-        }
     }
 
     public static String formatKeyCombination(String keyCombination) {
@@ -702,33 +951,33 @@ public class SettingsForm extends JPanel {
     }
 
     public String[] getAvailableMicrophones() {
-        Mixer.Info[] mixers = AudioSystem.getMixerInfo();
-        return Arrays.stream(mixers)
-                .filter(mixerInfo -> {
-                    Mixer mixer = AudioSystem.getMixer(mixerInfo);
-                    Line.Info[] targetLineInfos = mixer.getTargetLineInfo();
-                    for (Line.Info lineInfo : targetLineInfos) {
-                        if (lineInfo instanceof DataLine.Info) {
-                            DataLine.Info dataLineInfo = (DataLine.Info) lineInfo;
-                            AudioFormat[] supportedFormats = dataLineInfo.getFormats();
-                            for (AudioFormat format : supportedFormats) {
-                                int channels = format.getChannels();
-                                float sampleRate = format.getSampleRate();
-                                boolean isChannelValid = (channels == 1 || channels == 2);
-                                if (isChannelValid) {
-                                    logger.info("Mixer supports format: " + mixerInfo.getName()
-                                            + " | Channels: " + channels
-                                            + " | Sample Rate: " + sampleRate);
-                                    return true;
-                                }
-                            }
-                        }
-                    }
-                    logger.info("Mixer does not support format: " + mixerInfo.getName());
-                    return false;
-                })
-                .map(i -> i.getName() + " Description: " + i.getDescription())
-                .toArray(String[]::new);
+        return AudioDeviceRegistry.getInstance().getMicrophones();
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        AudioDeviceRegistry.getInstance().addDeviceListener(deviceListener);
+    }
+
+    @Override
+    public void removeNotify() {
+        AudioDeviceRegistry.getInstance().removeDeviceListener(deviceListener);
+        super.removeNotify();
+    }
+
+    /**
+     * Updates the microphone list after a device was added or removed, keeping the selection if possible.
+     */
+    private void refreshMicrophones() {
+        String[] microphones = getAvailableMicrophones();
+        SwingUtilities.invokeLater(() -> {
+            Object selected = microphoneComboBox.getSelectedItem();
+            microphoneComboBox.setModel(new DefaultComboBoxModel<>(microphones));
+            if (selected != null && Arrays.asList(microphones).contains(selected)) {
+                microphoneComboBox.setSelectedItem(selected);
+            }
+        });
     }
 
     private void loadSettings() {
@@ -772,14 +1021,31 @@ public class SettingsForm extends JPanel {
         microphoneComboBox.setSelectedItem(selectedMicrophone);
         int bitrate = configManager.getAudioBitrate();
         bitrateComboBox.setSelectedItem(bitrate);
+        resamplingSwitch.setSelected(configManager.isResamplingEnabled());
+        bitrateComboBox.setEnabled(!resamplingSwitch.isSelected());
         String stopSound = configManager.getProperty("stopSound");
         boolean isStopSoundEnabled = Boolean.parseBoolean(stopSound);
         stopSoundSwitch.setSelected(isStopSoundEnabled);
+        chunkedTranscriptionSwitch.setSelected(configManager.isChunkedTranscriptionEnabled());
+        voiceActivityDetectionSwitch.setSelected(configManager.isVoiceActivityDetectionEnabled());
+        streamingPostProcessingSwitch.setSelected(configManager.isStreamingPostProcessingEnabled());
+        streamingAutoPasteSwitch.setSelected(configManager.isStreamingAutoPasteEnabled());
+        armedCaptureSwitch.setSelected(configManager.isArmedCaptureEnabled());
+        keepRecordingsSwitch.setSelected(configManager.isKeepRecordingsEnabled());
+        transcriptionCacheSwitch.setSelected(configManager.isTranscriptionCacheEnabled());
+        postProcessingCacheSwitch.setSelected(configManager.isPostProcessingCacheEnabled());
+        historySwitch.setSelected(configManager.isHistoryEnabled());
+        controlApiSwitch.setSelected(configManager.isControlApiEnabled());
+        clearPostProcessingCacheButton.setToolTipText("Removes all stored responses. Since start: "
+                + PostProcessingCache.getHits(configManager) + " hits, " + PostProcessingCache.getMisses(configManager) + " misses.");
         // Load Whisper Server selection settings
         String whisperServer = configManager.getProperty("whisperServer");
         if (whisperServer != null && !whisperServer.isEmpty()) {
             whisperServerComboBox.setSelectedItem(whisperServer);
         }
+        String fallbackWhisperServer = configManager.getFallbackWhisperServer();
+        fallbackWhisperServerComboBox.setSelectedItem(fallbackWhisperServer.isEmpty() ? NO_FALLBACK : fallbackWhisperServer);
+        hedgingComboBox.setSelectedIndex(Math.max(0, Arrays.asList(HEDGING_MODES).indexOf(configManager.getTranscriptionHedging())));
         // Load Faster-Whisperer settings
         String serverUrl = configManager.getFasterWhisperServerUrl();
         whisperServerUrlField.setText(serverUrl != null ? serverUrl : "");
@@ -796,6 +1062,9 @@ public class SettingsForm extends JPanel {
         } else {
             fasterWhisperLanguageComboBox.setSelectedItem("");
         }
+        openaiUploadEncodingComboBox.setSelectedItem(configManager.getUploadEncoding(SERVER_OPENAI));
+        fasterWhisperUploadEncodingComboBox.setSelectedItem(configManager.getUploadEncoding(SERVER_FASTER_WHISPER));
+        openWebUIUploadEncodingComboBox.setSelectedItem(configManager.getUploadEncoding(OPEN_WEB_UI));
         // Load Groq settings
         String groqApiKey = configManager.getProperty("groqApiKey");
         groqApiKeyField.setText(groqApiKey != null ? groqApiKey : "");
@@ -830,24 +1099,44 @@ public class SettingsForm extends JPanel {
         // Save microphone and bitrate settings
         configManager.setProperty("selectedMicrophone", (String) microphoneComboBox.getSelectedItem());
         int selectedBitrate = (Integer) bitrateComboBox.getSelectedItem();
+        configManager.setResamplingEnabled(resamplingSwitch.isSelected());
         configManager.setAudioBitrate(selectedBitrate);
         boolean isStopSoundEnabled = stopSoundSwitch.isSelected();
         configManager.setProperty("stopSound", String.valueOf(isStopSoundEnabled));
+        configManager.setChunkedTranscriptionEnabled(chunkedTranscriptionSwitch.isSelected());
+        configManager.setVoiceActivityDetectionEnabled(voiceActivityDetectionSwitch.isSelected());
+        configManager.setStreamingPostProcessingEnabled(streamingPostProcessingSwitch.isSelected());
+        configManager.setStreamingAutoPasteEnabled(streamingAutoPasteSwitch.isSelected());
+        configManager.setArmedCaptureEnabled(armedCaptureSwitch.isSelected());
+        configManager.setKeepRecordingsEnabled(keepRecordingsSwitch.isSelected());
+        configManager.setTranscriptionCacheEnabled(transcriptionCacheSwitch.isSelected());
+        configManager.setPostProcessingCacheEnabled(postProcessingCacheSwitch.isSelected());
+        configManager.setHistoryEnabled(historySwitch.isSelected());
+        configManager.setControlApiEnabled(controlApiSwitch.isSelected());
         // Save Whisper Server selection and Faster-Whisperer settings
         String selectedWhisperServer = (String) whisperServerComboBox.getSelectedItem();
         configManager.setProperty("whisperServer", selectedWhisperServer);
+        String fallbackWhisperServer = (String) fallbackWhisperServerComboBox.getSelectedItem();
+        configManager.setFallbackWhisperServer(NO_FALLBACK.equals(fallbackWhisperServer) ? "" : fallbackWhisperServer);
+        configManager.setTranscriptionHedging(HEDGING_MODES[hedgingComboBox.getSelectedIndex()]);
         String serverUrl = whisperServerUrlField.getText();
         configManager.setProperty("fasterWhisperServerUrl", serverUrl);
         String fwModel = (String) fasterWhisperModelComboBox.getSelectedItem();
         configManager.setProperty("fasterWhisperModel", fwModel);
         String selectedLanguage = (String) fasterWhisperLanguageComboBox.getSelectedItem();
         configManager.setProperty("fasterWhisperLanguage", selectedLanguage);
+        configManager.setUploadEncoding(SERVER_OPENAI, (String) openaiUploadEncodingComboBox.getSelectedItem());
+        configManager.setUploadEncoding(SERVER_FASTER_WHISPER, (String) fasterWhisperUploadEncodingComboBox.getSelectedItem());
+        configManager.setUploadEncoding(OPEN_WEB_UI, (String) openWebUIUploadEncodingComboBox.getSelectedItem());
         // Save Groq settings
         String groqApiKey = groqApiKeyField.getText();
         configManager.setProperty("groqApiKey", groqApiKey);
         String groqModel = (String) groqModelComboBox.getSelectedItem();
         configManager.setProperty("groqModel", groqModel);
         configManager.saveConfig();
+        // The microphone or the audio format may have changed.
+        new Thread(() -> ArmedCapture.getInstance().update(configManager), "arm-microphone").start();
+        ControlServer.getInstance().update(configManager);
         Notificationmanager.getInstance().showNotification(ToastNotification.Type.SUCCESS,
                 "Settings saved.");
         logger.info("Settings saved: Key shortcuts - {}, Key sequence - {}, Microphone - {}",
@@ -4,10 +4,10 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.whispercat.ConfigManager;
+import org.whispercat.http.HttpClientProvider;
 import org.whispercat.recording.clients.FasterWhisperModel;
 import org.whispercat.recording.clients.FasterWhisperModelsResponse;
 
@@ -34,33 +34,32 @@ public class FasterWhisperModelsClient {
      * @throws IOException if an error occurs during the API request.
      */
     public List<FasterWhisperModel> getModels() throws IOException {
-        try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
+        CloseableHttpClient httpClient = HttpClientProvider.getDefaultClient(configManager);
 
-            String baseUrl = configManager.getFasterWhisperServerUrl().trim();
-            if (!baseUrl.toLowerCase().startsWith("http://") && !baseUrl.toLowerCase().startsWith("https://")) {
-                baseUrl = "http://" + baseUrl;
-            }
+        String baseUrl = configManager.getFasterWhisperServerUrl().trim();
+        if (!baseUrl.toLowerCase().startsWith("http://") && !baseUrl.toLowerCase().startsWith("https://")) {
+            baseUrl = "http://" + baseUrl;
+        }
 
-            if (baseUrl.endsWith("/")) {
-                baseUrl = baseUrl.substring(0, baseUrl.length() - 1);
-            }
+        if (baseUrl.endsWith("/")) {
+            baseUrl = baseUrl.substring(0, baseUrl.length() - 1);
+        }
 
-            // Build URL from ConfigManager
-            String url = baseUrl + "/v1/models";
-            HttpGet httpGet = new HttpGet(url);
-            httpGet.setHeader("Accept", "application/json");
+        // Build URL from ConfigManager
+        String url = baseUrl + "/v1/models";
+        HttpGet httpGet = new HttpGet(url);
+        httpGet.setHeader("Accept", "application/json");
 
-            try (CloseableHttpResponse response = httpClient.execute(httpGet)) {
-                int statusCode = response.getStatusLine().getStatusCode();
-                String responseString = new String(response.getEntity().getContent().readAllBytes(), StandardCharsets.UTF_8);
-                if (statusCode != 200) {
-                    logger.error("Error from models API. Status: {} Response: {}", statusCode, responseString);
-                    throw new IOException("Error from models API: " + responseString);
-                }
-                ObjectMapper objectMapper = new ObjectMapper();
-                FasterWhisperModelsResponse modelsResponse = objectMapper.readValue(responseString, FasterWhisperModelsResponse.class);
-                return modelsResponse.getData();
+        try (CloseableHttpResponse response = httpClient.execute(httpGet)) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            String responseString = new String(response.getEntity().getContent().readAllBytes(), StandardCharsets.UTF_8);
+            if (statusCode != 200) {
+                logger.error("Error from models API. Status: {} Response: {}", statusCode, responseString);
+                throw new IOException("Error from models API: " + responseString);
             }
+            ObjectMapper objectMapper = new ObjectMapper();
+            FasterWhisperModelsResponse modelsResponse = objectMapper.readValue(responseString, FasterWhisperModelsResponse.class);
+            return modelsResponse.getData();
         }
     }
 }
\ No newline at end of file
@@ -18,6 +18,9 @@ public class Menu extends JPanel {
             {"Record"},
             {"Settings", "Options", "Logs"},
             {"Post Processings", "Post Processings", "Create/Edit Post Processing"},
+            {"Batch Transcription"},
+            {"History"},
+            {"Metrics"},
 
     };
 
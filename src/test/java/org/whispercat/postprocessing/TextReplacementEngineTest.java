@@ -0,0 +1,185 @@
+package org.whispercat.postprocessing;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Checks that applying the runs of a pipeline gives the same text as applying its replacement steps one
+ * after another, like String.replace did before the steps were combined.
+ */
+class TextReplacementEngineTest {
+
+    @Test
+    void replacesEveryOccurrence() {
+        assertEquals("the cat and the cat", apply("a dog and a dog", step("dog", "cat"), step("a ", "the ")));
+    }
+
+    @Test
+    void ignoresCaseIfEnabled() {
+        ProcessingStepData step = step("whisper", "Whisper");
+        assertEquals("Whisper WHISPER", apply("whisper WHISPER", step));
+        step.ignoreCase = true;
+        assertEquals("Whisper Whisper Whisper", apply("whisper WHISPER wHiSpEr", step));
+    }
+
+    @Test
+    void replacesWholeWordsOnlyIfEnabled() {
+        ProcessingStepData step = step("cat", "dog");
+        step.wholeWord = true;
+        // The underscore is part of a word, as in regular expressions.
+        assertEquals("dog concatenate cat_ dog.", apply("cat concatenate cat_ cat.", step));
+        assertEquals("dog, cats, dog", apply("cat, cats, cat", step));
+    }
+
+    @Test
+    void appliesLaterStepsToEarlierReplacements() {
+        // Not combined, as the second pattern overlaps the first replacement.
+        assertEquals("c c", apply("a b", step("a", "b"), step("b", "c")));
+        assertEquals("b c", apply("a b", step("b", "c"), step("a", "b")));
+    }
+
+    @Test
+    void appliesLaterStepsToTextJoinedByADeletion() {
+        assertEquals("x", apply("a-b", step("-", ""), step("ab", "x")));
+    }
+
+    @Test
+    void keepsTheOutputOfNamedSteps() {
+        ProcessingStepData named = step("a", "b");
+        named.name = "first";
+        List<ProcessingStepData> steps = Arrays.asList(named, step("c", "d"));
+        TextReplacementEngine[] engines = TextReplacementEngine.forSteps(steps);
+        assertNotSame(engines[0], engines[1]);
+        assertEquals("b", engines[0].apply("a"));
+        assertEquals("d", engines[1].apply("c"));
+    }
+
+    @Test
+    void combinesIndependentSteps() {
+        List<ProcessingStepData> steps = Arrays.asList(step("gonna", "going to"), step("teh", "the"), step("recieve", "receive"));
+        TextReplacementEngine[] engines = TextReplacementEngine.forSteps(steps);
+        assertSame(engines[0], engines[1]);
+        assertSame(engines[1], engines[2]);
+        assertEquals(0, engines[2].getFirstStep());
+        assertEquals("going to read the letter I receive", engines[0].apply("gonna read teh letter I recieve"));
+    }
+
+    @Test
+    void separatesRunsAtOtherSteps() {
+        ProcessingStepData prompt = new ProcessingStepData();
+        prompt.type = "Prompt";
+        List<ProcessingStepData> steps = Arrays.asList(step("a", "b"), prompt, step("c", "d"));
+        TextReplacementEngine[] engines = TextReplacementEngine.forSteps(steps);
+        assertEquals(null, engines[1]);
+        assertEquals(0, engines[0].getFirstStep());
+        assertEquals(2, engines[2].getFirstStep());
+    }
+
+    @Test
+    void ignoresEmptyPatterns() {
+        assertEquals("abc", apply("abc", step("", "x"), step(null, "y")));
+    }
+
+    @Test
+    void matchesSequentialReplacementOnRandomPipelines() {
+        String[] pieces = {"a", "b", "A", "B", " ", ".", "ab", "ba", "_"};
+        Random random = new Random(7);
+        for (int round = 0; round < 20000; round++) {
+            List<ProcessingStepData> steps = new ArrayList<>();
+            int stepCount = 1 + random.nextInt(5);
+            for (int i = 0; i < stepCount; i++) {
+                ProcessingStepData step = step(randomText(random, pieces, 1, 3), randomText(random, pieces, 0, 3));
+                step.ignoreCase = random.nextBoolean();
+                step.wholeWord = random.nextBoolean();
+                step.name = random.nextInt(8) == 0 ? "step" + i : null;
+                steps.add(step);
+            }
+            String text = randomText(random, pieces, 0, 20);
+            assertEquals(applySequentially(text, steps), apply(text, steps.toArray(new ProcessingStepData[0])),
+                    () -> "Text \"" + text + "\", steps " + describe(steps));
+        }
+    }
+
+    /**
+     * Applies the steps like the post-processing service: the first step of a run applies the whole run.
+     */
+    private static String apply(String text, ProcessingStepData... steps) {
+        TextReplacementEngine[] engines = TextReplacementEngine.forSteps(Arrays.asList(steps));
+        for (int i = 0; i < steps.length; i++) {
+            if (engines[i] != null && engines[i].getFirstStep() == i) {
+                text = engines[i].apply(text);
+            }
+        }
+        return text;
+    }
+
+    private static String applySequentially(String text, List<ProcessingStepData> steps) {
+        for (ProcessingStepData step : steps) {
+            if (step.textToReplace == null || step.textToReplace.isEmpty()) {
+                continue;
+            }
+            String pattern = step.textToReplace;
+            String replacement = step.replacementText != null ? step.replacementText : "";
+            StringBuilder result = new StringBuilder();
+            int i = 0;
+            while (i < text.length()) {
+                if (text.regionMatches(step.ignoreCase, i, pattern, 0, pattern.length())
+                        && (!step.wholeWord || isWholeWord(text, i, pattern))) {
+                    result.append(replacement);
+                    i += pattern.length();
+                } else {
+                    result.append(text.charAt(i++));
+                }
+            }
+            text = result.toString();
+        }
+        return text;
+    }
+
+    private static boolean isWholeWord(String text, int start, String pattern) {
+        int end = start + pattern.length();
+        boolean wordBefore = start > 0 && isWordChar(text.charAt(start - 1)) && isWordChar(pattern.charAt(0));
+        boolean wordAfter = end < text.length() && isWordChar(text.charAt(end))
+                && isWordChar(pattern.charAt(pattern.length() - 1));
+        return !wordBefore && !wordAfter;
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    private static ProcessingStepData step(String textToReplace, String replacementText) {
+        ProcessingStepData step = new ProcessingStepData();
+        step.type = "Text Replacement";
+        step.textToReplace = textToReplace;
+        step.replacementText = replacementText;
+        return step;
+    }
+
+    private static String randomText(Random random, String[] pieces, int minPieces, int maxPieces) {
+        StringBuilder text = new StringBuilder();
+        int count = minPieces + random.nextInt(maxPieces - minPieces + 1);
+        for (int i = 0; i < count; i++) {
+            text.append(pieces[random.nextInt(pieces.length)]);
+        }
+        return text.toString();
+    }
+
+    private static String describe(List<ProcessingStepData> steps) {
+        StringBuilder description = new StringBuilder();
+        for (ProcessingStepData step : steps) {
+            description.append(String.format("[\"%s\" -> \"%s\"%s%s%s] ", step.textToReplace, step.replacementText,
+                    step.ignoreCase ? " ignoreCase" : "", step.wholeWord ? " wholeWord" : "",
+                    step.name != null ? " named" : ""));
+        }
+        return description.toString();
+    }
+}
@@ -0,0 +1,140 @@
+package org.whispercat.recording;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.whispercat.ConfigManager;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ChunkedTranscriberTest {
+    // One byte per frame and 100 frames per second, so every byte is 10 ms of audio.
+    private static final AudioFormat FORMAT = new AudioFormat(100, 8, 1, true, false);
+    private static final int BYTES_PER_WORD = 50;
+
+    @TempDir
+    Path configDirectory;
+
+    @Test
+    void dropsTheWordsRepeatedInTheOverlap() {
+        assertEquals("one two three four five", ChunkedTranscriber.stitch("one two three", "two three four five"));
+        assertEquals("one two three four", ChunkedTranscriber.stitch("one two three", "three four"));
+    }
+
+    @Test
+    void ignoresCaseAndPunctuationInTheOverlap() {
+        // The previous transcript keeps its words, the remainder of the next one is taken as it is.
+        assertEquals("We met at nine. then we left.", ChunkedTranscriber.stitch("We met at nine.", "at Nine, then we left."));
+        assertEquals("Hello, world. how are you?", ChunkedTranscriber.stitch("Hello, world.", "World how are you?"));
+    }
+
+    @Test
+    void appendsTranscriptsWithoutOverlap() {
+        assertEquals("first part second part", ChunkedTranscriber.stitch("first part", "second part"));
+        assertEquals("first part", ChunkedTranscriber.stitch("first part", ""));
+        assertEquals("first part", ChunkedTranscriber.stitch("first part", null));
+        assertEquals("second part", ChunkedTranscriber.stitch("", " second part "));
+        assertEquals("second part", ChunkedTranscriber.stitch(null, "second part"));
+    }
+
+    @Test
+    void keepsTheWholeNextTranscriptIfItOnlyRepeatsTheEnd() {
+        assertEquals("one two three", ChunkedTranscriber.stitch("one two three", "two three"));
+    }
+
+    @Test
+    void doesNotMatchPunctuationOnly() {
+        assertEquals("one - - two", ChunkedTranscriber.stitch("one -", "- two"));
+    }
+
+    @Test
+    void limitsTheOverlapToTwelveWords() {
+        String words = "a b c d e f g h i j k l m";
+        assertEquals(words + " " + words + " n", ChunkedTranscriber.stitch(words, words + " n"));
+        String twelve = "b c d e f g h i j k l m";
+        assertEquals(words + " n", ChunkedTranscriber.stitch(words, twelve + " n"));
+    }
+
+    @Test
+    void transcribesADictationInOverlappingSegments() throws IOException {
+        // Segments of 6 words overlapping by 2 words, with the last word alone after the overlap.
+        for (int words = 1; words <= 20; words++) {
+            assertEquals(words(words), dictate(words, 3, 1, 7));
+            assertEquals(words(words), dictate(words, 3, 1, BYTES_PER_WORD));
+        }
+    }
+
+    @Test
+    void transcribesAShortLastWord() throws IOException {
+        // The first segment holds words 1 to 6, the second one words 5 and 6 again and only then word 7.
+        List<Integer> segmentLengths = new ArrayList<>();
+        assertEquals(words(7), dictate(7, 3, 1, 64, segmentLengths));
+        segmentLengths.sort(null);
+        assertEquals(List.of(3 * BYTES_PER_WORD, 6 * BYTES_PER_WORD), segmentLengths);
+    }
+
+    private String dictate(int words, int segmentSeconds, int overlapSeconds, int blockSize) throws IOException {
+        return dictate(words, segmentSeconds, overlapSeconds, blockSize, new ArrayList<>());
+    }
+
+    /**
+     * Records the words in blocks of the given size and returns the stitched transcript.
+     */
+    private String dictate(int words, int segmentSeconds, int overlapSeconds, int blockSize,
+                           List<Integer> segmentLengths) throws IOException {
+        ConfigManager configManager = new ConfigManager(configDirectory.toString());
+        ChunkedTranscriber transcriber = new ChunkedTranscriber(new FakeTranscriptionService(configManager, segmentLengths),
+                FORMAT, segmentSeconds, overlapSeconds, null);
+        byte[] audio = new byte[words * BYTES_PER_WORD];
+        for (int i = 0; i < audio.length; i++) {
+            audio[i] = (byte) (i / BYTES_PER_WORD + 1);
+        }
+        for (int offset = 0; offset < audio.length; offset += blockSize) {
+            transcriber.onAudioData(audio, offset, Math.min(blockSize, audio.length - offset));
+        }
+        return transcriber.finish();
+    }
+
+    private static String words(int count) {
+        StringJoiner words = new StringJoiner(" ");
+        for (int i = 1; i <= count; i++) {
+            words.add("w" + i);
+        }
+        return words.toString();
+    }
+
+    /**
+     * "Hears" one word per 50 bytes, named after the value of the bytes.
+     */
+    private static class FakeTranscriptionService extends TranscriptionService {
+        private final List<Integer> segmentLengths;
+
+        FakeTranscriptionService(ConfigManager configManager, List<Integer> segmentLengths) {
+            super(configManager);
+            this.segmentLengths = segmentLengths;
+        }
+
+        @Override
+        public String transcribe(RecordedAudio audio) throws IOException {
+            byte[] pcm;
+            try (InputStream input = audio.openPcmStream()) {
+                pcm = input.readAllBytes();
+            }
+            synchronized (segmentLengths) {
+                segmentLengths.add(pcm.length);
+            }
+            StringJoiner words = new StringJoiner(" ");
+            for (int i = 0; i < pcm.length; i += BYTES_PER_WORD) {
+                words.add("w" + pcm[i]);
+            }
+            return words.toString();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package org.whispercat.recording;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResamplerTest {
+    private static final double AMPLITUDE = 10000;
+
+    @Test
+    void passesTargetFormatThrough() {
+        AudioFormat format = new AudioFormat(16000, 16, 1, true, false);
+        byte[] data = tone(format, 1000, 0.5);
+        assertArrayEquals(data, resample(format, 16000, data, data.length));
+    }
+
+    @Test
+    void averagesChannelsAndConvertsByteOrder() {
+        AudioFormat format = new AudioFormat(16000, 16, 2, true, true);
+        // Left 1000, right -3000, both big-endian.
+        byte[] data = new byte[400];
+        for (int i = 0; i < data.length; i += 4) {
+            data[i] = (byte) (1000 >> 8);
+            data[i + 1] = (byte) 1000;
+            data[i + 2] = (byte) (-3000 >> 8);
+            data[i + 3] = (byte) -3000;
+        }
+        short[] output = samples(resample(format, 16000, data, data.length));
+        assertEquals(100, output.length);
+        for (short sample : output) {
+            assertEquals(-1000, sample);
+        }
+    }
+
+    @Test
+    void producesOneOutputSamplePerRatio() {
+        assertEquals(16000, samples(resample(new AudioFormat(48000, 16, 1, true, false), 16000, new byte[96000], 96000)).length);
+        assertEquals(16000, samples(resample(new AudioFormat(44100, 16, 1, true, false), 16000, new byte[88200], 88200)).length);
+        assertEquals(16000, samples(resample(new AudioFormat(8000, 16, 1, true, false), 16000, new byte[16000], 16000)).length);
+    }
+
+    @Test
+    void keepsTheLevelOfSpeechFrequencies() {
+        for (int sourceRate : new int[]{8000, 22050, 44100, 48000}) {
+            AudioFormat format = new AudioFormat(sourceRate, 16, 1, true, false);
+            for (double frequency : new double[]{200, 1000, 3000}) {
+                double rms = steadyRms(resample(format, 16000, tone(format, frequency, 1), 4096));
+                double gainDb = 20 * Math.log10(rms / (AMPLITUDE / Math.sqrt(2)));
+                assertTrue(Math.abs(gainDb) < 0.5, sourceRate + " Hz source, " + frequency + " Hz: " + gainDb + " dB");
+            }
+        }
+    }
+
+    @Test
+    void suppressesFrequenciesAboveTheTargetNyquistFrequency() {
+        for (int sourceRate : new int[]{44100, 48000}) {
+            AudioFormat format = new AudioFormat(sourceRate, 16, 1, true, false);
+            for (double frequency : new double[]{9000, 12000, 20000}) {
+                double rms = steadyRms(resample(format, 16000, tone(format, frequency, 1), 4096));
+                double gainDb = 20 * Math.log10(Math.max(rms, 1e-3) / (AMPLITUDE / Math.sqrt(2)));
+                assertTrue(gainDb < -60, sourceRate + " Hz source, " + frequency + " Hz: " + gainDb + " dB");
+            }
+        }
+    }
+
+    @Test
+    void outputDoesNotDependOnHowTheInputIsSplit() {
+        AudioFormat format = new AudioFormat(44100, 16, 2, true, false);
+        byte[] data = tone(format, 440, 0.5);
+        byte[] whole = resample(format, 16000, data, data.length);
+        // Odd sizes split the frames, and single bytes arrive on their own.
+        assertArrayEquals(whole, resample(format, 16000, data, 7));
+        assertArrayEquals(whole, resample(format, 16000, data, 1));
+    }
+
+    @Test
+    void rejectsOtherSampleSizes() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new Resampler(new AudioFormat(16000, 8, 1, true, false), 16000, (data, offset, length) -> {
+                }));
+    }
+
+    /**
+     * Feeds the data to a new resampler in blocks of the given size and returns its output.
+     */
+    private static byte[] resample(AudioFormat format, int targetRate, byte[] data, int blockSize) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Resampler resampler = new Resampler(format, targetRate, output::write);
+        for (int offset = 0; offset < data.length; offset += blockSize) {
+            resampler.onAudioData(data, offset, Math.min(blockSize, data.length - offset));
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Returns a sine of the given frequency on every channel.
+     */
+    private static byte[] tone(AudioFormat format, double frequency, double seconds) {
+        int frames = (int) (format.getSampleRate() * seconds);
+        int channels = format.getChannels();
+        byte[] data = new byte[frames * channels * 2];
+        for (int i = 0; i < frames; i++) {
+            short sample = (short) Math.round(AMPLITUDE * Math.sin(2 * Math.PI * frequency * i / format.getSampleRate()));
+            for (int channel = 0; channel < channels; channel++) {
+                int index = (i * channels + channel) * 2;
+                data[index] = (byte) sample;
+                data[index + 1] = (byte) (sample >> 8);
+            }
+        }
+        return data;
+    }
+
+    private static short[] samples(byte[] littleEndian) {
+        short[] samples = new short[littleEndian.length / 2];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) ((littleEndian[2 * i + 1] << 8) | (littleEndian[2 * i] & 0xFF));
+        }
+        return samples;
+    }
+
+    /**
+     * Returns the RMS of the output without its first and last 1000 samples, where the filter starts up.
+     */
+    private static double steadyRms(byte[] output) {
+        short[] samples = samples(output);
+        double sum = 0;
+        int count = 0;
+        for (int i = 1000; i < samples.length - 1000; i++) {
+            sum += (double) samples[i] * samples[i];
+            count++;
+        }
+        return Math.sqrt(sum / count);
+    }
+}
@@ -0,0 +1,203 @@
+package org.whispercat.recording.encoding;
+
+import org.jflac.FLACDecoder;
+import org.jflac.FrameListener;
+import org.jflac.PCMProcessor;
+import org.jflac.frame.Frame;
+import org.jflac.metadata.Metadata;
+import org.jflac.metadata.StreamInfo;
+import org.jflac.util.ByteData;
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Encodes test signals and decodes them with jflac, a port of the reference decoder, which checks the
+ * frame header and frame CRCs. The decoded samples must be identical to the input.
+ */
+class FlacEncoderTest {
+    private static final AudioFormat MONO_16K = new AudioFormat(16000, 16, 1, true, false);
+    private static final AudioFormat STEREO_48K = new AudioFormat(48000, 16, 2, true, false);
+
+    @Test
+    void silence() throws IOException {
+        assertRoundTrip(MONO_16K, new byte[16000 * 2 * 3]);
+        assertRoundTrip(STEREO_48K, new byte[48000 * 4 * 3]);
+    }
+
+    @Test
+    void sine() throws IOException {
+        assertRoundTrip(MONO_16K, sine(MONO_16K, 2.5));
+        assertRoundTrip(STEREO_48K, sine(STEREO_48K, 2.5));
+    }
+
+    @Test
+    void fullScaleNoise() throws IOException {
+        assertRoundTrip(MONO_16K, noise(MONO_16K, 2.5, 32767));
+        assertRoundTrip(STEREO_48K, noise(STEREO_48K, 2.5, 32767));
+    }
+
+    @Test
+    void quietNoise() throws IOException {
+        assertRoundTrip(MONO_16K, noise(MONO_16K, 2.5, 300));
+        assertRoundTrip(STEREO_48K, noise(STEREO_48K, 2.5, 300));
+    }
+
+    @Test
+    void squareWaveAtFullScale() throws IOException {
+        // Alternating extremes give the largest residuals of the higher predictor orders.
+        byte[] data = new byte[16000 * 2];
+        for (int i = 0; i < data.length / 2; i++) {
+            short sample = (i / 3) % 2 == 0 ? Short.MAX_VALUE : Short.MIN_VALUE;
+            data[2 * i] = (byte) sample;
+            data[2 * i + 1] = (byte) (sample >> 8);
+        }
+        assertRoundTrip(MONO_16K, data);
+    }
+
+    @Test
+    void frameNumbersBeyondOneByte() throws IOException {
+        // More than 128 frames, so the frame numbers take several bytes in their UTF-8 like coding.
+        assertRoundTrip(MONO_16K, sine(MONO_16K, 40));
+    }
+
+    @Test
+    void shortRecordings() throws IOException {
+        assertRoundTrip(MONO_16K, new byte[0]);
+        assertRoundTrip(MONO_16K, new byte[]{1, 2});
+        assertRoundTrip(STEREO_48K, new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        assertRoundTrip(MONO_16K, noise(MONO_16K, 0.01, 5000));
+    }
+
+    @Test
+    void sampleRateWithoutFrameHeaderCode() throws IOException {
+        AudioFormat format = new AudioFormat(11025, 16, 1, true, false);
+        assertRoundTrip(format, sine(format, 1));
+    }
+
+    @Test
+    void bigEndianInput() throws IOException {
+        byte[] littleEndian = sine(STEREO_48K, 1);
+        byte[] bigEndian = new byte[littleEndian.length];
+        for (int i = 0; i < littleEndian.length; i += 2) {
+            bigEndian[i] = littleEndian[i + 1];
+            bigEndian[i + 1] = littleEndian[i];
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        FlacEncoder.encode(bigEndian, 0, bigEndian.length, new AudioFormat(48000, 16, 2, true, true), output);
+        assertArrayEquals(littleEndian, decode(output.toByteArray(), STEREO_48K, littleEndian.length / 4));
+    }
+
+    @Test
+    void offsetAndLength() throws IOException {
+        byte[] data = noise(MONO_16K, 1, 2000);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        FlacEncoder.encode(data, 100, 8000, MONO_16K, output);
+        byte[] expected = new byte[8000];
+        System.arraycopy(data, 100, expected, 0, expected.length);
+        assertArrayEquals(expected, decode(output.toByteArray(), MONO_16K, 4000));
+    }
+
+    @Test
+    void rejectsOtherSampleSizes() {
+        assertThrows(IOException.class, () -> FlacEncoder.encode(new byte[16], 0, 16,
+                new AudioFormat(16000, 8, 1, true, false), new ByteArrayOutputStream()));
+    }
+
+    @Test
+    void compressesSpeechLikeSignals() throws IOException {
+        byte[] data = sine(MONO_16K, 5);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        FlacEncoder.encode(data, 0, data.length, MONO_16K, output);
+        assertTrue(output.size() < data.length / 2, "FLAC size " + output.size() + " of " + data.length);
+    }
+
+    private static void assertRoundTrip(AudioFormat format, byte[] data) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        FlacEncoder.encode(data, 0, data.length, format, output);
+        assertArrayEquals(data, decode(output.toByteArray(), format, data.length / format.getFrameSize()));
+    }
+
+    /**
+     * Decodes the stream and checks its STREAMINFO. Fails on any error the decoder reports.
+     */
+    private static byte[] decode(byte[] flac, AudioFormat format, long totalSamples) throws IOException {
+        FLACDecoder decoder = new FLACDecoder(new ByteArrayInputStream(flac));
+        ByteArrayOutputStream pcm = new ByteArrayOutputStream();
+        List<String> errors = new ArrayList<>();
+        decoder.addPCMProcessor(new PCMProcessor() {
+            @Override
+            public void processStreamInfo(StreamInfo streamInfo) {
+            }
+
+            @Override
+            public void processPCM(ByteData data) {
+                pcm.write(data.getData(), 0, data.getLen());
+            }
+        });
+        decoder.addFrameListener(new FrameListener() {
+            @Override
+            public void processMetadata(Metadata metadata) {
+            }
+
+            @Override
+            public void processFrame(Frame frame) {
+            }
+
+            @Override
+            public void processError(String message) {
+                errors.add(message);
+            }
+        });
+        decoder.decode();
+        assertEquals(List.of(), errors);
+        assertEquals(0, decoder.getBadFrames());
+        StreamInfo streamInfo = decoder.getStreamInfo();
+        assertEquals((int) format.getSampleRate(), streamInfo.getSampleRate());
+        assertEquals(format.getChannels(), streamInfo.getChannels());
+        assertEquals(16, streamInfo.getBitsPerSample());
+        assertEquals(totalSamples, streamInfo.getTotalSamples());
+        return pcm.toByteArray();
+    }
+
+    /**
+     * Returns a 440 Hz tone at two thirds of full scale, the right channel shifted by a quarter period.
+     */
+    private static byte[] sine(AudioFormat format, double seconds) {
+        int channels = format.getChannels();
+        int samples = (int) (format.getSampleRate() * seconds);
+        byte[] data = new byte[samples * channels * 2];
+        for (int i = 0; i < samples; i++) {
+            for (int channel = 0; channel < channels; channel++) {
+                double phase = 2 * Math.PI * 440 * i / format.getSampleRate() + channel * Math.PI / 2;
+                short sample = (short) Math.round(22000 * Math.sin(phase));
+                int index = (i * channels + channel) * 2;
+                data[index] = (byte) sample;
+                data[index + 1] = (byte) (sample >> 8);
+            }
+        }
+        return data;
+    }
+
+    private static byte[] noise(AudioFormat format, double seconds, int amplitude) {
+        Random random = new Random(seconds > 1 ? 1 : 2);
+        byte[] data = new byte[(int) (format.getSampleRate() * seconds) * format.getFrameSize()];
+        for (int i = 0; i < data.length; i += 2) {
+            short sample = (short) (random.nextInt(2 * amplitude + 1) - amplitude);
+            data[i] = (byte) sample;
+            data[i + 1] = (byte) (sample >> 8);
+        }
+        return data;
+    }
+}